@@ -4,7 +4,8 @@ import android.opengl.GLES30
 import java.nio.ByteBuffer
 import java.nio.ByteOrder
 import java.nio.FloatBuffer
-import kotlin.math.sqrt
+import org.jbox2d.callbacks.ParticleExportFilter
+import org.jbox2d.particle.ParticleExportDef
 
 /**
  * OpenGL ES 3.0 雨滴渲染器
@@ -284,6 +285,15 @@ class RainGLRenderer {
     private var bufferCapacity = 0
     private var startTimeNs = 0L
 
+    // 水花顶点导出布局：位置(px) + 能量，能量由速度映射并夹在 [0.25, 1]
+    // vy > 0 = 向下；超过阈值说明仍在快速下落，跳过
+    private val splashExportDef = ParticleExportDef().apply {
+        fields = ParticleExportDef.POSITION or ParticleExportDef.ENERGY
+        energyMin = 0.25f
+        energyMax = 1.0f
+        filter = ParticleExportFilter { _, _, _, _, vy -> vy <= SPLASH_MAX_VY }
+    }
+
     // ───────── 初始化 ─────────
 
     fun init() {
@@ -328,8 +338,6 @@ class RainGLRenderer {
              bgStreaks: BackgroundRainStreaks? = null) {
         if (!initialized || !simulation.initOK) return
 
-        val positions  = simulation.positionBuffer
-        val velocities = simulation.velocityBuffer
         val prop       = simulation.proportion
         val infos      = simulation.groupInfos
         val infoCount  = simulation.groupInfoCount
@@ -365,23 +373,15 @@ class RainGLRenderer {
             // ── 填充散开组：逐粒子过滤快速下落粒子，只渲染真正的水花 ──
             // 下落中的粒子因液体内压横向扩散后 cohesive 可能变 false，
             // 但 vy 仍远大于碰撞后溅起粒子 → 用速度阈值排除
+            // 由粒子系统直接按顶点布局批量写入直接缓冲区
+            splashExportDef.positionScale = prop
+            splashExportDef.energyScale = prop * 0.00022f
             for (idx in 0 until infoCount) {
                 val info = infos[idx]
                 if (info.cohesive) continue
                 val start = info.bufferStart
                 val end   = start + info.particleCount
-                for (i in start until end) {
-                    val vx    = velocities[i].x
-                    val vyVal = velocities[i].y
-                    // vyVal > 0 = 向下；超过阈值说明仍在快速下落，跳过
-                    if (vyVal > SPLASH_MAX_VY) continue
-                    val px    = positions[i].x * prop
-                    val py    = positions[i].y * prop
-                    val spd   = sqrt(vx * vx + vyVal * vyVal)
-                    val energy = (spd * prop * 0.00022f).coerceIn(0.25f, 1.0f)
-                    buf.put(px); buf.put(py); buf.put(energy)
-                    actualSplashCount++
-                }
+                actualSplashCount += simulation.exportParticles(buf, start, end, splashExportDef)
             }
 
             buf.flip()
@@ -1,6 +1,7 @@
 package me.spica.spicaweather3.ui.widget.rain
 
 import android.graphics.Bitmap
+import java.nio.FloatBuffer
 import org.jbox2d.collision.shapes.PolygonShape
 import org.jbox2d.common.Settings
 import org.jbox2d.common.Vec2
@@ -9,8 +10,11 @@ import org.jbox2d.dynamics.BodyDef
 import org.jbox2d.dynamics.BodyType
 import org.jbox2d.dynamics.FixtureDef
 import org.jbox2d.dynamics.World
+import org.jbox2d.particle.ParticleExportDef
 import org.jbox2d.particle.ParticleGroup
 import org.jbox2d.particle.ParticleGroupDef
+import org.jbox2d.particle.ParticleGroupStatistics
+import org.jbox2d.particle.ParticleGroupTemplate
 import org.jbox2d.particle.ParticleType
 import kotlin.math.cos
 import kotlin.math.sin
@@ -43,8 +47,8 @@ private data class EmitterSlot(
  *  - 最多 MAX_GROUPS 个粒子组并发，超过生命周期后回收重生
  *  - 每帧固定步进 2 × 1/120s = 1/60s（与渲染帧率同步）
  *
- * OpenGL 渲染器通过 [positionBuffer]、[velocityBuffer]、[particleCount]
- * 直接读取 JBox2D 内部缓冲，在同一渲染线程内无需额外同步。
+ * OpenGL 渲染器通过 [positionX]/[positionY]、[velocityX]/[velocityY]、[particleCount]
+ * 直接读取 JBox2D 内部分量数组，在同一渲染线程内无需额外同步。
  *
  * @param width      绘制区域宽度（像素）
  * @param height     绘制区域高度（像素）
@@ -59,6 +63,9 @@ class RainSimulation(
         /** JBox2D 允许的最大粒子数 */
         const val MAX_PARTICLES = 2800
 
+        /** 预留的每个粒子的平均接触数，水花堆积时约为 3 */
+        private const val CONTACTS_PER_PARTICLE = 4
+
         /** 同时活跃的最大粒子组数 */
         private const val MAX_GROUPS = 82
 
@@ -80,6 +87,13 @@ class RainSimulation(
         private const val MAX_RAIN_DAMPING = 1.0f
         private const val MAX_RAIN_BASE_VELOCITY = 40f
         private const val MAX_RAIN_VELOCITY_VARIANCE_RATIO = 0.15f
+
+        /** 粒子休眠速度阈值（世界单位/秒），约每秒两个粒子半径，积在碰撞矩形上的水静止后不再参与求解 */
+        private const val PARTICLE_SLEEP_VELOCITY = 0.06f
+
+        /** 每隔多少步按空间位置重排一次粒子缓冲区（120 步/秒，约 2 秒一次），保持相邻粒子在内存中相邻 */
+        private const val PARTICLE_REORDER_INTERVAL = 240
+
         private const val SPAWN_LANE_MIN_COUNT = 10
         private const val SPAWN_LANE_MAX_COUNT = 16
         private const val SPAWN_LANE_WIDTH_PX = 92
@@ -115,6 +129,14 @@ class RainSimulation(
     private val spawnLaneCount = (width / SPAWN_LANE_WIDTH_PX)
         .coerceIn(SPAWN_LANE_MIN_COUNT, SPAWN_LANE_MAX_COUNT)
 
+    // 原地重生时复用的位置/速度对象
+    private val spawnPosition = Vec2()
+    private val spawnVelocity = Vec2()
+
+    // 雨滴组的光栅化模板和复用的组定义，创建新组时不再重复光栅化形状
+    private lateinit var groupTemplate: ParticleGroupTemplate
+    private val groupDef = ParticleGroupDef()
+
     // ────────── 碰撞矩形（替代原底部地板碰撞） ──────────
 
     /**
@@ -137,16 +159,25 @@ class RainSimulation(
     val particleCount: Int get() = world.particleCount
 
     /**
-     * JBox2D 内部粒子位置缓冲（世界坐标，Vec2 单位）
+     * JBox2D 内部粒子位置分量（世界坐标）
      * 渲染时需乘以 [proportion] 转换为屏幕像素坐标
      */
-    val positionBuffer: Array<Vec2> get() = world.particlePositionBuffer
+    val positionX: FloatArray get() = world.particlePositionX
+    val positionY: FloatArray get() = world.particlePositionY
 
     /**
-     * JBox2D 内部粒子速度缓冲（世界单位/秒）
+     * JBox2D 内部粒子速度分量（世界单位/秒）
      * 速度方向决定雨滴拖尾朝向，速度大小决定拖尾长度
      */
-    val velocityBuffer: Array<Vec2> get() = world.particleVelocityBuffer
+    val velocityX: FloatArray get() = world.particleVelocityX
+    val velocityY: FloatArray get() = world.particleVelocityY
+
+    /**
+     * 将 [start, end) 范围内的粒子按 [def] 描述的布局写入 [buffer]（通常是 VBO 的直接缓冲区）
+     * @return 实际写入的粒子数量
+     */
+    fun exportParticles(buffer: FloatBuffer, start: Int, end: Int, def: ParticleExportDef): Int =
+        world.exportParticles(buffer, start, end, def)
 
     // ────────── 粒子组渲染信息（预分配对象池，避免每帧 GC） ──────────
 
@@ -173,15 +204,44 @@ class RainSimulation(
             // 较小半径 → 粒子交互距离缩短 → splash 不会过早散开 → Metaball 融合更好
             world.particleRadius  = 6f / proportion
             world.particleMaxCount = MAX_PARTICLES
+            // 峰值负载已知，预先分配好缓冲区，动画运行期间不再扩容
+            world.reserveParticleCapacity(MAX_PARTICLES)
+            world.reserveParticleContactCapacity(MAX_PARTICLES * CONTACTS_PER_PARTICLE)
+            world.reserveParticleBodyContactCapacity(MAX_PARTICLES / 2)
+            world.particleSleepVelocity = PARTICLE_SLEEP_VELOCITY
+            world.particleReorderInterval = PARTICLE_REORDER_INTERVAL
+            // 由引擎在每步结束时计算粒子组的包围盒、质心、平均速度和扩散，渲染信息与回收判定直接读取
+            world.particleGroupStatisticsFlags = ParticleGroupStatistics.BOUNDS or
+                ParticleGroupStatistics.MEAN_VELOCITY or ParticleGroupStatistics.SPREAD
+
+            // 粒子组形状：细长矩形，宽约 1/300 屏幕，高约 1/40 屏幕（缩短列高 = 更少粒子 = 更小水花）
+            // 粒子半径确定后只光栅化一次
+            val shape = PolygonShape()
+            shape.setAsBox(width / (300f * proportion), width / (40f * proportion))
+            groupTemplate = world.createParticleGroupTemplate(shape)
+            groupDef.template = groupTemplate
+            groupDef.flags = ParticleType.b2_waterParticle
 
             // 同步碰撞体（如果外部已设置碰撞矩形或文本轮廓）
             syncCollisionBody()
 
+            // 预热的粒子组一次性批量创建，只重建一次粒子接触
             emitterSlots.clear()
-            for (i in 0 until MAX_GROUPS) {
+            val now = System.currentTimeMillis()
+            val prewarmDefs = Array(MAX_GROUPS) { i ->
                 val slot = EmitterSlot(laneIndex = i % spawnLaneCount)
-                activateSlot(slot, now = System.currentTimeMillis(), prewarmIndex = i)
+                val (xPos, yPos) = scheduleSlot(slot, now, prewarmIndex = i)
                 emitterSlots.add(slot)
+                ParticleGroupDef().apply {
+                    template = groupTemplate
+                    flags = ParticleType.b2_waterParticle
+                    linearVelocity.set(0f, nextFallVelocity())
+                    position.set(xPos, yPos)
+                }
+            }
+            val groups = world.createParticleGroups(prewarmDefs)
+            for (i in 0 until MAX_GROUPS) {
+                emitterSlots[i].group = groups[i]
             }
             initOK = true
         }
@@ -204,9 +264,13 @@ class RainSimulation(
             for (slot in emitterSlots) {
                 val activeGroup = slot.group
                 if (activeGroup != null && shouldRecycleGroup(activeGroup, slot, now)) {
-                    world.destroyParticlesInGroup(activeGroup)
-                    slot.group = null
-                    slot.spawnAtMs = now + nextRespawnDelayMs()
+                    if (activeGroup.particleCount > 0) {
+                        // 原地重生：沿用粒子组的缓冲区位置，不触发粒子压缩和形状光栅化
+                        activateSlot(slot, now)
+                    } else {
+                        slot.group = null
+                        slot.spawnAtMs = now + nextRespawnDelayMs()
+                    }
                 }
                 if (slot.group == null && now >= slot.spawnAtMs) {
                     activateSlot(slot, now)
@@ -244,10 +308,7 @@ class RainSimulation(
         // 跳过退化矩形，避免 JBox2D PolygonShape 断言失败
         if (hw < Settings.linearSlop || hh < Settings.linearSlop) return
 
-        collisionBody?.let {
-            world.destroyBody(it)
-            collisionBody = null
-        }
+        destroyCollisionBody()
 
         val bodyDef = BodyDef().apply {
             type = BodyType.STATIC
@@ -422,8 +483,6 @@ class RainSimulation(
      * 聚合判定：所有粒子与质心的距离平方 < [COHESIVE_SPREAD_SQ] 且平均下落速度 > [COHESIVE_MIN_VY]
      */
     private fun computeGroupInfos() {
-        val positions = world.particlePositionBuffer
-        val velocities = world.particleVelocityBuffer
         var infoIdx = 0
 
         for (slot in emitterSlots) {
@@ -432,28 +491,10 @@ class RainSimulation(
             val cnt = g.particleCount
             if (cnt == 0) continue
 
-            // 先计算质心和平均竖直速度（仅用于聚合判定）
-            var sumX = 0f; var sumY = 0f; var sumVy = 0f
-            for (i in start until start + cnt) {
-                sumX += positions[i].x
-                sumY += positions[i].y
-                sumVy += velocities[i].y
-            }
-            val cx = sumX / cnt
-            val cy = sumY / cnt
-            val avy = sumVy / cnt
-
-            // 计算粒子与质心的最大距离平方
-            var maxDistSq = 0f
-            for (i in start until start + cnt) {
-                val dx = positions[i].x - cx
-                val dy = positions[i].y - cy
-                val distSq = dx * dx + dy * dy
-                if (distSq > maxDistSq) maxDistSq = distSq
-            }
-
+            // 质心扩散与平均竖直速度由引擎在本次步进结束时算好
+            val stats = g.statistics
             val info = _groupInfoPool[infoIdx++]
-            info.cohesive = maxDistSq < COHESIVE_SPREAD_SQ && avy > COHESIVE_MIN_VY
+            info.cohesive = stats.maxSpreadSquared < COHESIVE_SPREAD_SQ && stats.meanVelocityY > COHESIVE_MIN_VY
             info.bufferStart = start
             info.particleCount = cnt
         }
@@ -462,15 +503,25 @@ class RainSimulation(
 
     // ────────── 私有：创建粒子组 ──────────
 
-    private fun activateSlot(slot: EmitterSlot, now: Long, prewarmIndex: Int? = null) {
+    private fun activateSlot(slot: EmitterSlot, now: Long) {
+        val (xPos, yPos) = scheduleSlot(slot, now)
+        val group = slot.group
+        slot.group = if (group != null && group.particleCount > 0) {
+            respawnGroup(group, xPos, yPos)
+            group
+        } else {
+            createGroup(xPos, yPos)
+        }
+    }
+
+    /** 为槽位安排新一轮生命周期，返回粒子组的发射位置（世界坐标） */
+    private fun scheduleSlot(slot: EmitterSlot, now: Long, prewarmIndex: Int? = null): Pair<Float, Float> {
         val durationMs = nextGroupLifetimeMs()
         val progress = prewarmIndex?.let { (it + Random.nextFloat()) / MAX_GROUPS.toFloat() }
-        val startedAt = progress?.let { now - (durationMs * it).toLong() } ?: now
-        val (xPos, yPos) = computeSpawnPosition(slot.laneIndex, progress)
-        slot.group = createGroup(xPos, yPos)
-        slot.startedAtMs = startedAt
+        slot.startedAtMs = progress?.let { now - (durationMs * it).toLong() } ?: now
         slot.durationMs = durationMs
         slot.spawnAtMs = 0L
+        return computeSpawnPosition(slot.laneIndex, progress)
     }
 
     private fun shouldRecycleGroup(group: ParticleGroup, slot: EmitterSlot, now: Long): Boolean {
@@ -480,38 +531,33 @@ class RainSimulation(
     }
 
     private fun isGroupBelowRecycleLine(group: ParticleGroup): Boolean {
-        val positions = world.particlePositionBuffer
-        val start = group.bufferIndex
-        val end = start + group.particleCount
-        if (end <= start) return true
-        var minY = Float.MAX_VALUE
-        for (i in start until end) {
-            if (positions[i].y < minY) minY = positions[i].y
-        }
-        return minY * proportion > height * GROUP_RECYCLE_BOTTOM_RATIO
+        if (group.particleCount <= 0) return true
+        // 上一步结束时的包围盒；尚未步进过的新组不回收
+        val stats = group.statistics
+        if (stats.timestamp < 0) return false
+        return stats.lowerBoundY * proportion > height * GROUP_RECYCLE_BOTTOM_RATIO
     }
 
     /** 创建一个新的水粒子组 */
     private fun createGroup(xPos: Float, yPos: Float): ParticleGroup {
-        val def = ParticleGroupDef()
-
-        // 粒子组形状：细长矩形，宽约 1/300 屏幕，高约 1/40 屏幕（缩短列高 = 更少粒子 = 更小水花）
-        val shape = PolygonShape()
-        shape.setAsBox(width / (300f * proportion), width / (40f * proportion))
-        def.shape = shape
-        def.flags = ParticleType.b2_waterParticle
+        groupDef.linearVelocity.set(0f, nextFallVelocity())
+        groupDef.position.set(xPos, yPos)
 
-        // 最大雨档：提高初始下落速度，并保留源实现的 15% 波动
-        val baseV = MAX_RAIN_BASE_VELOCITY
-        val varV  = baseV * MAX_RAIN_VELOCITY_VARIANCE_RATIO
-        def.linearVelocity.set(
-            0f,
-            baseV + (Random.nextFloat() - 0.5f) * 2f * varV
-        )
+        return world.createParticleGroup(groupDef)
+    }
 
-        def.position.set(xPos, yPos)
+    /** 把已有粒子组原地重生到新的发射位置，复用其粒子缓冲区 */
+    private fun respawnGroup(group: ParticleGroup, xPos: Float, yPos: Float) {
+        spawnPosition.set(xPos, yPos)
+        spawnVelocity.set(0f, nextFallVelocity())
+        world.respawnParticleGroup(group, spawnPosition, 0f, spawnVelocity, 0f)
+    }
 
-        return world.createParticleGroup(def)
+    /** 最大雨档：提高初始下落速度，并保留源实现的 15% 波动 */
+    private fun nextFallVelocity(): Float {
+        val baseV = MAX_RAIN_BASE_VELOCITY
+        val varV = baseV * MAX_RAIN_VELOCITY_VARIANCE_RATIO
+        return baseV + (Random.nextFloat() - 0.5f) * 2f * varV
     }
 
     private fun computeSpawnPosition(laneIndex: Int, progress: Float?): Pair<Float, Float> {
@@ -24,11 +24,15 @@ import kotlinx.coroutines.asCoroutineDispatcher
 import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
 import me.spica.spicaweather3.ui.widget.ShowOnIdleContent
+import org.jbox2d.callbacks.ParticleDestructionListener
+import org.jbox2d.callbacks.ParticleGroupExpirationListener
 import org.jbox2d.collision.shapes.CircleShape
 import org.jbox2d.common.Vec2
 import org.jbox2d.dynamics.World
+import org.jbox2d.particle.ParticleForceField
 import org.jbox2d.particle.ParticleGroup
 import org.jbox2d.particle.ParticleGroupDef
+import org.jbox2d.particle.ParticleGroupTemplate
 import org.jbox2d.particle.ParticleType
 import java.util.concurrent.Executors
 import kotlin.math.cos
@@ -116,15 +120,35 @@ private class SnowParticleSystem(
 ) {
   private lateinit var world: World
   private val particleGroups = ArrayList<ParticleGroup>()
+
+  // 粒子组出生时复用的位置和速度
+  private val spawnPosition = Vec2()
+  private val spawnVelocity = Vec2()
+
+  // 本帧寿命到期、由监听器保留下来的粒子组，step 之后原地重生
+  private val expiredGroups = ArrayList<ParticleGroup>()
+
+  // 本帧被清除区域整组清空、已被引擎销毁的粒子组所在槽位，step 之后补建
+  private val emptiedSlots = ArrayList<Int>()
+
+  // 按雪花半径（4~12px，每 1px 一档）预先光栅化的粒子组模板，以及复用的组定义
+  private lateinit var groupTemplates: Array<ParticleGroupTemplate>
+  private val groupDef = ParticleGroupDef()
   private val snowflakes = ArrayList<Snowflake>()
   
   // 配置参数
   private val maxParticleGroups = 40
   private val maxSnowflakes = 120
   private val particleLifetime = 6000L
+
+  // 每帧按真实帧间隔的一半步进（慢放效果），粒子寿命按模拟时间计算，因此与屏幕刷新率无关
+  private val simulationTimeScale = 0.5f
+  private var lastStepNanos = 0L
   
   // 风力模拟
   private var windForceX = 0f
+  // 风作为均匀力场叠加在重力上，每次换风只修改力场参数，无需替换重力向量
+  private val windField = ParticleForceField.createUniform(0f, 0f)
   private var windTick = 0
   private val windChangeInterval = 40
 
@@ -165,13 +189,47 @@ private class SnowParticleSystem(
       world = World(Vec2(0f, 5.5f))
       world.particleRadius = 5f / proportion
       world.particleMaxCount = 1500
+      // 峰值负载已知，预先分配好缓冲区，动画运行期间不再扩容
+      world.reserveParticleCapacity(1500)
+      world.reserveParticleContactCapacity(1500 * 3)
       world.particleDamping = 0.5f // 增加阻尼，减少反弹
       world.particleDensity = 1.2f // 增加密度，更容易下落
+      world.addParticleForceField(windField)
+      // 渲染线程从快照读取粒子状态，不必与物理步进互斥
+      world.isParticleSnapshotsEnabled = true
+      // 寿命到期的粒子组保留下来，step 之后原地重生，不必销毁再重新创建
+      world.particleGroupExpirationListener = ParticleGroupExpirationListener { group ->
+        expiredGroups.add(group)
+        true
+      }
+      // 整组离开屏幕的粒子组由引擎在 step 中销毁（空组无法重生），这里只记录需要补建的槽位
+      world.particleDestructionListener = object : ParticleDestructionListener {
+        override fun sayGoodbye(group: ParticleGroup) {
+          expiredGroups.remove(group)
+          val slot = particleGroups.indexOf(group)
+          if (slot >= 0) emptiedSlots.add(slot)
+        }
+
+        override fun sayGoodbye(index: Int) {}
+      }
+      // 被风吹出屏幕左右两侧或落到底部以下的粒子由引擎在积分时直接清除，整组清空后同样补建
+      // 粒子从屏幕上方出生，因此顶部不设清除区域
+      val margin = 40f / proportion
+      world.addParticleKillHalfPlane(-1f, 0f, margin)
+      world.addParticleKillHalfPlane(1f, 0f, width / proportion + margin)
+      world.addParticleKillHalfPlane(0f, 1f, height / proportion + margin)
+
+      val shape = CircleShape()
+      groupTemplates = Array(9) { i ->
+        shape.radius = (4f + i) / proportion
+        world.createParticleGroupTemplate(shape)
+      }
       
-      // 初始化 JBox2D 粒子组（用于物理模拟）
-      repeat(maxParticleGroups) { index ->
-        particleGroups.add(createParticleGroup(index))
+      // 初始化 JBox2D 粒子组（用于物理模拟），一次性批量创建，只重建一次粒子接触
+      val defs = Array(maxParticleGroups) { index ->
+        ParticleGroupDef().also { setupGroupDef(it, index) }
       }
+      particleGroups.addAll(world.createParticleGroups(defs))
       
       // 初始化额外的装饰性雪花（不参与物理模拟，纯视觉效果）
       repeat(maxSnowflakes) { index ->
@@ -196,16 +254,33 @@ private class SnowParticleSystem(
    * 创建 JBox2D 粒子组
    */
   private fun createParticleGroup(index: Int = -1): ParticleGroup {
-    val def = ParticleGroupDef()
-    val shape = CircleShape()
-    
-    // 随机大小的雪花
-    val baseRadius = 4f + Random.nextFloat() * 8f
-    shape.radius = baseRadius / proportion
-    def.shape = shape
+    setupGroupDef(groupDef, index)
+    return world.createParticleGroup(groupDef)
+  }
+
+  /**
+   * 填充粒子组定义：随机大小、出生位置、初速度和寿命
+   */
+  private fun setupGroupDef(def: ParticleGroupDef, index: Int) {
     // 使用粉末粒子类型，不会相互碰撞反弹
     def.flags = ParticleType.b2_powderParticle
+
+    // 随机大小的雪花
+    def.template = groupTemplates[Random.nextInt(groupTemplates.size)]
+
+    nextSpawn(index)
+    def.position.set(spawnPosition)
+    def.linearVelocity.set(spawnVelocity)
     
+    // 初始化时错开寿命，避免整批同时到期
+    val lifetimeMs = particleLifetime + (if (index >= 0) index * 150L else 0L)
+    def.lifetime = lifetimeMs / 1000f * simulationTimeScale
+  }
+  
+  /**
+   * 计算粒子组的出生位置和初始速度，写入 [spawnPosition] 和 [spawnVelocity]
+   */
+  private fun nextSpawn(index: Int = -1) {
     // 初始位置：顶部随机分布
     val x = Random.nextFloat() * width / proportion
     val y = if (index >= 0) {
@@ -215,20 +290,13 @@ private class SnowParticleSystem(
       // 重生时从顶部开始
       -(Random.nextFloat() * 2f)  * (height / proportion)
     }
-    def.position.set(x, y)
+    spawnPosition.set(x, y)
     
     // 初始速度：确保向下落 + 随机水平漂移
     val horizontalDrift = (Random.nextFloat() - 0.5f) * 1.5f
     val fallSpeed = 5f + Random.nextFloat() * 3f // 增加下落速度
-    def.linearVelocity.set(horizontalDrift, fallSpeed)
-    
     // 设置速度上限，防止异常加速
-    def.linearVelocity.y = def.linearVelocity.y.coerceAtMost(3f)
-    
-    val group = world.createParticleGroup(def)
-    group.userData = System.currentTimeMillis() + (if (index >= 0) index * 150L else 0L)
-    
-    return group
+    spawnVelocity.set(horizontalDrift, fallSpeed.coerceAtMost(3f))
   }
   
   /**
@@ -268,40 +336,10 @@ private class SnowParticleSystem(
   }
   
   fun update() {
+    val now = System.currentTimeMillis()
+    // 物理世界只在计算线程访问，渲染线程读取步进后发布的快照，因此步进无需持锁
+    stepWorld(now)
     synchronized(this) {
-      val now = System.currentTimeMillis()
-      
-      // 更新风力（双正弦波叠加，模拟真实风）
-      windTick++
-      if (windTick >= windChangeInterval) {
-        windTick = 0
-        val time = now / 1000f
-        // 减小风力强度，防止粒子被吹飞
-        windForceX = (sin(time * 0.6) * 1.5f + 
-                     sin(time * 0.28) * 0.8f + 
-                     cos(time * 0.15) * 0.5f).toFloat()
-      }
-      // 确保重力始终向下，Y轴为正
-      world.gravity = Vec2(windForceX, 5.5f)
-      
-      // 更新并回收过期的 JBox2D 粒子组
-      val expiredGroups = mutableListOf<ParticleGroup>()
-      for (group in particleGroups) {
-        val birthTime = group.userData as Long
-        if (now - birthTime > particleLifetime) {
-          expiredGroups.add(group)
-        }
-      }
-      expiredGroups.forEach { oldGroup ->
-        world.destroyParticlesInGroup(oldGroup)
-        val newGroup = createParticleGroup()
-        val index = particleGroups.indexOf(oldGroup)
-        particleGroups[index] = newGroup
-      }
-      
-      // 更新物理世界
-      world.step(1f / 120f, 8, 3)
-      
       // 更新装饰性雪花
       snowflakes.forEachIndexed { index, flake ->
         // 下落运动
@@ -327,6 +365,48 @@ private class SnowParticleSystem(
       }
     }
   }
+
+  /**
+   * 推进物理世界一步，重生寿命到期的粒子组，并为整组离开屏幕的粒子组补建新组
+   */
+  private fun stepWorld(now: Long) {
+    // 更新风力（双正弦波叠加，模拟真实风）
+    windTick++
+    if (windTick >= windChangeInterval) {
+      windTick = 0
+      val time = now / 1000f
+      // 减小风力强度，防止粒子被吹飞
+      windForceX = (sin(time * 0.6) * 1.5f + 
+                   sin(time * 0.28) * 0.8f + 
+                   cos(time * 0.15) * 0.5f).toFloat()
+      windField.set(windForceX, 0f)
+    }
+    
+    // 按上一帧到这一帧的真实间隔步进，限制在 1/240s~1/30s 之间，避免卡顿后一步跨度过大
+    val nowNanos = System.nanoTime()
+    val frameSeconds = if (lastStepNanos == 0L) {
+      1f / 60f
+    } else {
+      ((nowNanos - lastStepNanos) / 1e9f).coerceIn(1f / 240f, 1f / 30f)
+    }
+    lastStepNanos = nowNanos
+    // 更新物理世界（step 结束时发布快照）
+    world.step(frameSeconds * simulationTimeScale, 8, 3)
+    
+    // 到期的粒子组从顶部原地重生，清空的槽位补建新组，并立即重新发布快照
+    if (expiredGroups.isNotEmpty() || emptiedSlots.isNotEmpty()) {
+      for (group in expiredGroups) {
+        nextSpawn()
+        world.respawnParticleGroup(group, spawnPosition, 0f, spawnVelocity, 0f)
+      }
+      expiredGroups.clear()
+      for (slot in emptiedSlots) {
+        particleGroups[slot] = createParticleGroup()
+      }
+      emptiedSlots.clear()
+      world.publishParticleSnapshot()
+    }
+  }
   
   fun render(canvas: Canvas) {
     if (!::world.isInitialized)return
@@ -354,39 +434,40 @@ private class SnowParticleSystem(
           canvas.restore()
         }
       }
+    }
+    
+    // 绘制 JBox2D 物理粒子：读取最近一次步进发布的快照，不阻塞计算线程
+    val snapshot = world.acquireParticleSnapshot() ?: return
+    val posX = snapshot.positionX
+    val posY = snapshot.positionY
+    val count = snapshot.particleCount
+    
+    for (i in 0 until count) {
+      val screenX = posX[i] * proportion
+      val screenY = posY[i] * proportion
       
-      // 绘制 JBox2D 物理粒子
-      val positionBuffer = world.particlePositionBuffer
-      val count = positionBuffer.size
+      // 边界检查
+      if (screenX < -20 || screenX > width + 20 || screenY < -40 || screenY > height + 40) {
+        continue
+      }
       
-      for (i in 0 until count) {
-        val pos = positionBuffer[i]
-        val screenX = pos.x * proportion
-        val screenY = (pos.y * proportion)
-        
-        // 边界检查
-        if (screenX < -20 || screenX > width + 20 || screenY < -40 || screenY > height + 40) {
-          continue
-        }
-        
-        // 根据粒子索引选择层次
-        val layer = i % 3
-        val paint = paintLayers[layer]
-        paint.color = Color.White.toArgb()
-        
-        // 大小随层次变化
-        val size = when (layer) {
-          0 -> 3f + (i % 3) * 0.5f
-          1 -> 4f + (i % 4) * 0.5f
-          else -> 5f + (i % 5) * 0.5f
-        }
-        
-        // 透明度轻微变化
-        val alpha = (160 + (i % 60)).coerceIn(100, 255)
-        paint.alpha = alpha
-        
-        canvas.drawCircle(screenX, screenY, size, paint)
+      // 根据粒子索引选择层次
+      val layer = i % 3
+      val paint = paintLayers[layer]
+      paint.color = Color.White.toArgb()
+      
+      // 大小随层次变化
+      val size = when (layer) {
+        0 -> 3f + (i % 3) * 0.5f
+        1 -> 4f + (i % 4) * 0.5f
+        else -> 5f + (i % 5) * 0.5f
       }
+      
+      // 透明度轻微变化
+      val alpha = (160 + (i % 60)).coerceIn(100, 255)
+      paint.alpha = alpha
+      
+      canvas.drawCircle(screenX, screenY, size, paint)
     }
   }
   
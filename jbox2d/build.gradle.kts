@@ -25,3 +25,7 @@ android {
         }
     }
 }
+
+dependencies {
+    testImplementation(libs.junit)
+}
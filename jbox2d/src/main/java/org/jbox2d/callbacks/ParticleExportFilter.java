@@ -0,0 +1,18 @@
+package org.jbox2d.callbacks;
+
+import java.nio.FloatBuffer;
+
+import org.jbox2d.particle.ParticleExportDef;
+
+/**
+ * Callback class for particle export. See
+ * {@link org.jbox2d.dynamics.World#exportParticles(FloatBuffer, int, int, ParticleExportDef)}.
+ */
+public interface ParticleExportFilter {
+  /**
+   * Called for each particle in the export range, with its world position and velocity.
+   * 
+   * @return true to write the particle into the buffer.
+   */
+  boolean shouldExport(int index, float x, float y, float vx, float vy);
+}
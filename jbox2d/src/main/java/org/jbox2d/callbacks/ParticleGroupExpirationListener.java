@@ -0,0 +1,22 @@
+package org.jbox2d.callbacks;
+
+import org.jbox2d.particle.ParticleGroup;
+
+/**
+ * Notified when the particles of a group created with a
+ * {@link org.jbox2d.particle.ParticleGroupDef#lifetime} expire. See
+ * {@link org.jbox2d.dynamics.World#setParticleGroupExpirationListener}.
+ */
+public interface ParticleGroupExpirationListener {
+  /**
+   * Called during a step, before the expired particles are destroyed, once per group whose
+   * particles expired in that step. Return true to keep the group: its particles are not destroyed
+   * and their lifetime restarts, so the group can be recycled with
+   * {@link org.jbox2d.dynamics.World#respawnParticleGroup} after the step. Return false to destroy
+   * the expired particles as usual. The world is locked while this is called.
+   * 
+   * @param group the group whose particles expired
+   * @return true to keep the group alive
+   */
+  boolean groupExpired(ParticleGroup group);
+}
@@ -0,0 +1,14 @@
+package org.jbox2d.callbacks;
+
+/**
+ * Notified when particles enter a kill volume. See
+ * {@link org.jbox2d.dynamics.World#addParticleKillHalfPlane(float, float, float)}.
+ */
+public interface ParticleKillListener {
+  /**
+   * Called during a step, after the particles have been integrated, with the number of particles
+   * that entered a kill volume in that step. They are destroyed at the start of the next step.
+   * The world is locked while this is called.
+   */
+  void particlesKilled(int count);
+}
@@ -32,6 +32,16 @@ public class BufferUtils {
     return newBuffer;
   }
 
+  /** Reallocate a buffer. */
+  public static long[] reallocateBuffer(long[] oldBuffer, int oldCapacity, int newCapacity) {
+    assert (newCapacity > oldCapacity);
+    long[] newBuffer = new long[newCapacity];
+    if (oldBuffer != null) {
+      System.arraycopy(oldBuffer, 0, newBuffer, 0, oldCapacity);
+    }
+    return newBuffer;
+  }
+
   /** Reallocate a buffer. */
   public static float[] reallocateBuffer(float[] oldBuffer, int oldCapacity, int newCapacity) {
     assert (newCapacity > oldCapacity);
@@ -84,6 +94,20 @@ public class BufferUtils {
     return buffer;
   }
 
+  /**
+   * Reallocate a long buffer. A 'deferred' buffer is reallocated only if it is not NULL. If
+   * 'userSuppliedCapacity' is not zero, buffer is user supplied and must be kept.
+   */
+  public static long[] reallocateBuffer(long[] buffer, int userSuppliedCapacity, int oldCapacity,
+      int newCapacity, boolean deferred) {
+    assert (newCapacity > oldCapacity);
+    assert (userSuppliedCapacity == 0 || newCapacity <= userSuppliedCapacity);
+    if ((!deferred || buffer != null) && userSuppliedCapacity == 0) {
+      buffer = reallocateBuffer(buffer, oldCapacity, newCapacity);
+    }
+    return buffer;
+  }
+
   /** Rotate an array, see std::rotate */
   public static <T> void rotate(T[] ray, int first, int new_first, int last) {
     int next = new_first;
@@ -134,4 +158,21 @@ public class BufferUtils {
       }
     }
   }
+
+  /** Rotate an array, see std::rotate */
+  public static void rotate(long[] ray, int first, int new_first, int last) {
+    int next = new_first;
+    while (next != first) {
+      long temp = ray[first];
+      ray[first] = ray[next];
+      ray[next] = temp;
+      first++;
+      next++;
+      if (next == last) {
+        next = new_first;
+      } else if (first == new_first) {
+        new_first = next;
+      }
+    }
+  }
 }
@@ -23,11 +23,16 @@
  ******************************************************************************/
 package org.jbox2d.dynamics;
 
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
 import org.jbox2d.callbacks.ContactFilter;
 import org.jbox2d.callbacks.ContactListener;
 import org.jbox2d.callbacks.DebugDraw;
 import org.jbox2d.callbacks.DestructionListener;
 import org.jbox2d.callbacks.ParticleDestructionListener;
+import org.jbox2d.callbacks.ParticleGroupExpirationListener;
+import org.jbox2d.callbacks.ParticleKillListener;
 import org.jbox2d.callbacks.ParticleQueryCallback;
 import org.jbox2d.callbacks.ParticleRaycastCallback;
 import org.jbox2d.callbacks.QueryCallback;
@@ -68,8 +73,13 @@ import org.jbox2d.particle.ParticleBodyContact;
 import org.jbox2d.particle.ParticleColor;
 import org.jbox2d.particle.ParticleContact;
 import org.jbox2d.particle.ParticleDef;
+import org.jbox2d.particle.ParticleExportDef;
+import org.jbox2d.particle.ParticleForceField;
 import org.jbox2d.particle.ParticleGroup;
 import org.jbox2d.particle.ParticleGroupDef;
+import org.jbox2d.particle.ParticleGroupStatistics;
+import org.jbox2d.particle.ParticleGroupTemplate;
+import org.jbox2d.particle.ParticleSnapshot;
 import org.jbox2d.particle.ParticleSystem;
 import org.jbox2d.pooling.IDynamicStack;
 import org.jbox2d.pooling.IWorldPool;
@@ -370,6 +380,9 @@ public class World {
       return;
     }
 
+    // Wake the particles resting on the body so they do not hang in the air once it is gone.
+    m_particleSystem.wakeParticlesTouchingBody(body);
+
     // Delete the attached joints.
     JointEdge je = body.m_jointList;
     while (je != null) {
@@ -651,6 +664,8 @@ public class World {
       clearForces();
     }
 
+    m_particleSystem.publishSnapshot();
+
     m_flags &= ~LOCKED;
     // log.debug("ending step");
 
@@ -809,6 +824,80 @@ public class World {
     m_particleSystem.queryAABB(particleCallback, aabb);
   }
 
+  /**
+   * Write the indices of the particles inside the provided AABB into indices, without a callback
+   * per particle. At most indices.length indices are written.
+   * 
+   * @param aabb the query box.
+   * @param indices receives the particle indices, or null to only count.
+   * @return the number of particles found, which may exceed indices.length.
+   */
+  public int queryAABB(AABB aabb, int[] indices) {
+    return m_particleSystem.queryAABB(aabb, indices);
+  }
+
+  /**
+   * Count the particles inside the provided AABB.
+   * 
+   * @param aabb the query box.
+   * @return the number of particles found.
+   */
+  public int countParticlesInAABB(AABB aabb) {
+    return m_particleSystem.countParticlesInAABB(aabb);
+  }
+
+  /**
+   * Write the indices of the particles whose centers lie inside the shape into indices. At most
+   * indices.length indices are written.
+   * 
+   * @param shape the query shape.
+   * @param xf the transform of the shape.
+   * @param indices receives the particle indices, or null to only count.
+   * @return the number of particles found, which may exceed indices.length.
+   */
+  public int queryParticlesInShape(Shape shape, Transform xf, int[] indices) {
+    return m_particleSystem.queryParticlesInShape(shape, xf, indices);
+  }
+
+  /**
+   * Write the indices of the particles closer than radius to center into indices. At most
+   * indices.length indices are written.
+   * 
+   * @param center the query center.
+   * @param radius the query radius.
+   * @param indices receives the particle indices, or null to only count.
+   * @return the number of particles found, which may exceed indices.length.
+   */
+  public int queryParticlesInRadius(Vec2 center, float radius, int[] indices) {
+    return m_particleSystem.queryRadius(center, radius, indices);
+  }
+
+  /**
+   * Find the k particles nearest to point, ordered from nearest to farthest.
+   * 
+   * @param point the query point.
+   * @param k the number of particles wanted, limited to indices.length.
+   * @param indices receives the particle indices.
+   * @return the number of particles written, less than k if there are fewer particles.
+   */
+  public int queryNearestParticles(Vec2 point, int k, int[] indices) {
+    return m_particleSystem.queryKNearest(point, k, indices, null);
+  }
+
+  /**
+   * Find the k particles nearest to point, ordered from nearest to farthest, along with their
+   * distances to point.
+   * 
+   * @param point the query point.
+   * @param k the number of particles wanted, limited to indices.length.
+   * @param indices receives the particle indices.
+   * @param distances receives the distance of each particle to point, may be null.
+   * @return the number of particles written, less than k if there are fewer particles.
+   */
+  public int queryNearestParticles(Vec2 point, int k, int[] indices, float[] distances) {
+    return m_particleSystem.queryKNearest(point, k, indices, distances);
+  }
+
   private final WorldRayCastWrapper wrcwrapper = new WorldRayCastWrapper();
   private final RayCastInput input = new RayCastInput();
 
@@ -863,6 +952,21 @@ public class World {
     m_particleSystem.raycast(particleCallback, point1, point2);
   }
 
+  /**
+   * Ray-cast the world for every particle the segment passes through, without a callback per
+   * particle. Hits are not clipped to the closest one and are not sorted by fraction.
+   * 
+   * @param point1 the ray starting point
+   * @param point2 the ray ending point
+   * @param indices receives the particle indices, or null to only count.
+   * @param fractions receives the hit fraction of each particle, may be null.
+   * @param normals receives the unit hit normal of each particle as x, y pairs, may be null.
+   * @return the number of particles hit, which may exceed the capacity of the arrays.
+   */
+  public int raycast(Vec2 point1, Vec2 point2, int[] indices, float[] fractions, float[] normals) {
+    return m_particleSystem.raycast(point1, point2, indices, fractions, normals);
+  }
+
   /**
    * Get the world body list. With the returned body, use Body.getNext to get the next body in the
    * world list. A null body indicates the end of the list.
@@ -1748,6 +1852,60 @@ public class World {
     return g;
   }
 
+  /**
+   * Create several particle groups at once. The result is the same as calling
+   * {@link #createParticleGroup} for each definition in turn, but contacts are rebuilt only once for
+   * the whole batch and particle pairs are generated in a single pass. No reference to the
+   * definitions is retained.
+   * 
+   * @warning This function is locked during callbacks.
+   * @return the new groups, in the order of the definitions
+   */
+  public ParticleGroup[] createParticleGroups(ParticleGroupDef[] defs) {
+    assert (isLocked() == false);
+    if (isLocked()) {
+      return null;
+    }
+    return m_particleSystem.createParticleGroups(defs);
+  }
+
+  /**
+   * Respawn a particle group in place. Its particles are moved back onto the lattice they were
+   * created on, placed at the given transform and given the given velocities. The particles keep
+   * their buffer slots, so no particles are destroyed or created. Use this to recycle groups
+   * instead of destroying and recreating them. If the group was created with a
+   * {@link ParticleGroupDef#lifetime}, the lifetime of its particles restarts. Particles of the
+   * group that were destroyed or expired but not yet removed are revived. Queries made right after
+   * the respawn already find the particles at their new positions.
+   * 
+   * @param group the group to respawn. It must still contain particles.
+   * @param position the new position of the group
+   * @param angle the new angle of the group
+   * @param linearVelocity the new linear velocity
+   * @param angularVelocity the new angular velocity
+   * @warning This function is locked during callbacks.
+   */
+  public void respawnParticleGroup(ParticleGroup group, Vec2 position, float angle,
+      Vec2 linearVelocity, float angularVelocity) {
+    assert (isLocked() == false);
+    if (isLocked()) {
+      return;
+    }
+    m_particleSystem.respawnParticleGroup(group, position, angle, linearVelocity, angularVelocity);
+  }
+
+  /**
+   * Create a particle group template for a shape. The shape is rasterized once at the current
+   * particle stride; groups created with {@link ParticleGroupDef#template} set to the result skip the
+   * rasterization. Recreate templates after changing the particle radius.
+   * 
+   * @param shape
+   * @return
+   */
+  public ParticleGroupTemplate createParticleGroupTemplate(Shape shape) {
+    return m_particleSystem.createParticleGroupTemplate(shape);
+  }
+
   /**
    * Join two particle groups.
    * 
@@ -1911,6 +2069,57 @@ public class World {
     return m_particleSystem.getParticleDamping();
   }
 
+  /**
+   * Change the threshold used when sorting the particle proxies each step. The proxy order from the
+   * previous step is usually almost sorted; while the fraction of proxies whose grid cell changed
+   * since the previous step is at most this value an insertion sort is used, otherwise a radix
+   * sort. Both produce the same order. 0 always uses the radix sort.
+   * Default value is 0.9f.
+   * 
+   * @param threshold
+   */
+  public void setParticleProxySortThreshold(float threshold) {
+    m_particleSystem.setParticleProxySortThreshold(threshold);
+  }
+
+  /**
+   * Get the proxy sort threshold.
+   * 
+   * @return
+   */
+  public float getParticleProxySortThreshold() {
+    return m_particleSystem.getParticleProxySortThreshold();
+  }
+
+  /**
+   * Set the number of threads used by the particle solver. With more than one thread the particle
+   * contacts are generated in parallel on a fork/join pool; the resulting contacts are identical to
+   * the single-threaded ones. With at least 2048 contacts, pressure is also solved in parallel over
+   * a coloring of the contacts and matches the single-threaded result up to rounding. Damping
+   * depends on the contact order and is always solved on the calling thread. A value of 1 or less
+   * shuts the pool down.
+   * Default value is 1. The pool is only released here, so a world that enabled threads should
+   * set the count back to 1 when it is torn down.
+   * 
+   * @param threadCount
+   */
+  public void setParticleThreadCount(int threadCount) {
+    assert (isLocked() == false);
+    if (isLocked()) {
+      return;
+    }
+    m_particleSystem.setParticleThreadCount(threadCount);
+  }
+
+  /**
+   * Get the number of threads used by the particle solver.
+   * 
+   * @return
+   */
+  public int getParticleThreadCount() {
+    return m_particleSystem.getParticleThreadCount();
+  }
+
   /**
    * Change the particle radius. You should set this only once, on world start. If you change the
    * radius during execution, existing particles may explode, shrink, or behave unexpectedly.
@@ -1930,6 +2139,42 @@ public class World {
     return m_particleSystem.getParticleRadius();
   }
 
+  /**
+   * Set the remaining lifetime of a particle. The particle is destroyed automatically once it
+   * expires, during the next step.
+   * 
+   * @param index the particle index
+   * @param lifetime the lifetime in seconds. 0 or less means the particle never expires.
+   */
+  public void setParticleLifetime(int index, float lifetime) {
+    m_particleSystem.setParticleLifetime(index, lifetime);
+  }
+
+  /**
+   * Get the remaining lifetime of a particle in seconds, or 0 if it never expires.
+   * 
+   * @param index the particle index
+   * @return
+   */
+  public float getParticleLifetime(int index) {
+    return m_particleSystem.getParticleLifetime(index);
+  }
+
+  /**
+   * Register a listener that is asked what to do when the particles of a group created with a
+   * lifetime expire. The listener can keep the group and recycle it with
+   * {@link #respawnParticleGroup} instead of letting it be destroyed and creating a new one.
+   * 
+   * @param listener
+   */
+  public void setParticleGroupExpirationListener(ParticleGroupExpirationListener listener) {
+    m_particleSystem.setGroupExpirationListener(listener);
+  }
+
+  public ParticleGroupExpirationListener getParticleGroupExpirationListener() {
+    return m_particleSystem.getGroupExpirationListener();
+  }
+
   /**
    * Get the particle data. @return the pointer to the head of the particle data.
    * 
@@ -1947,10 +2192,319 @@ public class World {
     return m_particleSystem.getParticleVelocityBuffer();
   }
 
+  /**
+   * Get the particle position x components. Positions are stored as separate x/y arrays; the
+   * returned array is the live internal storage, valid for indices [0, getParticleCount()).
+   * Prefer these over {@link #getParticlePositionBuffer()}, which copies into a Vec2 view.
+   *
+   * @return
+   */
+  public float[] getParticlePositionX() {
+    return m_particleSystem.getParticlePositionX();
+  }
+
+  public float[] getParticlePositionY() {
+    return m_particleSystem.getParticlePositionY();
+  }
+
+  /**
+   * Get the particle velocity x components. See {@link #getParticlePositionX()}.
+   *
+   * @return
+   */
+  public float[] getParticleVelocityX() {
+    return m_particleSystem.getParticleVelocityX();
+  }
+
+  public float[] getParticleVelocityY() {
+    return m_particleSystem.getParticleVelocityY();
+  }
+
+  /**
+   * Add a force field. Its acceleration is applied to every particle along with gravity, starting
+   * with the next step. The field's parameters may be changed between steps.
+   * 
+   * @param field
+   */
+  public void addParticleForceField(ParticleForceField field) {
+    m_particleSystem.addForceField(field);
+  }
+
+  /**
+   * Remove a force field.
+   * 
+   * @return whether the field was present
+   */
+  public boolean removeParticleForceField(ParticleForceField field) {
+    return m_particleSystem.removeForceField(field);
+  }
+
+  /** Remove all force fields. */
+  public void clearParticleForceFields() {
+    m_particleSystem.clearForceFields();
+  }
+
+  /**
+   * Set the speed below which particles may fall asleep. A particle that stays below it for the
+   * sleep time, with all its neighbors at rest as well, is frozen: it gets no gravity and no
+   * contacts with other sleeping particles until a moving particle, a moving body or a force field
+   * wakes it. Sleeping particles away from moving ones skip the neighbor search and the raycasts
+   * against static bodies.
+   * 
+   * @param sleepVelocity the speed threshold, or 0 to disable sleeping (the default) and wake all
+   *        particles
+   */
+  public void setParticleSleepVelocity(float sleepVelocity) {
+    m_particleSystem.setSleepVelocity(sleepVelocity);
+  }
+
+  public float getParticleSleepVelocity() {
+    return m_particleSystem.getSleepVelocity();
+  }
+
+  /**
+   * Set how long a particle must stay slow before it falls asleep.
+   * 
+   * @param sleepTime the time in seconds
+   */
+  public void setParticleSleepTime(float sleepTime) {
+    m_particleSystem.setSleepTime(sleepTime);
+  }
+
+  public float getParticleSleepTime() {
+    return m_particleSystem.getSleepTime();
+  }
+
+  /** Wake all sleeping particles, for example before changing their velocities directly. */
+  public void wakeParticles() {
+    m_particleSystem.wakeParticles();
+  }
+
+  /**
+   * Reorder the particle buffers so that particles close in space are close in memory. Groups stay
+   * contiguous. Particle indices and group buffer ranges may change.
+   */
+  public void reorderParticles() {
+    m_particleSystem.reorderParticles();
+  }
+
+  /**
+   * Reorder the particle buffers every given number of steps, see {@link #reorderParticles()}.
+   * 
+   * @param interval the number of steps between reorders, or 0 to disable (the default)
+   */
+  public void setParticleReorderInterval(int interval) {
+    m_particleSystem.setReorderInterval(interval);
+  }
+
+  public int getParticleReorderInterval() {
+    return m_particleSystem.getReorderInterval();
+  }
+
+  /**
+   * Reserve particle buffer capacity up front, so that creating up to that many particles does not
+   * reallocate. The capacity is limited by the maximum particle count and user supplied buffers.
+   * The scratch buffers the step uses per particle are reserved too. Those that belong to optional
+   * features (reordering, threads, ballistic particles) are only reserved once the feature is in
+   * use, so call this after enabling them. Snapshot arrays are sized when snapshots are enabled, so
+   * reserve before enabling snapshots.
+   * 
+   * @param capacity the number of particles
+   */
+  public void reserveParticleCapacity(int capacity) {
+    m_particleSystem.reserveParticleCapacity(capacity);
+  }
+
+  /**
+   * Reserve particle contact buffer capacity up front. With threads enabled the per-thread contact
+   * buffers and the contact coloring buffers are reserved too, so call this after
+   * {@link #setParticleThreadCount}.
+   * 
+   * @param capacity the number of particle-particle contacts
+   */
+  public void reserveParticleContactCapacity(int capacity) {
+    m_particleSystem.reserveContactCapacity(capacity);
+  }
+
+  /**
+   * Reserve particle-body contact buffer capacity up front.
+   * 
+   * @param capacity the number of particle-body contacts
+   */
+  public void reserveParticleBodyContactCapacity(int capacity) {
+    m_particleSystem.reserveBodyContactCapacity(capacity);
+  }
+
+  /**
+   * Shrink the particle, contact, pair and triad buffers, and the scratch buffers sized like them,
+   * to their current use.
+   */
+  public void shrinkParticleBuffersToFit() {
+    m_particleSystem.shrinkToFit();
+  }
+
+  public int getParticleCapacity() {
+    return m_particleSystem.getParticleCapacity();
+  }
+
+  public int getParticleContactCapacity() {
+    return m_particleSystem.getContactCapacity();
+  }
+
+  public int getParticleBodyContactCapacity() {
+    return m_particleSystem.getBodyContactCapacity();
+  }
+
+  /**
+   * Get the number of times particle buffers were allocated or grew automatically while creating
+   * particles, stepping or publishing snapshots. Explicit reservations are not counted. Query and
+   * export scratch buffers, which only grow with the size of the caller's requests, and buffers
+   * only used while creating particle groups are not counted either.
+   * 
+   * @return the reallocation count
+   */
+  public int getParticleReallocationCount() {
+    return m_particleSystem.getReallocationCount();
+  }
+
+  /**
+   * Add a kill half-plane. Particles with normalX * x + normalY * y > offset are flagged for
+   * destruction while their positions are integrated, and destroyed at the start of the next step.
+   * From the moment they are flagged they make no contacts, and they are left out of
+   * {@link #exportParticles} and particle snapshots.
+   * 
+   * @param normalX the x component of the normal, pointing to the culled side
+   * @param normalY the y component of the normal
+   * @param offset the offset along the normal
+   */
+  public void addParticleKillHalfPlane(float normalX, float normalY, float offset) {
+    m_particleSystem.addKillHalfPlane(normalX, normalY, offset);
+  }
+
+  /**
+   * Add a kill box. Particles that enter the box are flagged for destruction while their positions
+   * are integrated, and destroyed at the start of the next step. From the moment they are flagged
+   * they make no contacts, and they are left out of {@link #exportParticles} and particle
+   * snapshots.
+   * 
+   * @param box the box, copied
+   */
+  public void addParticleKillBox(AABB box) {
+    m_particleSystem.addKillBox(box);
+  }
+
+  /** Remove all kill half-planes and kill boxes. */
+  public void clearParticleKillVolumes() {
+    m_particleSystem.clearKillVolumes();
+  }
+
+  /**
+   * Register a listener that is told how many particles entered a kill volume in each step.
+   * 
+   * @param listener
+   */
+  public void setParticleKillListener(ParticleKillListener listener) {
+    m_particleSystem.setKillListener(listener);
+  }
+
+  public ParticleKillListener getParticleKillListener() {
+    return m_particleSystem.getKillListener();
+  }
+
+  /**
+   * Select the per-group statistics computed at the end of every step, read through
+   * {@link ParticleGroup#getStatistics()}. Computing them in the solver saves applications a
+   * separate pass over the particle buffers.
+   * 
+   * @param flags a combination of the {@link ParticleGroupStatistics} constants, or 0 for none
+   */
+  public void setParticleGroupStatisticsFlags(int flags) {
+    m_particleSystem.setGroupStatisticsFlags(flags);
+  }
+
+  public int getParticleGroupStatisticsFlags() {
+    return m_particleSystem.getGroupStatisticsFlags();
+  }
+
+  /**
+   * Enable or disable particle snapshots. When enabled, the particle positions, velocities, colors
+   * and group ranges are copied into a triple-buffered snapshot at the end of every step, so another
+   * thread can read them with {@link #acquireParticleSnapshot()} while the next step runs. The
+   * snapshot arrays are allocated for the current particle capacity, and for at least
+   * {@link Settings#minParticleBufferCapacity} groups, when snapshots are enabled.
+   * 
+   * @param enabled
+   */
+  public void setParticleSnapshotsEnabled(boolean enabled) {
+    m_particleSystem.setSnapshotsEnabled(enabled);
+  }
+
+  public boolean isParticleSnapshotsEnabled() {
+    return m_particleSystem.isSnapshotsEnabled();
+  }
+
+  /**
+   * Publish the current particle state as the latest snapshot. This happens automatically at the
+   * end of each step; call it after creating or destroying particles outside a step to make the
+   * change visible immediately. Call it from the stepping thread only. Particles destroyed but not
+   * yet removed are left out, so snapshot indices match the indices after the next step removes
+   * them.
+   */
+  public void publishParticleSnapshot() {
+    m_particleSystem.publishSnapshot();
+  }
+
+  /**
+   * Get the latest published particle snapshot without blocking the stepping thread. The returned
+   * snapshot stays unchanged until the next call. Only one thread may acquire snapshots.
+   * 
+   * @return the latest snapshot, or null if snapshots are disabled
+   */
+  public ParticleSnapshot acquireParticleSnapshot() {
+    return m_particleSystem.acquireSnapshot();
+  }
+
+  /**
+   * Write the particles in [first, last) into buffer, starting at its current position, using the
+   * interleaved layout described by def. Intended for filling direct buffers for GPU upload.
+   * 
+   * @return the number of particles written
+   */
+  public int exportParticles(FloatBuffer buffer, int first, int last, ParticleExportDef def) {
+    return m_particleSystem.exportParticles(buffer, first, last, def);
+  }
+
+  /**
+   * Write the particles of a group into buffer using the layout described by def.
+   * 
+   * @return the number of particles written
+   */
+  public int exportParticles(FloatBuffer buffer, ParticleGroup group, ParticleExportDef def) {
+    return m_particleSystem.exportParticles(buffer, group, def);
+  }
+
   public ParticleColor[] getParticleColorBuffer() {
     return m_particleSystem.getParticleColorBuffer();
   }
 
+  /**
+   * Get the particle colors packed as ARGB ints, creating the buffer if no particle has a color
+   * yet. This is the backing store, so it is cheaper than {@link #getParticleColorBuffer()}.
+   */
+  public int[] getParticleColorPacked() {
+    return m_particleSystem.getParticleColorPacked();
+  }
+
+  /**
+   * Write the packed ARGB colors of the particles in [first, last) into buffer, starting at its
+   * current position.
+   * 
+   * @return the number of colors written
+   */
+  public int exportParticleColors(IntBuffer buffer, int first, int last) {
+    return m_particleSystem.exportParticleColors(buffer, first, last);
+  }
+
   public ParticleGroup[] getParticleGroupBuffer() {
     return m_particleSystem.getParticleGroupBuffer();
   }
@@ -1979,6 +2533,16 @@ public class World {
 
   }
 
+  /**
+   * Copy the colors of the first {@link #getParticleCount()} particles from buffer. Colors are
+   * stored as packed ARGB ints, so buffer is not kept as the backing store and later changes to it
+   * have no effect. Unlike the other particle buffers, capacity does not limit the particle count.
+   * 
+   * @deprecated write {@link #getParticleColorPacked()} directly instead
+   * @param buffer the colors to copy, or null to do nothing
+   * @param capacity the length of buffer, at least the particle count
+   */
+  @Deprecated
   public void setParticleColorBuffer(ParticleColor[] buffer, int capacity) {
     m_particleSystem.setParticleColorBuffer(buffer, capacity);
 
@@ -49,4 +49,20 @@ public class ParticleColor {
     this.b = b;
     this.a = a;
   }
+
+  /**
+   * Pack into an ARGB int, the layout the particle system stores colors in (the same as
+   * android.graphics.Color).
+   */
+  public int toArgb() {
+    return (a & 0xff) << 24 | (r & 0xff) << 16 | (g & 0xff) << 8 | (b & 0xff);
+  }
+
+  /** Set from a packed ARGB int. */
+  public void setArgb(int argb) {
+    a = (byte) (argb >>> 24);
+    r = (byte) (argb >>> 16);
+    g = (byte) (argb >>> 8);
+    b = (byte) argb;
+  }
 }
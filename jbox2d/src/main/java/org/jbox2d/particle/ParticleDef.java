@@ -21,4 +21,10 @@ public class ParticleDef {
 
   /** Use this to store application-specific body data. */
   public Object userData;
+
+  /**
+   * Lifetime of the particle in seconds. The particle is destroyed automatically once it expires. A
+   * value of 0 or less means the particle never expires.
+   */
+  public float lifetime;
 }
@@ -0,0 +1,57 @@
+package org.jbox2d.particle;
+
+import org.jbox2d.callbacks.ParticleExportFilter;
+
+/**
+ * Describes the vertex layout written by
+ * {@link ParticleSystem#exportParticles(java.nio.FloatBuffer, int, int, ParticleExportDef)}. Each
+ * exported particle is written as the enabled fields, interleaved in the order position, velocity,
+ * energy, color.
+ */
+public class ParticleExportDef {
+  /** Two floats: the position multiplied by positionScale. */
+  public static final int POSITION = 1 << 0;
+  /** Two floats: the velocity multiplied by velocityScale. */
+  public static final int VELOCITY = 1 << 1;
+  /** One float: the speed multiplied by energyScale, clamped to [energyMin, energyMax]. */
+  public static final int ENERGY = 1 << 2;
+  /**
+   * Four floats: the red, green, blue and alpha channels in [0, 1]. Particles without a color
+   * buffer export zeros.
+   */
+  public static final int COLOR = 1 << 3;
+
+  /** The fields to write, a combination of POSITION, VELOCITY, ENERGY and COLOR. */
+  public int fields = POSITION;
+
+  public float positionScale = 1;
+
+  public float velocityScale = 1;
+
+  public float energyScale = 1;
+
+  public float energyMin = 0;
+
+  public float energyMax = Float.MAX_VALUE;
+
+  /** Optional per-particle selection. If null, every particle in the range is exported. */
+  public ParticleExportFilter filter;
+
+  /** The number of floats written per particle. */
+  public int getStride() {
+    int stride = 0;
+    if ((fields & POSITION) != 0) {
+      stride += 2;
+    }
+    if ((fields & VELOCITY) != 0) {
+      stride += 2;
+    }
+    if ((fields & ENERGY) != 0) {
+      stride += 1;
+    }
+    if ((fields & COLOR) != 0) {
+      stride += 4;
+    }
+    return stride;
+  }
+}
@@ -0,0 +1,126 @@
+package org.jbox2d.particle;
+
+/**
+ * A spatially varying acceleration applied to every particle, in addition to gravity. Fields are
+ * evaluated in the particle system's gravity loop; they may be changed between steps (for example
+ * to animate gusts) without being removed and added again. Create them with the static factory
+ * methods and add them with {@link ParticleSystem#addForceField(ParticleForceField)}.
+ */
+public class ParticleForceField {
+  final ParticleForceFieldType m_type;
+  // Uniform: the acceleration. Radial and vortex: the center.
+  float m_x, m_y;
+  // Radial and vortex: the acceleration at the center, falling off linearly to zero at m_radius.
+  // A radius of 0 or less means no falloff.
+  float m_strength;
+  float m_radius;
+  // Grid: lower corner, cell size and the row-major sample vectors.
+  float m_cellSize;
+  int m_columns, m_rows;
+  float[] m_gridX, m_gridY;
+
+  private ParticleForceField(ParticleForceFieldType type) {
+    m_type = type;
+  }
+
+  /** A field with the same acceleration everywhere. */
+  public static ParticleForceField createUniform(float ax, float ay) {
+    ParticleForceField field = new ParticleForceField(ParticleForceFieldType.UNIFORM);
+    field.m_x = ax;
+    field.m_y = ay;
+    return field;
+  }
+
+  /**
+   * A field pushing particles away from a center, or pulling them in for negative strength.
+   * 
+   * @param radius the distance at which the field falls off to zero, or 0 for no falloff
+   */
+  public static ParticleForceField createRadial(float centerX, float centerY, float strength,
+      float radius) {
+    ParticleForceField field = new ParticleForceField(ParticleForceFieldType.RADIAL);
+    field.m_x = centerX;
+    field.m_y = centerY;
+    field.m_strength = strength;
+    field.m_radius = radius;
+    return field;
+  }
+
+  /**
+   * A field swirling particles around a center, counter-clockwise for positive strength.
+   * 
+   * @param radius the distance at which the field falls off to zero, or 0 for no falloff
+   */
+  public static ParticleForceField createVortex(float centerX, float centerY, float strength,
+      float radius) {
+    ParticleForceField field = new ParticleForceField(ParticleForceFieldType.VORTEX);
+    field.m_x = centerX;
+    field.m_y = centerY;
+    field.m_strength = strength;
+    field.m_radius = radius;
+    return field;
+  }
+
+  /**
+   * A field sampled from a grid of acceleration vectors. Sample (c, r) sits at (originX + c *
+   * cellSize, originY + r * cellSize) and is stored at index r * columns + c; positions between
+   * samples are interpolated bilinearly and positions outside the grid use the nearest edge. The
+   * arrays are used directly, so they can be updated in place.
+   */
+  public static ParticleForceField createGrid(float originX, float originY, float cellSize,
+      int columns, int rows, float[] ax, float[] ay) {
+    assert (columns > 0 && rows > 0 && cellSize > 0);
+    assert (ax.length >= columns * rows && ay.length >= columns * rows);
+    ParticleForceField field = new ParticleForceField(ParticleForceFieldType.GRID);
+    field.m_x = originX;
+    field.m_y = originY;
+    field.m_cellSize = cellSize;
+    field.m_columns = columns;
+    field.m_rows = rows;
+    field.m_gridX = ax;
+    field.m_gridY = ay;
+    return field;
+  }
+
+  public ParticleForceFieldType getType() {
+    return m_type;
+  }
+
+  /** Set the acceleration of a uniform field, or the center of a radial, vortex or grid field. */
+  public void set(float x, float y) {
+    m_x = x;
+    m_y = y;
+  }
+
+  public float getX() {
+    return m_x;
+  }
+
+  public float getY() {
+    return m_y;
+  }
+
+  public void setStrength(float strength) {
+    m_strength = strength;
+  }
+
+  public float getStrength() {
+    return m_strength;
+  }
+
+  public void setRadius(float radius) {
+    m_radius = radius;
+  }
+
+  public float getRadius() {
+    return m_radius;
+  }
+
+  public float[] getGridX() {
+    return m_gridX;
+  }
+
+  public float[] getGridY() {
+    return m_gridY;
+  }
+}
@@ -0,0 +1,13 @@
+package org.jbox2d.particle;
+
+/**
+ * The force field type.
+ * uniform: the same acceleration everywhere
+ * radial: acceleration away from (or, with negative strength, towards) a center
+ * vortex: acceleration perpendicular to the direction from a center, counter-clockwise for
+ * positive strength
+ * grid: acceleration sampled bilinearly from a regular grid of vectors
+ */
+public enum ParticleForceFieldType {
+  UNIFORM, RADIAL, VORTEX, GRID
+}
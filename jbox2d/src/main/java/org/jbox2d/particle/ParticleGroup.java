@@ -22,11 +22,23 @@ public class ParticleGroup {
   final Transform m_transform = new Transform();
 
   boolean m_destroyAutomatically;
+  // Lifetime given in the group definition, in seconds. Restarted by respawnParticleGroup.
+  float m_lifetime;
   boolean m_toBeDestroyed;
   boolean m_toBeSplit;
 
   Object m_userData;
 
+  // Lattice points of the particles in the group's local frame, recorded at creation. Used by
+  // ParticleSystem.respawnParticleGroup; null once the group has been joined with another.
+  float[] m_localPositionX;
+  float[] m_localPositionY;
+  // Whether the lattice arrays belong to this group. Groups created from a template share the
+  // template's read-only lattice until a reorder first changes their particle order.
+  boolean m_ownsLocalPositions;
+
+  final ParticleGroupStatistics m_statistics = new ParticleGroupStatistics();
+
   public ParticleGroup() {
     // m_system = null;
     m_firstIndex = 0;
@@ -102,10 +114,26 @@ public class ParticleGroup {
     return m_transform.q.getAngle();
   }
 
+  /**
+   * Aggregates computed at the end of the last step. See
+   * {@link ParticleSystem#setGroupStatisticsFlags(int)}.
+   */
+  public ParticleGroupStatistics getStatistics() {
+    return m_statistics;
+  }
+
   public Object getUserData() {
     return m_userData;
   }
 
+  /**
+   * The lifetime the group was created with, in seconds. See {@link ParticleGroupDef#lifetime}.
+   * Respawning the group restarts the lifetime of its particles.
+   */
+  public float getLifetime() {
+    return m_lifetime;
+  }
+
   public void setUserData(Object data) {
     m_userData = data;
   }
@@ -120,12 +148,10 @@ public class ParticleGroup {
       m_linearVelocity.setZero();
       for (int i = m_firstIndex; i < m_lastIndex; i++) {
         m_mass += m;
-        Vec2 pos = m_system.m_positionBuffer.data[i];
-        m_center.x += m * pos.x;
-        m_center.y += m * pos.y;
-        Vec2 vel = m_system.m_velocityBuffer.data[i];
-        m_linearVelocity.x += m * vel.x;
-        m_linearVelocity.y += m * vel.y;
+        m_center.x += m * m_system.m_positionBuffer.x[i];
+        m_center.y += m * m_system.m_positionBuffer.y[i];
+        m_linearVelocity.x += m * m_system.m_velocityBuffer.x[i];
+        m_linearVelocity.y += m * m_system.m_velocityBuffer.y[i];
       }
       if (m_mass > 0) {
         m_center.x *= 1 / m_mass;
@@ -136,12 +162,10 @@ public class ParticleGroup {
       m_inertia = 0;
       m_angularVelocity = 0;
       for (int i = m_firstIndex; i < m_lastIndex; i++) {
-        Vec2 pos = m_system.m_positionBuffer.data[i];
-        Vec2 vel = m_system.m_velocityBuffer.data[i];
-        float px = pos.x - m_center.x;
-        float py = pos.y - m_center.y;
-        float vx = vel.x - m_linearVelocity.x;
-        float vy = vel.y - m_linearVelocity.y;
+        float px = m_system.m_positionBuffer.x[i] - m_center.x;
+        float py = m_system.m_positionBuffer.y[i] - m_center.y;
+        float vx = m_system.m_velocityBuffer.x[i] - m_linearVelocity.x;
+        float vy = m_system.m_velocityBuffer.y[i] - m_linearVelocity.y;
         m_inertia += m * (px * px + py * py);
         m_angularVelocity += m * (px * vy - py * vx);
       }
@@ -45,12 +45,26 @@ public class ParticleGroupDef {
   /** Shape containing the particle group. */
   public Shape shape;
 
+  /**
+   * Precomputed lattice of the particle group. If set, it is used instead of rasterizing shape, and
+   * shape may be null.
+   */
+  public ParticleGroupTemplate template;
+
   /** If true, destroy the group automatically after its last particle has been destroyed. */
   public boolean destroyAutomatically;
 
   /** Use this to store application-specific group data. */
   public Object userData;
 
+  /**
+   * Lifetime of the particles in the group in seconds. The particles are destroyed automatically once
+   * they expire, and the group too if destroyAutomatically is set, unless a
+   * {@link org.jbox2d.callbacks.ParticleGroupExpirationListener} keeps the group. A value of 0 or
+   * less means the particles never expire.
+   */
+  public float lifetime;
+
   public ParticleGroupDef() {
     flags = 0;
     groupFlags = ParticleGroupType.b2_solidParticleGroup;
@@ -58,5 +72,6 @@ public class ParticleGroupDef {
     angularVelocity = 0;
     strength = 1;
     destroyAutomatically = true;
+    lifetime = 0;
   }
 }
@@ -0,0 +1,30 @@
+package org.jbox2d.particle;
+
+/**
+ * Per-group aggregates computed by the particle system at the end of each step. Select them with
+ * {@link ParticleSystem#setGroupStatisticsFlags(int)}; fields that are not selected keep their
+ * previous values.
+ */
+public class ParticleGroupStatistics {
+  /** Axis-aligned bounds of the particle positions. */
+  public static final int BOUNDS = 1 << 0;
+  /** Unweighted mean of the particle positions. */
+  public static final int CENTROID = 1 << 1;
+  /** Unweighted mean of the particle velocities. */
+  public static final int MEAN_VELOCITY = 1 << 2;
+  /** Largest squared distance of a particle from the centroid. Implies CENTROID. */
+  public static final int SPREAD = 1 << 3;
+
+  /** The particle system timestamp the statistics were computed at, or -1 if never. */
+  public int timestamp = -1;
+  /** The number of particles in the group when the statistics were computed. */
+  public int particleCount;
+
+  public float lowerBoundX, lowerBoundY, upperBoundX, upperBoundY;
+
+  public float centroidX, centroidY;
+
+  public float meanVelocityX, meanVelocityY;
+
+  public float maxSpreadSquared;
+}
@@ -0,0 +1,33 @@
+package org.jbox2d.particle;
+
+/**
+ * A particle group template holds the lattice points of a shape, rasterized once at the particle
+ * stride in the shape's local frame. Assign it to {@link ParticleGroupDef#template} to create groups
+ * by transforming these points instead of rasterizing the shape again. Templates are immutable and
+ * can be shared by any number of groups. Create them with
+ * {@link ParticleSystem#createParticleGroupTemplate}; a template is only valid for the particle
+ * radius it was created with.
+ */
+public class ParticleGroupTemplate {
+  /** Lattice points in the shape's local frame. */
+  final float[] m_x;
+  final float[] m_y;
+  /** The particle stride the shape was rasterized with. */
+  final float m_stride;
+
+  ParticleGroupTemplate(float[] x, float[] y, float stride) {
+    m_x = x;
+    m_y = y;
+    m_stride = stride;
+  }
+
+  /** The number of particles a group created from this template has. */
+  public int getParticleCount() {
+    return m_x.length;
+  }
+
+  /** The particle stride the template was created with. */
+  public float getStride() {
+    return m_stride;
+  }
+}
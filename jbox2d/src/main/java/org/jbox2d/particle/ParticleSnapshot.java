@@ -0,0 +1,104 @@
+package org.jbox2d.particle;
+
+/**
+ * A copy of the particle state taken after a world step, for reading on another thread while the
+ * next step runs. See {@link ParticleSystem#acquireSnapshot()}. Arrays may be longer than the
+ * particle or group count; only the first {@link #getParticleCount()} (or
+ * {@link #getGroupCount()}) entries are valid. Do not modify them.
+ */
+public class ParticleSnapshot {
+  int m_count;
+  float[] m_positionX = new float[0];
+  float[] m_positionY = new float[0];
+  float[] m_velocityX = new float[0];
+  float[] m_velocityY = new float[0];
+  // Packed ARGB colors, or null if the particle system has no color buffer.
+  int[] m_colors;
+
+  int m_groupCount;
+  int[] m_groupFirstIndex = new int[0];
+  int[] m_groupLastIndex = new int[0];
+  Object[] m_groupUserData = new Object[0];
+
+  int m_timestamp;
+
+  ParticleSnapshot() {}
+
+  /**
+   * Grow the arrays to hold at least particleCapacity particles and groupCapacity groups. Group
+   * arrays at least double when they grow.
+   * 
+   * @param colors whether the color array is needed
+   * @return whether any array was allocated
+   */
+  boolean reserve(int particleCapacity, boolean colors, int groupCapacity) {
+    boolean allocated = false;
+    if (m_positionX.length < particleCapacity) {
+      m_positionX = new float[particleCapacity];
+      m_positionY = new float[particleCapacity];
+      m_velocityX = new float[particleCapacity];
+      m_velocityY = new float[particleCapacity];
+      allocated = true;
+    }
+    if (colors && (m_colors == null || m_colors.length < m_positionX.length)) {
+      m_colors = new int[m_positionX.length];
+      allocated = true;
+    }
+    if (m_groupFirstIndex.length < groupCapacity) {
+      int capacity = Math.max(groupCapacity, 2 * m_groupFirstIndex.length);
+      m_groupFirstIndex = new int[capacity];
+      m_groupLastIndex = new int[capacity];
+      m_groupUserData = new Object[capacity];
+      allocated = true;
+    }
+    return allocated;
+  }
+
+  public int getParticleCount() {
+    return m_count;
+  }
+
+  public float[] getPositionX() {
+    return m_positionX;
+  }
+
+  public float[] getPositionY() {
+    return m_positionY;
+  }
+
+  public float[] getVelocityX() {
+    return m_velocityX;
+  }
+
+  public float[] getVelocityY() {
+    return m_velocityY;
+  }
+
+  /** Particle colors packed as ARGB, or null if no particle has a color. */
+  public int[] getColors() {
+    return m_colors;
+  }
+
+  public int getGroupCount() {
+    return m_groupCount;
+  }
+
+  /** First particle index of each group. */
+  public int[] getGroupFirstIndex() {
+    return m_groupFirstIndex;
+  }
+
+  /** One past the last particle index of each group. */
+  public int[] getGroupLastIndex() {
+    return m_groupLastIndex;
+  }
+
+  public Object[] getGroupUserData() {
+    return m_groupUserData;
+  }
+
+  /** The particle system timestamp (step count) the snapshot was taken at. */
+  public int getTimestamp() {
+    return m_timestamp;
+  }
+}
@@ -0,0 +1,49 @@
+package org.jbox2d.particle;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Triple buffer of particle snapshots with a single writer and a single reader. The writer fills
+ * the back snapshot and swaps it with the middle one; the reader swaps the middle one with its front
+ * snapshot when a newer one is available. Both swaps are a single atomic exchange, so neither side
+ * ever waits for the other.
+ */
+class ParticleSnapshotBuffer {
+  private static final int INDEX_MASK = 0x3;
+  // Set on the middle index when it holds a snapshot the reader has not taken yet.
+  private static final int FRESH = 0x4;
+
+  private final ParticleSnapshot[] m_snapshots =
+      new ParticleSnapshot[] {new ParticleSnapshot(), new ParticleSnapshot(), new ParticleSnapshot()};
+  private final AtomicInteger m_middle = new AtomicInteger(1);
+  private int m_back = 0; // Writer only.
+  private int m_front = 2; // Reader only.
+
+  /** The snapshot to fill. Only valid until the next {@link #publish()}. */
+  ParticleSnapshot getBack() {
+    return m_snapshots[m_back];
+  }
+
+  /**
+   * Reserve all three snapshots, see {@link ParticleSnapshot#reserve}. The reader may hold any
+   * snapshot but the back one, so call this only before a reader has acquired a snapshot.
+   */
+  void reserve(int particleCapacity, boolean colors, int groupCapacity) {
+    for (ParticleSnapshot snapshot : m_snapshots) {
+      snapshot.reserve(particleCapacity, colors, groupCapacity);
+    }
+  }
+
+  /** Make the back snapshot the latest one. */
+  void publish() {
+    m_back = m_middle.getAndSet(m_back | FRESH) & INDEX_MASK;
+  }
+
+  /** The latest published snapshot. It stays unchanged until the next call. */
+  ParticleSnapshot acquire() {
+    if ((m_middle.get() & FRESH) != 0) {
+      m_front = m_middle.getAndSet(m_front) & INDEX_MASK;
+    }
+    return m_snapshots[m_front];
+  }
+}
@@ -1,9 +1,16 @@
 package org.jbox2d.particle;
 
 import java.lang.reflect.Array;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.jbox2d.callbacks.ParticleDestructionListener;
+import org.jbox2d.callbacks.ParticleExportFilter;
+import org.jbox2d.callbacks.ParticleGroupExpirationListener;
+import org.jbox2d.callbacks.ParticleKillListener;
 import org.jbox2d.callbacks.ParticleQueryCallback;
 import org.jbox2d.callbacks.ParticleRaycastCallback;
 import org.jbox2d.callbacks.QueryCallback;
@@ -18,6 +25,7 @@ import org.jbox2d.common.Settings;
 import org.jbox2d.common.Transform;
 import org.jbox2d.common.Vec2;
 import org.jbox2d.dynamics.Body;
+import org.jbox2d.dynamics.BodyType;
 import org.jbox2d.dynamics.Fixture;
 import org.jbox2d.dynamics.TimeStep;
 import org.jbox2d.dynamics.World;
@@ -47,6 +55,31 @@ public class ParticleSystem {
   static final int xMask = (1 << xTruncBits) - 1;
   static final int yMask = (1 << yTruncBits) - 1;
 
+  // 粒子寿命以微秒为单位计时
+  private static final float MICROSECONDS_PER_SECOND = 1e6f;
+
+  // 唤醒休眠粒子的速度阈值相对休眠速度阈值的倍数，留出滞回区间，避免粒子在阈值附近反复休眠和唤醒
+  private static final float SLEEP_WAKE_VELOCITY_RATIO = 2;
+
+  // 把 8 位颜色通道换算到 [0, 1]
+  private static final float COLOR_CHANNEL_SCALE = 1f / 255;
+
+  // 代理基数排序每趟处理的位数
+  private static final int PROXY_RADIX_BITS = 8;
+  private static final int PROXY_RADIX_SIZE = 1 << PROXY_RADIX_BITS;
+  private static final int PROXY_RADIX_MASK = PROXY_RADIX_SIZE - 1;
+  // 插入排序每个代理平均允许的移动次数，超出后改用基数排序
+  private static final int PROXY_INSERTION_SORT_BUDGET = 8;
+  // 并行生成接触时每个分段至少包含的代理数，代理过少时分段的调度开销大于收益
+  private static final int MIN_PROXIES_PER_CONTACT_BAND = 512;
+  // 并行求解压力时每个分段至少包含的接触数
+  private static final int MIN_CONTACTS_PER_SOLVE_BAND = 1024;
+  // 接触着色可用的颜色数（每个粒子用一个 long 位掩码记录已占用的颜色），最后一个颜色为溢出组
+  private static final int MAX_CONTACT_COLORS = 64;
+  // 并行求解的接触核函数
+  static final int KERNEL_ACCUMULATE_WEIGHT = 0;
+  static final int KERNEL_PRESSURE = 1;
+
   /**
    * 计算给定世界坐标 (x, y) 的空间哈希标签。
    * 用于将二维坐标映射到一维长整型，以便进行邻居查询。
@@ -94,24 +127,64 @@ public class ParticleSystem {
   int m_internalAllocatedCapacity; // 内部已分配的粒子缓冲区容量
   int m_maxCount; // 粒子最大数量限制
   ParticleBufferInt m_flagsBuffer; // 粒子标志位缓冲区
-  ParticleBuffer<Vec2> m_positionBuffer; // 粒子位置缓冲区
-  ParticleBuffer<Vec2> m_velocityBuffer; // 粒子速度缓冲区
+  ParticleBufferVec2 m_positionBuffer; // 粒子位置缓冲区（x/y 分量分开存放）
+  ParticleBufferVec2 m_velocityBuffer; // 粒子速度缓冲区（x/y 分量分开存放）
   float[] m_accumulationBuffer; // 临时累积值缓冲区 (浮点数)
   Vec2[] m_accumulation2Buffer; // 临时累积向量缓冲区
   float[] m_depthBuffer; // 粒子深度缓冲区 (表面距离)
+  long[] m_expirationTimeBuffer; // 粒子到期时间（微秒，0 表示永不过期），首次设置寿命时才分配
+  long m_timeElapsed; // 粒子系统累计模拟时间（微秒）
+  float[] m_sleepTimerBuffer; // 粒子持续低速的时间（秒），启用休眠后才分配
 
-  public ParticleBuffer<ParticleColor> m_colorBuffer; // 粒子颜色缓冲区
+  public ParticleBufferColor m_colorBuffer; // 粒子颜色缓冲区（打包的 ARGB 整数）
   ParticleGroup[] m_groupBuffer; // 粒子所属组的缓冲区
   ParticleBuffer<Object> m_userDataBuffer; // 粒子用户数据缓冲区
 
   int m_proxyCount; // 代理（Proxy）数量，用于空间哈希和碰撞检测
   int m_proxyCapacity; // 代理缓冲区容量
-  Proxy[] m_proxyBuffer; // 代理缓冲区
+  long[] m_proxyTags; // 代理的空间哈希标签，按升序排列
+  int[] m_proxyIndices; // 代理对应的粒子索引，与 m_proxyTags 一一对应
+  int[] m_ballisticIndices = new int[0]; // 弹道粒子的索引：不进入代理，刚体碰撞时逐个检查
+  int m_ballisticCount; // 弹道粒子数量，与代理数量之和等于粒子数
+  long[] m_proxySortTags; // 基数排序的临时标签缓冲区
+  int[] m_proxySortIndices; // 基数排序的临时索引缓冲区
+  private final int[] m_proxyRadixCounts = new int[PROXY_RADIX_SIZE]; // 基数排序的计数桶
+  float m_proxySortThreshold; // 网格单元变化的代理比例不超过该值时使用插入排序，否则使用基数排序
+  boolean m_proxyTagsStale; // 有粒子组被重生，代理标签不再对应粒子位置，下次查询或碰撞检测前重新计算
 
   public int m_contactCount; // 粒子间接触数量
   int m_contactCapacity; // 粒子间接触缓冲区容量
   public ParticleContact[] m_contactBuffer; // 粒子间接触缓冲区
 
+  int m_threadCount; // 求解使用的线程数，1 表示单线程
+  ForkJoinPool m_threadPool; // 多线程模式下的线程池
+  ContactBand[] m_contactBands; // 多线程模式下每个分段的接触生成任务
+  SolveBand[] m_solveBands; // 多线程模式下每个分段的接触求解任务
+  private final ForkBandsTask m_bandsTask = new ForkBandsTask(); // 分段任务的根任务
+
+  // 接触着色：同一颜色内的接触互不共享粒子，可以无竞争地并行散射写入
+  int m_contactColorCount; // 本步着色使用的颜色数，0 表示未着色（单线程求解）
+  int[] m_contactColorStart = new int[MAX_CONTACT_COLORS + 2]; // 每个颜色在 m_contactColorOrder 中的起始位置
+  int[] m_contactColorOrder; // 按颜色排列的接触索引
+  int[] m_contactColors; // 每个接触的颜色
+  long[] m_particleColorMasks; // 每个粒子已占用的颜色位掩码
+
+  int[] m_remapBuffer; // 清理僵尸粒子和重排粒子时旧索引到新索引的映射（持久复用）
+  private Object[] m_reorderScratch; // 重排对象缓冲区时的临时缓冲区
+  private ProxyRowRanges m_queryRanges = new ProxyRowRanges(); // queryAABB/raycast 复用的行区间游标
+  // 计算固体组深度时复用的邻接表 (CSR) 和最小堆，按组大小按需增长
+  private int[] m_depthAdjacencyOffsets;
+  private int[] m_depthAdjacencyNeighbors;
+  private float[] m_depthAdjacencyCosts;
+  private int[] m_depthHeap;
+  private int[] m_depthHeapIndex;
+  // 最近邻查询复用的最大堆，按查询的 k 按需增长
+  private int[] m_nearestHeapIndices;
+  private float[] m_nearestHeapDistances;
+  private int m_reorderInterval; // 每隔多少步按空间位置重排一次粒子，0 表示不重排
+  private int m_stepsSinceReorder; // 距离上次重排的步数
+  private final ContactBand m_serialBand = new ContactBand(this); // 单线程模式下借用系统接触缓冲区的分段
+
   public int m_bodyContactCount; // 粒子-刚体接触数量
   int m_bodyContactCapacity; // 粒子-刚体接触缓冲区容量
   public ParticleBodyContact[] m_bodyContactBuffer; // 粒子-刚体接触缓冲区
@@ -122,6 +195,7 @@ public class ParticleSystem {
 
   int m_triadCount; // 粒子三元组数量
   int m_triadCapacity; // 粒子三元组缓冲区容量
+  int m_reallocationCount; // 步进和创建过程中缓冲区自动扩容的累计次数
   Triad[] m_triadBuffer; // 粒子三元组缓冲区
 
   int m_groupCount; // 粒子组数量
@@ -189,24 +263,89 @@ public class ParticleSystem {
     m_ejectionStrength = 0.5f;
     m_colorMixingStrength = 0.5f;
 
+    m_proxySortThreshold = 0.9f;
+    m_threadCount = 1;
+
     // 初始化粒子数据缓冲区
     m_flagsBuffer = new ParticleBufferInt();
-    m_positionBuffer = new ParticleBuffer<Vec2>(Vec2.class);
-    m_velocityBuffer = new ParticleBuffer<Vec2>(Vec2.class);
-    m_colorBuffer = new ParticleBuffer<ParticleColor>(ParticleColor.class);
+    m_positionBuffer = new ParticleBufferVec2();
+    m_velocityBuffer = new ParticleBufferVec2();
+    m_colorBuffer = new ParticleBufferColor();
     m_userDataBuffer = new ParticleBuffer<Object>(Object.class);
   }
 
   //  public void assertNotSamePosition() {
   //    for (int i = 0; i < m_count; i++) {
-  //      Vec2 vi = m_positionBuffer.data[i];
   //      for (int j = i + 1; j < m_count; j++) {
-  //        Vec2 vj = m_positionBuffer.data[j];
-  //        assert(vi.x != vj.x || vi.y != vj.y);
+  //        assert(m_positionBuffer.x[i] != m_positionBuffer.x[j]
+  //            || m_positionBuffer.y[i] != m_positionBuffer.y[j]);
   //      }
   //    }
   //  }
 
+  /**
+   * 按最大粒子数和用户提供的缓冲区容量限制粒子缓冲区容量。
+   * @param capacity 期望的容量
+   * @return 限制后的容量
+   */
+  private int limitParticleCapacity(int capacity) {
+    capacity = limitCapacity(capacity, m_maxCount);
+    capacity = limitCapacity(capacity, m_flagsBuffer.userSuppliedCapacity);
+    capacity = limitCapacity(capacity, m_positionBuffer.userSuppliedCapacity);
+    capacity = limitCapacity(capacity, m_velocityBuffer.userSuppliedCapacity);
+    capacity = limitCapacity(capacity, m_userDataBuffer.userSuppliedCapacity);
+    return capacity;
+  }
+
+  /**
+   * 把所有粒子数据缓冲区扩容到指定容量。
+   * @param capacity 新容量，必须大于当前容量
+   */
+  private void reallocateParticleBuffers(int capacity) {
+    // 重新分配所有粒子数据缓冲区
+    m_flagsBuffer.data =
+        reallocateBuffer(m_flagsBuffer, m_internalAllocatedCapacity, capacity, false);
+    reallocateBuffer(m_positionBuffer, m_internalAllocatedCapacity, capacity);
+    reallocateBuffer(m_velocityBuffer, m_internalAllocatedCapacity, capacity);
+    m_accumulationBuffer =
+        BufferUtils.reallocateBuffer(m_accumulationBuffer, 0, m_internalAllocatedCapacity,
+            capacity, false);
+    m_accumulation2Buffer =
+        BufferUtils.reallocateBuffer(Vec2.class, m_accumulation2Buffer, 0,
+            m_internalAllocatedCapacity, capacity, true);
+    m_depthBuffer =
+        BufferUtils.reallocateBuffer(m_depthBuffer, 0, m_internalAllocatedCapacity, capacity,
+            true);
+    m_expirationTimeBuffer =
+        BufferUtils.reallocateBuffer(m_expirationTimeBuffer, 0, m_internalAllocatedCapacity,
+            capacity, true);
+    m_sleepTimerBuffer =
+        BufferUtils.reallocateBuffer(m_sleepTimerBuffer, 0, m_internalAllocatedCapacity,
+            capacity, true);
+    m_colorBuffer.data =
+        BufferUtils.reallocateBuffer(m_colorBuffer.data, 0, m_internalAllocatedCapacity, capacity,
+            true);
+    m_groupBuffer =
+        BufferUtils.reallocateBuffer(ParticleGroup.class, m_groupBuffer, 0,
+            m_internalAllocatedCapacity, capacity, false);
+    m_userDataBuffer.data =
+        reallocateBuffer(m_userDataBuffer, m_internalAllocatedCapacity, capacity, true);
+    m_internalAllocatedCapacity = capacity;
+  }
+
+  /**
+   * 把代理缓冲区扩容到指定容量。
+   * @param newCapacity 新容量，必须大于当前容量
+   */
+  private void reallocateProxyBuffers(int newCapacity) {
+    m_proxyTags = BufferUtils.reallocateBuffer(m_proxyTags, m_proxyCapacity, newCapacity);
+    m_proxyIndices = BufferUtils.reallocateBuffer(m_proxyIndices, m_proxyCapacity, newCapacity);
+    // 临时缓冲区不保存任何有效数据，直接按新容量分配
+    m_proxySortTags = new long[newCapacity];
+    m_proxySortIndices = new int[newCapacity];
+    m_proxyCapacity = newCapacity;
+  }
+
   /**
    * 根据粒子定义创建一个新粒子。
    * 如果缓冲区容量不足，会自动重新分配。
@@ -215,38 +354,11 @@ public class ParticleSystem {
    */
   public int createParticle(ParticleDef def) {
     if (m_count >= m_internalAllocatedCapacity) {
-      int capacity = m_count != 0 ? 2 * m_count : Settings.minParticleBufferCapacity;
-      capacity = limitCapacity(capacity, m_maxCount);
-      capacity = limitCapacity(capacity, m_flagsBuffer.userSuppliedCapacity);
-      capacity = limitCapacity(capacity, m_positionBuffer.userSuppliedCapacity);
-      capacity = limitCapacity(capacity, m_velocityBuffer.userSuppliedCapacity);
-      capacity = limitCapacity(capacity, m_colorBuffer.userSuppliedCapacity);
-      capacity = limitCapacity(capacity, m_userDataBuffer.userSuppliedCapacity);
+      int capacity =
+          limitParticleCapacity(m_count != 0 ? 2 * m_count : Settings.minParticleBufferCapacity);
       if (m_internalAllocatedCapacity < capacity) {
-        // 重新分配所有粒子数据缓冲区
-        m_flagsBuffer.data =
-            reallocateBuffer(m_flagsBuffer, m_internalAllocatedCapacity, capacity, false);
-        m_positionBuffer.data =
-            reallocateBuffer(m_positionBuffer, m_internalAllocatedCapacity, capacity, false);
-        m_velocityBuffer.data =
-            reallocateBuffer(m_velocityBuffer, m_internalAllocatedCapacity, capacity, false);
-        m_accumulationBuffer =
-            BufferUtils.reallocateBuffer(m_accumulationBuffer, 0, m_internalAllocatedCapacity,
-                capacity, false);
-        m_accumulation2Buffer =
-            BufferUtils.reallocateBuffer(Vec2.class, m_accumulation2Buffer, 0,
-                m_internalAllocatedCapacity, capacity, true);
-        m_depthBuffer =
-            BufferUtils.reallocateBuffer(m_depthBuffer, 0, m_internalAllocatedCapacity, capacity,
-                true);
-        m_colorBuffer.data =
-            reallocateBuffer(m_colorBuffer, m_internalAllocatedCapacity, capacity, true);
-        m_groupBuffer =
-            BufferUtils.reallocateBuffer(ParticleGroup.class, m_groupBuffer, 0,
-                m_internalAllocatedCapacity, capacity, false);
-        m_userDataBuffer.data =
-            reallocateBuffer(m_userDataBuffer, m_internalAllocatedCapacity, capacity, true);
-        m_internalAllocatedCapacity = capacity;
+        reallocateParticleBuffers(capacity);
+        m_reallocationCount++;
       }
     }
     if (m_count >= m_internalAllocatedCapacity) {
@@ -254,34 +366,572 @@ public class ParticleSystem {
     }
     int index = m_count++; // 获取新粒子的索引并增加计数
     m_flagsBuffer.data[index] = def.flags; // 设置粒子标志
-    m_positionBuffer.data[index].set(def.position); // 设置粒子位置
+    m_allParticleFlags |= def.flags; // 下一次 solve 之前的接触生成也要知道新粒子的类型
+    m_positionBuffer.x[index] = def.position.x; // 设置粒子位置
+    m_positionBuffer.y[index] = def.position.y;
     //    assertNotSamePosition(); // 调试断言，确保位置不重复
-    m_velocityBuffer.data[index].set(def.velocity); // 设置粒子速度
+    m_velocityBuffer.x[index] = def.velocity.x; // 设置粒子速度
+    m_velocityBuffer.y[index] = def.velocity.y;
     m_groupBuffer[index] = null; // 初始化粒子所属组为null
     if (m_depthBuffer != null) {
       m_depthBuffer[index] = 0; // 初始化深度
     }
+    if (m_expirationTimeBuffer != null || def.lifetime > 0) {
+      setParticleLifetime(index, def.lifetime); // 设置粒子寿命
+    }
+    if (m_sleepTimerBuffer != null) {
+      m_sleepTimerBuffer[index] = 0; // 初始化低速时间
+    }
     if (m_colorBuffer.data != null || def.color != null) {
-      m_colorBuffer.data = requestParticleBuffer(m_colorBuffer.dataClass, m_colorBuffer.data);
-      m_colorBuffer.data[index].set(def.color); // 设置粒子颜色
+      m_colorBuffer.data = requestParticleBuffer(m_colorBuffer.data);
+      m_colorBuffer.data[index] = def.color != null ? def.color.toArgb() : 0; // 设置粒子颜色
     }
     if (m_userDataBuffer.data != null || def.userData != null) {
       m_userDataBuffer.data =
           requestParticleBuffer(m_userDataBuffer.dataClass, m_userDataBuffer.data);
       m_userDataBuffer.data[index] = def.userData; // 设置粒子用户数据
     }
-    // 重新分配代理缓冲区（如果需要）
-    if (m_proxyCount >= m_proxyCapacity) {
-      int oldCapacity = m_proxyCapacity;
-      int newCapacity = m_proxyCount != 0 ? 2 * m_proxyCount : Settings.minParticleBufferCapacity;
-      m_proxyBuffer =
-          BufferUtils.reallocateBuffer(Proxy.class, m_proxyBuffer, oldCapacity, newCapacity);
-      m_proxyCapacity = newCapacity;
+    // 重新分配代理缓冲区（如果需要）；代理缓冲区始终能容纳所有粒子，重排时借用它的临时缓冲区
+    if (m_count > m_proxyCapacity) {
+      reallocateProxyBuffers(m_count > 1 ? 2 * (m_count - 1)
+          : Settings.minParticleBufferCapacity);
+      m_reallocationCount++;
+    }
+    if ((def.flags & ParticleType.b2_ballisticParticle) != 0) {
+      addBallisticParticle(index); // 弹道粒子不创建代理
+    } else {
+      m_proxyIndices[m_proxyCount++] = index; // 创建一个新代理并关联到粒子
     }
-    m_proxyBuffer[m_proxyCount++].index = index; // 创建一个新代理并关联到粒子
     return index; // 返回新粒子的索引
   }
 
+  /**
+   * 在原有缓冲区位置上重新放置一个粒子组，用于循环发射粒子组的场景。
+   * 组内粒子按创建时记录的局部格点放到新的变换处，并按新的线速度和角速度设置速度；
+   * 粒子保留原有的缓冲区位置，不会触发僵尸清理、形状光栅化或缓冲区重新分配，开销只与组大小成正比。
+   * 接触会在下一次 solve 中重新生成，组内休眠的粒子以及原来支撑在组上的休眠粒子被唤醒。
+   * 组内已被销毁但尚未清理的粒子随组复活；代理标签在下一次查询或 solve 时按新位置重新计算并排序，
+   * 因此重生后立即查询（queryAABB、queryRadius、queryKNearest 等）也能找到这些粒子。
+   * 创建时设置了寿命（{@link ParticleGroupDef#lifetime}）的组，粒子的寿命从重生时重新开始计算。
+   * 如果组内有粒子被单独销毁，则使用前 getParticleCount() 个格点；
+   * 没有格点记录的组（例如合并得到的组）保持粒子相对质心的当前布局。
+   * @param group 要重生的粒子组，必须仍有粒子
+   * @param position 新的组位置
+   * @param angle 新的组角度
+   * @param linearVelocity 新的线速度
+   * @param angularVelocity 新的角速度
+   */
+  public void respawnParticleGroup(ParticleGroup group, Vec2 position, float angle,
+      Vec2 linearVelocity, float angularVelocity) {
+    final int firstIndex = group.m_firstIndex;
+    final int lastIndex = group.m_lastIndex;
+    final float[] localX = group.m_localPositionX;
+    final float[] localY = group.m_localPositionY;
+    final boolean hasLattice = localX != null && localX.length >= lastIndex - firstIndex;
+    float centerX = 0, centerY = 0;
+    if (!hasLattice) {
+      Vec2 center = group.getCenter();
+      centerX = center.x;
+      centerY = center.y;
+    }
+    final Transform transform = tempTransform;
+    transform.set(position, angle);
+    final float c = transform.q.c;
+    final float s = transform.q.s;
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
+    final int[] flags = m_flagsBuffer.data;
+    // 组有寿命时，重生后的粒子从当前模拟时间重新计算寿命
+    final long expiration =
+        group.m_lifetime > 0 && m_expirationTimeBuffer != null ? expirationTime(group.m_lifetime)
+            : 0;
+    // 组被移走后，原来靠它支撑的休眠粒子需要唤醒
+    wakeNeighborsOfRemovedParticles(firstIndex, lastIndex, 0);
+    for (int i = firstIndex; i < lastIndex; i++) {
+      float lx, ly;
+      if (hasLattice) {
+        lx = localX[i - firstIndex];
+        ly = localY[i - firstIndex];
+      } else {
+        lx = posX[i] - centerX;
+        ly = posY[i] - centerY;
+      }
+      // 相对于组位置的偏移（已旋转）
+      final float rx = c * lx - s * ly;
+      final float ry = s * lx + c * ly;
+      posX[i] = position.x + rx;
+      posY[i] = position.y + ry;
+      velX[i] = linearVelocity.x - angularVelocity * ry;
+      velY[i] = linearVelocity.y + angularVelocity * rx;
+      // 组内已被销毁或已到期、尚未清理的粒子随组一起复活
+      flags[i] &= ~(ParticleType.b2_sleepingParticle | ParticleType.b2_zombieParticle
+          | ParticleType.b2_destructionListener);
+      if (m_sleepTimerBuffer != null) {
+        m_sleepTimerBuffer[i] = 0;
+      }
+      if (expiration != 0) {
+        m_expirationTimeBuffer[i] = expiration;
+      }
+    }
+    group.m_transform.set(transform);
+    group.m_timestamp = -1; // 组的统计信息失效
+    m_proxyTagsStale = true; // 下次查询或碰撞检测前重新计算代理标签
+  }
+
+  /**
+   * 按空间位置重排粒子缓冲区，使空间上相邻的粒子在内存中也相邻，提高接触生成和压力、阻尼等求解的缓存命中率。
+   * 按代理标签顺序（上一次 solve 排好的顺序）遍历粒子：未分组的粒子依次排列，
+   * 粒子组在第一次遇到其粒子时整体占据一段连续区间，组内粒子同样按标签排列，因此粒子组仍然是连续的。
+   * 所有逐粒子缓冲区、代理、接触、粒子对、三元组、粒子组范围和重生格点都被重映射，
+   * 之前获取的粒子索引会失效，粒子组的索引范围也可能改变。
+   * 开销与粒子数成正比，适合每隔几十到几百步执行一次，见 {@link #setReorderInterval(int)}。
+   */
+  public void reorderParticles() {
+    m_stepsSinceReorder = 0;
+    final int count = m_count;
+    if (count == 0) {
+      return;
+    }
+    if (m_remapBuffer == null || m_remapBuffer.length < count) {
+      m_remapBuffer = new int[m_internalAllocatedCapacity];
+      m_reallocationCount++;
+    }
+    final int[] newIndices = m_remapBuffer;
+    final ParticleGroup[] groupBuffer = m_groupBuffer;
+    // 每个粒子组的写入游标，以组的原起始索引为下标，-1 表示还没有分配区间
+    final int[] cursors = m_proxySortIndices;
+    for (ParticleGroup group = m_groupList; group != null; group = group.getNext()) {
+      if (group.m_firstIndex < group.m_lastIndex) {
+        cursors[group.m_firstIndex] = -1;
+      }
+    }
+    final int[] proxyIndices = m_proxyIndices;
+    int next = 0;
+    boolean identity = true;
+    final int[] ballisticIndices = m_ballisticIndices;
+    // 弹道粒子不在代理中，排在代理之后
+    for (int p = 0; p < m_proxyCount + m_ballisticCount; p++) {
+      final int i = p < m_proxyCount ? proxyIndices[p] : ballisticIndices[p - m_proxyCount];
+      final ParticleGroup group = groupBuffer[i];
+      int index;
+      if (group == null) {
+        index = next++;
+      } else {
+        final int first = group.m_firstIndex;
+        if (cursors[first] == -1) {
+          cursors[first] = next;
+          next += group.m_lastIndex - first;
+        }
+        index = cursors[first]++;
+      }
+      newIndices[i] = index;
+      identity &= index == i;
+    }
+    assert (next == count);
+    if (identity) {
+      return;
+    }
+
+    // 更新粒子组范围，组内顺序改变时按新顺序重排重生格点：与模板共享的格点只读，第一次复制为组自己的数组，
+    // 之后借用累积缓冲区原地重排；必须在重排整数缓冲区之前完成，因为游标和整数缓冲区共用临时缓冲区
+    for (ParticleGroup group = m_groupList; group != null; group = group.getNext()) {
+      final int firstIndex = group.m_firstIndex;
+      final int lastIndex = group.m_lastIndex;
+      if (firstIndex >= lastIndex) {
+        continue;
+      }
+      final int newFirstIndex = cursors[firstIndex] - (lastIndex - firstIndex);
+      final float[] localX = group.m_localPositionX;
+      final float[] localY = group.m_localPositionY;
+      if (localX != null && localX.length >= lastIndex - firstIndex) {
+        boolean ordered = true;
+        for (int i = firstIndex; i < lastIndex && ordered; i++) {
+          ordered = newIndices[i] - newFirstIndex == i - firstIndex;
+        }
+        if (!ordered) {
+          permuteLattice(group, newIndices, firstIndex, lastIndex, newFirstIndex);
+        }
+      }
+      group.m_firstIndex = newFirstIndex;
+      group.m_lastIndex = newFirstIndex + (lastIndex - firstIndex);
+    }
+
+    // 重排所有逐粒子缓冲区
+    permuteBuffer(m_flagsBuffer.data, newIndices, count);
+    permuteBuffer(m_positionBuffer.x, newIndices, count);
+    permuteBuffer(m_positionBuffer.y, newIndices, count);
+    permuteBuffer(m_velocityBuffer.x, newIndices, count);
+    permuteBuffer(m_velocityBuffer.y, newIndices, count);
+    permuteBuffer(m_groupBuffer, newIndices, count);
+    if (m_depthBuffer != null) {
+      permuteBuffer(m_depthBuffer, newIndices, count);
+    }
+    if (m_expirationTimeBuffer != null) {
+      permuteBuffer(m_expirationTimeBuffer, newIndices, count);
+    }
+    if (m_sleepTimerBuffer != null) {
+      permuteBuffer(m_sleepTimerBuffer, newIndices, count);
+    }
+    if (m_colorBuffer.data != null) {
+      permuteBuffer(m_colorBuffer.data, newIndices, count);
+    }
+    if (m_userDataBuffer.data != null) {
+      permuteBuffer(m_userDataBuffer.data, newIndices, count);
+    }
+
+    // 重映射代理（标签顺序不变）、弹道粒子、接触、刚体接触、粒子对和三元组
+    for (int p = 0; p < m_proxyCount; p++) {
+      proxyIndices[p] = newIndices[proxyIndices[p]];
+    }
+    for (int k = 0; k < m_ballisticCount; k++) {
+      ballisticIndices[k] = newIndices[ballisticIndices[k]];
+    }
+    for (int k = 0; k < m_contactCount; k++) {
+      final ParticleContact contact = m_contactBuffer[k];
+      contact.indexA = newIndices[contact.indexA];
+      contact.indexB = newIndices[contact.indexB];
+    }
+    for (int k = 0; k < m_bodyContactCount; k++) {
+      final ParticleBodyContact contact = m_bodyContactBuffer[k];
+      contact.index = newIndices[contact.index];
+    }
+    for (int k = 0; k < m_pairCount; k++) {
+      final Pair pair = m_pairBuffer[k];
+      pair.indexA = newIndices[pair.indexA];
+      pair.indexB = newIndices[pair.indexB];
+    }
+    for (int k = 0; k < m_triadCount; k++) {
+      final Triad triad = m_triadBuffer[k];
+      triad.indexA = newIndices[triad.indexA];
+      triad.indexB = newIndices[triad.indexB];
+      triad.indexC = newIndices[triad.indexC];
+    }
+  }
+
+  /**
+   * 设置自动重排粒子缓冲区的间隔，重排在 solve 开始、清理僵尸粒子之后进行，见 {@link #reorderParticles()}。
+   * 频繁创建和销毁粒子组后，空间上相邻的粒子在内存中会越来越分散，定期重排可以恢复访问的局部性。
+   * @param interval 间隔步数，0 表示不自动重排（默认）
+   */
+  public void setReorderInterval(int interval) {
+    m_reorderInterval = interval;
+    m_stepsSinceReorder = 0;
+  }
+
+  public int getReorderInterval() {
+    return m_reorderInterval;
+  }
+
+  /**
+   * 预留粒子缓冲区和代理缓冲区的容量，之后创建不超过该数量的粒子不会再扩容。
+   * 容量受最大粒子数和用户提供的缓冲区容量限制。
+   * 步进中按粒子容量使用的临时缓冲区也一并预留：清理和重排用的索引映射总是预留；
+   * 重排用的对象缓冲区、多线程着色用的粒子掩码和弹道粒子列表只在对应功能已启用
+   * （设置了重排间隔、线程数大于 1、已有弹道粒子）时预留，因此应在启用这些功能之后调用。
+   * 快照数组在启用快照时按当时的容量分配，应先预留再启用快照。
+   * @param capacity 粒子数量
+   */
+  public void reserveParticleCapacity(int capacity) {
+    capacity = limitParticleCapacity(capacity);
+    if (capacity > m_internalAllocatedCapacity) {
+      reallocateParticleBuffers(capacity);
+    }
+    if (capacity > m_proxyCapacity) {
+      reallocateProxyBuffers(capacity);
+    }
+    capacity = m_internalAllocatedCapacity;
+    if (m_remapBuffer == null || m_remapBuffer.length < capacity) {
+      m_remapBuffer = new int[capacity];
+    }
+    if ((m_reorderInterval > 0 || m_reorderScratch != null)
+        && (m_reorderScratch == null || m_reorderScratch.length < capacity)) {
+      m_reorderScratch = new Object[capacity];
+    }
+    if ((m_threadPool != null || m_particleColorMasks != null)
+        && (m_particleColorMasks == null || m_particleColorMasks.length < capacity)) {
+      m_particleColorMasks = new long[capacity];
+    }
+    if (m_ballisticIndices.length > 0 && m_ballisticIndices.length < capacity) {
+      m_ballisticIndices = Arrays.copyOf(m_ballisticIndices, capacity);
+    }
+  }
+
+  /**
+   * 预留粒子间接触缓冲区的容量。多线程模式下每个接触生成分段也各自预留，
+   * 分段之间的接触数并不均匀，每个分段按平均值的两倍预留；接触着色用的缓冲区同样预留。
+   * 因此应在设置线程数之后调用。
+   * @param capacity 接触数量
+   */
+  public void reserveContactCapacity(int capacity) {
+    if (capacity > m_contactCapacity) {
+      m_contactBuffer =
+          BufferUtils.reallocateBuffer(ParticleContact.class, m_contactBuffer, m_contactCapacity,
+              capacity);
+      m_contactCapacity = capacity;
+    }
+    if ((m_threadPool != null || m_contactColors != null)
+        && (m_contactColors == null || m_contactColors.length < m_contactCapacity)) {
+      m_contactColors = new int[m_contactCapacity];
+      m_contactColorOrder = new int[m_contactCapacity];
+    }
+    if (m_contactBands != null) {
+      final int bandCapacity = 2 * capacity / m_contactBands.length;
+      for (ContactBand band : m_contactBands) {
+        if (bandCapacity > band.capacity) {
+          band.contacts =
+              BufferUtils.reallocateBuffer(ParticleContact.class, band.contacts, band.capacity,
+                  bandCapacity);
+          band.capacity = bandCapacity;
+        }
+      }
+    }
+  }
+
+  /**
+   * 预留粒子-刚体接触缓冲区的容量。
+   * @param capacity 接触数量
+   */
+  public void reserveBodyContactCapacity(int capacity) {
+    if (capacity > m_bodyContactCapacity) {
+      m_bodyContactBuffer =
+          BufferUtils.reallocateBuffer(ParticleBodyContact.class, m_bodyContactBuffer,
+              m_bodyContactCapacity, capacity);
+      m_bodyContactCapacity = capacity;
+    }
+  }
+
+  /**
+   * 把粒子、代理、接触、刚体接触、粒子对和三元组缓冲区收缩到当前使用量（不低于最小容量），
+   * 用于负载下降后释放内存。用户提供的粒子缓冲区保持不变；之后负载再次上升时缓冲区会重新扩容。
+   * 已分配的按粒子容量或接触容量使用的临时缓冲区同样按新容量重新分配；
+   * 创建粒子组和查询用的临时缓冲区直接释放。
+   */
+  public void shrinkToFit() {
+    m_voronoiDiagram = null;
+    m_depthAdjacencyOffsets = null;
+    m_depthAdjacencyNeighbors = null;
+    m_depthAdjacencyCosts = null;
+    m_depthHeap = null;
+    m_depthHeapIndex = null;
+    m_nearestHeapIndices = null;
+    m_nearestHeapDistances = null;
+    final int particleCapacity = MathUtils.max(m_count, Settings.minParticleBufferCapacity);
+    if (particleCapacity < m_internalAllocatedCapacity) {
+      if (m_flagsBuffer.userSuppliedCapacity == 0) {
+        m_flagsBuffer.data = Arrays.copyOf(m_flagsBuffer.data, particleCapacity);
+      }
+      if (m_positionBuffer.userSuppliedCapacity == 0) {
+        m_positionBuffer.x = Arrays.copyOf(m_positionBuffer.x, particleCapacity);
+        m_positionBuffer.y = Arrays.copyOf(m_positionBuffer.y, particleCapacity);
+      }
+      if (m_velocityBuffer.userSuppliedCapacity == 0) {
+        m_velocityBuffer.x = Arrays.copyOf(m_velocityBuffer.x, particleCapacity);
+        m_velocityBuffer.y = Arrays.copyOf(m_velocityBuffer.y, particleCapacity);
+      }
+      m_accumulationBuffer = Arrays.copyOf(m_accumulationBuffer, particleCapacity);
+      if (m_accumulation2Buffer != null) {
+        m_accumulation2Buffer = Arrays.copyOf(m_accumulation2Buffer, particleCapacity);
+      }
+      if (m_depthBuffer != null) {
+        m_depthBuffer = Arrays.copyOf(m_depthBuffer, particleCapacity);
+      }
+      if (m_expirationTimeBuffer != null) {
+        m_expirationTimeBuffer = Arrays.copyOf(m_expirationTimeBuffer, particleCapacity);
+      }
+      if (m_sleepTimerBuffer != null) {
+        m_sleepTimerBuffer = Arrays.copyOf(m_sleepTimerBuffer, particleCapacity);
+      }
+      if (m_colorBuffer.data != null) {
+        m_colorBuffer.data = Arrays.copyOf(m_colorBuffer.data, particleCapacity);
+      }
+      m_groupBuffer = Arrays.copyOf(m_groupBuffer, particleCapacity);
+      if (m_userDataBuffer.data != null && m_userDataBuffer.userSuppliedCapacity == 0) {
+        m_userDataBuffer.data = Arrays.copyOf(m_userDataBuffer.data, particleCapacity);
+      }
+      m_internalAllocatedCapacity = particleCapacity;
+      // 已分配的临时缓冲区按新容量重新分配，之后不会在步进中再次分配
+      if (m_remapBuffer != null) {
+        m_remapBuffer = new int[particleCapacity];
+      }
+      if (m_reorderScratch != null) {
+        m_reorderScratch = new Object[particleCapacity];
+      }
+      if (m_particleColorMasks != null) {
+        m_particleColorMasks = new long[particleCapacity];
+      }
+    }
+    // 弹道粒子列表要么为空，要么与粒子缓冲区容量相同
+    if (m_ballisticCount == 0) {
+      m_ballisticIndices = new int[0];
+    } else if (m_ballisticIndices.length > m_internalAllocatedCapacity) {
+      m_ballisticIndices = Arrays.copyOf(m_ballisticIndices, m_internalAllocatedCapacity);
+    }
+    if (particleCapacity < m_proxyCapacity) {
+      m_proxyTags = Arrays.copyOf(m_proxyTags, particleCapacity);
+      m_proxyIndices = Arrays.copyOf(m_proxyIndices, particleCapacity);
+      m_proxySortTags = new long[particleCapacity];
+      m_proxySortIndices = new int[particleCapacity];
+      m_proxyCapacity = particleCapacity;
+    }
+    final int contactCapacity = MathUtils.max(m_contactCount, Settings.minParticleBufferCapacity);
+    if (contactCapacity < m_contactCapacity) {
+      m_contactBuffer = Arrays.copyOf(m_contactBuffer, contactCapacity);
+      m_contactCapacity = contactCapacity;
+      if (m_contactColors != null) {
+        m_contactColors = new int[contactCapacity];
+        m_contactColorOrder = new int[contactCapacity];
+      }
+    }
+    if (m_contactBands != null) {
+      for (ContactBand band : m_contactBands) {
+        final int bandCapacity = MathUtils.max(band.count, Settings.minParticleBufferCapacity);
+        if (bandCapacity < band.capacity) {
+          band.contacts = Arrays.copyOf(band.contacts, bandCapacity);
+          band.capacity = bandCapacity;
+        }
+      }
+    }
+    final int bodyContactCapacity =
+        MathUtils.max(m_bodyContactCount, Settings.minParticleBufferCapacity);
+    if (bodyContactCapacity < m_bodyContactCapacity) {
+      m_bodyContactBuffer = Arrays.copyOf(m_bodyContactBuffer, bodyContactCapacity);
+      m_bodyContactCapacity = bodyContactCapacity;
+    }
+    final int pairCapacity = MathUtils.max(m_pairCount, Settings.minParticleBufferCapacity);
+    if (pairCapacity < m_pairCapacity) {
+      m_pairBuffer = Arrays.copyOf(m_pairBuffer, pairCapacity);
+      m_pairCapacity = pairCapacity;
+    }
+    final int triadCapacity = MathUtils.max(m_triadCount, Settings.minParticleBufferCapacity);
+    if (triadCapacity < m_triadCapacity) {
+      m_triadBuffer = Arrays.copyOf(m_triadBuffer, triadCapacity);
+      m_triadCapacity = triadCapacity;
+    }
+  }
+
+  /**
+   * 获取粒子缓冲区的容量。
+   * @return 不扩容时最多能容纳的粒子数
+   */
+  public int getParticleCapacity() {
+    return m_internalAllocatedCapacity;
+  }
+
+  /**
+   * 获取粒子间接触缓冲区的容量。
+   * @return 接触容量
+   */
+  public int getContactCapacity() {
+    return m_contactCapacity;
+  }
+
+  /**
+   * 获取粒子-刚体接触缓冲区的容量。
+   * @return 接触容量
+   */
+  public int getBodyContactCapacity() {
+    return m_bodyContactCapacity;
+  }
+
+  /**
+   * 获取创建粒子和步进过程中缓冲区自动分配或扩容的累计次数，不包括 reserve 系列方法的显式预留。
+   * 计入的有粒子、代理、接触、刚体接触、粒子对、三元组和弹道粒子列表，步进中使用的临时缓冲区
+   * （索引映射、重排缓冲区、接触着色缓冲区），以及快照数组。
+   * 用模板创建的粒子组在第一次被重排打乱组内顺序时复制一次重生格点，同样计入。
+   * 不计入查询和导出用的临时缓冲区（最近邻堆、导出缓冲区），它们只随调用方请求的规模增长；
+   * 也不计入创建粒子组时才用到的缓冲区（格点、深度计算）。
+   * 预留足够时，动画运行期间该计数应保持不变。
+   * @return 扩容次数
+   */
+  public int getReallocationCount() {
+    return m_reallocationCount;
+  }
+
+  /**
+   * 按粒子的新索引重排粒子组 [firstIndex, lastIndex) 对应的重生格点。
+   * 与模板共享的格点第一次重排时复制为组自己的数组（按新顺序直接写入），之后借用累积缓冲区原地重排，
+   * 不再分配。
+   */
+  private void permuteLattice(ParticleGroup group, int[] newIndices, int firstIndex,
+      int lastIndex, int newFirstIndex) {
+    final int count = lastIndex - firstIndex;
+    final float[] localX = group.m_localPositionX;
+    final float[] localY = group.m_localPositionY;
+    if (!group.m_ownsLocalPositions) {
+      final float[] newLocalX = Arrays.copyOf(localX, localX.length);
+      final float[] newLocalY = Arrays.copyOf(localY, localY.length);
+      for (int i = firstIndex; i < lastIndex; i++) {
+        newLocalX[newIndices[i] - newFirstIndex] = localX[i - firstIndex];
+        newLocalY[newIndices[i] - newFirstIndex] = localY[i - firstIndex];
+      }
+      group.m_localPositionX = newLocalX;
+      group.m_localPositionY = newLocalY;
+      group.m_ownsLocalPositions = true;
+      m_reallocationCount++;
+      return;
+    }
+    final float[] scratch = m_accumulationBuffer;
+    for (int i = firstIndex; i < lastIndex; i++) {
+      scratch[newIndices[i] - newFirstIndex] = localX[i - firstIndex];
+    }
+    System.arraycopy(scratch, 0, localX, 0, count);
+    for (int i = firstIndex; i < lastIndex; i++) {
+      scratch[newIndices[i] - newFirstIndex] = localY[i - firstIndex];
+    }
+    System.arraycopy(scratch, 0, localY, 0, count);
+  }
+
+  /**
+   * 按新索引重排缓冲区的前 count 个元素，借用累积缓冲区作为临时存储。
+   */
+  private void permuteBuffer(float[] buffer, int[] newIndices, int count) {
+    final float[] scratch = m_accumulationBuffer;
+    for (int i = 0; i < count; i++) {
+      scratch[newIndices[i]] = buffer[i];
+    }
+    System.arraycopy(scratch, 0, buffer, 0, count);
+  }
+
+  /**
+   * 按新索引重排缓冲区的前 count 个元素，借用代理排序的临时索引缓冲区作为临时存储。
+   */
+  private void permuteBuffer(int[] buffer, int[] newIndices, int count) {
+    final int[] scratch = m_proxySortIndices;
+    for (int i = 0; i < count; i++) {
+      scratch[newIndices[i]] = buffer[i];
+    }
+    System.arraycopy(scratch, 0, buffer, 0, count);
+  }
+
+  /**
+   * 按新索引重排缓冲区的前 count 个元素，借用代理排序的临时标签缓冲区作为临时存储。
+   */
+  private void permuteBuffer(long[] buffer, int[] newIndices, int count) {
+    final long[] scratch = m_proxySortTags;
+    for (int i = 0; i < count; i++) {
+      scratch[newIndices[i]] = buffer[i];
+    }
+    System.arraycopy(scratch, 0, buffer, 0, count);
+  }
+
+  /**
+   * 按新索引重排缓冲区的前 count 个元素（只交换引用），完成后清空临时缓冲区，避免持有对象。
+   */
+  private void permuteBuffer(Object[] buffer, int[] newIndices, int count) {
+    if (m_reorderScratch == null || m_reorderScratch.length < count) {
+      m_reorderScratch = new Object[m_internalAllocatedCapacity];
+      m_reallocationCount++;
+    }
+    final Object[] scratch = m_reorderScratch;
+    for (int i = 0; i < count; i++) {
+      scratch[newIndices[i]] = buffer[i];
+    }
+    System.arraycopy(scratch, 0, buffer, 0, count);
+    Arrays.fill(scratch, 0, count, null);
+  }
+
   /**
    * 销毁指定索引的粒子。
    * 实际上是给粒子打上僵尸（b2_zombieParticle）标志，并在后续的 solveZombie() 中进行清理。
@@ -310,6 +960,16 @@ public class ParticleSystem {
     dpcallback.init(this, shape, xf, callDestructionListener); // 初始化回调
     shape.computeAABB(temp, xf, 0); // 计算形状的AABB
     m_world.queryAABB(dpcallback, temp); // 查询AABB内的粒子并销毁
+    // 弹道粒子不在代理中，查询找不到它们，逐个检查是否在AABB内
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    for (int k = 0; k < m_ballisticCount; k++) {
+      final int i = m_ballisticIndices[k];
+      if (temp.lowerBound.x < posX[i] && posX[i] < temp.upperBound.x
+          && temp.lowerBound.y < posY[i] && posY[i] < temp.upperBound.y) {
+        dpcallback.reportParticle(i);
+      }
+    }
     return dpcallback.destroyed; // 返回被销毁的粒子数量
   }
 
@@ -330,86 +990,104 @@ public class ParticleSystem {
   private final Transform tempTransform2 = new Transform(); // 临时变换对象
   private CreateParticleGroupCallback createParticleGroupCallback =
       new CreateParticleGroupCallback(); // 创建粒子组回调
+  private final JoinParticleGroupsCallback joinParticleGroupsCallback =
+      new JoinParticleGroupsCallback(); // 合并粒子组回调
+  private VoronoiDiagram m_voronoiDiagram; // 创建三元组时复用的沃罗诺伊图工作区，按需增长
   private final ParticleDef tempParticleDef = new ParticleDef(); // 临时粒子定义
+  private float[] m_exportScratch = new float[0]; // 导出粒子数据的临时缓冲区
+  private int m_groupStatisticsFlags; // 每步结束时计算的粒子组统计量，见 ParticleGroupStatistics
+  private float[] m_killPlanes = new float[0]; // 清除半平面，每个占 3 个元素：法线 x、法线 y、偏移
+  private int m_killPlaneCount;
+  private float[] m_killBoxes = new float[0]; // 清除包围盒，每个占 4 个元素：下界 x、y，上界 x、y
+  private int m_killBoxCount;
+  private ParticleKillListener m_killListener; // 清除区域监听器
+  private ParticleGroupExpirationListener m_groupExpirationListener; // 粒子组寿命到期监听器
+  private ParticleForceField[] m_forceFields = new ParticleForceField[0]; // 力场
+  private int m_forceFieldCount;
+  private float m_sleepVelocity; // 粒子休眠的速度阈值，0 表示不启用休眠
+  private float m_sleepTime = 0.5f; // 粒子进入休眠前需要持续低速的时间（秒）
+  private volatile ParticleSnapshotBuffer m_snapshotBuffer; // 粒子状态快照的三重缓冲，未启用时为 null
+  private float[] m_latticeX = new float[0]; // 形状光栅化得到的局部格点的临时缓冲区
+  private float[] m_latticeY = new float[0];
 
   /**
-   * 根据粒子组定义创建一个新粒子组。
-   * 粒子会填充形状定义的区域。
-   * @param groupDef 粒子组定义
-   * @return 新创建的粒子组
+   * 以粒子间距对形状进行光栅化，得到形状局部坐标系下位于形状内部的格点，写入 m_latticeX/m_latticeY。
+   * @param shape 形状
+   * @param stride 粒子间距
+   * @return 格点数量
    */
-  public ParticleGroup createParticleGroup(ParticleGroupDef groupDef) {
-    float stride = getParticleStride(); // 获取粒子间距
+  private int rasterizeShape(Shape shape, float stride) {
     final Transform identity = tempTransform;
     identity.setIdentity(); // 恒等变换
-    Transform transform = tempTransform2;
-    transform.setIdentity(); // 恒等变换
-    int firstIndex = m_count; // 记录粒子组的起始索引
-    if (groupDef.shape != null) {
-      final ParticleDef particleDef = tempParticleDef;
-      particleDef.flags = groupDef.flags; // 设置粒子标志
-      particleDef.color = groupDef.color; // 设置粒子颜色
-      particleDef.userData = groupDef.userData; // 设置粒子用户数据
-      Shape shape = groupDef.shape;
-      transform.set(groupDef.position, groupDef.angle); // 设置形状的变换
-      AABB aabb = temp;
-      int childCount = shape.getChildCount();
-      // 计算形状的联合AABB
-      for (int childIndex = 0; childIndex < childCount; childIndex++) {
-        if (childIndex == 0) {
-          shape.computeAABB(aabb, identity, childIndex);
-        } else {
-          AABB childAABB = temp2;
-          shape.computeAABB(childAABB, identity, childIndex);
-          aabb.combine(childAABB);
-        }
-      }
-      final float upperBoundY = aabb.upperBound.y;
-      final float upperBoundX = aabb.upperBound.x;
-      // 在形状的AABB范围内以步长创建粒子
-      for (float y = MathUtils.floor(aabb.lowerBound.y / stride) * stride; y < upperBoundY; y +=
+    AABB aabb = temp;
+    int childCount = shape.getChildCount();
+    // 计算形状的联合AABB
+    for (int childIndex = 0; childIndex < childCount; childIndex++) {
+      if (childIndex == 0) {
+        shape.computeAABB(aabb, identity, childIndex);
+      } else {
+        AABB childAABB = temp2;
+        shape.computeAABB(childAABB, identity, childIndex);
+        aabb.combine(childAABB);
+      }
+    }
+    final float upperBoundY = aabb.upperBound.y;
+    final float upperBoundX = aabb.upperBound.x;
+    int count = 0;
+    // 在形状的AABB范围内以步长采样格点
+    for (float y = MathUtils.floor(aabb.lowerBound.y / stride) * stride; y < upperBoundY; y +=
+        stride) {
+      for (float x = MathUtils.floor(aabb.lowerBound.x / stride) * stride; x < upperBoundX; x +=
           stride) {
-        for (float x = MathUtils.floor(aabb.lowerBound.x / stride) * stride; x < upperBoundX; x +=
-            stride) {
-          Vec2 p = tempVec;
-          p.x = x;
-          p.y = y;
-          // 如果点在形状内，则创建粒子
-          if (shape.testPoint(identity, p)) {
-            Transform.mulToOut(transform, p, p); // 将点转换到世界坐标
-            particleDef.position.x = p.x;
-            particleDef.position.y = p.y;
-            p.subLocal(groupDef.position); // 相对于组中心点的偏移
-            Vec2.crossToOutUnsafe(groupDef.angularVelocity, p, particleDef.velocity); // 计算角速度引起的线速度
-            particleDef.velocity.addLocal(groupDef.linearVelocity); // 加上线速度
-            createParticle(particleDef); // 创建粒子
-          }
+        Vec2 p = tempVec;
+        p.x = x;
+        p.y = y;
+        // 如果点在形状内，则记录该格点
+        if (shape.testPoint(identity, p)) {
+          addLatticePoint(count++, x, y);
         }
       }
     }
-    int lastIndex = m_count; // 记录粒子组的结束索引
+    return count;
+  }
 
-    ParticleGroup group = new ParticleGroup(); // 创建新的粒子组对象
-    group.m_system = this;
-    group.m_firstIndex = firstIndex;
-    group.m_lastIndex = lastIndex;
-    group.m_groupFlags = groupDef.groupFlags;
-    group.m_strength = groupDef.strength;
-    group.m_userData = groupDef.userData;
-    group.m_transform.set(transform);
-    group.m_destroyAutomatically = groupDef.destroyAutomatically;
-    // 将新组添加到组链表
-    group.m_prev = null;
-    group.m_next = m_groupList;
-    if (m_groupList != null) {
-      m_groupList.m_prev = group;
-    }
-    m_groupList = group;
-    ++m_groupCount;
-    // 更新组内每个粒子的所属组
-    for (int i = firstIndex; i < lastIndex; i++) {
-      m_groupBuffer[i] = group;
+  /**
+   * 为形状创建粒子组模板。
+   * 模板按当前粒子间距预先光栅化形状，之后通过 {@link ParticleGroupDef#template} 创建粒子组时
+   * 只需变换这些格点，不再调用 shape.testPoint。粒子半径改变后需要重新创建模板。
+   * @param shape 形状
+   * @return 粒子组模板
+   */
+  public ParticleGroupTemplate createParticleGroupTemplate(Shape shape) {
+    float stride = getParticleStride();
+    int count = rasterizeShape(shape, stride);
+    return new ParticleGroupTemplate(Arrays.copyOf(m_latticeX, count),
+        Arrays.copyOf(m_latticeY, count), stride);
+  }
+
+  /**
+   * 记录第 k 个局部格点坐标（形状局部坐标系）。
+   */
+  private void addLatticePoint(int k, float x, float y) {
+    if (k >= m_latticeX.length) {
+      int newCapacity = MathUtils.max(2 * m_latticeX.length, Settings.minParticleBufferCapacity);
+      m_latticeX = Arrays.copyOf(m_latticeX, newCapacity);
+      m_latticeY = Arrays.copyOf(m_latticeY, newCapacity);
     }
+    m_latticeX[k] = x;
+    m_latticeY[k] = y;
+  }
+
+  /**
+   * 根据粒子组定义创建一个新粒子组。
+   * 粒子会填充形状定义的区域；如果指定了模板，则直接使用模板中预先光栅化的格点。
+   * @param groupDef 粒子组定义
+   * @return 新创建的粒子组
+   */
+  public ParticleGroup createParticleGroup(ParticleGroupDef groupDef) {
+    ParticleGroup group = addParticleGroup(groupDef);
+    int firstIndex = group.m_firstIndex;
+    int lastIndex = group.m_lastIndex;
 
     updateContacts(true); // 更新粒子接触
     // 如果需要创建粒子对
@@ -424,33 +1102,175 @@ public class ParticleSystem {
           b = temp;
         }
         if (firstIndex <= a && b < lastIndex) { // 如果接触的两个粒子都在新组内
-          // 重新分配粒子对缓冲区（如果需要）
-          if (m_pairCount >= m_pairCapacity) {
-            int oldCapacity = m_pairCapacity;
-            int newCapacity =
-                m_pairCount != 0 ? 2 * m_pairCount : Settings.minParticleBufferCapacity;
-            m_pairBuffer =
-                BufferUtils.reallocateBuffer(Pair.class, m_pairBuffer, oldCapacity, newCapacity);
-            m_pairCapacity = newCapacity;
-          }
-          Pair pair = m_pairBuffer[m_pairCount]; // 创建新粒子对
-          pair.indexA = a;
-          pair.indexB = b;
-          pair.flags = contact.flags;
-          pair.strength = groupDef.strength;
-          pair.distance = MathUtils.distance(m_positionBuffer.data[a], m_positionBuffer.data[b]); // 记录初始距离
-          m_pairCount++;
+          addPair(a, b, contact.flags, groupDef.strength);
         }
       }
     }
-    // 如果需要创建粒子三元组（弹性粒子）
+    finishParticleGroup(group, groupDef);
+    return group;
+  }
+
+  /**
+   * 批量创建粒子组。
+   * 与逐个调用 {@link #createParticleGroup} 的结果相同，但所有组的粒子创建完成后只重建一次接触，
+   * 并在一次遍历中为所有组生成粒子对，适合在初始化时一次性创建大量粒子组。
+   * @param groupDefs 粒子组定义
+   * @return 新创建的粒子组，与 groupDefs 一一对应
+   */
+  public ParticleGroup[] createParticleGroups(ParticleGroupDef[] groupDefs) {
+    int batchFirstIndex = m_count; // 本批粒子的起始索引
+    int pairFlags = 0;
+    ParticleGroup[] groups = new ParticleGroup[groupDefs.length];
+    for (int i = 0; i < groupDefs.length; i++) {
+      groups[i] = addParticleGroup(groupDefs[i]);
+      pairFlags |= groupDefs[i].flags;
+    }
+
+    updateContacts(true); // 只更新一次粒子接触
+    // 如果有组需要创建粒子对，一次遍历接触为所有组生成
+    if ((pairFlags & k_pairFlags) != 0) {
+      for (int k = 0; k < m_contactCount; k++) {
+        ParticleContact contact = m_contactBuffer[k];
+        int a = contact.indexA;
+        int b = contact.indexB;
+        if (a > b) { // 确保a < b
+          int temp = a;
+          a = b;
+          b = temp;
+        }
+        // 接触的两个粒子属于本批创建的同一个组，且该组需要粒子对
+        if (batchFirstIndex <= a && (contact.flags & k_pairFlags) != 0) {
+          ParticleGroup group = m_groupBuffer[a];
+          if (group != null && group == m_groupBuffer[b]) {
+            addPair(a, b, contact.flags, group.m_strength);
+          }
+        }
+      }
+    }
+    for (int i = 0; i < groupDefs.length; i++) {
+      finishParticleGroup(groups[i], groupDefs[i]);
+    }
+    return groups;
+  }
+
+  /**
+   * 添加一个粒子对，必要时扩容粒子对缓冲区。
+   */
+  private void addPair(int a, int b, int flags, float strength) {
+    // 重新分配粒子对缓冲区（如果需要）
+    if (m_pairCount >= m_pairCapacity) {
+      int oldCapacity = m_pairCapacity;
+      int newCapacity = m_pairCount != 0 ? 2 * m_pairCount : Settings.minParticleBufferCapacity;
+      m_pairBuffer =
+          BufferUtils.reallocateBuffer(Pair.class, m_pairBuffer, oldCapacity, newCapacity);
+      m_pairCapacity = newCapacity;
+      m_reallocationCount++;
+    }
+    Pair pair = m_pairBuffer[m_pairCount]; // 创建新粒子对
+    pair.indexA = a;
+    pair.indexB = b;
+    pair.flags = flags;
+    pair.strength = strength;
+    pair.distance = m_positionBuffer.distance(a, b); // 记录初始距离
+    m_pairCount++;
+  }
+
+  /**
+   * 按粒子组定义创建粒子并把新组加入组链表，不更新接触。
+   * 调用方需随后更新接触、生成粒子对并调用 {@link #finishParticleGroup}。
+   */
+  private ParticleGroup addParticleGroup(ParticleGroupDef groupDef) {
+    Transform transform = tempTransform2;
+    transform.setIdentity(); // 恒等变换
+    int firstIndex = m_count; // 记录粒子组的起始索引
+    final ParticleGroupTemplate template = groupDef.template;
+    float[] latticeX = null;
+    float[] latticeY = null;
+    if (template != null || groupDef.shape != null) {
+      int latticeCount;
+      if (template != null) {
+        assert (template.m_stride == getParticleStride()); // 模板必须按当前粒子间距创建
+        latticeX = template.m_x;
+        latticeY = template.m_y;
+        latticeCount = template.m_x.length;
+      } else {
+        latticeCount = rasterizeShape(groupDef.shape, getParticleStride()); // 光栅化形状
+        latticeX = m_latticeX;
+        latticeY = m_latticeY;
+      }
+      final ParticleDef particleDef = tempParticleDef;
+      particleDef.flags = groupDef.flags; // 设置粒子标志
+      particleDef.color = groupDef.color; // 设置粒子颜色
+      particleDef.userData = groupDef.userData; // 设置粒子用户数据
+      particleDef.lifetime = groupDef.lifetime; // 设置粒子寿命
+      transform.set(groupDef.position, groupDef.angle); // 设置形状的变换
+      // 为每个格点创建粒子
+      for (int k = 0; k < latticeCount; k++) {
+        Vec2 p = tempVec;
+        p.x = latticeX[k];
+        p.y = latticeY[k];
+        Transform.mulToOut(transform, p, p); // 将点转换到世界坐标
+        particleDef.position.x = p.x;
+        particleDef.position.y = p.y;
+        p.subLocal(groupDef.position); // 相对于组中心点的偏移
+        Vec2.crossToOutUnsafe(groupDef.angularVelocity, p, particleDef.velocity); // 计算角速度引起的线速度
+        particleDef.velocity.addLocal(groupDef.linearVelocity); // 加上线速度
+        if (createParticle(particleDef) == Settings.invalidParticleIndex) { // 创建粒子
+          break; // 容量已满
+        }
+      }
+    }
+    int lastIndex = m_count; // 记录粒子组的结束索引
+
+    ParticleGroup group = new ParticleGroup(); // 创建新的粒子组对象
+    group.m_system = this;
+    group.m_firstIndex = firstIndex;
+    group.m_lastIndex = lastIndex;
+    group.m_groupFlags = groupDef.groupFlags;
+    group.m_strength = groupDef.strength;
+    group.m_userData = groupDef.userData;
+    group.m_transform.set(transform);
+    group.m_destroyAutomatically = groupDef.destroyAutomatically;
+    group.m_lifetime = groupDef.lifetime;
+    // 记录局部格点，供原地重生使用；模板的格点只读，可直接共享
+    if (template != null) {
+      group.m_localPositionX = latticeX;
+      group.m_localPositionY = latticeY;
+      group.m_ownsLocalPositions = false;
+    } else if (latticeX != null) {
+      group.m_localPositionX = Arrays.copyOf(latticeX, lastIndex - firstIndex);
+      group.m_localPositionY = Arrays.copyOf(latticeY, lastIndex - firstIndex);
+      group.m_ownsLocalPositions = true;
+    }
+    // 将新组添加到组链表
+    group.m_prev = null;
+    group.m_next = m_groupList;
+    if (m_groupList != null) {
+      m_groupList.m_prev = group;
+    }
+    m_groupList = group;
+    ++m_groupCount;
+    // 更新组内每个粒子的所属组
+    for (int i = firstIndex; i < lastIndex; i++) {
+      m_groupBuffer[i] = group;
+    }
+    return group;
+  }
+
+  /**
+   * 接触和粒子对生成之后，为新粒子组创建三元组并计算深度。
+   */
+  private void finishParticleGroup(ParticleGroup group, ParticleGroupDef groupDef) {
+    int firstIndex = group.m_firstIndex;
+    int lastIndex = group.m_lastIndex;
+    // 如果需要创建粒子三元组（弹性粒子）
     if ((groupDef.flags & k_triadFlags) != 0) {
-      VoronoiDiagram diagram = new VoronoiDiagram(lastIndex - firstIndex);
+      VoronoiDiagram diagram = requestVoronoiDiagram(lastIndex - firstIndex);
       // 添加组内粒子作为沃罗诺伊图生成器
       for (int i = firstIndex; i < lastIndex; i++) {
-        diagram.addGenerator(m_positionBuffer.data[i], i);
+        diagram.addGenerator(m_positionBuffer.x[i], m_positionBuffer.y[i], i);
       }
-      diagram.generate(stride / 2); // 生成沃罗诺伊图
+      diagram.generate(getParticleStride() / 2); // 生成沃罗诺伊图
       createParticleGroupCallback.system = this;
       createParticleGroupCallback.def = groupDef;
       createParticleGroupCallback.firstIndex = firstIndex;
@@ -460,8 +1280,18 @@ public class ParticleSystem {
     if ((groupDef.groupFlags & ParticleGroupType.b2_solidParticleGroup) != 0) {
       computeDepthForGroup(group);
     }
+  }
 
-    return group;
+  /**
+   * 取得清空后的沃罗诺伊图工作区。工作区在多次创建、合并粒子组之间复用，
+   * 只在生成器数量超过已有容量时增长。
+   */
+  private VoronoiDiagram requestVoronoiDiagram(int generatorCapacity) {
+    if (m_voronoiDiagram == null) {
+      m_voronoiDiagram = new VoronoiDiagram(generatorCapacity);
+    }
+    m_voronoiDiagram.reset();
+    return m_voronoiDiagram;
   }
 
   /**
@@ -498,46 +1328,38 @@ public class ParticleSystem {
         // 如果接触的两个粒子分别来自 groupA 和 groupB
         if (groupA.m_firstIndex <= a && a < groupA.m_lastIndex && groupB.m_firstIndex <= b
             && b < groupB.m_lastIndex) {
-          // 重新分配粒子对缓冲区（如果需要）
-          if (m_pairCount >= m_pairCapacity) {
-            int oldCapacity = m_pairCapacity;
-            int newCapacity =
-                m_pairCount != 0 ? 2 * m_pairCount : Settings.minParticleBufferCapacity;
-            m_pairBuffer =
-                BufferUtils.reallocateBuffer(Pair.class, m_pairBuffer, oldCapacity, newCapacity);
-            m_pairCapacity = newCapacity;
-          }
-          Pair pair = m_pairBuffer[m_pairCount]; // 创建新粒子对
-          pair.indexA = a;
-          pair.indexB = b;
-          pair.flags = contact.flags;
-          pair.strength = MathUtils.min(groupA.m_strength, groupB.m_strength); // 强度取两者最小值
-          pair.distance = MathUtils.distance(m_positionBuffer.data[a], m_positionBuffer.data[b]);
-          m_pairCount++;
+          // 强度取两者最小值
+          addPair(a, b, contact.flags, MathUtils.min(groupA.m_strength, groupB.m_strength));
         }
       }
     }
     // 如果需要创建粒子三元组
     if ((particleFlags & k_triadFlags) != 0) {
-      VoronoiDiagram diagram = new VoronoiDiagram(groupB.m_lastIndex - groupA.m_firstIndex);
+      VoronoiDiagram diagram = requestVoronoiDiagram(groupB.m_lastIndex - groupA.m_firstIndex);
       // 添加合并后所有未标记为僵尸的粒子作为沃罗诺伊图生成器
       for (int i = groupA.m_firstIndex; i < groupB.m_lastIndex; i++) {
         if ((m_flagsBuffer.data[i] & ParticleType.b2_zombieParticle) == 0) {
-          diagram.addGenerator(m_positionBuffer.data[i], i);
+          diagram.addGenerator(m_positionBuffer.x[i], m_positionBuffer.y[i], i);
         }
       }
       diagram.generate(getParticleStride() / 2);
-      JoinParticleGroupsCallback callback = new JoinParticleGroupsCallback();
+      final JoinParticleGroupsCallback callback = joinParticleGroupsCallback;
       callback.system = this;
       callback.groupA = groupA;
       callback.groupB = groupB;
       diagram.getNodes(callback); // 获取节点并创建三元组
+      callback.groupA = null;
+      callback.groupB = null;
     }
 
     // 更新 groupB 中粒子的所属组为 groupA
     for (int i = groupB.m_firstIndex; i < groupB.m_lastIndex; i++) {
       m_groupBuffer[i] = groupA;
     }
+    // 两个组的格点位于不同的局部坐标系，合并后不再有效
+    groupA.m_localPositionX = null;
+    groupA.m_localPositionY = null;
+    groupA.m_ownsLocalPositions = false;
     // 更新 groupA 的标志位和范围
     int groupFlags = groupA.m_groupFlags | groupB.m_groupFlags;
     groupA.m_groupFlags = groupFlags;
@@ -590,66 +1412,155 @@ public class ParticleSystem {
    * @param group 粒子组
    */
   public void computeDepthForGroup(ParticleGroup group) {
-    // 1. 初始化累积缓冲区
-    for (int i = group.m_firstIndex; i < group.m_lastIndex; i++) {
-      m_accumulationBuffer[i] = 0;
+    final int first = group.m_firstIndex;
+    final int count = group.m_lastIndex - first;
+    m_depthBuffer = requestParticleBuffer(m_depthBuffer);
+    final float[] depth = m_depthBuffer;
+    if (count <= 0) {
+      return;
     }
-    // 2. 累积组内粒子间的接触权重
+    // 1. 扫描一遍接触：统计组内每个粒子的度数，并把接触权重先累积到深度缓冲区
+    int[] offsets = m_depthAdjacencyOffsets;
+    if (offsets == null || offsets.length < count + 1) {
+      offsets = m_depthAdjacencyOffsets = new int[count + 1];
+    }
+    Arrays.fill(offsets, 0, count + 1, 0);
+    for (int i = 0; i < count; i++) {
+      depth[first + i] = 0;
+    }
+    int edgeCount = 0;
     for (int k = 0; k < m_contactCount; k++) {
       final ParticleContact contact = m_contactBuffer[k];
-      int a = contact.indexA;
-      int b = contact.indexB;
-      if (a >= group.m_firstIndex && a < group.m_lastIndex && b >= group.m_firstIndex
-          && b < group.m_lastIndex) {
-        float w = contact.weight;
-        m_accumulationBuffer[a] += w;
-        m_accumulationBuffer[b] += w;
+      final int a = contact.indexA - first;
+      final int b = contact.indexB - first;
+      if (a >= 0 && a < count && b >= 0 && b < count) {
+        final float w = contact.weight;
+        depth[first + a] += w;
+        depth[first + b] += w;
+        offsets[a + 1]++;
+        offsets[b + 1]++;
+        edgeCount += 2;
       }
     }
-    // 3. 初始化深度缓冲区
-    m_depthBuffer = requestParticleBuffer(m_depthBuffer);
-    for (int i = group.m_firstIndex; i < group.m_lastIndex; i++) {
-      float w = m_accumulationBuffer[i];
-      m_depthBuffer[i] = w < 0.8f ? 0 : Float.MAX_VALUE; // 接触权重不足0.8则深度为0，否则为无限大
+    // 2. 前缀和得到邻接表 (CSR) 的起始偏移，再填入邻居和边长 (1 - 权重)
+    for (int i = 0; i < count; i++) {
+      offsets[i + 1] += offsets[i];
     }
-    // 4. 迭代计算深度（类似于广度优先搜索）
-    int interationCount = group.getParticleCount();
-    for (int t = 0; t < interationCount; t++) {
-      boolean updated = false;
-      for (int k = 0; k < m_contactCount; k++) {
-        final ParticleContact contact = m_contactBuffer[k];
-        int a = contact.indexA;
-        int b = contact.indexB;
-        if (a >= group.m_firstIndex && a < group.m_lastIndex && b >= group.m_firstIndex
-            && b < group.m_lastIndex) {
-          float r = 1 - contact.weight; // 1 - 权重 (距离因子)
-          float ap0 = m_depthBuffer[a];
-          float bp0 = m_depthBuffer[b];
-          float ap1 = bp0 + r; // 从邻居b到a的深度
-          float bp1 = ap0 + r; // 从邻居a到b的深度
-          if (ap0 > ap1) { // 如果新深度更小，则更新
-            m_depthBuffer[a] = ap1;
-            updated = true;
-          }
-          if (bp0 > bp1) { // 如果新深度更小，则更新
-            m_depthBuffer[b] = bp1;
-            updated = true;
-          }
-        }
+    int[] neighbors = m_depthAdjacencyNeighbors;
+    float[] costs = m_depthAdjacencyCosts;
+    if (neighbors == null || neighbors.length < edgeCount) {
+      neighbors = m_depthAdjacencyNeighbors = new int[edgeCount];
+      costs = m_depthAdjacencyCosts = new float[edgeCount];
+    }
+    int[] heap = m_depthHeap;
+    int[] heapIndex = m_depthHeapIndex;
+    if (heap == null || heap.length < count) {
+      heap = m_depthHeap = new int[count];
+      heapIndex = m_depthHeapIndex = new int[count];
+    }
+    // 借用 heapIndex 作为每个粒子的填充游标
+    System.arraycopy(offsets, 0, heapIndex, 0, count);
+    for (int k = 0; k < m_contactCount; k++) {
+      final ParticleContact contact = m_contactBuffer[k];
+      final int a = contact.indexA - first;
+      final int b = contact.indexB - first;
+      if (a >= 0 && a < count && b >= 0 && b < count) {
+        final float r = 1 - contact.weight; // 1 - 权重 (距离因子)
+        int ea = heapIndex[a]++;
+        neighbors[ea] = b;
+        costs[ea] = r;
+        int eb = heapIndex[b]++;
+        neighbors[eb] = a;
+        costs[eb] = r;
       }
-      if (!updated) { // 如果一轮迭代没有更新，说明达到稳定状态
-        break;
+    }
+    // 3. 初始化深度：接触权重不足0.8的粒子在表面 (深度0)，作为多源最短路的源点入堆
+    int heapSize = 0;
+    for (int i = 0; i < count; i++) {
+      if (depth[first + i] < 0.8f) {
+        depth[first + i] = 0;
+        heapIndex[i] = heapSize;
+        heap[heapSize++] = i;
+      } else {
+        depth[first + i] = Float.MAX_VALUE;
+        heapIndex[i] = -1;
+      }
+    }
+    // 4. Dijkstra：每次取出深度最小的粒子并松弛它的邻居，每条边只处理一次，
+    // 总代价 O(C + E log n)，不再随组内粒子数反复扫描全部接触
+    while (heapSize > 0) {
+      final int u = heap[0];
+      heapIndex[u] = -2; // 已确定
+      final int last = heap[--heapSize];
+      if (heapSize > 0) {
+        siftDownDepthHeap(heap, heapIndex, heapSize, last, 0, first);
+      }
+      final float du = depth[first + u];
+      for (int e = offsets[u], end = offsets[u + 1]; e < end; e++) {
+        final int v = neighbors[e];
+        final int hv = heapIndex[v];
+        if (hv == -2) {
+          continue;
+        }
+        final float dv = du + costs[e];
+        if (dv < depth[first + v]) {
+          depth[first + v] = dv;
+          siftUpDepthHeap(heap, heapIndex, v, hv >= 0 ? hv : heapSize++, first);
+        }
       }
     }
     // 5. 缩放深度
-    for (int i = group.m_firstIndex; i < group.m_lastIndex; i++) {
-      float p = m_depthBuffer[i];
+    for (int i = first; i < group.m_lastIndex; i++) {
+      float p = depth[i];
       if (p < Float.MAX_VALUE) {
-        m_depthBuffer[i] *= m_particleDiameter; // 深度乘以粒子直径
+        depth[i] = p * m_particleDiameter; // 深度乘以粒子直径
       } else {
-        m_depthBuffer[i] = 0; // 无限深度设为0
+        depth[i] = 0; // 无法到达表面的粒子深度设为0
+      }
+    }
+  }
+
+  /** 将局部粒子 node 放到深度最小堆的 slot 位置并上浮。 */
+  private void siftUpDepthHeap(int[] heap, int[] heapIndex, int node, int slot, int first) {
+    final float[] depth = m_depthBuffer;
+    final float d = depth[first + node];
+    while (slot > 0) {
+      final int parent = (slot - 1) >> 1;
+      final int p = heap[parent];
+      if (depth[first + p] <= d) {
+        break;
+      }
+      heap[slot] = p;
+      heapIndex[p] = slot;
+      slot = parent;
+    }
+    heap[slot] = node;
+    heapIndex[node] = slot;
+  }
+
+  /** 将局部粒子 node 放到深度最小堆的 slot 位置并下沉。 */
+  private void siftDownDepthHeap(int[] heap, int[] heapIndex, int size, int node, int slot,
+      int first) {
+    final float[] depth = m_depthBuffer;
+    final float d = depth[first + node];
+    while (true) {
+      int child = 2 * slot + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && depth[first + heap[child + 1]] < depth[first + heap[child]]) {
+        child++;
+      }
+      final int c = heap[child];
+      if (depth[first + c] >= d) {
+        break;
       }
+      heap[slot] = c;
+      heapIndex[c] = slot;
+      slot = child;
     }
+    heap[slot] = node;
+    heapIndex[node] = slot;
   }
 
   /**
@@ -659,34 +1570,97 @@ public class ParticleSystem {
    * @param b 粒子B的索引
    */
   public void addContact(int a, int b) {
+    final ContactBand band = m_serialBand;
+    band.contacts = m_contactBuffer;
+    band.count = m_contactCount;
+    band.capacity = m_contactCapacity;
+    addContact(a, b, band);
+    m_contactBuffer = band.contacts;
+    m_contactCount = band.count;
+    m_contactCapacity = band.capacity;
+    m_reallocationCount += band.takeReallocationCount();
+  }
+
+  /**
+   * 添加两个粒子之间的接触到指定分段的接触缓冲区。
+   * 只读取粒子位置与标志，可在多个线程中对不同的分段同时调用。
+   * @param a 粒子A的索引
+   * @param b 粒子B的索引
+   * @param band 接收接触的分段
+   */
+  private void addContact(int a, int b, ContactBand band) {
     assert(a != b); // 粒子不能是同一个
-    Vec2 pa = m_positionBuffer.data[a];
-    Vec2 pb = m_positionBuffer.data[b];
-    float dx = pb.x - pa.x;
-    float dy = pb.y - pa.y;
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    float dx = posX[b] - posX[a];
+    float dy = posY[b] - posY[a];
     float d2 = dx * dx + dy * dy; // 距离的平方
     //    assert(d2 != 0); // 调试断言，确保距离不为0
     if (d2 < m_squaredDiameter) { // 如果距离在直径范围内（碰撞）
       // 重新分配粒子接触缓冲区（如果需要）
-      if (m_contactCount >= m_contactCapacity) {
-        int oldCapacity = m_contactCapacity;
-        int newCapacity =
-            m_contactCount != 0 ? 2 * m_contactCount : Settings.minParticleBufferCapacity;
-        m_contactBuffer =
-            BufferUtils.reallocateBuffer(ParticleContact.class, m_contactBuffer, oldCapacity,
+      if (band.count >= band.capacity) {
+        int oldCapacity = band.capacity;
+        int newCapacity = band.count != 0 ? 2 * band.count : Settings.minParticleBufferCapacity;
+        band.contacts =
+            BufferUtils.reallocateBuffer(ParticleContact.class, band.contacts, oldCapacity,
                 newCapacity);
-        m_contactCapacity = newCapacity;
+        band.capacity = newCapacity;
+        band.reallocationCount++; // 分段只在自己的线程中计数，由系统在合并时汇总
       }
       float invD = d2 != 0 ? MathUtils.sqrt(1 / d2) : Float.MAX_VALUE; // 距离的倒数
-      ParticleContact contact = m_contactBuffer[m_contactCount]; // 创建新接触
+      ParticleContact contact = band.contacts[band.count]; // 创建新接触
       contact.indexA = a;
       contact.indexB = b;
       contact.flags = m_flagsBuffer.data[a] | m_flagsBuffer.data[b]; // 接触标志是两个粒子标志的或运算
       contact.weight = 1 - d2 * invD * m_inverseDiameter; // 接触权重
       contact.normal.x = invD * dx;
       contact.normal.y = invD * dy; // 接触法线
-      m_contactCount++; // 增加接触计数
+      band.count++; // 增加接触计数
+    }
+  }
+
+  /**
+   * 把粒子加入弹道粒子列表。列表按需一次扩容到粒子缓冲区容量。
+   * @param index 粒子索引
+   */
+  private void addBallisticParticle(int index) {
+    if (m_ballisticCount >= m_ballisticIndices.length) {
+      m_ballisticIndices = Arrays.copyOf(m_ballisticIndices, m_internalAllocatedCapacity);
+      m_reallocationCount++;
+    }
+    m_ballisticIndices[m_ballisticCount++] = index;
+  }
+
+  /**
+   * 按当前的粒子标志在代理和弹道粒子列表之间移动粒子：设置了 b2_ballisticParticle 的粒子移出代理，
+   * 清除了该标志的粒子移回代理末尾（标签随后重新计算），两个列表中其余粒子的相对顺序不变。
+   */
+  private void partitionBallisticParticles() {
+    final int[] flags = m_flagsBuffer.data;
+    final int[] proxyIndices = m_proxyIndices;
+    final int oldBallisticCount = m_ballisticCount;
+    int proxyCount = 0;
+    for (int p = 0; p < m_proxyCount; p++) {
+      final int i = proxyIndices[p];
+      if ((flags[i] & ParticleType.b2_ballisticParticle) != 0) {
+        addBallisticParticle(i);
+      } else {
+        proxyIndices[proxyCount++] = i;
+      }
+    }
+    // 刚移入的粒子都带有标志，只需检查原有的弹道粒子
+    final int[] ballisticIndices = m_ballisticIndices;
+    int ballisticCount = 0;
+    for (int k = 0; k < m_ballisticCount; k++) {
+      final int i = ballisticIndices[k];
+      if (k >= oldBallisticCount || (flags[i] & ParticleType.b2_ballisticParticle) != 0) {
+        ballisticIndices[ballisticCount++] = i;
+      } else {
+        proxyIndices[proxyCount++] = i;
+      }
     }
+    m_proxyCount = proxyCount;
+    m_ballisticCount = ballisticCount;
   }
 
   /**
@@ -695,116 +1669,528 @@ public class ParticleSystem {
    * @param exceptZombie 是否排除僵尸粒子
    */
   public void updateContacts(boolean exceptZombie) {
-    // 1. 为每个粒子计算空间哈希标签并更新代理
+    // 0. 按当前标志在代理和弹道粒子列表之间移动粒子
+    if ((m_allParticleFlags & ParticleType.b2_ballisticParticle) != 0 || m_ballisticCount > 0) {
+      partitionBallisticParticles();
+    }
+    // 1. 为每个粒子计算空间哈希标签并按标签排序代理
+    updateProxyTags();
+    // 2. 遍历排序后的代理，查找相邻粒子并添加接触
+    final int bandCount =
+        m_threadPool != null ? Math.min(m_threadCount, m_proxyCount / MIN_PROXIES_PER_CONTACT_BAND)
+            : 1;
+    if (bandCount > 1) {
+      findContactsInBands(bandCount);
+    } else {
+      final ContactBand band = m_serialBand;
+      band.firstProxy = 0;
+      band.lastProxy = m_proxyCount;
+      band.contacts = m_contactBuffer;
+      band.count = 0; // 重置接触计数
+      band.capacity = m_contactCapacity;
+      if ((m_allParticleFlags & ParticleType.b2_sleepingParticle) != 0) {
+        Arrays.fill(m_accumulationBuffer, 0, m_count, 0);
+        markSleepingNeighbors(band);
+      }
+      findContacts(band);
+      m_contactBuffer = band.contacts;
+      m_contactCount = band.count;
+      m_contactCapacity = band.capacity;
+      m_reallocationCount += band.takeReallocationCount();
+    }
+    // 3. 如果排除僵尸粒子，则移除带有僵尸标志的接触
+    if (exceptZombie) {
+      int j = m_contactCount;
+      for (int i = 0; i < j; i++) {
+        if ((m_contactBuffer[i].flags & ParticleType.b2_zombieParticle) != 0) {
+          --j; // 减少有效接触计数
+          // 将僵尸接触与最后一个有效接触交换，然后重新检查当前位置
+          ParticleContact temp = m_contactBuffer[j];
+          m_contactBuffer[j] = m_contactBuffer[i];
+          m_contactBuffer[i] = temp;
+          --i;
+        }
+      }
+      m_contactCount = j; // 更新接触总数
+    }
+  }
+
+  /**
+   * 按粒子当前位置重新计算所有代理的空间哈希标签并排序。
+   * 同时统计所在网格单元发生变化的代理数量，交给 {@link #sortProxies(int)} 选择排序方式。
+   */
+  private void updateProxyTags() {
+    // 新加入或换了粒子的代理槽位上保留的是其他粒子的旧标签，几乎总会计为变化
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    final int[] proxyIndices = m_proxyIndices;
+    final long[] proxyTags = m_proxyTags;
+    int changedCells = 0;
     for (int p = 0; p < m_proxyCount; p++) {
-      Proxy proxy = m_proxyBuffer[p];
-      int i = proxy.index;
-      Vec2 pos = m_positionBuffer.data[i];
-      proxy.tag = computeTag(m_inverseDiameter * pos.x, m_inverseDiameter * pos.y);
-    }
-    // 2. 根据标签对代理进行排序
-    Arrays.sort(m_proxyBuffer, 0, m_proxyCount);
-    m_contactCount = 0; // 重置接触计数
-    int c_index = 0;
-    // 3. 遍历排序后的代理，查找相邻粒子并添加接触
-    for (int i = 0; i < m_proxyCount; i++) {
-      Proxy a = m_proxyBuffer[i];
-      long rightTag = computeRelativeTag(a.tag, 1, 0); // 右侧邻居的标签
-      for (int j = i + 1; j < m_proxyCount; j++) {
-        Proxy b = m_proxyBuffer[j];
-        if (rightTag < b.tag) { // 如果b的标签超过右侧范围，则后续粒子更远
+      int i = proxyIndices[p];
+      long tag = computeTag(m_inverseDiameter * posX[i], m_inverseDiameter * posY[i]);
+      if (tag >> xShift != proxyTags[p] >> xShift) {
+        changedCells++;
+      }
+      proxyTags[p] = tag;
+    }
+    sortProxies(changedCells);
+    m_proxyTagsStale = false;
+  }
+
+  /**
+   * 粒子组被重生后，代理标签仍是重生前的位置，按标签筛选的查询和刚体碰撞检测会漏掉这些粒子。
+   * 在使用代理之前调用，按需重新计算标签；同一帧重生多个粒子组时只重新计算一次。
+   */
+  private void refreshStaleProxyTags() {
+    if (m_proxyTagsStale) {
+      updateProxyTags();
+    }
+  }
+
+  /**
+   * 为分段内的代理查找相邻粒子，并把接触写入该分段的缓冲区。
+   * 代理已按标签排序，左下方邻居的起始位置随代理单调递增，因此分段开头用二分查找定位，
+   * 之后与单线程遍历完全相同，分段按顺序拼接即得到与单线程一致的接触顺序。
+   * 存在休眠粒子时，只有被 {@link #markSleepingNeighbors(ContactBand)} 标记的休眠粒子扫描邻居，
+   * 静止区域内部的粒子直接跳过；接触顺序与逐个扫描全部粒子时相同。
+   * @param band 代理分段
+   */
+  void findContacts(ContactBand band) {
+    final long[] tags = m_proxyTags;
+    final int[] indices = m_proxyIndices;
+    final int proxyCount = m_proxyCount;
+    final int lastProxy = band.lastProxy;
+    if (band.firstProxy >= lastProxy) {
+      return;
+    }
+    // 休眠粒子之间不产生接触，只与运动粒子产生接触（弹道粒子不在代理中）
+    final int[] flags = m_flagsBuffer.data;
+    final boolean checkFlags = (m_allParticleFlags & ParticleType.b2_sleepingParticle) != 0;
+    final float[] marks = m_accumulationBuffer;
+    int c_index =
+        lowerBound(tags, proxyCount, computeRelativeTag(tags[band.firstProxy], -1, 1));
+    for (int i = band.firstProxy; i < lastProxy; i++) {
+      final long aTag = tags[i];
+      final int a = indices[i];
+      final int aFlags = flags[a];
+      if (checkFlags && (aFlags & ParticleType.b2_sleepingParticle) != 0 && marks[a] == 0) {
+        continue; // 没有接触运动粒子的休眠粒子不会产生接触
+      }
+      long rightTag = computeRelativeTag(aTag, 1, 0); // 右侧邻居的标签
+      for (int j = i + 1; j < proxyCount; j++) {
+        if (rightTag < tags[j]) { // 如果b的标签超过右侧范围，则后续粒子更远
           break;
         }
-        addContact(a.index, b.index); // 添加接触
+        final int b = indices[j];
+        if (checkFlags && skipContact(aFlags, flags[b])) {
+          continue;
+        }
+        addContact(a, b, band); // 添加接触
       }
       // 检查左下方的邻居
-      long bottomLeftTag = computeRelativeTag(a.tag, -1, 1);
-      for (; c_index < m_proxyCount; c_index++) {
-        Proxy c = m_proxyBuffer[c_index];
-        if (bottomLeftTag <= c.tag) {
+      long bottomLeftTag = computeRelativeTag(aTag, -1, 1);
+      for (; c_index < proxyCount; c_index++) {
+        if (bottomLeftTag <= tags[c_index]) {
           break;
         }
       }
       // 检查右下方的邻居
-      long bottomRightTag = computeRelativeTag(a.tag, 1, 1);
+      long bottomRightTag = computeRelativeTag(aTag, 1, 1);
 
-      for (int b_index = c_index; b_index < m_proxyCount; b_index++) {
-        Proxy b = m_proxyBuffer[b_index];
-        if (bottomRightTag < b.tag) {
+      for (int b_index = c_index; b_index < proxyCount; b_index++) {
+        if (bottomRightTag < tags[b_index]) {
           break;
         }
-        addContact(a.index, b.index); // 添加接触
+        final int b = indices[b_index];
+        if (checkFlags && skipContact(aFlags, flags[b])) {
+          continue;
+        }
+        addContact(a, b, band); // 添加接触
       }
     }
-    // 4. 如果排除僵尸粒子，则移除带有僵尸标志的接触
-    if (exceptZombie) {
-      int j = m_contactCount;
-      for (int i = 0; i < j; i++) {
-        if ((m_contactBuffer[i].flags & ParticleType.b2_zombieParticle) != 0) {
-          --j; // 减少有效接触计数
-          // 将僵尸接触与最后一个有效接触交换，然后重新检查当前位置
-          ParticleContact temp = m_contactBuffer[j];
-          m_contactBuffer[j] = m_contactBuffer[i];
-          m_contactBuffer[i] = temp;
-          --i;
+  }
+
+  /**
+   * 判断两个相邻粒子之间是否不产生接触：双方都在休眠。
+   * @param aFlags 粒子A的标志
+   * @param bFlags 粒子B的标志
+   * @return 是否跳过
+   */
+  private static boolean skipContact(int aFlags, int bFlags) {
+    return (aFlags & bFlags & ParticleType.b2_sleepingParticle) != 0;
+  }
+
+  /**
+   * 在临时累积缓冲区中标记分段内运动粒子左方和上方与之接触的休眠粒子。
+   * 运动粒子右方和下方的接触由运动粒子自己找到，左方和上方的接触原本由休眠粒子一方找到，
+   * 所以 {@link #findContacts(ContactBand)} 只需让这些被标记的休眠粒子扫描邻居。
+   * 扫描范围与 findContacts 相对称，左上方邻居的起始位置同样单调递增；
+   * 不同分段可能标记同一个粒子，写入的值相同，全部分段完成后才开始查找接触。
+   * @param band 代理分段
+   */
+  void markSleepingNeighbors(ContactBand band) {
+    final long[] tags = m_proxyTags;
+    final int[] indices = m_proxyIndices;
+    final int proxyCount = m_proxyCount;
+    final int lastProxy = band.lastProxy;
+    if (band.firstProxy >= lastProxy) {
+      return;
+    }
+    final int[] flags = m_flagsBuffer.data;
+    int u_index =
+        lowerBound(tags, proxyCount, computeRelativeTag(tags[band.firstProxy], -1, -1));
+    for (int i = band.firstProxy; i < lastProxy; i++) {
+      final long aTag = tags[i];
+      final int a = indices[i];
+      if ((flags[a] & ParticleType.b2_sleepingParticle) != 0) {
+        continue;
+      }
+      // 检查左侧的邻居
+      long leftTag = computeRelativeTag(aTag, -1, 0);
+      for (int j = i - 1; j >= 0; j--) {
+        if (tags[j] < leftTag) {
+          break;
         }
+        markSleepingNeighbor(a, indices[j]);
+      }
+      // 检查左上方到右上方的邻居
+      long topLeftTag = computeRelativeTag(aTag, -1, -1);
+      for (; u_index < proxyCount; u_index++) {
+        if (topLeftTag <= tags[u_index]) {
+          break;
+        }
+      }
+      long topRightTag = computeRelativeTag(aTag, 1, -1);
+      for (int j = u_index; j < proxyCount; j++) {
+        if (topRightTag < tags[j]) {
+          break;
+        }
+        markSleepingNeighbor(a, indices[j]);
       }
-      m_contactCount = j; // 更新接触总数
     }
   }
 
-  private final UpdateBodyContactsCallback ubccallback = new UpdateBodyContactsCallback(); // 更新刚体接触回调
+  /**
+   * 如果粒子B在休眠且与运动粒子A的距离小于直径，在临时累积缓冲区中标记B。
+   * 距离的判定与 addContact 相同。
+   * @param a 运动粒子
+   * @param b 相邻粒子
+   */
+  private void markSleepingNeighbor(int a, int b) {
+    if ((m_flagsBuffer.data[b] & ParticleType.b2_sleepingParticle) == 0) {
+      return;
+    }
+    final float dx = m_positionBuffer.x[b] - m_positionBuffer.x[a];
+    final float dy = m_positionBuffer.y[b] - m_positionBuffer.y[a];
+    if (dx * dx + dy * dy < m_squaredDiameter) {
+      m_accumulationBuffer[b] = 1;
+    }
+  }
 
   /**
-   * 更新所有粒子与刚体之间的接触。
-   * 首先计算所有粒子的包围盒，然后查询世界中与该包围盒重叠的刚体。
+   * 多线程生成接触。
+   * 把排序后的代理均分为若干个标签分段，在线程池中并行查找接触，每个分段写入自己的缓冲区；
+   * 完成后按分段顺序把接触对象引用交换进 m_contactBuffer，结果与单线程完全一致。
+   * @param bandCount 分段数量
    */
-  public void updateBodyContacts() {
-    final AABB aabb = temp;
-    // 1. 计算所有粒子的联合AABB
-    aabb.lowerBound.x = Float.MAX_VALUE;
-    aabb.lowerBound.y = Float.MAX_VALUE;
-    aabb.upperBound.x = -Float.MAX_VALUE;
-    aabb.upperBound.y = -Float.MAX_VALUE;
-    for (int i = 0; i < m_count; i++) {
-      Vec2 p = m_positionBuffer.data[i];
-      Vec2.minToOut(aabb.lowerBound, p, aabb.lowerBound);
-      Vec2.maxToOut(aabb.upperBound, p, aabb.upperBound);
+  private void findContactsInBands(int bandCount) {
+    final ContactBand[] bands = m_contactBands;
+    final int proxyCount = m_proxyCount;
+    for (int b = 0; b < bandCount; b++) {
+      ContactBand band = bands[b];
+      band.firstProxy = (int) ((long) proxyCount * b / bandCount);
+      band.lastProxy = (int) ((long) proxyCount * (b + 1) / bandCount);
+      band.count = 0;
     }
-    // 2. 扩展AABB，考虑到粒子直径
-    aabb.lowerBound.x -= m_particleDiameter;
-    aabb.lowerBound.y -= m_particleDiameter;
-    aabb.upperBound.x += m_particleDiameter;
-    aabb.upperBound.y += m_particleDiameter;
-    m_bodyContactCount = 0; // 重置粒子-刚体接触计数
+    if ((m_allParticleFlags & ParticleType.b2_sleepingParticle) != 0) {
+      Arrays.fill(m_accumulationBuffer, 0, m_count, 0);
+      invokeContactBands(bandCount, true);
+    }
+    invokeContactBands(bandCount, false);
 
-    ubccallback.system = this;
-    m_world.queryAABB(ubccallback, aabb); // 查询世界中与扩展AABB重叠的刚体
+    int total = 0;
+    for (int b = 0; b < bandCount; b++) {
+      total += bands[b].count;
+      m_reallocationCount += bands[b].takeReallocationCount();
+    }
+    if (total > m_contactCapacity) {
+      int oldCapacity = m_contactCapacity;
+      int newCapacity =
+          Math.max(total, oldCapacity != 0 ? 2 * oldCapacity : Settings.minParticleBufferCapacity);
+      m_contactBuffer =
+          BufferUtils.reallocateBuffer(ParticleContact.class, m_contactBuffer, oldCapacity,
+              newCapacity);
+      m_contactCapacity = newCapacity;
+      m_reallocationCount++;
+    }
+    // 交换对象引用完成合并，分段缓冲区换回的对象在下一步继续复用
+    int dst = 0;
+    for (int b = 0; b < bandCount; b++) {
+      final ContactBand band = bands[b];
+      final ParticleContact[] contacts = band.contacts;
+      for (int k = 0; k < band.count; k++) {
+        ParticleContact temp = m_contactBuffer[dst];
+        m_contactBuffer[dst] = contacts[k];
+        contacts[k] = temp;
+        dst++;
+      }
+    }
+    m_contactCount = total;
   }
 
-  private SolveCollisionCallback sccallback = new SolveCollisionCallback(); // 解决碰撞回调
+  /**
+   * 在线程池中并行执行接触生成的各个分段。
+   * @param bandCount 分段数量
+   * @param marking 是否只标记与运动粒子接触的休眠粒子，否则查找接触
+   */
+  private void invokeContactBands(int bandCount, boolean marking) {
+    final ContactBand[] bands = m_contactBands;
+    for (int b = 0; b < bandCount; b++) {
+      bands[b].marking = marking;
+      bands[b].reinitialize();
+    }
+    m_bandsTask.bands = bands;
+    m_bandsTask.bandCount = bandCount;
+    m_bandsTask.reinitialize();
+    m_threadPool.invoke(m_bandsTask);
+  }
 
   /**
-   * 解决粒子与刚体之间的碰撞。
-   * 计算粒子在时间步长内的运动轨迹，然后对轨迹进行射线投射检测。
-   * @param step 时间步长
+   * 设置粒子求解使用的线程数。
+   * 大于 1 时，接触生成会在 ForkJoinPool 上按标签分段并行执行，结果与单线程完全一致；
+   * 接触足够多（至少 2 * MIN_CONTACTS_PER_SOLVE_BAND 个）时压力按接触着色并行求解，只改变累加顺序，
+   * 结果与单线程只差舍入误差；阻尼是逐接触的顺序迭代，结果依赖接触顺序，始终单线程求解。
+   * 小于等于 1 时关闭线程池，回到单线程模式（默认）。
+   * 线程池只在这里创建和关闭，不再使用粒子系统时应设回 1 以释放线程池的工作线程。
+   * @param threadCount 线程数
    */
-  public void solveCollision(TimeStep step) {
-    final AABB aabb = temp;
-    final Vec2 lowerBound = aabb.lowerBound;
+  public void setParticleThreadCount(int threadCount) {
+    threadCount = Math.max(threadCount, 1);
+    if (threadCount == m_threadCount) {
+      return;
+    }
+    if (m_threadPool != null) {
+      m_threadPool.shutdown();
+      m_threadPool = null;
+    }
+    m_threadCount = threadCount;
+    if (threadCount > 1) {
+      m_threadPool = new ForkJoinPool(threadCount);
+      m_contactBands = new ContactBand[threadCount];
+      m_solveBands = new SolveBand[threadCount];
+      for (int b = 0; b < threadCount; b++) {
+        m_contactBands[b] = new ContactBand(this);
+        m_solveBands[b] = new SolveBand(this);
+      }
+    } else {
+      m_contactBands = null;
+      m_solveBands = null;
+    }
+  }
+
+  /**
+   * 获取粒子求解使用的线程数。
+   * @return 线程数
+   */
+  public int getParticleThreadCount() {
+    return m_threadCount;
+  }
+
+  /**
+   * 按空间哈希标签对代理进行稳定排序。
+   * 代理数组保留上一步的顺序，相邻两步之间大多数粒子的相对顺序不变，数组几乎有序。
+   * 先扫描一遍找出标签的最小值、最大值，已经有序时直接返回。
+   * 所在网格单元发生变化的代理比例不超过 {@link #m_proxySortThreshold} 时使用插入排序，移动次数超出预算则放弃；
+   * 否则（或插入排序放弃后）使用 LSD 基数排序，只对 (tag - min) 中实际变化的位做 8 位一趟的计数排序，
+   * 每趟在主缓冲区与临时缓冲区之间来回搬运。
+   * 两种排序都是稳定的，相同标签的代理保持原有的相对顺序，结果与完整的稳定排序一致。
+   * @param changedCells 与上一步相比所在网格单元（标签右移 xShift 位）发生变化的代理数量
+   */
+  void sortProxies(int changedCells) {
+    final int count = m_proxyCount;
+    if (count < 2) {
+      return;
+    }
+    long[] tags = m_proxyTags;
+    int[] indices = m_proxyIndices;
+    long minTag = tags[0];
+    long maxTag = minTag;
+    boolean sorted = true;
+    for (int i = 1; i < count; i++) {
+      long tag = tags[i];
+      if (tag < tags[i - 1]) {
+        sorted = false;
+      }
+      if (tag < minTag) {
+        minTag = tag;
+      } else if (tag > maxTag) {
+        maxTag = tag;
+      }
+    }
+    if (sorted) {
+      return;
+    }
+    if (changedCells <= m_proxySortThreshold * count
+        && insertionSortProxies(count * PROXY_INSERTION_SORT_BUDGET)) {
+      return;
+    }
+    // (maxTag - minTag) 按无符号数处理，即使标签跨度极大也不会溢出
+    final int bits = 64 - Long.numberOfLeadingZeros(maxTag - minTag);
+    long[] tagsOut = m_proxySortTags;
+    int[] indicesOut = m_proxySortIndices;
+    final int[] counts = m_proxyRadixCounts;
+    for (int shift = 0; shift < bits; shift += PROXY_RADIX_BITS) {
+      Arrays.fill(counts, 0);
+      for (int i = 0; i < count; i++) {
+        counts[(int) (((tags[i] - minTag) >>> shift) & PROXY_RADIX_MASK)]++;
+      }
+      // 所有标签在这一位上都相同时跳过该趟
+      if (counts[(int) (((tags[0] - minTag) >>> shift) & PROXY_RADIX_MASK)] == count) {
+        continue;
+      }
+      int sum = 0;
+      for (int k = 0; k < PROXY_RADIX_SIZE; k++) {
+        int c = counts[k];
+        counts[k] = sum;
+        sum += c;
+      }
+      for (int i = 0; i < count; i++) {
+        long tag = tags[i];
+        int dst = counts[(int) (((tag - minTag) >>> shift) & PROXY_RADIX_MASK)]++;
+        tagsOut[dst] = tag;
+        indicesOut[dst] = indices[i];
+      }
+      long[] swapTags = tags;
+      tags = tagsOut;
+      tagsOut = swapTags;
+      int[] swapIndices = indices;
+      indices = indicesOut;
+      indicesOut = swapIndices;
+    }
+    // 交换缓冲区引用，而不是把结果拷贝回去
+    m_proxyTags = tags;
+    m_proxyIndices = indices;
+    m_proxySortTags = tagsOut;
+    m_proxySortIndices = indicesOut;
+  }
+
+  /**
+   * 对几乎有序的代理做原地插入排序。
+   * 累计移动次数超过 maxMoves 时立即返回 false，此时前缀已稳定有序、其余部分保持原样，
+   * 调用方可以直接在此基础上继续做完整排序，结果与从头排序一致。
+   * @param maxMoves 允许的最大元素移动次数
+   * @return 是否已完成排序
+   */
+  private boolean insertionSortProxies(int maxMoves) {
+    final long[] tags = m_proxyTags;
+    final int[] indices = m_proxyIndices;
+    final int count = m_proxyCount;
+    int moves = 0;
+    for (int i = 1; i < count; i++) {
+      final long tag = tags[i];
+      if (tag >= tags[i - 1]) {
+        continue;
+      }
+      final int index = indices[i];
+      int j = i - 1;
+      do {
+        tags[j + 1] = tags[j];
+        indices[j + 1] = indices[j];
+        j--;
+        moves++;
+      } while (j >= 0 && tags[j] > tag);
+      tags[j + 1] = tag;
+      indices[j + 1] = index;
+      if (moves > maxMoves) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * 设置代理排序的阈值。
+   * 与上一步相比，所在网格单元发生变化的代理比例不超过该值时使用插入排序，否则使用基数排序。
+   * 0 表示总是使用基数排序，默认值为 0.9：雨滴、雪花这类整列一起移动的场景里，
+   * 大部分粒子每步都换网格单元但相对顺序基本不变，插入排序的移动次数预算足以兜底。
+   * @param threshold 网格单元变化的代理比例阈值，取值 [0, 1]
+   */
+  public void setParticleProxySortThreshold(float threshold) {
+    m_proxySortThreshold = threshold;
+  }
+
+  /**
+   * 获取代理排序的阈值。
+   * @return 网格单元变化的代理比例阈值
+   */
+  public float getParticleProxySortThreshold() {
+    return m_proxySortThreshold;
+  }
+
+  private final UpdateBodyContactsCallback ubccallback = new UpdateBodyContactsCallback(); // 更新刚体接触回调
+
+  /**
+   * 更新所有粒子与刚体之间的接触。
+   * 首先计算所有粒子的包围盒，然后查询世界中与该包围盒重叠的刚体。
+   */
+  public void updateBodyContacts() {
+    final AABB aabb = temp;
+    // 1. 计算所有粒子的联合AABB
+    float lowerX = Float.MAX_VALUE;
+    float lowerY = Float.MAX_VALUE;
+    float upperX = -Float.MAX_VALUE;
+    float upperY = -Float.MAX_VALUE;
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    for (int i = 0; i < m_count; i++) {
+      final float px = posX[i];
+      final float py = posY[i];
+      lowerX = lowerX < px ? lowerX : px;
+      lowerY = lowerY < py ? lowerY : py;
+      upperX = upperX > px ? upperX : px;
+      upperY = upperY > py ? upperY : py;
+    }
+    aabb.lowerBound.x = lowerX;
+    aabb.lowerBound.y = lowerY;
+    aabb.upperBound.x = upperX;
+    aabb.upperBound.y = upperY;
+    // 2. 扩展AABB，考虑到粒子直径
+    aabb.lowerBound.x -= m_particleDiameter;
+    aabb.lowerBound.y -= m_particleDiameter;
+    aabb.upperBound.x += m_particleDiameter;
+    aabb.upperBound.y += m_particleDiameter;
+    m_bodyContactCount = 0; // 重置粒子-刚体接触计数
+
+    ubccallback.system = this;
+    m_world.queryAABB(ubccallback, aabb); // 查询世界中与扩展AABB重叠的刚体
+  }
+
+  private SolveCollisionCallback sccallback = new SolveCollisionCallback(); // 解决碰撞回调
+
+  /**
+   * 解决粒子与刚体之间的碰撞。
+   * 计算粒子在时间步长内的运动轨迹，然后对轨迹进行射线投射检测。
+   * @param step 时间步长
+   */
+  public void solveCollision(TimeStep step) {
+    final AABB aabb = temp;
+    final Vec2 lowerBound = aabb.lowerBound;
     final Vec2 upperBound = aabb.upperBound;
     // 1. 计算粒子在当前和下一个时间步之间的运动范围的AABB
     lowerBound.x = Float.MAX_VALUE;
     lowerBound.y = Float.MAX_VALUE;
     upperBound.x = -Float.MAX_VALUE;
     upperBound.y = -Float.MAX_VALUE;
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
     for (int i = 0; i < m_count; i++) {
-      final Vec2 v = m_velocityBuffer.data[i];
-      final Vec2 p1 = m_positionBuffer.data[i];
-      final float p1x = p1.x;
-      final float p1y = p1.y;
-      final float p2x = p1x + step.dt * v.x; // 下一时刻位置
-      final float p2y = p1y + step.dt * v.y;
+      final float p1x = posX[i];
+      final float p1y = posY[i];
+      final float p2x = p1x + step.dt * velX[i]; // 下一时刻位置
+      final float p2y = p1y + step.dt * velY[i];
       final float bx = p1x < p2x ? p1x : p2x; // 运动轨迹的最小X
       final float by = p1y < p2y ? p1y : p2y; // 运动轨迹的最小Y
       lowerBound.x = lowerBound.x < bx ? lowerBound.x : bx;
@@ -814,97 +2200,859 @@ public class ParticleSystem {
       upperBound.x = upperBound.x > b1x ? upperBound.x : b1x;
       upperBound.y = upperBound.y > b1y ? upperBound.y : b1y;
     }
-    sccallback.step = step;
-    sccallback.system = this;
-    m_world.queryAABB(sccallback, aabb); // 查询世界中与运动轨迹AABB重叠的刚体
+    sccallback.step = step;
+    sccallback.system = this;
+    m_world.queryAABB(sccallback, aabb); // 查询世界中与运动轨迹AABB重叠的刚体
+  }
+
+  /**
+   * 执行粒子系统的一个时间步模拟。
+   * 包含多个解决阶段，例如僵尸粒子清理、重力应用、碰撞解决、各种力学效果计算等。
+   * @param step 时间步长信息
+   */
+  public void solve(TimeStep step) {
+    ++m_timestamp; // 更新时间戳
+    m_timeElapsed += (long) (step.dt * MICROSECONDS_PER_SECOND); // 累计模拟时间
+    if (m_count == 0) {
+      computeGroupStatistics(); // 没有粒子，只需把粒子组统计量归零
+      return;
+    }
+    // 到期的粒子标记为僵尸，与其他被销毁的粒子一起在下面的 solveZombie() 中统一清理
+    if (m_expirationTimeBuffer != null) {
+      final long[] expirationTimes = m_expirationTimeBuffer;
+      final int[] flags = m_flagsBuffer.data;
+      final ParticleGroupExpirationListener listener = m_groupExpirationListener;
+      for (int i = 0; i < m_count; i++) {
+        final long expirationTime = expirationTimes[i];
+        if (expirationTime > 0 && expirationTime <= m_timeElapsed) {
+          final ParticleGroup group = m_groupBuffer[i];
+          if (listener != null && group != null && group.m_lifetime > 0) {
+            // 带寿命的粒子组整组交给监听器处理：保留则整组重新计时，否则整组到期的粒子一起标记
+            final boolean keep = listener.groupExpired(group);
+            final long restart = expirationTime(group.m_lifetime);
+            for (int j = group.m_firstIndex; j < group.m_lastIndex; j++) {
+              if (keep) {
+                expirationTimes[j] = restart;
+              } else if (expirationTimes[j] > 0 && expirationTimes[j] <= m_timeElapsed) {
+                flags[j] |= ParticleType.b2_zombieParticle;
+              }
+            }
+            i = group.m_lastIndex - 1; // 跳过组内剩余粒子
+          } else {
+            flags[i] |= ParticleType.b2_zombieParticle;
+          }
+        }
+      }
+    }
+    // 收集所有粒子的标志
+    m_allParticleFlags = 0;
+    for (int i = 0; i < m_count; i++) {
+      m_allParticleFlags |= m_flagsBuffer.data[i];
+    }
+    // 如果存在僵尸粒子，则进行清理
+    if ((m_allParticleFlags & ParticleType.b2_zombieParticle) != 0) {
+      solveZombie();
+    }
+    if (m_count == 0) {
+      computeGroupStatistics(); // 清理后可能没有粒子了，粒子组统计量归零
+      return;
+    }
+    // 定期按空间位置重排粒子缓冲区
+    if (m_reorderInterval > 0 && ++m_stepsSinceReorder >= m_reorderInterval) {
+      reorderParticles();
+    }
+    // 收集所有粒子组的标志
+    m_allGroupFlags = 0;
+    for (ParticleGroup group = m_groupList; group != null; group = group.getNext()) {
+      m_allGroupFlags |= group.m_groupFlags;
+    }
+    // 应用重力
+    final float gravityx = step.dt * m_gravityScale * m_world.getGravity().x;
+    final float gravityy = step.dt * m_gravityScale * m_world.getGravity().y;
+    float criticalVelocytySquared = getCriticalVelocitySquared(step); // 临界速度平方
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
+    if (m_forceFieldCount == 0 && (m_allParticleFlags & ParticleType.b2_sleepingParticle) == 0) {
+      for (int i = 0; i < m_count; i++) {
+        float vx = velX[i] + gravityx;
+        float vy = velY[i] + gravityy;
+        float v2 = vx * vx + vy * vy;
+        // 限制粒子速度不超过临界速度
+        if (v2 > criticalVelocytySquared) {
+          float a = v2 == 0 ? Float.MAX_VALUE : MathUtils.sqrt(criticalVelocytySquared / v2);
+          vx *= a;
+          vy *= a;
+        }
+        velX[i] = vx;
+        velY[i] = vy;
+      }
+    } else {
+      applyGravityAndForceFields(step.dt, gravityx, gravityy, criticalVelocytySquared);
+    }
+    // 重生过的粒子组需要先更新代理标签，刚体碰撞才能找到它们
+    refreshStaleProxyTags();
+    // 解决碰撞
+    solveCollision(step);
+    // 解决刚体粒子组（如果存在）
+    if ((m_allGroupFlags & ParticleGroupType.b2_rigidParticleGroup) != 0) {
+      solveRigid(step);
+    }
+    // 解决壁粒子（如果存在）
+    if ((m_allParticleFlags & ParticleType.b2_wallParticle) != 0) {
+      solveWall(step);
+    }
+    // 更新粒子位置
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    int killed = 0;
+    if (m_killBoxCount == 0 && m_killPlaneCount == 0) {
+      for (int i = 0; i < m_count; i++) {
+        posX[i] += step.dt * velX[i];
+        posY[i] += step.dt * velY[i];
+      }
+    } else {
+      killed = integratePositionsAndKill(step);
+    }
+    updateBodyContacts(); // 更新粒子-刚体接触（跳过本步被清除的粒子）
+    // 更新粒子间接触。僵尸粒子已在步进开头清理；本步刚被清除区域销毁的粒子的接触被移除，
+    // 它们不再参与本步的压力、阻尼和颜色混合
+    updateContacts(killed > 0);
+    // 解决各种粒子效应
+    if ((m_allParticleFlags & ParticleType.b2_viscousParticle) != 0) {
+      solveViscous(step);
+    }
+    if ((m_allParticleFlags & ParticleType.b2_powderParticle) != 0) {
+      solvePowder(step);
+    }
+    if ((m_allParticleFlags & ParticleType.b2_tensileParticle) != 0) {
+      solveTensile(step);
+    }
+    if ((m_allParticleFlags & ParticleType.b2_elasticParticle) != 0) {
+      solveElastic(step);
+    }
+    if ((m_allParticleFlags & ParticleType.b2_springParticle) != 0) {
+      solveSpring(step);
+    }
+    if ((m_allGroupFlags & ParticleGroupType.b2_solidParticleGroup) != 0) {
+      solveSolid(step);
+    }
+    if ((m_allParticleFlags & ParticleType.b2_colorMixingParticle) != 0) {
+      solveColorMixing(step);
+    }
+    colorContacts(); // 多线程模式下为接触着色
+    solvePressure(step); // 解决压力
+    solveDamping(step); // 解决阻尼
+    if (m_sleepVelocity > 0) {
+      updateSleep(step, gravityx, gravityy); // 更新粒子休眠状态
+    }
+    computeGroupStatistics(); // 计算粒子组统计量
+  }
+
+  /**
+   * 施加重力和力场并限制速度，与无力场时的重力循环相同，只是每个粒子额外累加各力场在其位置的加速度。
+   * 力场按类型分支求值，热循环中没有对象分配和虚方法调用。
+   * 休眠粒子不受重力，只有力场在一步内带来的速度变化超过唤醒阈值时才被唤醒并正常施加加速度。
+   */
+  private void applyGravityAndForceFields(float dt, float gravityx, float gravityy,
+      float criticalVelocitySquared) {
+    final int[] flags = m_flagsBuffer.data;
+    final float wakeVelocity = SLEEP_WAKE_VELOCITY_RATIO * m_sleepVelocity;
+    final float wakeVelocitySquared = wakeVelocity * wakeVelocity;
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
+    final ParticleForceField[] fields = m_forceFields;
+    final int fieldCount = m_forceFieldCount;
+    for (int i = 0; i < m_count; i++) {
+      final float x = posX[i];
+      final float y = posY[i];
+      float ax = 0, ay = 0;
+      for (int f = 0; f < fieldCount; f++) {
+        final ParticleForceField field = fields[f];
+        switch (field.m_type) {
+          case UNIFORM:
+            ax += field.m_x;
+            ay += field.m_y;
+            break;
+          case RADIAL:
+          case VORTEX: {
+            final float dx = x - field.m_x;
+            final float dy = y - field.m_y;
+            final float d2 = dx * dx + dy * dy;
+            if (d2 == 0) {
+              break;
+            }
+            final float d = MathUtils.sqrt(d2);
+            float s = field.m_strength;
+            if (field.m_radius > 0) {
+              s = d < field.m_radius ? s * (1 - d / field.m_radius) : 0; // 线性衰减
+            }
+            s /= d;
+            if (field.m_type == ParticleForceFieldType.RADIAL) {
+              ax += s * dx;
+              ay += s * dy;
+            } else {
+              ax -= s * dy;
+              ay += s * dx;
+            }
+            break;
+          }
+          case GRID: {
+            // 网格坐标，超出网格时取最近的边
+            final int columns = field.m_columns;
+            final int rows = field.m_rows;
+            float gx = (x - field.m_x) / field.m_cellSize;
+            float gy = (y - field.m_y) / field.m_cellSize;
+            gx = gx < 0 ? 0 : (gx > columns - 1 ? columns - 1 : gx);
+            gy = gy < 0 ? 0 : (gy > rows - 1 ? rows - 1 : gy);
+            final int c0 = (int) gx;
+            final int r0 = (int) gy;
+            final int c1 = c0 + 1 < columns ? c0 + 1 : c0;
+            final int r1 = r0 + 1 < rows ? r0 + 1 : r0;
+            final float tx = gx - c0;
+            final float ty = gy - r0;
+            final int i00 = r0 * columns + c0;
+            final int i01 = r0 * columns + c1;
+            final int i10 = r1 * columns + c0;
+            final int i11 = r1 * columns + c1;
+            final float[] gridX = field.m_gridX;
+            final float[] gridY = field.m_gridY;
+            // 双线性插值
+            ax += (1 - ty) * ((1 - tx) * gridX[i00] + tx * gridX[i01])
+                + ty * ((1 - tx) * gridX[i10] + tx * gridX[i11]);
+            ay += (1 - ty) * ((1 - tx) * gridY[i00] + tx * gridY[i01])
+                + ty * ((1 - tx) * gridY[i10] + tx * gridY[i11]);
+            break;
+          }
+        }
+      }
+      if ((flags[i] & ParticleType.b2_sleepingParticle) != 0) {
+        if (dt * dt * (ax * ax + ay * ay) <= wakeVelocitySquared) {
+          continue;
+        }
+        flags[i] &= ~ParticleType.b2_sleepingParticle; // 被力场唤醒
+        if (m_sleepTimerBuffer != null) {
+          m_sleepTimerBuffer[i] = 0;
+        }
+      }
+      float vx = velX[i] + gravityx + dt * ax;
+      float vy = velY[i] + gravityy + dt * ay;
+      float v2 = vx * vx + vy * vy;
+      // 限制粒子速度不超过临界速度
+      if (v2 > criticalVelocitySquared) {
+        float a = v2 == 0 ? Float.MAX_VALUE : MathUtils.sqrt(criticalVelocitySquared / v2);
+        vx *= a;
+        vy *= a;
+      }
+      velX[i] = vx;
+      velY[i] = vy;
+    }
+  }
+
+  /**
+   * 添加一个力场，从下一步开始作用于所有粒子。力场的参数可以在步进之间直接修改。
+   * @param field 力场
+   */
+  public void addForceField(ParticleForceField field) {
+    if (m_forceFieldCount == m_forceFields.length) {
+      m_forceFields = Arrays.copyOf(m_forceFields, MathUtils.max(4, 2 * m_forceFieldCount));
+    }
+    m_forceFields[m_forceFieldCount++] = field;
+  }
+
+  /**
+   * 移除一个力场。
+   * @param field 力场
+   * @return 力场是否存在
+   */
+  public boolean removeForceField(ParticleForceField field) {
+    for (int f = 0; f < m_forceFieldCount; f++) {
+      if (m_forceFields[f] == field) {
+        System.arraycopy(m_forceFields, f + 1, m_forceFields, f, m_forceFieldCount - f - 1);
+        m_forceFields[--m_forceFieldCount] = null;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * 移除所有力场。
+   */
+  public void clearForceFields() {
+    Arrays.fill(m_forceFields, 0, m_forceFieldCount, null);
+    m_forceFieldCount = 0;
+  }
+
+  public int getForceFieldCount() {
+    return m_forceFieldCount;
+  }
+
+  /**
+   * 更新粒子位置，同时把进入清除区域的粒子标记为僵尸，在下一步开头的 solveZombie() 中统一清理。
+   * @return 本次标记的粒子数
+   */
+  private int integratePositionsAndKill(TimeStep step) {
+    final float dt = step.dt;
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
+    final int[] flags = m_flagsBuffer.data;
+    final float[] boxes = m_killBoxes;
+    final float[] planes = m_killPlanes;
+    final int boxEnd = 4 * m_killBoxCount;
+    final int planeEnd = 3 * m_killPlaneCount;
+    int killed = 0;
+    for (int i = 0; i < m_count; i++) {
+      final float x = posX[i] + dt * velX[i];
+      final float y = posY[i] + dt * velY[i];
+      posX[i] = x;
+      posY[i] = y;
+      if ((flags[i] & ParticleType.b2_zombieParticle) != 0) {
+        continue;
+      }
+      boolean kill = false;
+      for (int k = 0; k < planeEnd && !kill; k += 3) {
+        kill = planes[k] * x + planes[k + 1] * y > planes[k + 2];
+      }
+      for (int k = 0; k < boxEnd && !kill; k += 4) {
+        kill = boxes[k] <= x && x <= boxes[k + 2] && boxes[k + 1] <= y && y <= boxes[k + 3];
+      }
+      if (kill) {
+        flags[i] |= ParticleType.b2_zombieParticle;
+        killed++;
+      }
+    }
+    if (killed > 0 && m_killListener != null) {
+      m_killListener.particlesKilled(killed);
+    }
+    return killed;
+  }
+
+  /**
+   * 添加一个清除半平面：满足 normalX * x + normalY * y > offset 的粒子在积分时被销毁。
+   * 例如法线 (0, 1)、偏移 h 会销毁 y > h 的粒子。
+   * @param normalX 法线 X 分量，指向被清除的一侧
+   * @param normalY 法线 Y 分量
+   * @param offset 沿法线的偏移
+   */
+  public void addKillHalfPlane(float normalX, float normalY, float offset) {
+    if (3 * (m_killPlaneCount + 1) > m_killPlanes.length) {
+      m_killPlanes = Arrays.copyOf(m_killPlanes, 3 * (m_killPlaneCount + 1));
+    }
+    final int k = 3 * m_killPlaneCount++;
+    m_killPlanes[k] = normalX;
+    m_killPlanes[k + 1] = normalY;
+    m_killPlanes[k + 2] = offset;
+  }
+
+  /**
+   * 添加一个清除包围盒：进入包围盒的粒子在积分时被销毁。
+   * @param box 包围盒，内容会被复制
+   */
+  public void addKillBox(AABB box) {
+    if (4 * (m_killBoxCount + 1) > m_killBoxes.length) {
+      m_killBoxes = Arrays.copyOf(m_killBoxes, 4 * (m_killBoxCount + 1));
+    }
+    final int k = 4 * m_killBoxCount++;
+    m_killBoxes[k] = box.lowerBound.x;
+    m_killBoxes[k + 1] = box.lowerBound.y;
+    m_killBoxes[k + 2] = box.upperBound.x;
+    m_killBoxes[k + 3] = box.upperBound.y;
+  }
+
+  /**
+   * 移除所有清除半平面和清除包围盒。
+   */
+  public void clearKillVolumes() {
+    m_killPlaneCount = 0;
+    m_killBoxCount = 0;
+  }
+
+  /**
+   * 设置清除区域监听器，每步报告进入清除区域的粒子数量。
+   * @param listener 监听器，可为 null
+   */
+  public void setKillListener(ParticleKillListener listener) {
+    m_killListener = listener;
+  }
+
+  public ParticleKillListener getKillListener() {
+    return m_killListener;
+  }
+
+  /**
+   * 按 m_groupStatisticsFlags 计算每个粒子组的统计量。
+   * 包围盒、质心和平均速度在对组内粒子的同一次遍历中完成；
+   * 最大扩散需要先得到质心，在组内粒子仍在缓存中时再遍历一次。
+   */
+  void computeGroupStatistics() {
+    final int flags = m_groupStatisticsFlags;
+    if (flags == 0) {
+      return;
+    }
+    final boolean bounds = (flags & ParticleGroupStatistics.BOUNDS) != 0;
+    final boolean spread = (flags & ParticleGroupStatistics.SPREAD) != 0;
+    final boolean centroid = spread || (flags & ParticleGroupStatistics.CENTROID) != 0;
+    final boolean velocity = (flags & ParticleGroupStatistics.MEAN_VELOCITY) != 0;
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
+    for (ParticleGroup group = m_groupList; group != null; group = group.getNext()) {
+      final ParticleGroupStatistics stats = group.m_statistics;
+      final int first = group.m_firstIndex;
+      final int last = group.m_lastIndex;
+      final int count = last - first;
+      stats.timestamp = m_timestamp;
+      stats.particleCount = count;
+      if (count == 0) {
+        stats.lowerBoundX = stats.lowerBoundY = stats.upperBoundX = stats.upperBoundY = 0;
+        stats.centroidX = stats.centroidY = 0;
+        stats.meanVelocityX = stats.meanVelocityY = 0;
+        stats.maxSpreadSquared = 0;
+        continue;
+      }
+      float lowerX = Float.MAX_VALUE, lowerY = Float.MAX_VALUE;
+      float upperX = -Float.MAX_VALUE, upperY = -Float.MAX_VALUE;
+      float sumX = 0, sumY = 0, sumVx = 0, sumVy = 0;
+      for (int i = first; i < last; i++) {
+        final float px = posX[i];
+        final float py = posY[i];
+        if (bounds) {
+          lowerX = px < lowerX ? px : lowerX;
+          lowerY = py < lowerY ? py : lowerY;
+          upperX = px > upperX ? px : upperX;
+          upperY = py > upperY ? py : upperY;
+        }
+        if (centroid) {
+          sumX += px;
+          sumY += py;
+        }
+        if (velocity) {
+          sumVx += velX[i];
+          sumVy += velY[i];
+        }
+      }
+      if (bounds) {
+        stats.lowerBoundX = lowerX;
+        stats.lowerBoundY = lowerY;
+        stats.upperBoundX = upperX;
+        stats.upperBoundY = upperY;
+      }
+      if (centroid) {
+        stats.centroidX = sumX / count;
+        stats.centroidY = sumY / count;
+      }
+      if (velocity) {
+        stats.meanVelocityX = sumVx / count;
+        stats.meanVelocityY = sumVy / count;
+      }
+      if (spread) {
+        final float cx = stats.centroidX;
+        final float cy = stats.centroidY;
+        float maxDistanceSquared = 0;
+        for (int i = first; i < last; i++) {
+          final float dx = posX[i] - cx;
+          final float dy = posY[i] - cy;
+          final float distanceSquared = dx * dx + dy * dy;
+          if (distanceSquared > maxDistanceSquared) {
+            maxDistanceSquared = distanceSquared;
+          }
+        }
+        stats.maxSpreadSquared = maxDistanceSquared;
+      }
+    }
+  }
+
+  /**
+   * 设置每步结束时为每个粒子组计算的统计量，结果通过 {@link ParticleGroup#getStatistics()} 读取。
+   * @param flags {@link ParticleGroupStatistics} 中常量的组合，0 表示不计算
+   */
+  public void setGroupStatisticsFlags(int flags) {
+    m_groupStatisticsFlags = flags;
+  }
+
+  public int getGroupStatisticsFlags() {
+    return m_groupStatisticsFlags;
+  }
+
+  /**
+   * 更新粒子休眠状态，在 solve 的最后调用。
+   * 休眠粒子被冻结：不受重力，相互之间不产生接触，每步结束时速度归零，对运动粒子而言相当于静止的障碍。
+   * 接触的运动粒子速度超过唤醒阈值（休眠阈值的 SLEEP_WAKE_VELOCITY_RATIO 倍）、
+   * 接触的刚体在接触点的速度超过唤醒阈值，或力场加速度足够大（见 applyGravityAndForceFields）时唤醒；
+   * 支撑它的粒子被销毁或重生、支撑它的刚体被销毁时也会唤醒（见 wakeNeighborsOfRemovedParticles）。
+   * 只有接触的运动粒子也都静止足够久的粒子才会进入休眠，避免先静止的粒子被仍在运动的邻居反复唤醒。刚体粒子组和弹道粒子不会休眠。
+   * 静止在刚体上的粒子每步结束时的速度约为抵消下一步重力的 -gravity，
+   * 所以判断速度时先加上本步的重力增量，得到下一步实际用于积分的速度。
+   * @param step 时间步
+   * @param gravityx 本步的重力速度增量 x 分量
+   * @param gravityy 本步的重力速度增量 y 分量
+   */
+  private void updateSleep(TimeStep step, float gravityx, float gravityy) {
+    final int[] flags = m_flagsBuffer.data;
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
+    final float[] timers = m_sleepTimerBuffer;
+    final float sleepVelocitySquared = m_sleepVelocity * m_sleepVelocity;
+    final float wakeVelocity = SLEEP_WAKE_VELOCITY_RATIO * m_sleepVelocity;
+    final float wakeVelocitySquared = wakeVelocity * wakeVelocity;
+    // 唤醒被运动粒子或运动刚体扰动的休眠粒子，唤醒的粒子保留本步求解得到的速度
+    if ((m_allParticleFlags & ParticleType.b2_sleepingParticle) != 0) {
+      for (int k = 0; k < m_contactCount; k++) {
+        final ParticleContact contact = m_contactBuffer[k];
+        final int a = contact.indexA;
+        final int b = contact.indexB;
+        final int sleepingA = flags[a] & ParticleType.b2_sleepingParticle;
+        if (sleepingA == (flags[b] & ParticleType.b2_sleepingParticle)) {
+          continue;
+        }
+        final int moving = sleepingA != 0 ? b : a;
+        final float vx = velX[moving] + gravityx;
+        final float vy = velY[moving] + gravityy;
+        if (vx * vx + vy * vy > wakeVelocitySquared) {
+          final int sleeping = sleepingA != 0 ? a : b;
+          flags[sleeping] &= ~ParticleType.b2_sleepingParticle;
+          timers[sleeping] = 0;
+        }
+      }
+      for (int k = 0; k < m_bodyContactCount; k++) {
+        final ParticleBodyContact contact = m_bodyContactBuffer[k];
+        final int a = contact.index;
+        if ((flags[a] & ParticleType.b2_sleepingParticle) == 0) {
+          continue;
+        }
+        final Body b = contact.body;
+        // 刚体在接触点的速度，静态刚体为零
+        final float tempX = posX[a] - b.m_sweep.c.x;
+        final float tempY = posY[a] - b.m_sweep.c.y;
+        final float vx = -b.m_angularVelocity * tempY + b.m_linearVelocity.x;
+        final float vy = b.m_angularVelocity * tempX + b.m_linearVelocity.y;
+        if (vx * vx + vy * vy > wakeVelocitySquared) {
+          flags[a] &= ~ParticleType.b2_sleepingParticle;
+          timers[a] = 0;
+        }
+      }
+    }
+    // 冻结休眠粒子，累计运动粒子的低速时间
+    final float dt = step.dt;
+    for (int i = 0; i < m_count; i++) {
+      final int f = flags[i];
+      if ((f & ParticleType.b2_sleepingParticle) != 0) {
+        velX[i] = 0;
+        velY[i] = 0;
+        continue;
+      }
+      final ParticleGroup group = m_groupBuffer[i];
+      final float vx = velX[i] + gravityx;
+      final float vy = velY[i] + gravityy;
+      if ((f & ParticleType.b2_ballisticParticle) == 0
+          && (group == null || (group.m_groupFlags & ParticleGroupType.b2_rigidParticleGroup) == 0)
+          && vx * vx + vy * vy < sleepVelocitySquared) {
+        timers[i] += dt;
+      } else {
+        timers[i] = 0;
+      }
+    }
+    // 与低速时间不足的运动粒子相邻的粒子不能休眠，标记记录在临时累积缓冲区中
+    final float sleepTime = m_sleepTime;
+    final float[] blocked = m_accumulationBuffer;
+    Arrays.fill(blocked, 0, m_count, 0);
+    for (int k = 0; k < m_contactCount; k++) {
+      final ParticleContact contact = m_contactBuffer[k];
+      final int a = contact.indexA;
+      final int b = contact.indexB;
+      if (((flags[a] | flags[b]) & ParticleType.b2_sleepingParticle) == 0) {
+        if (timers[a] < sleepTime) {
+          blocked[b] = 1;
+        }
+        if (timers[b] < sleepTime) {
+          blocked[a] = 1;
+        }
+      }
+    }
+    // 低速时间足够长且没有被邻居阻止的粒子进入休眠
+    for (int i = 0; i < m_count; i++) {
+      if ((flags[i] & ParticleType.b2_sleepingParticle) == 0 && timers[i] >= sleepTime
+          && blocked[i] == 0) {
+        flags[i] |= ParticleType.b2_sleepingParticle;
+        velX[i] = 0;
+        velY[i] = 0;
+        m_allParticleFlags |= ParticleType.b2_sleepingParticle;
+      }
+    }
+  }
+
+  /**
+   * 设置粒子休眠的速度阈值。速度持续低于阈值达到休眠时间、且相邻粒子也都静止的粒子进入休眠，
+   * 休眠粒子不再受重力、不与其他休眠粒子产生接触，直到被运动的粒子、刚体或力场唤醒。
+   * 没有接触运动粒子的休眠粒子不扫描邻居，也不与静态刚体做射线投射，每步只剩几次线性遍历。
+   * 休眠期间直接修改粒子速度不会生效，需要先调用 {@link #wakeParticles()}。
+   * @param sleepVelocity 速度阈值，小于等于 0 表示不启用休眠（默认），并唤醒所有粒子
+   */
+  public void setSleepVelocity(float sleepVelocity) {
+    if (sleepVelocity <= 0) {
+      wakeParticles();
+      m_sleepVelocity = 0;
+      return;
+    }
+    if (m_sleepTimerBuffer == null) {
+      m_sleepTimerBuffer = new float[m_internalAllocatedCapacity];
+    }
+    m_sleepVelocity = sleepVelocity;
+  }
+
+  public float getSleepVelocity() {
+    return m_sleepVelocity;
+  }
+
+  /**
+   * 设置粒子进入休眠前需要持续低速的时间。
+   * @param sleepTime 时间（秒）
+   */
+  public void setSleepTime(float sleepTime) {
+    m_sleepTime = sleepTime;
+  }
+
+  public float getSleepTime() {
+    return m_sleepTime;
+  }
+
+  /**
+   * 唤醒所有休眠的粒子，例如在直接修改粒子速度或位置之前。
+   */
+  public void wakeParticles() {
+    final int[] flags = m_flagsBuffer.data;
+    for (int i = 0; i < m_count; i++) {
+      flags[i] &= ~ParticleType.b2_sleepingParticle;
+    }
+    m_allParticleFlags &= ~ParticleType.b2_sleepingParticle;
+    if (m_sleepTimerBuffer != null) {
+      Arrays.fill(m_sleepTimerBuffer, 0, m_count, 0);
+    }
   }
 
   /**
-   * 执行粒子系统的一个时间步模拟。
-   * 包含多个解决阶段，例如僵尸粒子清理、重力应用、碰撞解决、各种力学效果计算等。
-   * @param step 时间步长信息
+   * 唤醒与刚体接触的休眠粒子，在刚体被销毁前调用，否则静止在刚体上的粒子失去支撑后仍悬停在原地。
+   * 更上层的休眠粒子会在下面的粒子开始下落后被逐层唤醒。
+   * @param body 即将被销毁的刚体
    */
-  public void solve(TimeStep step) {
-    ++m_timestamp; // 更新时间戳
-    if (m_count == 0) {
-      return; // 没有粒子，直接返回
+  public void wakeParticlesTouchingBody(Body body) {
+    if ((m_allParticleFlags & ParticleType.b2_sleepingParticle) == 0) {
+      return;
     }
-    // 收集所有粒子的标志
-    m_allParticleFlags = 0;
-    for (int i = 0; i < m_count; i++) {
-      m_allParticleFlags |= m_flagsBuffer.data[i];
+    final int[] flags = m_flagsBuffer.data;
+    for (int k = 0; k < m_bodyContactCount; k++) {
+      final ParticleBodyContact contact = m_bodyContactBuffer[k];
+      if (contact.body == body) {
+        wakeParticle(flags, contact.index);
+      }
     }
-    // 如果存在僵尸粒子，则进行清理
-    if ((m_allParticleFlags & ParticleType.b2_zombieParticle) != 0) {
-      solveZombie();
+  }
+
+  /**
+   * 唤醒支撑在即将被移除或移走的粒子上的休眠粒子。休眠粒子不受重力，彼此之间也没有接触，
+   * 不唤醒的话它们在支撑消失后会冻结在半空中。先遍历上一步的接触唤醒被移除粒子的接触对象；
+   * 休眠粒子之间没有接触，所以对休眠的被移除粒子再用空间哈希查找一个直径内的邻居。
+   * 被移除的粒子是 [first, last) 内的粒子以及带有 removedFlags 中任一标志的粒子。
+   * 必须在移除或移动粒子之前调用，此时接触和代理仍对应当前的粒子索引。
+   */
+  private void wakeNeighborsOfRemovedParticles(int first, int last, int removedFlags) {
+    if ((m_allParticleFlags & ParticleType.b2_sleepingParticle) == 0) {
+      return;
     }
-    if (m_count == 0) {
-      return; // 清理后可能没有粒子了
+    final int[] flags = m_flagsBuffer.data;
+    for (int k = 0; k < m_contactCount; k++) {
+      final ParticleContact contact = m_contactBuffer[k];
+      final int a = contact.indexA;
+      final int b = contact.indexB;
+      final boolean removedA = (first <= a && a < last) || (flags[a] & removedFlags) != 0;
+      final boolean removedB = (first <= b && b < last) || (flags[b] & removedFlags) != 0;
+      if (removedA != removedB) {
+        wakeParticle(flags, removedA ? b : a);
+      }
     }
-    // 收集所有粒子组的标志
-    m_allGroupFlags = 0;
-    for (ParticleGroup group = m_groupList; group != null; group = group.getNext()) {
-      m_allGroupFlags |= group.m_groupFlags;
+    if (m_proxyCount == 0) {
+      return;
     }
-    // 应用重力
-    final float gravityx = step.dt * m_gravityScale * m_world.getGravity().x;
-    final float gravityy = step.dt * m_gravityScale * m_world.getGravity().y;
-    float criticalVelocytySquared = getCriticalVelocitySquared(step); // 临界速度平方
-    for (int i = 0; i < m_count; i++) {
-      Vec2 v = m_velocityBuffer.data[i];
-      v.x += gravityx;
-      v.y += gravityy;
-      float v2 = v.x * v.x + v.y * v.y;
-      // 限制粒子速度不超过临界速度
-      if (v2 > criticalVelocytySquared) {
-        float a = v2 == 0 ? Float.MAX_VALUE : MathUtils.sqrt(criticalVelocytySquared / v2);
-        v.x *= a;
-        v.y *= a;
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    final int start = removedFlags != 0 ? 0 : first;
+    final int end = removedFlags != 0 ? m_count : last;
+    final ProxyRowRanges ranges = acquireQueryRanges();
+    for (int i = start; i < end; i++) {
+      final int f = flags[i];
+      if ((f & ParticleType.b2_sleepingParticle) == 0
+          || !((first <= i && i < last) || (f & removedFlags) != 0)) {
+        continue;
+      }
+      final float x = posX[i];
+      final float y = posY[i];
+      // 邻居在一个直径内，代理标签在上一次更新接触时计算，再向外扩展一个格子
+      ranges.reset(m_proxyTags, m_proxyCount, m_inverseDiameter * x - 2, m_inverseDiameter * y - 2,
+          m_inverseDiameter * x + 2, m_inverseDiameter * y + 2);
+      while (ranges.next()) {
+        for (int proxy = ranges.first; proxy < ranges.last; ++proxy) {
+          final int j = m_proxyIndices[proxy];
+          if ((flags[j] & ParticleType.b2_sleepingParticle) == 0 || (first <= j && j < last)
+              || (flags[j] & removedFlags) != 0) {
+            continue;
+          }
+          final float dx = posX[j] - x;
+          final float dy = posY[j] - y;
+          if (dx * dx + dy * dy < m_squaredDiameter) {
+            wakeParticle(flags, j);
+          }
+        }
       }
     }
-    // 解决碰撞
-    solveCollision(step);
-    // 解决刚体粒子组（如果存在）
-    if ((m_allGroupFlags & ParticleGroupType.b2_rigidParticleGroup) != 0) {
-      solveRigid(step);
+    m_queryRanges = ranges;
+  }
+
+  private void wakeParticle(int[] flags, int index) {
+    flags[index] &= ~ParticleType.b2_sleepingParticle;
+    if (m_sleepTimerBuffer != null) {
+      m_sleepTimerBuffer[index] = 0;
     }
-    // 解决壁粒子（如果存在）
-    if ((m_allParticleFlags & ParticleType.b2_wallParticle) != 0) {
-      solveWall(step);
+  }
+
+  /**
+   * 对粒子接触进行贪心图着色。
+   * 按接触顺序为每个接触分配其两个粒子都未占用的最小颜色，同一颜色内的接触互不共享粒子，
+   * 压力可以按颜色逐组并行求解而无需加锁；颜色用尽的接触放入最后的溢出组单线程求解。
+   * 只有在多线程模式且接触数足够多时才着色，否则把 m_contactColorCount 置 0，走单线程路径。
+   */
+  void colorContacts() {
+    m_contactColorCount = 0;
+    if (m_threadPool == null || m_contactCount < 2 * MIN_CONTACTS_PER_SOLVE_BAND) {
+      return;
     }
-    // 更新粒子位置
-    for (int i = 0; i < m_count; i++) {
-      Vec2 pos = m_positionBuffer.data[i];
-      Vec2 vel = m_velocityBuffer.data[i];
-      pos.x += step.dt * vel.x;
-      pos.y += step.dt * vel.y;
+    if (m_particleColorMasks == null || m_particleColorMasks.length < m_count) {
+      m_particleColorMasks = new long[m_internalAllocatedCapacity];
+      m_reallocationCount++;
     }
-    updateBodyContacts(); // 更新粒子-刚体接触
-    updateContacts(false); // 更新粒子间接触（不排除僵尸粒子，因为清理已完成）
-    // 解决各种粒子效应
-    if ((m_allParticleFlags & ParticleType.b2_viscousParticle) != 0) {
-      solveViscous(step);
+    if (m_contactColors == null || m_contactColors.length < m_contactCount) {
+      m_contactColors = new int[m_contactCapacity];
+      m_contactColorOrder = new int[m_contactCapacity];
+      m_reallocationCount++;
     }
-    if ((m_allParticleFlags & ParticleType.b2_powderParticle) != 0) {
-      solvePowder(step);
+    final long[] masks = m_particleColorMasks;
+    final int[] colors = m_contactColors;
+    final int[] colorStart = m_contactColorStart;
+    Arrays.fill(masks, 0, m_count, 0);
+    Arrays.fill(colorStart, 0);
+    int colorCount = 0;
+    for (int k = 0; k < m_contactCount; k++) {
+      final ParticleContact contact = m_contactBuffer[k];
+      final int a = contact.indexA;
+      final int b = contact.indexB;
+      int color = Long.numberOfTrailingZeros(~(masks[a] | masks[b])); // 两个粒子都未占用的最小颜色
+      if (color < MAX_CONTACT_COLORS) {
+        final long bit = 1L << color;
+        masks[a] |= bit;
+        masks[b] |= bit;
+      }
+      colors[k] = color;
+      colorStart[color + 1]++;
+      if (color >= colorCount) {
+        colorCount = color + 1;
+      }
     }
-    if ((m_allParticleFlags & ParticleType.b2_tensileParticle) != 0) {
-      solveTensile(step);
+    // 计数排序：先求每个颜色的起始位置，再按接触顺序稳定地放入各组
+    for (int c = 0; c < colorCount; c++) {
+      colorStart[c + 1] += colorStart[c];
     }
-    if ((m_allParticleFlags & ParticleType.b2_elasticParticle) != 0) {
-      solveElastic(step);
+    final int[] order = m_contactColorOrder;
+    for (int k = 0; k < m_contactCount; k++) {
+      order[colorStart[colors[k]]++] = k;
     }
-    if ((m_allParticleFlags & ParticleType.b2_springParticle) != 0) {
-      solveSpring(step);
+    for (int c = colorCount; c > 0; c--) {
+      colorStart[c] = colorStart[c - 1];
     }
-    if ((m_allGroupFlags & ParticleGroupType.b2_solidParticleGroup) != 0) {
-      solveSolid(step);
+    colorStart[0] = 0;
+    m_contactColorCount = colorCount;
+  }
+
+  /**
+   * 按颜色逐组求解接触。
+   * 每个颜色内的接触均分为若干分段在线程池中并行执行，颜色之间按顺序执行；溢出组单线程执行。
+   * @param kernel 接触核函数
+   * @param coefficient 核函数的系数
+   */
+  private void solveContactsByColor(int kernel, float coefficient) {
+    final int[] colorStart = m_contactColorStart;
+    for (int c = 0; c < m_contactColorCount; c++) {
+      final int first = colorStart[c];
+      final int last = colorStart[c + 1];
+      final int bandCount =
+          c == MAX_CONTACT_COLORS ? 1 : Math.min(m_threadCount, (last - first)
+              / MIN_CONTACTS_PER_SOLVE_BAND);
+      if (bandCount <= 1) {
+        solveContacts(kernel, coefficient, first, last);
+        continue;
+      }
+      final SolveBand[] bands = m_solveBands;
+      for (int b = 0; b < bandCount; b++) {
+        SolveBand band = bands[b];
+        band.kernel = kernel;
+        band.coefficient = coefficient;
+        band.first = first + (int) ((long) (last - first) * b / bandCount);
+        band.last = first + (int) ((long) (last - first) * (b + 1) / bandCount);
+        band.reinitialize();
+      }
+      m_bandsTask.bands = bands;
+      m_bandsTask.bandCount = bandCount;
+      m_bandsTask.reinitialize();
+      m_threadPool.invoke(m_bandsTask);
     }
-    if ((m_allParticleFlags & ParticleType.b2_colorMixingParticle) != 0) {
-      solveColorMixing(step);
+  }
+
+  /**
+   * 对着色后排列在 [first, last) 的接触执行核函数。
+   * 同一颜色内的接触不共享粒子，因此不同分段可以同时调用。
+   * @param kernel 接触核函数
+   * @param coefficient 核函数的系数（压力为 velocityPerPressure）
+   * @param first 起始位置
+   * @param last 结束位置（不含）
+   */
+  void solveContacts(int kernel, float coefficient, int first, int last) {
+    final int[] order = m_contactColorOrder;
+    final float[] accumulation = m_accumulationBuffer;
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
+    switch (kernel) {
+      case KERNEL_ACCUMULATE_WEIGHT:
+        for (int k = first; k < last; k++) {
+          final ParticleContact contact = m_contactBuffer[order[k]];
+          float w = contact.weight;
+          accumulation[contact.indexA] += w;
+          accumulation[contact.indexB] += w;
+        }
+        break;
+      case KERNEL_PRESSURE:
+        for (int k = first; k < last; k++) {
+          final ParticleContact contact = m_contactBuffer[order[k]];
+          int a = contact.indexA;
+          int b = contact.indexB;
+          float w = contact.weight;
+          Vec2 n = contact.normal;
+          float h = accumulation[a] + accumulation[b];
+          final float fx = coefficient * w * h * n.x;
+          final float fy = coefficient * w * h * n.y;
+          velX[a] -= fx;
+          velY[a] -= fy;
+          velX[b] += fx;
+          velY[b] += fy;
+        }
+        break;
+      default:
+        assert (false);
     }
-    solvePressure(step); // 解决压力
-    solveDamping(step); // 解决阻尼
   }
 
   /**
@@ -923,13 +3071,17 @@ public class ParticleSystem {
       float w = contact.weight;
       m_accumulationBuffer[a] += w;
     }
-    for (int k = 0; k < m_contactCount; k++) {
-      ParticleContact contact = m_contactBuffer[k];
-      int a = contact.indexA;
-      int b = contact.indexB;
-      float w = contact.weight;
-      m_accumulationBuffer[a] += w;
-      m_accumulationBuffer[b] += w;
+    if (m_contactColorCount > 0) {
+      solveContactsByColor(KERNEL_ACCUMULATE_WEIGHT, 0);
+    } else {
+      for (int k = 0; k < m_contactCount; k++) {
+        ParticleContact contact = m_contactBuffer[k];
+        int a = contact.indexA;
+        int b = contact.indexB;
+        float w = contact.weight;
+        m_accumulationBuffer[a] += w;
+        m_accumulationBuffer[b] += w;
+      }
     }
     // 2. 忽略粉末粒子（不产生压力）
     if ((m_allParticleFlags & k_noPressureFlags) != 0) {
@@ -952,6 +3104,8 @@ public class ParticleSystem {
     }
     // 4. 应用粒子-刚体接触之间的压力
     float velocityPerPressure = step.dt / (m_density * m_particleDiameter);
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
     for (int k = 0; k < m_bodyContactCount; k++) {
       ParticleBodyContact contact = m_bodyContactBuffer[k];
       int a = contact.index;
@@ -959,19 +3113,24 @@ public class ParticleSystem {
       float w = contact.weight;
       float m = contact.mass;
       Vec2 n = contact.normal;
-      Vec2 p = m_positionBuffer.data[a];
+      final Vec2 p = tempVec2;
+      p.x = m_positionBuffer.x[a];
+      p.y = m_positionBuffer.y[a];
       float h = m_accumulationBuffer[a] + pressurePerWeight * w; // 考虑粒子自身和接触点的压力
       final Vec2 f = tempVec;
       final float coef = velocityPerPressure * w * m * h;
       f.x = coef * n.x;
       f.y = coef * n.y; // 压力产生的力
-      final Vec2 velData = m_velocityBuffer.data[a];
       final float particleInvMass = getParticleInvMass();
-      velData.x -= particleInvMass * f.x; // 粒子受力反向
-      velData.y -= particleInvMass * f.y;
+      velX[a] -= particleInvMass * f.x; // 粒子受力反向
+      velY[a] -= particleInvMass * f.y;
       b.applyLinearImpulse(f, p, true); // 刚体受力
     }
     // 5. 应用粒子-粒子接触之间的压力
+    if (m_contactColorCount > 0) {
+      solveContactsByColor(KERNEL_PRESSURE, velocityPerPressure);
+      return;
+    }
     for (int k = 0; k < m_contactCount; k++) {
       ParticleContact contact = m_contactBuffer[k];
       int a = contact.indexA;
@@ -981,12 +3140,10 @@ public class ParticleSystem {
       float h = m_accumulationBuffer[a] + m_accumulationBuffer[b]; // 两个粒子压力的和
       final float fx = velocityPerPressure * w * h * n.x;
       final float fy = velocityPerPressure * w * h * n.y; // 压力产生的力
-      final Vec2 velDataA = m_velocityBuffer.data[a];
-      final Vec2 velDataB = m_velocityBuffer.data[b];
-      velDataA.x -= fx; // 粒子A受力反向
-      velDataA.y -= fy;
-      velDataB.x += fx; // 粒子B受力正向
-      velDataB.y += fy;
+      velX[a] -= fx; // 粒子A受力反向
+      velY[a] -= fy;
+      velX[b] += fx; // 粒子B受力正向
+      velY[b] += fy;
     }
   }
 
@@ -997,6 +3154,8 @@ public class ParticleSystem {
    */
   void solveDamping(TimeStep step) {
     float damping = m_dampingStrength; // 阻尼强度
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
     // 1. 粒子-刚体接触的阻尼
     for (int k = 0; k < m_bodyContactCount; k++) {
       final ParticleBodyContact contact = m_bodyContactBuffer[k];
@@ -1005,13 +3164,14 @@ public class ParticleSystem {
       float w = contact.weight;
       float m = contact.mass;
       Vec2 n = contact.normal;
-      Vec2 p = m_positionBuffer.data[a];
+      final Vec2 p = tempVec2;
+      p.x = m_positionBuffer.x[a];
+      p.y = m_positionBuffer.y[a];
       final float tempX = p.x - b.m_sweep.c.x;
       final float tempY = p.y - b.m_sweep.c.y;
-      final Vec2 velA = m_velocityBuffer.data[a];
       // 计算粒子相对于刚体接触点的速度
-      float vx = -b.m_angularVelocity * tempY + b.m_linearVelocity.x - velA.x;
-      float vy = b.m_angularVelocity * tempX + b.m_linearVelocity.y - velA.y;
+      float vx = -b.m_angularVelocity * tempY + b.m_linearVelocity.x - velX[a];
+      float vy = b.m_angularVelocity * tempX + b.m_linearVelocity.y - velY[a];
       // 计算法向速度
       float vn = vx * n.x + vy * n.y;
       if (vn < 0) { // 如果法向速度指向内（正在接近）
@@ -1019,32 +3179,31 @@ public class ParticleSystem {
         f.x = damping * w * m * vn * n.x;
         f.y = damping * w * m * vn * n.y; // 阻尼力
         final float invMass = getParticleInvMass();
-        velA.x += invMass * f.x; // 粒子受力
-        velA.y += invMass * f.y;
+        velX[a] += invMass * f.x; // 粒子受力
+        velY[a] += invMass * f.y;
         f.x = -f.x;
         f.y = -f.y;
         b.applyLinearImpulse(f, p, true); // 刚体受反向力
       }
     }
     // 2. 粒子-粒子接触的阻尼
+    // 每个接触读取前面接触更新过的速度，结果依赖接触顺序，因此即使开启多线程也按接触顺序单线程求解
     for (int k = 0; k < m_contactCount; k++) {
       final ParticleContact contact = m_contactBuffer[k];
       int a = contact.indexA;
       int b = contact.indexB;
       float w = contact.weight;
       Vec2 n = contact.normal;
-      final Vec2 velA = m_velocityBuffer.data[a];
-      final Vec2 velB = m_velocityBuffer.data[b];
-      final float vx = velB.x - velA.x; // 相对速度
-      final float vy = velB.y - velA.y;
+      final float vx = velX[b] - velX[a]; // 相对速度
+      final float vy = velY[b] - velY[a];
       float vn = vx * n.x + vy * n.y; // 法向相对速度
       if (vn < 0) { // 如果法向速度指向内
         float fx = damping * w * vn * n.x;
         float fy = damping * w * vn * n.y; // 阻尼力
-        velA.x += fx; // 粒子A受力
-        velA.y += fy;
-        velB.x -= fx; // 粒子B受反向力
-        velB.y -= fy;
+        velX[a] += fx; // 粒子A受力
+        velY[a] += fy;
+        velX[b] -= fx; // 粒子B受反向力
+        velY[b] -= fy;
       }
     }
   }
@@ -1057,9 +3216,8 @@ public class ParticleSystem {
   public void solveWall(TimeStep step) {
     for (int i = 0; i < m_count; i++) {
       if ((m_flagsBuffer.data[i] & ParticleType.b2_wallParticle) != 0) {
-        final Vec2 r = m_velocityBuffer.data[i];
-        r.x = 0.0f; // 速度设为0
-        r.y = 0.0f;
+        m_velocityBuffer.x[i] = 0.0f; // 速度设为0
+        m_velocityBuffer.y[i] = 0.0f;
       }
     }
   }
@@ -1094,9 +3252,13 @@ public class ParticleSystem {
         velocityTransform.q.s = step.inv_dt * tempXf.q.s;
         velocityTransform.q.c = step.inv_dt * (tempXf.q.c - 1);
         // 将速度变换应用到组内每个粒子的位置，从而得到其速度
+        final Rot q = velocityTransform.q;
+        final Vec2 t = velocityTransform.p;
         for (int i = group.m_firstIndex; i < group.m_lastIndex; i++) {
-          Transform.mulToOutUnsafe(velocityTransform, m_positionBuffer.data[i],
-              m_velocityBuffer.data[i]);
+          final float px = m_positionBuffer.x[i];
+          final float py = m_positionBuffer.y[i];
+          m_velocityBuffer.x[i] = (q.c * px - q.s * py) + t.x;
+          m_velocityBuffer.y[i] = (q.s * px + q.c * py) + t.y;
         }
       }
     }
@@ -1109,6 +3271,10 @@ public class ParticleSystem {
    */
   void solveElastic(final TimeStep step) {
     float elasticStrength = step.inv_dt * m_elasticStrength; // 弹性强度
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
     for (int k = 0; k < m_triadCount; k++) {
       final Triad triad = m_triadBuffer[k];
       if ((triad.flags & ParticleType.b2_elasticParticle) != 0) {
@@ -1118,14 +3284,14 @@ public class ParticleSystem {
         final Vec2 oa = triad.pa; // 原始相对位置A
         final Vec2 ob = triad.pb; // 原始相对位置B
         final Vec2 oc = triad.pc; // 原始相对位置C
-        final Vec2 pa = m_positionBuffer.data[a];
-        final Vec2 pb = m_positionBuffer.data[b];
-        final Vec2 pc = m_positionBuffer.data[c];
-        final float px = 1f / 3 * (pa.x + pb.x + pc.x); // 当前三元组的质心
-        final float py = 1f / 3 * (pa.y + pb.y + pc.y);
+        final float pax = posX[a], pay = posY[a];
+        final float pbx = posX[b], pby = posY[b];
+        final float pcx = posX[c], pcy = posY[c];
+        final float px = 1f / 3 * (pax + pbx + pcx); // 当前三元组的质心
+        final float py = 1f / 3 * (pay + pby + pcy);
         // 计算当前构型相对于原始构型的旋转
-        float rs = Vec2.cross(oa, pa) + Vec2.cross(ob, pb) + Vec2.cross(oc, pc);
-        float rc = Vec2.dot(oa, pa) + Vec2.dot(ob, pb) + Vec2.dot(oc, pc);
+        float rs = (oa.x * pay - oa.y * pax) + (ob.x * pby - ob.y * pbx) + (oc.x * pcy - oc.y * pcx);
+        float rc = (oa.x * pax + oa.y * pay) + (ob.x * pbx + ob.y * pby) + (oc.x * pcx + oc.y * pcy);
         float r2 = rs * rs + rc * rc;
         float invR = r2 == 0 ? Float.MAX_VALUE : MathUtils.sqrt(1f / r2);
         rs *= invR;
@@ -1138,16 +3304,13 @@ public class ParticleSystem {
         final float roby = rs * ob.x + rc * ob.y;
         final float rocx = rc * oc.x - rs * oc.y;
         final float rocy = rs * oc.x + rc * oc.y;
-        final Vec2 va = m_velocityBuffer.data[a];
-        final Vec2 vb = m_velocityBuffer.data[b];
-        final Vec2 vc = m_velocityBuffer.data[c];
         // 应用弹性力，将粒子速度向理想位置调整
-        va.x += strength * (roax - (pa.x - px));
-        va.y += strength * (roay - (pa.y - py));
-        vb.x += strength * (robx - (pb.x - px));
-        vb.y += strength * (roby - (pb.y - py));
-        vc.x += strength * (rocx - (pc.x - px));
-        vc.y += strength * (rocy - (pc.y - py));
+        velX[a] += strength * (roax - (pax - px));
+        velY[a] += strength * (roay - (pay - py));
+        velX[b] += strength * (robx - (pbx - px));
+        velY[b] += strength * (roby - (pby - py));
+        velX[c] += strength * (rocx - (pcx - px));
+        velY[c] += strength * (rocy - (pcy - py));
       }
     }
   }
@@ -1159,27 +3322,27 @@ public class ParticleSystem {
    */
   void solveSpring(final TimeStep step) {
     float springStrength = step.inv_dt * m_springStrength; // 弹簧强度
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
     for (int k = 0; k < m_pairCount; k++) {
       final Pair pair = m_pairBuffer[k];
       if ((pair.flags & ParticleType.b2_springParticle) != 0) {
         int a = pair.indexA;
         int b = pair.indexB;
-        final Vec2 pa = m_positionBuffer.data[a];
-        final Vec2 pb = m_positionBuffer.data[b];
-        final float dx = pb.x - pa.x;
-        final float dy = pb.y - pa.y;
+        final float dx = posX[b] - posX[a];
+        final float dy = posY[b] - posY[a];
         float r0 = pair.distance; // 原始距离
         float r1 = MathUtils.sqrt(dx * dx + dy * dy); // 当前距离
         if (r1 == 0) r1 = Float.MAX_VALUE; // 避免除以零
         float strength = springStrength * pair.strength; // 弹簧强度
         final float fx = strength * (r0 - r1) / r1 * dx; // 弹簧力 (胡克定律)
         final float fy = strength * (r0 - r1) / r1 * dy;
-        final Vec2 va = m_velocityBuffer.data[a];
-        final Vec2 vb = m_velocityBuffer.data[b];
-        va.x -= fx; // 粒子A受力
-        va.y -= fy;
-        vb.x += fx; // 粒子B受反向力
-        vb.y += fy;
+        velX[a] -= fx; // 粒子A受力
+        velY[a] -= fy;
+        velX[b] += fx; // 粒子B受反向力
+        velY[b] += fy;
       }
     }
   }
@@ -1233,12 +3396,10 @@ public class ParticleSystem {
         float fn = (strengthA * (h - 2) + strengthB * (sx * n.x + sy * n.y)) * w;
         final float fx = fn * n.x;
         final float fy = fn * n.y;
-        final Vec2 va = m_velocityBuffer.data[a];
-        final Vec2 vb = m_velocityBuffer.data[b];
-        va.x -= fx; // 粒子A受力
-        va.y -= fy;
-        vb.x += fx; // 粒子B受反向力
-        vb.y += fy;
+        m_velocityBuffer.x[a] -= fx; // 粒子A受力
+        m_velocityBuffer.y[a] -= fy;
+        m_velocityBuffer.x[b] += fx; // 粒子B受反向力
+        m_velocityBuffer.y[b] += fy;
       }
     }
   }
@@ -1250,6 +3411,8 @@ public class ParticleSystem {
    */
   void solveViscous(final TimeStep step) {
     float viscousStrength = m_viscousStrength; // 粘性强度
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
     // 1. 粒子-刚体接触的粘性
     for (int k = 0; k < m_bodyContactCount; k++) {
       final ParticleBodyContact contact = m_bodyContactBuffer[k];
@@ -1258,19 +3421,20 @@ public class ParticleSystem {
         Body b = contact.body;
         float w = contact.weight;
         float m = contact.mass;
-        Vec2 p = m_positionBuffer.data[a];
-        final Vec2 va = m_velocityBuffer.data[a];
+        final Vec2 p = tempVec2;
+        p.x = m_positionBuffer.x[a];
+        p.y = m_positionBuffer.y[a];
         final float tempX = p.x - b.m_sweep.c.x;
         final float tempY = p.y - b.m_sweep.c.y;
         // 计算粒子相对于刚体接触点的相对速度
-        final float vx = -b.m_angularVelocity * tempY + b.m_linearVelocity.x - va.x;
-        final float vy = b.m_angularVelocity * tempX + b.m_linearVelocity.y - va.y;
+        final float vx = -b.m_angularVelocity * tempY + b.m_linearVelocity.x - velX[a];
+        final float vy = b.m_angularVelocity * tempX + b.m_linearVelocity.y - velY[a];
         final Vec2 f = tempVec;
         final float pInvMass = getParticleInvMass();
         f.x = viscousStrength * m * w * vx;
         f.y = viscousStrength * m * w * vy; // 粘性力
-        va.x += pInvMass * f.x; // 粒子受力
-        va.y += pInvMass * f.y;
+        velX[a] += pInvMass * f.x; // 粒子受力
+        velY[a] += pInvMass * f.y;
         f.x = -f.x;
         f.y = -f.y;
         b.applyLinearImpulse(f, p, true); // 刚体受反向力
@@ -1283,16 +3447,14 @@ public class ParticleSystem {
         int a = contact.indexA;
         int b = contact.indexB;
         float w = contact.weight;
-        final Vec2 va = m_velocityBuffer.data[a];
-        final Vec2 vb = m_velocityBuffer.data[b];
-        final float vx = vb.x - va.x; // 相对速度
-        final float vy = vb.y - va.y;
+        final float vx = velX[b] - velX[a]; // 相对速度
+        final float vy = velY[b] - velY[a];
         final float fx = viscousStrength * w * vx;
         final float fy = viscousStrength * w * vy; // 粘性力
-        va.x += fx; // 粒子A受力
-        va.y += fy;
-        vb.x -= fx; // 粒子B受反向力
-        vb.y -= fy;
+        velX[a] += fx; // 粒子A受力
+        velY[a] += fy;
+        velX[b] -= fx; // 粒子B受反向力
+        velY[b] -= fy;
       }
     }
   }
@@ -1314,16 +3476,17 @@ public class ParticleSystem {
         if (w > minWeight) { // 如果接触权重超过阈值
           Body b = contact.body;
           float m = contact.mass;
-          Vec2 p = m_positionBuffer.data[a];
+          final Vec2 p = tempVec2;
+          p.x = m_positionBuffer.x[a];
+          p.y = m_positionBuffer.y[a];
           Vec2 n = contact.normal;
           final Vec2 f = tempVec;
-          final Vec2 va = m_velocityBuffer.data[a];
           final float inter = powderStrength * m * (w - minWeight); // 排斥力强度
           final float pInvMass = getParticleInvMass();
           f.x = inter * n.x;
           f.y = inter * n.y; // 排斥力
-          va.x -= pInvMass * f.x; // 粒子受力反向
-          va.y -= pInvMass * f.y;
+          m_velocityBuffer.x[a] -= pInvMass * f.x; // 粒子受力反向
+          m_velocityBuffer.y[a] -= pInvMass * f.y;
           b.applyLinearImpulse(f, p, true); // 刚体受力
         }
       }
@@ -1337,15 +3500,13 @@ public class ParticleSystem {
           int a = contact.indexA;
           int b = contact.indexB;
           Vec2 n = contact.normal;
-          final Vec2 va = m_velocityBuffer.data[a];
-          final Vec2 vb = m_velocityBuffer.data[b];
           final float inter = powderStrength * (w - minWeight); // 排斥力强度
           final float fx = inter * n.x;
           final float fy = inter * n.y;
-          va.x -= fx; // 粒子A受力反向
-          va.y -= fy;
-          vb.x += fx; // 粒子B受力正向
-          vb.y += fy;
+          m_velocityBuffer.x[a] -= fx; // 粒子A受力反向
+          m_velocityBuffer.y[a] -= fy;
+          m_velocityBuffer.x[b] += fx; // 粒子B受力正向
+          m_velocityBuffer.y[b] += fy;
         }
       }
     }
@@ -1368,15 +3529,13 @@ public class ParticleSystem {
         float w = contact.weight;
         Vec2 n = contact.normal;
         float h = m_depthBuffer[a] + m_depthBuffer[b]; // 两个粒子的深度和
-        final Vec2 va = m_velocityBuffer.data[a];
-        final Vec2 vb = m_velocityBuffer.data[b];
         final float inter = ejectionStrength * h * w; // 排斥力强度
         final float fx = inter * n.x;
         final float fy = inter * n.y;
-        va.x -= fx; // 粒子A受力反向
-        va.y -= fy;
-        vb.x += fx; // 粒子B受力正向
-        vb.y += fy;
+        m_velocityBuffer.x[a] -= fx; // 粒子A受力反向
+        m_velocityBuffer.y[a] -= fy;
+        m_velocityBuffer.x[b] += fx; // 粒子B受力正向
+        m_velocityBuffer.y[b] += fy;
       }
     }
   }
@@ -1387,29 +3546,30 @@ public class ParticleSystem {
    * @param step 时间步长
    */
   void solveColorMixing(final TimeStep step) {
-    m_colorBuffer.data = requestParticleBuffer(ParticleColor.class, m_colorBuffer.data); // 确保颜色缓冲区存在
+    m_colorBuffer.data = requestParticleBuffer(m_colorBuffer.data); // 确保颜色缓冲区存在
+    final int[] colors = m_colorBuffer.data;
+    final int[] flags = m_flagsBuffer.data;
     int colorMixing256 = (int) (256 * m_colorMixingStrength); // 颜色混合强度 (0-256)
     for (int k = 0; k < m_contactCount; k++) {
       final ParticleContact contact = m_contactBuffer[k];
       int a = contact.indexA;
       int b = contact.indexB;
       // 只有当两个粒子都是颜色混合粒子时才进行混合
-      if ((m_flagsBuffer.data[a] & m_flagsBuffer.data[b] & ParticleType.b2_colorMixingParticle) != 0) {
-        ParticleColor colorA = m_colorBuffer.data[a];
-        ParticleColor colorB = m_colorBuffer.data[b];
-        // 计算颜色差异并按强度混合
-        int dr = (colorMixing256 * (colorB.r - colorA.r)) >> 8; // (>> 8 相当于 / 256)
-        int dg = (colorMixing256 * (colorB.g - colorA.g)) >> 8;
-        int db = (colorMixing256 * (colorB.b - colorA.b)) >> 8;
-        int da = (colorMixing256 * (colorB.a - colorA.a)) >> 8;
-        colorA.r += dr; // 粒子A颜色更新
-        colorA.g += dg;
-        colorA.b += db;
-        colorA.a += da;
-        colorB.r -= dr; // 粒子B颜色更新 (反向)
-        colorB.g -= dg;
-        colorB.b -= db;
-        colorB.a -= da;
+      if ((flags[a] & flags[b] & ParticleType.b2_colorMixingParticle) != 0) {
+        final int colorA = colors[a];
+        final int colorB = colors[b];
+        // 逐通道（无符号 8 位）计算颜色差异并按强度混合，混合后的值总在两者之间，不会越界
+        int mixedA = 0;
+        int mixedB = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+          final int ca = (colorA >>> shift) & 0xff;
+          final int cb = (colorB >>> shift) & 0xff;
+          final int d = (colorMixing256 * (cb - ca)) >> 8; // (>> 8 相当于 / 256)
+          mixedA |= (ca + d) << shift; // 粒子A颜色更新
+          mixedB |= (cb - d) << shift; // 粒子B颜色更新 (反向)
+        }
+        colors[a] = mixedA;
+        colors[b] = mixedB;
       }
     }
   }
@@ -1419,8 +3579,15 @@ public class ParticleSystem {
    * 僵尸粒子会被从缓冲区中移除，其他粒子的索引会进行调整。
    */
   void solveZombie() {
+    // 先唤醒被僵尸粒子支撑的休眠粒子（销毁、到期、进入清除区域都会走到这里）
+    wakeNeighborsOfRemovedParticles(0, 0, ParticleType.b2_zombieParticle);
     int newCount = 0;
-    int[] newIndices = new int[m_count]; // 用于存储旧索引到新索引的映射
+    // 旧索引到新索引的映射，复用持久缓冲区，避免每帧分配
+    if (m_remapBuffer == null || m_remapBuffer.length < m_count) {
+      m_remapBuffer = new int[m_internalAllocatedCapacity];
+      m_reallocationCount++;
+    }
+    final int[] newIndices = m_remapBuffer;
     // 1. 标记要移除的粒子，并构建新索引映射
     for (int i = 0; i < m_count; i++) {
       int flags = m_flagsBuffer.data[i];
@@ -1434,14 +3601,22 @@ public class ParticleSystem {
         newIndices[i] = newCount; // 分配新索引
         if (i != newCount) { // 如果粒子不是在原地，则移动数据
           m_flagsBuffer.data[newCount] = m_flagsBuffer.data[i];
-          m_positionBuffer.data[newCount].set(m_positionBuffer.data[i]);
-          m_velocityBuffer.data[newCount].set(m_velocityBuffer.data[i]);
+          m_positionBuffer.x[newCount] = m_positionBuffer.x[i];
+          m_positionBuffer.y[newCount] = m_positionBuffer.y[i];
+          m_velocityBuffer.x[newCount] = m_velocityBuffer.x[i];
+          m_velocityBuffer.y[newCount] = m_velocityBuffer.y[i];
           m_groupBuffer[newCount] = m_groupBuffer[i];
           if (m_depthBuffer != null) {
             m_depthBuffer[newCount] = m_depthBuffer[i];
           }
+          if (m_expirationTimeBuffer != null) {
+            m_expirationTimeBuffer[newCount] = m_expirationTimeBuffer[i];
+          }
+          if (m_sleepTimerBuffer != null) {
+            m_sleepTimerBuffer[newCount] = m_sleepTimerBuffer[i];
+          }
           if (m_colorBuffer.data != null) {
-            m_colorBuffer.data[newCount].set(m_colorBuffer.data[i]);
+            m_colorBuffer.data[newCount] = m_colorBuffer.data[i];
           }
           if (m_userDataBuffer.data != null) {
             m_userDataBuffer.data[newCount] = m_userDataBuffer.data[i];
@@ -1451,92 +3626,78 @@ public class ParticleSystem {
       }
     }
 
-    // 2. 更新代理索引并移除无效代理
-    for (int k = 0; k < m_proxyCount; k++) {
-      Proxy proxy = m_proxyBuffer[k];
-      proxy.index = newIndices[proxy.index];
-    }
-    // 使用快速移除/交换法删除无效代理
-    int j = m_proxyCount;
-    for (int i = 0; i < j; i++) {
-      if (Test.IsProxyInvalid(m_proxyBuffer[i])) {
-        --j;
-        Proxy temp = m_proxyBuffer[j];
-        m_proxyBuffer[j] = m_proxyBuffer[i];
-        m_proxyBuffer[i] = temp;
-        --i;
+    // 2-6. 重映射并移除无效的代理、接触、刚体接触、粒子对和三元组
+    // 每个缓冲区只遍历一次，按原有顺序紧凑排列（代理保持有序，接触等对象通过交换引用复用）
+    final long[] proxyTags = m_proxyTags;
+    final int[] proxyIndices = m_proxyIndices;
+    int j = 0;
+    for (int i = 0; i < m_proxyCount; i++) {
+      int index = newIndices[proxyIndices[i]];
+      if (!Test.IsProxyInvalid(index)) {
+        proxyTags[j] = proxyTags[i];
+        proxyIndices[j] = index;
+        j++;
       }
     }
     m_proxyCount = j;
 
-    // 3. 更新接触索引并移除无效接触
-    for (int k = 0; k < m_contactCount; k++) {
-      ParticleContact contact = m_contactBuffer[k];
+    j = 0;
+    for (int i = 0; i < m_ballisticCount; i++) {
+      int index = newIndices[m_ballisticIndices[i]];
+      if (index != Settings.invalidParticleIndex) {
+        m_ballisticIndices[j++] = index;
+      }
+    }
+    m_ballisticCount = j;
+
+    j = 0;
+    for (int i = 0; i < m_contactCount; i++) {
+      ParticleContact contact = m_contactBuffer[i];
       contact.indexA = newIndices[contact.indexA];
       contact.indexB = newIndices[contact.indexB];
-    }
-    j = m_contactCount;
-    for (int i = 0; i < j; i++) {
-      if (Test.IsContactInvalid(m_contactBuffer[i])) {
-        --j;
-        ParticleContact temp = m_contactBuffer[j];
-        m_contactBuffer[j] = m_contactBuffer[i];
-        m_contactBuffer[i] = temp;
-        --i;
+      if (!Test.IsContactInvalid(contact)) {
+        m_contactBuffer[i] = m_contactBuffer[j];
+        m_contactBuffer[j] = contact;
+        j++;
       }
     }
     m_contactCount = j;
 
-    // 4. 更新粒子-刚体接触索引并移除无效接触
-    for (int k = 0; k < m_bodyContactCount; k++) {
-      ParticleBodyContact contact = m_bodyContactBuffer[k];
+    j = 0;
+    for (int i = 0; i < m_bodyContactCount; i++) {
+      ParticleBodyContact contact = m_bodyContactBuffer[i];
       contact.index = newIndices[contact.index];
-    }
-    j = m_bodyContactCount;
-    for (int i = 0; i < j; i++) {
-      if (Test.IsBodyContactInvalid(m_bodyContactBuffer[i])) {
-        --j;
-        ParticleBodyContact temp = m_bodyContactBuffer[j];
-        m_bodyContactBuffer[j] = m_bodyContactBuffer[i];
-        m_bodyContactBuffer[i] = temp;
-        --i;
+      if (!Test.IsBodyContactInvalid(contact)) {
+        m_bodyContactBuffer[i] = m_bodyContactBuffer[j];
+        m_bodyContactBuffer[j] = contact;
+        j++;
       }
     }
     m_bodyContactCount = j;
 
-    // 5. 更新粒子对索引并移除无效粒子对
-    for (int k = 0; k < m_pairCount; k++) {
-      Pair pair = m_pairBuffer[k];
+    j = 0;
+    for (int i = 0; i < m_pairCount; i++) {
+      Pair pair = m_pairBuffer[i];
       pair.indexA = newIndices[pair.indexA];
       pair.indexB = newIndices[pair.indexB];
-    }
-    j = m_pairCount;
-    for (int i = 0; i < j; i++) {
-      if (Test.IsPairInvalid(m_pairBuffer[i])) {
-        --j;
-        Pair temp = m_pairBuffer[j];
-        m_pairBuffer[j] = m_pairBuffer[i];
-        m_pairBuffer[i] = temp;
-        --i;
+      if (!Test.IsPairInvalid(pair)) {
+        m_pairBuffer[i] = m_pairBuffer[j];
+        m_pairBuffer[j] = pair;
+        j++;
       }
     }
     m_pairCount = j;
 
-    // 6. 更新三元组索引并移除无效三元组
-    for (int k = 0; k < m_triadCount; k++) {
-      Triad triad = m_triadBuffer[k];
+    j = 0;
+    for (int i = 0; i < m_triadCount; i++) {
+      Triad triad = m_triadBuffer[i];
       triad.indexA = newIndices[triad.indexA];
       triad.indexB = newIndices[triad.indexB];
       triad.indexC = newIndices[triad.indexC];
-    }
-    j = m_triadCount;
-    for (int i = 0; i < j; i++) {
-      if (Test.IsTriadInvalid(m_triadBuffer[i])) {
-        --j;
-        Triad temp = m_triadBuffer[j];
-        m_triadBuffer[j] = m_triadBuffer[i];
-        m_triadBuffer[i] = temp;
-        --i;
+      if (!Test.IsTriadInvalid(triad)) {
+        m_triadBuffer[i] = m_triadBuffer[j];
+        m_triadBuffer[j] = triad;
+        j++;
       }
     }
     m_triadCount = j;
@@ -1573,7 +3734,6 @@ public class ParticleSystem {
     }
 
     m_count = newCount; // 更新粒子总数
-    // m_world.m_stackAllocator.Free(newIndices); // 释放临时数组 (Java GC会自动处理)
 
     // 8. 销毁或分裂标记的组
     for (ParticleGroup group = m_groupList; group != null;) {
@@ -1631,12 +3791,20 @@ public class ParticleSystem {
 
     // 旋转所有相关的粒子数据缓冲区
     BufferUtils.rotate(m_flagsBuffer.data, start, mid, end);
-    BufferUtils.rotate(m_positionBuffer.data, start, mid, end);
-    BufferUtils.rotate(m_velocityBuffer.data, start, mid, end);
+    BufferUtils.rotate(m_positionBuffer.x, start, mid, end);
+    BufferUtils.rotate(m_positionBuffer.y, start, mid, end);
+    BufferUtils.rotate(m_velocityBuffer.x, start, mid, end);
+    BufferUtils.rotate(m_velocityBuffer.y, start, mid, end);
     BufferUtils.rotate(m_groupBuffer, start, mid, end);
     if (m_depthBuffer != null) {
       BufferUtils.rotate(m_depthBuffer, start, mid, end);
     }
+    if (m_expirationTimeBuffer != null) {
+      BufferUtils.rotate(m_expirationTimeBuffer, start, mid, end);
+    }
+    if (m_sleepTimerBuffer != null) {
+      BufferUtils.rotate(m_sleepTimerBuffer, start, mid, end);
+    }
     if (m_colorBuffer.data != null) {
       BufferUtils.rotate(m_colorBuffer.data, start, mid, end);
     }
@@ -1646,8 +3814,10 @@ public class ParticleSystem {
 
     // 更新所有内部数据结构中存储的粒子索引
     for (int k = 0; k < m_proxyCount; k++) {
-      Proxy proxy = m_proxyBuffer[k];
-      proxy.index = newIndices.getIndex(proxy.index);
+      m_proxyIndices[k] = newIndices.getIndex(m_proxyIndices[k]);
+    }
+    for (int k = 0; k < m_ballisticCount; k++) {
+      m_ballisticIndices[k] = newIndices.getIndex(m_ballisticIndices[k]);
     }
 
     for (int k = 0; k < m_contactCount; k++) {
@@ -1812,46 +3982,400 @@ public class ParticleSystem {
   }
 
   /**
-   * 获取单个粒子的质量倒数。
-   * @return 粒子质量倒数
+   * 获取单个粒子的质量倒数。
+   * @return 粒子质量倒数
+   */
+  float getParticleInvMass() {
+    // 经验系数，用于调整质量，确保稳定性
+    return 1.777777f * m_inverseDensity * m_inverseDiameter * m_inverseDiameter;
+  }
+
+  /**
+   * 设置粒子的剩余寿命。
+   * 寿命从当前模拟时间开始计算，到期后粒子在下一次 solve 中被销毁（与 destroyParticle 相同，
+   * 是否通知销毁监听器取决于粒子的 b2_destructionListener 标志）。
+   * @param index 粒子索引
+   * @param lifetime 寿命（秒），小于等于 0 表示永不过期
+   */
+  public void setParticleLifetime(int index, float lifetime) {
+    assert (0 <= index && index < m_count);
+    if (m_expirationTimeBuffer == null) {
+      if (lifetime <= 0) {
+        return;
+      }
+      m_expirationTimeBuffer = new long[m_internalAllocatedCapacity];
+    }
+    m_expirationTimeBuffer[index] = lifetime > 0 ? expirationTime(lifetime) : 0;
+  }
+
+  /**
+   * 计算从当前模拟时间开始、持续给定寿命后的到期时间。
+   * @param lifetime 寿命（秒），必须大于 0
+   * @return 到期时间（微秒），至少比当前模拟时间晚 1 微秒
+   */
+  private long expirationTime(float lifetime) {
+    return m_timeElapsed + Math.max(1, (long) (lifetime * MICROSECONDS_PER_SECOND));
+  }
+
+  /**
+   * 设置粒子组寿命到期监听器。
+   * 带寿命的粒子组到期时先询问监听器，监听器可以保留该组（寿命重新计时），之后用
+   * {@link #respawnParticleGroup} 原地回收，而不是销毁后重新创建。
+   * @param listener 监听器，可为 null
+   */
+  public void setGroupExpirationListener(ParticleGroupExpirationListener listener) {
+    m_groupExpirationListener = listener;
+  }
+
+  public ParticleGroupExpirationListener getGroupExpirationListener() {
+    return m_groupExpirationListener;
+  }
+
+  /**
+   * 获取粒子的剩余寿命。
+   * @param index 粒子索引
+   * @return 剩余寿命（秒），永不过期的粒子返回 0
+   */
+  public float getParticleLifetime(int index) {
+    assert (0 <= index && index < m_count);
+    if (m_expirationTimeBuffer == null || m_expirationTimeBuffer[index] == 0) {
+      return 0;
+    }
+    return (m_expirationTimeBuffer[index] - m_timeElapsed) / MICROSECONDS_PER_SECOND;
+  }
+
+  /**
+   * 获取粒子标志位缓冲区。
+   * @return 粒子标志位数组
+   */
+  public int[] getParticleFlagsBuffer() {
+    return m_flagsBuffer.data;
+  }
+
+  /**
+   * 获取粒子位置缓冲区的 Vec2 兼容视图。
+   * 内部以 x/y 分量数组存储，每次调用都会把当前 [0, count) 的数据复制到视图中，
+   * 对视图的修改不会写回粒子系统。热路径请使用 {@link #getParticlePositionX()} 和
+   * {@link #getParticlePositionY()}。
+   * @return 粒子位置Vec2数组
+   */
+  public Vec2[] getParticlePositionBuffer() {
+    return syncView(m_positionBuffer);
+  }
+
+  /**
+   * 获取粒子速度缓冲区的 Vec2 兼容视图。
+   * 与 {@link #getParticlePositionBuffer()} 相同，视图是调用时刻的拷贝。
+   * 热路径请使用 {@link #getParticleVelocityX()} 和 {@link #getParticleVelocityY()}。
+   * @return 粒子速度Vec2数组
+   */
+  public Vec2[] getParticleVelocityBuffer() {
+    return syncView(m_velocityBuffer);
+  }
+
+  /**
+   * 获取粒子位置 X 分量数组（内部存储，直接读写）。
+   * 有效索引范围为 [0, getParticleCount())，容量变化后数组引用会改变，不要跨步长缓存。
+   * @return 粒子位置 X 分量数组
+   */
+  public float[] getParticlePositionX() {
+    return m_positionBuffer.x;
+  }
+
+  /**
+   * 获取粒子位置 Y 分量数组（内部存储，直接读写）。
+   * @return 粒子位置 Y 分量数组
+   */
+  public float[] getParticlePositionY() {
+    return m_positionBuffer.y;
+  }
+
+  /**
+   * 获取粒子速度 X 分量数组（内部存储，直接读写）。
+   * @return 粒子速度 X 分量数组
+   */
+  public float[] getParticleVelocityX() {
+    return m_velocityBuffer.x;
+  }
+
+  /**
+   * 获取粒子速度 Y 分量数组（内部存储，直接读写）。
+   * @return 粒子速度 Y 分量数组
+   */
+  public float[] getParticleVelocityY() {
+    return m_velocityBuffer.y;
+  }
+
+  /**
+   * 将 [first, last) 范围内的粒子按 def 描述的交错布局导出到 buffer（通常是用于上传 GPU 的直接缓冲区），
+   * 从 buffer 的当前位置开始写入。
+   * 数据先在一次紧凑循环中写入复用的 float 数组，再以一次批量 put 写入 buffer，
+   * 避免逐个 put 直接缓冲区的开销。已销毁（包括本步被清除区域销毁）、等待下一步清理的粒子不导出。
+   * @param buffer 目标缓冲区，剩余空间至少为 (last - first) * def.getStride()
+   * @param first 起始粒子索引（包含）
+   * @param last 结束粒子索引（不包含）
+   * @param def 导出布局及可选的粒子筛选
+   * @return 实际导出的粒子数量
+   */
+  public int exportParticles(FloatBuffer buffer, int first, int last, ParticleExportDef def) {
+    assert (0 <= first && first <= last && last <= m_count);
+    final int stride = def.getStride();
+    final int maxFloats = (last - first) * stride;
+    if (m_exportScratch.length < maxFloats) {
+      m_exportScratch = new float[MathUtils.max(maxFloats, 2 * m_exportScratch.length)];
+    }
+    final float[] out = m_exportScratch;
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    final float[] velX = m_velocityBuffer.x;
+    final float[] velY = m_velocityBuffer.y;
+    final boolean position = (def.fields & ParticleExportDef.POSITION) != 0;
+    final boolean velocity = (def.fields & ParticleExportDef.VELOCITY) != 0;
+    final boolean energy = (def.fields & ParticleExportDef.ENERGY) != 0;
+    final boolean color = (def.fields & ParticleExportDef.COLOR) != 0;
+    final int[] colors = m_colorBuffer.data;
+    final float positionScale = def.positionScale;
+    final float velocityScale = def.velocityScale;
+    final float energyScale = def.energyScale;
+    final float energyMin = def.energyMin;
+    final float energyMax = def.energyMax;
+    final ParticleExportFilter filter = def.filter;
+    final int[] flags = m_flagsBuffer.data;
+    int n = 0;
+    for (int i = first; i < last; i++) {
+      if ((flags[i] & ParticleType.b2_zombieParticle) != 0) {
+        continue; // 已销毁、等待下一步清理的粒子不导出
+      }
+      final float px = posX[i];
+      final float py = posY[i];
+      final float vx = velX[i];
+      final float vy = velY[i];
+      if (filter != null && !filter.shouldExport(i, px, py, vx, vy)) {
+        continue;
+      }
+      if (position) {
+        out[n++] = px * positionScale;
+        out[n++] = py * positionScale;
+      }
+      if (velocity) {
+        out[n++] = vx * velocityScale;
+        out[n++] = vy * velocityScale;
+      }
+      if (energy) {
+        float e = MathUtils.sqrt(vx * vx + vy * vy) * energyScale;
+        out[n++] = e < energyMin ? energyMin : (e > energyMax ? energyMax : e);
+      }
+      if (color) {
+        final int argb = colors != null ? colors[i] : 0;
+        out[n++] = ((argb >>> 16) & 0xff) * COLOR_CHANNEL_SCALE;
+        out[n++] = ((argb >>> 8) & 0xff) * COLOR_CHANNEL_SCALE;
+        out[n++] = (argb & 0xff) * COLOR_CHANNEL_SCALE;
+        out[n++] = (argb >>> 24) * COLOR_CHANNEL_SCALE;
+      }
+    }
+    buffer.put(out, 0, n);
+    return stride != 0 ? n / stride : 0;
+  }
+
+  /**
+   * 将粒子组的粒子按 def 描述的布局导出到 buffer。
+   * @see #exportParticles(FloatBuffer, int, int, ParticleExportDef)
+   */
+  public int exportParticles(FloatBuffer buffer, ParticleGroup group, ParticleExportDef def) {
+    return exportParticles(buffer, group.m_firstIndex, group.m_lastIndex, def);
+  }
+
+  /**
+   * 启用或关闭粒子状态快照。
+   * 启用后每次世界步进结束时都会把粒子状态复制到三重缓冲中的一份快照，
+   * 其他线程可以通过 {@link #acquireSnapshot()} 无锁读取最新快照，与下一次步进并行。
+   * 三份快照在启用时按当前的粒子容量分配，粒子组数组至少容纳 Settings.minParticleBufferCapacity 个粒子组。
+   * @param enabled 是否启用
+   */
+  public void setSnapshotsEnabled(boolean enabled) {
+    if (enabled && m_snapshotBuffer == null) {
+      m_snapshotBuffer = new ParticleSnapshotBuffer();
+      // 此时还没有读取线程，可以按当前容量预留全部三份快照；粒子组通常在启用快照之后才创建，
+      // 粒子组数组至少按最小缓冲区容量预留
+      m_snapshotBuffer.reserve(m_internalAllocatedCapacity, m_colorBuffer.data != null,
+          MathUtils.max(m_groupCount, Settings.minParticleBufferCapacity));
+    } else if (!enabled) {
+      m_snapshotBuffer = null;
+    }
+  }
+
+  public boolean isSnapshotsEnabled() {
+    return m_snapshotBuffer != null;
+  }
+
+  /**
+   * 把当前粒子状态发布为最新快照。步进结束时会自动调用；
+   * 在步进之外创建或销毁粒子后，可以手动调用以立即发布。只能在步进线程调用。
+   * 已销毁、等待下一步清理的粒子不进入快照，其余粒子的索引与清理后的索引一致。
+   */
+  public void publishSnapshot() {
+    final ParticleSnapshotBuffer snapshotBuffer = m_snapshotBuffer;
+    if (snapshotBuffer == null) {
+      return;
+    }
+    final ParticleSnapshot snapshot = snapshotBuffer.getBack();
+    final int count = m_count;
+    // 快照数组只增长不收缩，按粒子缓冲区容量分配，稳定后不再分配
+    if (snapshot.reserve(snapshot.m_positionX.length < count ? m_internalAllocatedCapacity : 0,
+        m_colorBuffer.data != null, m_groupCount)) {
+      m_reallocationCount++;
+    }
+    if (m_colorBuffer.data == null) {
+      snapshot.m_colors = null;
+    }
+    // 本步被销毁的粒子要到下一步开头才清理，快照里先按 solveZombie() 的方式把它们压缩掉，
+    // 这样快照的粒子索引与下一步清理后的索引一致
+    final int[] flags = m_flagsBuffer.data;
+    int zombieCount = 0;
+    for (int i = 0; i < count; i++) {
+      if ((flags[i] & ParticleType.b2_zombieParticle) != 0) {
+        zombieCount++;
+      }
+    }
+    int[] newIndices = null;
+    if (zombieCount == 0) {
+      System.arraycopy(m_positionBuffer.x, 0, snapshot.m_positionX, 0, count);
+      System.arraycopy(m_positionBuffer.y, 0, snapshot.m_positionY, 0, count);
+      System.arraycopy(m_velocityBuffer.x, 0, snapshot.m_velocityX, 0, count);
+      System.arraycopy(m_velocityBuffer.y, 0, snapshot.m_velocityY, 0, count);
+      if (snapshot.m_colors != null) {
+        System.arraycopy(m_colorBuffer.data, 0, snapshot.m_colors, 0, count);
+      }
+      snapshot.m_count = count;
+    } else {
+      if (m_remapBuffer == null || m_remapBuffer.length < count) {
+        m_remapBuffer = new int[m_internalAllocatedCapacity];
+        m_reallocationCount++;
+      }
+      newIndices = m_remapBuffer;
+      int newCount = 0;
+      for (int i = 0; i < count; i++) {
+        // 被移除的粒子映射到下一个保留粒子的位置，粒子组范围的两端都可以直接映射
+        newIndices[i] = newCount;
+        if ((flags[i] & ParticleType.b2_zombieParticle) != 0) {
+          continue;
+        }
+        snapshot.m_positionX[newCount] = m_positionBuffer.x[i];
+        snapshot.m_positionY[newCount] = m_positionBuffer.y[i];
+        snapshot.m_velocityX[newCount] = m_velocityBuffer.x[i];
+        snapshot.m_velocityY[newCount] = m_velocityBuffer.y[i];
+        if (snapshot.m_colors != null) {
+          snapshot.m_colors[newCount] = m_colorBuffer.data[i];
+        }
+        newCount++;
+      }
+      snapshot.m_count = newCount;
+    }
+    int groupCount = 0;
+    for (ParticleGroup group = m_groupList; group != null; group = group.getNext()) {
+      int first = group.m_firstIndex;
+      int last = group.m_lastIndex;
+      if (newIndices != null) {
+        first = first < count ? newIndices[first] : snapshot.m_count;
+        last = last < count ? newIndices[last] : snapshot.m_count;
+      }
+      snapshot.m_groupFirstIndex[groupCount] = first;
+      snapshot.m_groupLastIndex[groupCount] = last;
+      snapshot.m_groupUserData[groupCount] = group.m_userData;
+      groupCount++;
+    }
+    // 清除多余的引用，避免快照持有已销毁粒子组的用户数据
+    for (int i = groupCount; i < snapshot.m_groupCount; i++) {
+      snapshot.m_groupUserData[i] = null;
+    }
+    snapshot.m_groupCount = groupCount;
+    snapshot.m_timestamp = m_timestamp;
+    snapshotBuffer.publish();
+  }
+
+  /**
+   * 获取最新发布的粒子状态快照，可在任意一个读取线程调用，不会阻塞步进线程。
+   * 返回的快照在同一线程下一次调用本方法之前保持不变；同一时间只允许一个读取线程。
+   * @return 最新快照；未启用快照时返回 null
    */
-  float getParticleInvMass() {
-    // 经验系数，用于调整质量，确保稳定性
-    return 1.777777f * m_inverseDensity * m_inverseDiameter * m_inverseDiameter;
+  public ParticleSnapshot acquireSnapshot() {
+    final ParticleSnapshotBuffer snapshotBuffer = m_snapshotBuffer;
+    return snapshotBuffer != null ? snapshotBuffer.acquire() : null;
   }
 
   /**
-   * 获取粒子标志位缓冲区。
-   * @return 粒子标志位数组
+   * 将分量数组中的数据同步到 Vec2 兼容视图，必要时（重新）创建视图。
+   * @param buffer 二维向量粒子缓冲区
+   * @return 同步后的视图
    */
-  public int[] getParticleFlagsBuffer() {
-    return m_flagsBuffer.data;
+  private Vec2[] syncView(ParticleBufferVec2 buffer) {
+    Vec2[] view = buffer.view;
+    if (view == null || view.length < m_internalAllocatedCapacity) {
+      int oldLength = view != null ? view.length : 0;
+      view = BufferUtils.reallocateBuffer(Vec2.class, view, oldLength, m_internalAllocatedCapacity);
+      buffer.view = view;
+    }
+    final float[] x = buffer.x;
+    final float[] y = buffer.y;
+    for (int i = 0; i < m_count; i++) {
+      final Vec2 v = view[i];
+      v.x = x[i];
+      v.y = y[i];
+    }
+    return view;
   }
 
   /**
-   * 获取粒子位置缓冲区。
-   * @return 粒子位置Vec2数组
+   * 获取粒子颜色缓冲区的 ParticleColor 兼容视图。
+   * 内部以打包的 ARGB 整数存储，每次调用都会把当前 [0, count) 的颜色解包到视图中，
+   * 对视图的修改不会写回粒子系统。热路径请使用 {@link #getParticleColorPacked()}。
+   * 如果缓冲区尚未创建，会自动创建。
+   * @return 粒子颜色ParticleColor数组
    */
-  public Vec2[] getParticlePositionBuffer() {
-    return m_positionBuffer.data;
+  public ParticleColor[] getParticleColorBuffer() {
+    final int[] colors = getParticleColorPacked();
+    ParticleColor[] view = m_colorBuffer.view;
+    if (view == null || view.length < m_internalAllocatedCapacity) {
+      int oldLength = view != null ? view.length : 0;
+      view =
+          BufferUtils.reallocateBuffer(ParticleColor.class, view, oldLength,
+              m_internalAllocatedCapacity);
+      m_colorBuffer.view = view;
+    }
+    for (int i = 0; i < m_count; i++) {
+      view[i].setArgb(colors[i]);
+    }
+    return view;
   }
 
   /**
-   * 获取粒子速度缓冲区。
-   * @return 粒子速度Vec2数组
+   * 获取粒子颜色缓冲区的原始数组，每个粒子一个打包的 ARGB 整数（与 android.graphics.Color 相同的布局），
+   * 可以直接读写。如果缓冲区尚未创建，会自动创建。
+   * @return 粒子颜色数组
    */
-  public Vec2[] getParticleVelocityBuffer() {
-    return m_velocityBuffer.data;
+  public int[] getParticleColorPacked() {
+    m_colorBuffer.data = requestParticleBuffer(m_colorBuffer.data);
+    return m_colorBuffer.data;
   }
 
   /**
-   * 获取粒子颜色缓冲区。
-   * 如果缓冲区尚未创建，会自动创建。
-   * @return 粒子颜色ParticleColor数组
+   * 把 [first, last) 范围内粒子的打包 ARGB 颜色批量写入 buffer，不经过任何中间对象。
+   * 没有颜色缓冲区时写入 0（透明）。
+   * @param buffer 目标缓冲区，从其当前位置开始写入
+   * @param first 第一个粒子索引
+   * @param last 最后一个粒子索引（不含）
+   * @return 写入的颜色数
    */
-  public ParticleColor[] getParticleColorBuffer() {
-    m_colorBuffer.data = requestParticleBuffer(ParticleColor.class, m_colorBuffer.data);
-    return m_colorBuffer.data;
+  public int exportParticleColors(IntBuffer buffer, int first, int last) {
+    assert (0 <= first && first <= last && last <= m_count);
+    if (m_colorBuffer.data != null) {
+      buffer.put(m_colorBuffer.data, first, last - first);
+    } else {
+      for (int i = first; i < last; i++) {
+        buffer.put(0);
+      }
+    }
+    return last - first;
   }
 
   /**
@@ -1898,6 +4422,27 @@ public class ParticleSystem {
     buffer.userSuppliedCapacity = newCapacity;
   }
 
+  /**
+   * 内部方法：设置二维向量粒子缓冲区。
+   * 用户提供的 Vec2 数组作为兼容视图使用：其中现有粒子的数据被复制到分量数组中，
+   * 之后通过 getter 同步回该数组。
+   * @param buffer ParticleBufferVec2对象
+   * @param newData 新的数据数组
+   * @param newCapacity 新的容量
+   */
+  void setParticleBuffer(ParticleBufferVec2 buffer, Vec2[] newData, int newCapacity) {
+    assert ((newData != null && newCapacity != 0) || (newData == null && newCapacity == 0));
+    assert (newCapacity == 0 || m_count <= newCapacity);
+    if (newData != null) {
+      for (int i = 0; i < m_count; i++) {
+        buffer.x[i] = newData[i].x;
+        buffer.y[i] = newData[i].y;
+      }
+    }
+    buffer.view = newData;
+    buffer.userSuppliedCapacity = newCapacity;
+  }
+
   /**
    * 内部方法：设置粒子缓冲区 (泛型版本)。
    * @param buffer ParticleBuffer对象
@@ -1943,12 +4488,22 @@ public class ParticleSystem {
   }
 
   /**
-   * 设置粒子颜色缓冲区为用户提供的数据。
-   * @param buffer 用户提供的颜色ParticleColor数组
-   * @param capacity 缓冲区的容量
+   * 把用户提供的颜色复制到粒子颜色缓冲区。
+   * 颜色以打包的 ARGB 整数存储，buffer 中前 getParticleCount() 个颜色被打包写入，
+   * buffer 本身不会成为存储，之后对它的修改不会影响粒子；粒子缓冲区的容量也不受 capacity 限制。
+   * @deprecated 颜色不再使用用户提供的存储，请直接读写 {@link #getParticleColorPacked()}
+   * @param buffer 用户提供的颜色ParticleColor数组，为 null 时不做任何事
+   * @param capacity buffer 的长度，至少为当前粒子数
    */
+  @Deprecated
   public void setParticleColorBuffer(ParticleColor[] buffer, int capacity) {
-    setParticleBuffer(m_colorBuffer, buffer, capacity);
+    assert (buffer == null || m_count <= capacity);
+    if (buffer != null) {
+      final int[] colors = getParticleColorPacked();
+      for (int i = 0; i < m_count; i++) {
+        colors[i] = buffer[i].toArgb();
+      }
+    }
   }
 
   /**
@@ -1994,18 +4549,18 @@ public class ParticleSystem {
 
   /**
    * 在代理缓冲区中查找第一个标签大于或等于给定标签的代理的索引 (二分查找)。
-   * @param ray 代理数组
+   * @param ray 已排序的代理标签数组
    * @param length 数组长度
    * @param tag 目标标签
    * @return 第一个大于或等于tag的代理索引
    */
-  private static final int lowerBound(Proxy[] ray, int length, long tag) {
+  private static final int lowerBound(long[] ray, int length, long tag) {
     int left = 0;
     int step, curr;
     while (length > 0) {
       step = length / 2;
       curr = left + step;
-      if (ray[curr].tag < tag) {
+      if (ray[curr] < tag) {
         left = curr + 1;
         length -= step + 1;
       } else {
@@ -2017,18 +4572,18 @@ public class ParticleSystem {
 
   /**
    * 在代理缓冲区中查找第一个标签大于给定标签的代理的索引 (二分查找)。
-   * @param ray 代理数组
+   * @param ray 已排序的代理标签数组
    * @param length 数组长度
    * @param tag 目标标签
    * @return 第一个大于tag的代理索引
    */
-  private static final int upperBound(Proxy[] ray, int length, long tag) {
+  private static final int upperBound(long[] ray, int length, long tag) {
     int left = 0;
     int step, curr;
     while (length > 0) {
       step = length / 2;
       curr = left + step;
-      if (ray[curr].tag <= tag) {
+      if (ray[curr] <= tag) {
         left = curr + 1;
         length -= step + 1;
       } else {
@@ -2038,12 +4593,101 @@ public class ParticleSystem {
     return left;
   }
 
+  /**
+   * 在 ray[first, last) 中查找第一个标签大于或等于给定标签的索引 (二分查找)。
+   */
+  private static int lowerBound(long[] ray, int first, int last, long tag) {
+    while (first < last) {
+      int curr = (first + last) >>> 1;
+      if (ray[curr] < tag) {
+        first = curr + 1;
+      } else {
+        last = curr;
+      }
+    }
+    return first;
+  }
+
+  /**
+   * 在 ray[first, last) 中查找第一个标签大于给定标签的索引 (二分查找)。
+   */
+  private static int upperBound(long[] ray, int first, int last, long tag) {
+    while (first < last) {
+      int curr = (first + last) >>> 1;
+      if (ray[curr] <= tag) {
+        first = curr + 1;
+      } else {
+        last = curr;
+      }
+    }
+    return first;
+  }
+
+  /**
+   * 按哈希行遍历矩形覆盖的代理区间。标签按行优先排列，只用左下角和右上角两个标签圈定区间时，
+   * 宽而矮或高而窄的矩形都会扫描大量位于矩形左右两侧的无关代理；这里对矩形覆盖的每一行
+   * 单独二分出 [first, last)，并直接跳过没有代理的行。各行区间互不重叠且按升序给出，
+   * 所以报告的粒子和顺序与整体扫描后再做精确检测相同。坐标均以粒子直径为单位。
+   */
+  static class ProxyRowRanges {
+    int first; // 当前行区间的第一个代理
+    int last; // 当前行区间末尾（不含）
+
+    private long[] tags;
+    private int count;
+    private long lowerX, upperX; // 行内 x 部分的标签范围
+    private long row, lastRow;
+    private int searchFrom; // 下一行从这里开始二分，保证区间不重叠
+
+    ProxyRowRanges reset(long[] tags, int count, float lowerX, float lowerY, float upperX,
+        float upperY) {
+      this.tags = tags;
+      this.count = count;
+      // 与 computeTag 的两部分完全一致，保证边界上的粒子不会被漏掉
+      this.lowerX = ((long) (xScale * lowerX)) + xOffset;
+      this.upperX = ((long) (xScale * upperX)) + xOffset;
+      row = (long) (lowerY + yOffset);
+      lastRow = (long) (upperY + yOffset);
+      searchFrom = 0;
+      first = last = 0;
+      return this;
+    }
+
+    /** 前进到下一个非空行区间，没有更多区间时返回 false。 */
+    boolean next() {
+      while (row <= lastRow && searchFrom < count) {
+        final long base = row << yShift;
+        final int f = lowerBound(tags, searchFrom, count, base + lowerX);
+        if (f >= count) {
+          break;
+        }
+        final long tag = tags[f];
+        final long upperTag = base + upperX;
+        if (tag > upperTag) {
+          // 本行为空，直接跳到第一个可能包含该标签的行
+          final long tagRow = -((upperX - tag) >> yShift); // ceil((tag - upperX) / 行跨度)
+          row = tagRow > row ? tagRow : row + 1;
+          searchFrom = f;
+          continue;
+        }
+        first = f;
+        last = upperBound(tags, f, count, upperTag);
+        searchFrom = last;
+        row++;
+        return true;
+      }
+      row = lastRow + 1;
+      return false;
+    }
+  }
+
   /**
    * 查询指定AABB（轴对齐包围盒）内的所有粒子。
    * @param callback 回调接口，用于报告查询到的粒子
    * @param aabb 查询的AABB
    */
   public void queryAABB(ParticleQueryCallback callback, final AABB aabb) {
+    refreshStaleProxyTags();
     if (m_proxyCount == 0) {
       return;
     }
@@ -2052,23 +4696,34 @@ public class ParticleSystem {
     final float lowerBoundY = aabb.lowerBound.y;
     final float upperBoundX = aabb.upperBound.x;
     final float upperBoundY = aabb.upperBound.y;
-    // 根据AABB的边界计算空间哈希标签范围，进行初步筛选
-    int firstProxy =
-        lowerBound(m_proxyBuffer, m_proxyCount,
-            computeTag(m_inverseDiameter * lowerBoundX, m_inverseDiameter * lowerBoundY));
-    int lastProxy =
-        upperBound(m_proxyBuffer, m_proxyCount,
-            computeTag(m_inverseDiameter * upperBoundX, m_inverseDiameter * upperBoundY));
+    // 按AABB覆盖的每一行计算空间哈希标签范围，进行初步筛选
+    final ProxyRowRanges ranges = acquireQueryRanges().reset(m_proxyTags, m_proxyCount,
+        m_inverseDiameter * lowerBoundX, m_inverseDiameter * lowerBoundY,
+        m_inverseDiameter * upperBoundX, m_inverseDiameter * upperBoundY);
     // 遍历筛选出的代理，进行精确的AABB检测
-    for (int proxy = firstProxy; proxy < lastProxy; ++proxy) {
-      int i = m_proxyBuffer[proxy].index;
-      final Vec2 p = m_positionBuffer.data[i];
-      if (lowerBoundX < p.x && p.x < upperBoundX && lowerBoundY < p.y && p.y < upperBoundY) {
-        if (!callback.reportParticle(i)) { // 如果回调返回false，则停止查询
-          break;
+    query:
+    while (ranges.next()) {
+      for (int proxy = ranges.first; proxy < ranges.last; ++proxy) {
+        int i = m_proxyIndices[proxy];
+        final float px = m_positionBuffer.x[i];
+        final float py = m_positionBuffer.y[i];
+        if (lowerBoundX < px && px < upperBoundX && lowerBoundY < py && py < upperBoundY) {
+          if (!callback.reportParticle(i)) { // 如果回调返回false，则停止查询
+            break query;
+          }
         }
       }
     }
+    m_queryRanges = ranges;
+  }
+
+  /**
+   * 取出查询用的行区间游标。回调中再次查询时字段已被取走，此时临时新建一个，避免嵌套查询互相覆盖。
+   */
+  private ProxyRowRanges acquireQueryRanges() {
+    ProxyRowRanges ranges = m_queryRanges;
+    m_queryRanges = null;
+    return ranges != null ? ranges : new ProxyRowRanges();
   }
 
   /**
@@ -2078,22 +4733,16 @@ public class ParticleSystem {
    * @param point2 射线的终点
    */
   public void raycast(ParticleRaycastCallback callback, final Vec2 point1, final Vec2 point2) {
+    refreshStaleProxyTags();
     if (m_proxyCount == 0) {
       return;
     }
-    // 根据射线起点和终点的包围盒计算空间哈希标签范围，进行初步筛选
-    int firstProxy =
-        lowerBound(
-            m_proxyBuffer,
-            m_proxyCount,
-            computeTag(m_inverseDiameter * MathUtils.min(point1.x, point2.x) - 1, m_inverseDiameter
-                * MathUtils.min(point1.y, point2.y) - 1));
-    int lastProxy =
-        upperBound(
-            m_proxyBuffer,
-            m_proxyCount,
-            computeTag(m_inverseDiameter * MathUtils.max(point1.x, point2.x) + 1, m_inverseDiameter
-                * MathUtils.max(point1.y, point2.y) + 1));
+    // 按射线包围盒（向外扩展一个直径）覆盖的每一行计算空间哈希标签范围，进行初步筛选
+    final ProxyRowRanges ranges = acquireQueryRanges().reset(m_proxyTags, m_proxyCount,
+        m_inverseDiameter * MathUtils.min(point1.x, point2.x) - 1,
+        m_inverseDiameter * MathUtils.min(point1.y, point2.y) - 1,
+        m_inverseDiameter * MathUtils.max(point1.x, point2.x) + 1,
+        m_inverseDiameter * MathUtils.max(point1.y, point2.y) + 1);
     float fraction = 1; // 击中最近粒子的分数 (0到1)
     // 求解二次方程：((1-t)*point1+t*point2-position)^2 = diameter^2
     // t是潜在的分数
@@ -2101,41 +4750,375 @@ public class ParticleSystem {
     final float vy = point2.y - point1.y;
     float v2 = vx * vx + vy * vy; // 射线方向向量长度平方
     if (v2 == 0) v2 = Float.MAX_VALUE; // 避免除以零
-    for (int proxy = firstProxy; proxy < lastProxy; ++proxy) {
-      int i = m_proxyBuffer[proxy].index;
-      final Vec2 posI = m_positionBuffer.data[i];
-      final float px = point1.x - posI.x; // 粒子相对于射线起点的向量
-      final float py = point1.y - posI.y;
-      float pv = px * vx + py * vy; // 向量点积
-      float p2 = px * px + py * py; // 向量长度平方
-      float determinant = pv * pv - v2 * (p2 - m_squaredDiameter); // 判别式
-      if (determinant >= 0) { // 如果有实数解 (射线与粒子相交)
-        float sqrtDeterminant = MathUtils.sqrt(determinant);
-        // 查找在 [0, fraction] 范围内的解
+    query:
+    while (ranges.next()) {
+      for (int proxy = ranges.first; proxy < ranges.last; ++proxy) {
+        int i = m_proxyIndices[proxy];
+        final float px = point1.x - m_positionBuffer.x[i]; // 粒子相对于射线起点的向量
+        final float py = point1.y - m_positionBuffer.y[i];
+        float pv = px * vx + py * vy; // 向量点积
+        float p2 = px * px + py * py; // 向量长度平方
+        float determinant = pv * pv - v2 * (p2 - m_squaredDiameter); // 判别式
+        if (determinant >= 0) { // 如果有实数解 (射线与粒子相交)
+          float sqrtDeterminant = MathUtils.sqrt(determinant);
+          // 查找在 [0, fraction] 范围内的解
+          float t = (-pv - sqrtDeterminant) / v2;
+          if (t > fraction) { // 超出当前最近击中点
+            continue;
+          }
+          if (t < 0) { // 第一个解在射线起点之前
+            t = (-pv + sqrtDeterminant) / v2; // 尝试第二个解
+            if (t < 0 || t > fraction) { // 第二个解仍在射线起点之前或超出当前最近击中点
+              continue;
+            }
+          }
+          final Vec2 n = tempVec;
+          tempVec.x = px + t * vx; // 碰撞点到粒子中心的向量
+          tempVec.y = py + t * vy;
+          n.normalize(); // 碰撞法线
+          final Vec2 point = tempVec2;
+          point.x = point1.x + t * vx; // 实际碰撞点
+          point.y = point1.y + t * vy;
+          float f = callback.reportParticle(i, point, n, t); // 调用回调函数
+          fraction = MathUtils.min(fraction, f); // 更新最近击中分数
+          if (fraction <= 0) { // 如果回调返回0或更小，表示停止进一步查询
+            break query;
+          }
+        }
+      }
+    }
+    m_queryRanges = ranges;
+  }
+
+  /**
+   * 批量查询AABB内的粒子，不经过逐个粒子的回调。
+   * 与 {@link #queryAABB(ParticleQueryCallback, AABB)} 的判定和顺序相同。
+   * @param aabb 查询的AABB
+   * @param indices 输出的粒子索引，最多写入 indices.length 个；为 null 时只计数
+   * @return 命中的粒子总数，可能大于 indices.length，调用方可据此扩大数组后重新查询
+   */
+  public int queryAABB(final AABB aabb, int[] indices) {
+    refreshStaleProxyTags();
+    if (m_proxyCount == 0) {
+      return 0;
+    }
+    final float lowerBoundX = aabb.lowerBound.x;
+    final float lowerBoundY = aabb.lowerBound.y;
+    final float upperBoundX = aabb.upperBound.x;
+    final float upperBoundY = aabb.upperBound.y;
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    final int capacity = indices != null ? indices.length : 0;
+    int count = 0;
+    final ProxyRowRanges ranges = acquireQueryRanges().reset(m_proxyTags, m_proxyCount,
+        m_inverseDiameter * lowerBoundX, m_inverseDiameter * lowerBoundY,
+        m_inverseDiameter * upperBoundX, m_inverseDiameter * upperBoundY);
+    while (ranges.next()) {
+      for (int proxy = ranges.first; proxy < ranges.last; ++proxy) {
+        final int i = m_proxyIndices[proxy];
+        final float px = posX[i];
+        final float py = posY[i];
+        if (lowerBoundX < px && px < upperBoundX && lowerBoundY < py && py < upperBoundY) {
+          if (count < capacity) {
+            indices[count] = i;
+          }
+          count++;
+        }
+      }
+    }
+    m_queryRanges = ranges;
+    return count;
+  }
+
+  /**
+   * 统计AABB内的粒子数量。
+   * @param aabb 查询的AABB
+   * @return AABB内的粒子数量
+   */
+  public int countParticlesInAABB(final AABB aabb) {
+    return queryAABB(aabb, null);
+  }
+
+  /**
+   * 批量查询中心位于形状内的粒子，判定与 {@link #destroyParticlesInShape} 相同。
+   * @param shape 查询的形状
+   * @param xf 形状的变换
+   * @param indices 输出的粒子索引，最多写入 indices.length 个；为 null 时只计数
+   * @return 命中的粒子总数，可能大于 indices.length
+   */
+  public int queryParticlesInShape(Shape shape, Transform xf, int[] indices) {
+    refreshStaleProxyTags();
+    if (m_proxyCount == 0) {
+      return 0;
+    }
+    final AABB aabb = temp;
+    shape.computeAABB(aabb, xf, 0); // 先用形状的AABB按行筛选代理
+    final float lowerBoundX = aabb.lowerBound.x;
+    final float lowerBoundY = aabb.lowerBound.y;
+    final float upperBoundX = aabb.upperBound.x;
+    final float upperBoundY = aabb.upperBound.y;
+    final Vec2 p = tempVec;
+    final int capacity = indices != null ? indices.length : 0;
+    int count = 0;
+    final ProxyRowRanges ranges = acquireQueryRanges().reset(m_proxyTags, m_proxyCount,
+        m_inverseDiameter * lowerBoundX, m_inverseDiameter * lowerBoundY,
+        m_inverseDiameter * upperBoundX, m_inverseDiameter * upperBoundY);
+    while (ranges.next()) {
+      for (int proxy = ranges.first; proxy < ranges.last; ++proxy) {
+        final int i = m_proxyIndices[proxy];
+        p.x = m_positionBuffer.x[i];
+        p.y = m_positionBuffer.y[i];
+        if (lowerBoundX < p.x && p.x < upperBoundX && lowerBoundY < p.y && p.y < upperBoundY
+            && shape.testPoint(xf, p)) {
+          if (count < capacity) {
+            indices[count] = i;
+          }
+          count++;
+        }
+      }
+    }
+    m_queryRanges = ranges;
+    return count;
+  }
+
+  /**
+   * 批量射线投射：报告线段 point1-point2 穿过的所有粒子（不按最近击中截断），
+   * 顺序为代理顺序而非沿射线的距离顺序。
+   * @param point1 射线的起点
+   * @param point2 射线的终点
+   * @param indices 输出的粒子索引，最多写入 indices.length 个；为 null 时只计数
+   * @param fractions 可为 null，输出每个击中点在线段上的分数 (0到1)，与 indices 一一对应
+   * @param normals 可为 null，输出每个击中点的单位法线，每个占 2 个元素 (x, y)
+   * @return 击中的粒子总数，可能大于输出数组的容量
+   */
+  public int raycast(final Vec2 point1, final Vec2 point2, int[] indices, float[] fractions,
+      float[] normals) {
+    refreshStaleProxyTags();
+    if (m_proxyCount == 0) {
+      return 0;
+    }
+    final ProxyRowRanges ranges = acquireQueryRanges().reset(m_proxyTags, m_proxyCount,
+        m_inverseDiameter * MathUtils.min(point1.x, point2.x) - 1,
+        m_inverseDiameter * MathUtils.min(point1.y, point2.y) - 1,
+        m_inverseDiameter * MathUtils.max(point1.x, point2.x) + 1,
+        m_inverseDiameter * MathUtils.max(point1.y, point2.y) + 1);
+    final float vx = point2.x - point1.x;
+    final float vy = point2.y - point1.y;
+    float v2 = vx * vx + vy * vy;
+    if (v2 == 0) v2 = Float.MAX_VALUE; // 避免除以零
+    final int capacity = indices != null ? indices.length : 0;
+    final int fractionCapacity = fractions != null ? fractions.length : 0;
+    final int normalCapacity = normals != null ? normals.length / 2 : 0;
+    int count = 0;
+    while (ranges.next()) {
+      for (int proxy = ranges.first; proxy < ranges.last; ++proxy) {
+        final int i = m_proxyIndices[proxy];
+        final float px = point1.x - m_positionBuffer.x[i];
+        final float py = point1.y - m_positionBuffer.y[i];
+        final float pv = px * vx + py * vy;
+        final float p2 = px * px + py * py;
+        final float determinant = pv * pv - v2 * (p2 - m_squaredDiameter);
+        if (determinant < 0) {
+          continue;
+        }
+        final float sqrtDeterminant = MathUtils.sqrt(determinant);
         float t = (-pv - sqrtDeterminant) / v2;
-        if (t > fraction) { // 超出当前最近击中点
+        if (t > 1) {
           continue;
         }
-        if (t < 0) { // 第一个解在射线起点之前
-          t = (-pv + sqrtDeterminant) / v2; // 尝试第二个解
-          if (t < 0 || t > fraction) { // 第二个解仍在射线起点之前或超出当前最近击中点
+        if (t < 0) {
+          t = (-pv + sqrtDeterminant) / v2;
+          if (t < 0 || t > 1) {
             continue;
           }
         }
-        final Vec2 n = tempVec;
-        tempVec.x = px + t * vx; // 碰撞点到粒子中心的向量
-        tempVec.y = py + t * vy;
-        n.normalize(); // 碰撞法线
-        final Vec2 point = tempVec2;
-        point.x = point1.x + t * vx; // 实际碰撞点
-        point.y = point1.y + t * vy;
-        float f = callback.reportParticle(i, point, n, t); // 调用回调函数
-        fraction = MathUtils.min(fraction, f); // 更新最近击中分数
-        if (fraction <= 0) { // 如果回调返回0或更小，表示停止进一步查询
+        if (count < capacity) {
+          indices[count] = i;
+        }
+        if (count < fractionCapacity) {
+          fractions[count] = t;
+        }
+        if (count < normalCapacity) {
+          final Vec2 n = tempVec;
+          n.x = px + t * vx; // 碰撞点到粒子中心的向量
+          n.y = py + t * vy;
+          n.normalize();
+          normals[2 * count] = n.x;
+          normals[2 * count + 1] = n.y;
+        }
+        count++;
+      }
+    }
+    m_queryRanges = ranges;
+    return count;
+  }
+
+  /**
+   * 批量查询与 center 距离小于 radius 的粒子，结果按代理顺序给出。
+   * 代理标签在上一次更新接触时计算，粒子之后最多移动一个直径（速度被限制在临界速度内），
+   * 所以按行筛选时向外多扩展一个格子，保证结果与逐个检查全部粒子一致。
+   * @param center 圆心
+   * @param radius 半径
+   * @param indices 输出的粒子索引，最多写入 indices.length 个；为 null 时只计数
+   * @return 命中的粒子总数，可能大于 indices.length
+   */
+  public int queryRadius(final Vec2 center, float radius, int[] indices) {
+    refreshStaleProxyTags();
+    if (m_proxyCount == 0) {
+      return 0;
+    }
+    final float cx = center.x;
+    final float cy = center.y;
+    final float radiusSquared = radius * radius;
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    final int capacity = indices != null ? indices.length : 0;
+    int count = 0;
+    final ProxyRowRanges ranges = acquireQueryRanges().reset(m_proxyTags, m_proxyCount,
+        m_inverseDiameter * (cx - radius) - 1, m_inverseDiameter * (cy - radius) - 1,
+        m_inverseDiameter * (cx + radius) + 1, m_inverseDiameter * (cy + radius) + 1);
+    while (ranges.next()) {
+      for (int proxy = ranges.first; proxy < ranges.last; ++proxy) {
+        final int i = m_proxyIndices[proxy];
+        final float dx = posX[i] - cx;
+        final float dy = posY[i] - cy;
+        if (dx * dx + dy * dy < radiusSquared) {
+          if (count < capacity) {
+            indices[count] = i;
+          }
+          count++;
+        }
+      }
+    }
+    m_queryRanges = ranges;
+    return count;
+  }
+
+  /**
+   * 查询距离 point 最近的 k 个粒子，结果按距离从近到远写入 indices。
+   * 从约能容纳 k 个粒子的半径开始按行扫描代理，用大小为 k 的最大堆保留最近的候选；
+   * 第 k 近的候选落在扫描半径内时结果即已确定，否则半径加倍重新扫描。
+   * 堆在多次查询之间复用，查询本身不分配内存。
+   * @param point 查询点
+   * @param k 需要的粒子数，超过 indices.length 时按 indices.length 处理
+   * @param indices 输出的粒子索引
+   * @param distances 可为 null，输出对应粒子到 point 的距离
+   * @return 写入的粒子数，粒子不足 k 个时小于 k
+   */
+  public int queryKNearest(final Vec2 point, int k, int[] indices, float[] distances) {
+    refreshStaleProxyTags();
+    k = MathUtils.min(k, indices.length);
+    if (k <= 0 || m_proxyCount == 0) {
+      return 0;
+    }
+    if (m_nearestHeapIndices == null || m_nearestHeapIndices.length < k) {
+      m_nearestHeapIndices = new int[k];
+      m_nearestHeapDistances = new float[k];
+    }
+    final int[] heapIndices = m_nearestHeapIndices;
+    final float[] heapDistances = m_nearestHeapDistances;
+    final float px = point.x;
+    final float py = point.y;
+    final float[] posX = m_positionBuffer.x;
+    final float[] posY = m_positionBuffer.y;
+    // 标签的 x 部分只能表示 2^(xTruncBits-1) 个格子，半径超出后改为遍历全部代理
+    final float maxRadius = (1 << (xTruncBits - 1)) * m_particleDiameter;
+    float radius = m_particleDiameter * MathUtils.max(1, MathUtils.sqrt(k));
+    int size = 0;
+    while (true) {
+      size = 0;
+      if (radius >= maxRadius) {
+        for (int proxy = 0; proxy < m_proxyCount; ++proxy) {
+          final int i = m_proxyIndices[proxy];
+          final float dx = posX[i] - px;
+          final float dy = posY[i] - py;
+          size = offerNearest(heapIndices, heapDistances, size, k, i, dx * dx + dy * dy);
+        }
+        break;
+      }
+      int scanned = 0;
+      final ProxyRowRanges ranges = acquireQueryRanges().reset(m_proxyTags, m_proxyCount,
+          m_inverseDiameter * (px - radius) - 1, m_inverseDiameter * (py - radius) - 1,
+          m_inverseDiameter * (px + radius) + 1, m_inverseDiameter * (py + radius) + 1);
+      while (ranges.next()) {
+        for (int proxy = ranges.first; proxy < ranges.last; ++proxy) {
+          final int i = m_proxyIndices[proxy];
+          final float dx = posX[i] - px;
+          final float dy = posY[i] - py;
+          size = offerNearest(heapIndices, heapDistances, size, k, i, dx * dx + dy * dy);
+        }
+        scanned += ranges.last - ranges.first;
+      }
+      m_queryRanges = ranges;
+      // 半径内的粒子一定都被扫描过；已扫描全部代理时也不会再有新候选
+      if ((size == k && heapDistances[0] <= radius * radius) || scanned == m_proxyCount) {
+        break;
+      }
+      radius *= 2;
+    }
+    // 依次取出堆顶（当前最远）放到末尾，得到从近到远的顺序
+    final int count = size;
+    while (size > 0) {
+      indices[size - 1] = heapIndices[0];
+      if (distances != null && size - 1 < distances.length) {
+        distances[size - 1] = MathUtils.sqrt(heapDistances[0]);
+      }
+      size--;
+      if (size > 0) {
+        siftDownNearest(heapIndices, heapDistances, size, heapIndices[size], heapDistances[size],
+            0);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * 把候选粒子放入大小为 k 的最大堆（堆顶为最远的候选），返回新的堆大小。
+   */
+  private static int offerNearest(int[] heapIndices, float[] heapDistances, int size, int k,
+      int index, float distanceSquared) {
+    if (size < k) {
+      // 上浮
+      int slot = size;
+      while (slot > 0) {
+        final int parent = (slot - 1) >> 1;
+        if (heapDistances[parent] >= distanceSquared) {
           break;
         }
+        heapIndices[slot] = heapIndices[parent];
+        heapDistances[slot] = heapDistances[parent];
+        slot = parent;
+      }
+      heapIndices[slot] = index;
+      heapDistances[slot] = distanceSquared;
+      return size + 1;
+    }
+    if (distanceSquared < heapDistances[0]) {
+      siftDownNearest(heapIndices, heapDistances, size, index, distanceSquared, 0);
+    }
+    return size;
+  }
+
+  /** 将候选放到最大堆的 slot 位置并下沉。 */
+  private static void siftDownNearest(int[] heapIndices, float[] heapDistances, int size,
+      int index, float distanceSquared, int slot) {
+    while (true) {
+      int child = 2 * slot + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && heapDistances[child + 1] > heapDistances[child]) {
+        child++;
+      }
+      if (heapDistances[child] <= distanceSquared) {
+        break;
       }
+      heapIndices[slot] = heapIndices[child];
+      heapDistances[slot] = heapDistances[child];
+      slot = child;
     }
+    heapIndices[slot] = index;
+    heapDistances[slot] = distanceSquared;
   }
 
   /**
@@ -2150,10 +5133,8 @@ public class ParticleSystem {
       int a = contact.indexA;
       int b = contact.indexB;
       Vec2 n = contact.normal;
-      final Vec2 va = m_velocityBuffer.data[a];
-      final Vec2 vb = m_velocityBuffer.data[b];
-      final float vx = vb.x - va.x;
-      final float vy = vb.y - va.y;
+      final float vx = m_velocityBuffer.x[b] - m_velocityBuffer.x[a];
+      final float vy = m_velocityBuffer.y[b] - m_velocityBuffer.y[a];
       float vn = vx * n.x + vy * n.y; // 粒子间法向相对速度
       if (vn < 0) { // 如果正在接近
         sum_v2 += vn * vn; // 累积速度平方
@@ -2178,6 +5159,20 @@ public class ParticleSystem {
         oldCapacity, newCapacity, deferred);
   }
 
+  /**
+   * 内部方法：重新分配二维向量缓冲区的分量数组。
+   * 分量数组始终由内部持有；用户提供的容量只用于限制增长上限。
+   * @param buffer 二维向量粒子缓冲区对象
+   * @param oldCapacity 旧容量
+   * @param newCapacity 新容量
+   */
+  static void reallocateBuffer(ParticleBufferVec2 buffer, int oldCapacity, int newCapacity) {
+    assert (newCapacity > oldCapacity);
+    assert (buffer.userSuppliedCapacity == 0 || newCapacity <= buffer.userSuppliedCapacity);
+    buffer.x = BufferUtils.reallocateBuffer(buffer.x, oldCapacity, newCapacity);
+    buffer.y = BufferUtils.reallocateBuffer(buffer.y, oldCapacity, newCapacity);
+  }
+
   /**
    * 内部方法：重新分配整数缓冲区。
    * @param buffer 粒子整数缓冲区对象
@@ -2229,6 +5224,19 @@ public class ParticleSystem {
     return buffer;
   }
 
+  /**
+   * 内部方法：请求并初始化整数粒子缓冲区。
+   * 如果缓冲区为 null，则根据当前内部容量创建新数组。
+   * @param buffer 现有缓冲区数组
+   * @return 已准备好的缓冲区数组
+   */
+  int[] requestParticleBuffer(int[] buffer) {
+    if (buffer == null) {
+      buffer = new int[m_internalAllocatedCapacity];
+    }
+    return buffer;
+  }
+
   /**
    * 泛型粒子缓冲区封装类。
    * @param <T> 缓冲区中存储的数据类型
@@ -2243,6 +5251,15 @@ public class ParticleSystem {
     }
   }
 
+  /**
+   * 颜色粒子缓冲区封装类。
+   * 颜色以打包的 ARGB 整数存放，每个粒子 4 字节，不再为每个粒子创建 ParticleColor 对象。
+   */
+  public static class ParticleBufferColor {
+    public int[] data; // 打包的 ARGB 颜色，首次设置颜色时才分配
+    ParticleColor[] view; // 兼容旧接口的 ParticleColor 视图，按需创建
+  }
+
   /**
    * 整数粒子缓冲区封装类。
    */
@@ -2252,26 +5269,121 @@ public class ParticleSystem {
   }
 
   /**
-   * 用于检测粒子接触的代理对象。
-   * 包含粒子索引和空间哈希标签，支持排序。
+   * 二维向量粒子缓冲区封装类（结构数组布局）。
+   * x、y 分量分别存放在连续的 float 数组中，求解循环按索引顺序访问，不再逐个解引用 Vec2 对象。
+   */
+  static class ParticleBufferVec2 {
+    float[] x; // X 分量
+    float[] y; // Y 分量
+    Vec2[] view; // 兼容旧接口的 Vec2 视图（按需创建，或由用户提供）
+    int userSuppliedCapacity; // 用户提供的容量
+
+    /**
+     * 将指定粒子的向量读取到给定的 Vec2 中。
+     * @param i 粒子索引
+     * @param out 输出向量
+     * @return out
+     */
+    Vec2 get(int i, Vec2 out) {
+      out.x = x[i];
+      out.y = y[i];
+      return out;
+    }
+
+    /**
+     * 计算两个粒子之间的距离。
+     * @param a 粒子A的索引
+     * @param b 粒子B的索引
+     * @return 距离
+     */
+    float distance(int a, int b) {
+      final float dx = x[a] - x[b];
+      final float dy = y[a] - y[b];
+      return MathUtils.sqrt(dx * dx + dy * dy);
+    }
+  }
+
+  /**
+   * 接触生成的代理分段。
+   * 负责排序后代理数组中 [firstProxy, lastProxy) 的范围，并持有自己的接触缓冲区；
+   * 单线程模式下直接借用系统的接触缓冲区。
+   */
+  static class ContactBand extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final ParticleSystem system;
+    int firstProxy; // 分段的第一个代理
+    int lastProxy; // 分段末尾（不含）
+    ParticleContact[] contacts; // 分段的接触缓冲区
+    int count; // 分段的接触数量
+    int capacity; // 分段的接触缓冲区容量
+    int reallocationCount; // 分段接触缓冲区自上次汇总以来的扩容次数
+    boolean marking; // 只标记与运动粒子接触的休眠粒子
+
+    ContactBand(ParticleSystem system) {
+      this.system = system;
+    }
+
+    /**
+     * 取出并清零扩容次数。
+     * @return 自上次取出以来的扩容次数
+     */
+    int takeReallocationCount() {
+      final int count = reallocationCount;
+      reallocationCount = 0;
+      return count;
+    }
+
+    @Override
+    protected void compute() {
+      if (marking) {
+        system.markSleepingNeighbors(this);
+      } else {
+        system.findContacts(this);
+      }
+    }
+  }
+
+  /**
+   * 接触求解的分段，对着色后同一颜色内 [first, last) 的接触执行核函数。
    */
-  public static class Proxy implements Comparable<Proxy> {
-    int index; // 粒子索引
-    long tag; // 空间哈希标签
+  static class SolveBand extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final ParticleSystem system;
+    int kernel; // 接触核函数
+    float coefficient; // 核函数的系数
+    int first; // 分段起始位置
+    int last; // 分段结束位置（不含）
+
+    SolveBand(ParticleSystem system) {
+      this.system = system;
+    }
 
     @Override
-    public int compareTo(Proxy o) {
-      return (tag - o.tag) < 0 ? -1 : (o.tag == tag ? 0 : 1); // 按照tag排序
+    protected void compute() {
+      system.solveContacts(kernel, coefficient, first, last);
     }
+  }
+
+  /**
+   * 并行执行一组分段任务的根任务。
+   */
+  static class ForkBandsTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    RecursiveAction[] bands;
+    int bandCount;
 
     @Override
-    public boolean equals(Object obj) {
-      if (this == obj) return true;
-      if (obj == null) return false;
-      if (getClass() != obj.getClass()) return false;
-      Proxy other = (Proxy) obj;
-      if (tag != other.tag) return false;
-      return true;
+    protected void compute() {
+      for (int b = 1; b < bandCount; b++) {
+        bands[b].fork();
+      }
+      bands[0].invoke();
+      for (int b = bandCount - 1; b > 0; b--) {
+        bands[b].join();
+      }
     }
   }
 
@@ -2302,9 +5414,9 @@ public class ParticleSystem {
    */
   static class CreateParticleGroupCallback implements VoronoiDiagramCallback {
     public void callback(int a, int b, int c) {
-      final Vec2 pa = system.m_positionBuffer.data[a];
-      final Vec2 pb = system.m_positionBuffer.data[b];
-      final Vec2 pc = system.m_positionBuffer.data[c];
+      final Vec2 pa = system.m_positionBuffer.get(a, tempA);
+      final Vec2 pb = system.m_positionBuffer.get(b, tempB);
+      final Vec2 pc = system.m_positionBuffer.get(c, tempC);
       // 计算粒子间的距离平方
       final float dabx = pa.x - pb.x;
       final float daby = pa.y - pb.y;
@@ -2328,6 +5440,7 @@ public class ParticleSystem {
               BufferUtils.reallocateBuffer(Triad.class, system.m_triadBuffer, oldCapacity,
                   newCapacity);
           system.m_triadCapacity = newCapacity;
+          system.m_reallocationCount++;
         }
         Triad triad = system.m_triadBuffer[system.m_triadCount]; // 创建新三元组
         triad.indexA = a;
@@ -2359,6 +5472,8 @@ public class ParticleSystem {
     ParticleSystem system; // 粒子系统引用
     ParticleGroupDef def; // 粒子组定义引用
     int firstIndex; // 粒子组的起始索引
+
+    private final Vec2 tempA = new Vec2(), tempB = new Vec2(), tempC = new Vec2(); // 临时向量
   }
 
   /**
@@ -2377,9 +5492,9 @@ public class ParticleSystem {
         int cf = system.m_flagsBuffer.data[c];
         // 并且所有粒子都支持三元组特性
         if ((af & bf & cf & k_triadFlags) != 0) {
-          final Vec2 pa = system.m_positionBuffer.data[a];
-          final Vec2 pb = system.m_positionBuffer.data[b];
-          final Vec2 pc = system.m_positionBuffer.data[c];
+          final Vec2 pa = system.m_positionBuffer.get(a, tempA);
+          final Vec2 pb = system.m_positionBuffer.get(b, tempB);
+          final Vec2 pc = system.m_positionBuffer.get(c, tempC);
           final float dabx = pa.x - pb.x;
           final float daby = pa.y - pb.y;
           final float dbcx = pb.x - pc.x;
@@ -2400,6 +5515,7 @@ public class ParticleSystem {
                   BufferUtils.reallocateBuffer(Triad.class, system.m_triadBuffer, oldCapacity,
                       newCapacity);
               system.m_triadCapacity = newCapacity;
+              system.m_reallocationCount++;
             }
             Triad triad = system.m_triadBuffer[system.m_triadCount];
             triad.indexA = a;
@@ -2428,6 +5544,8 @@ public class ParticleSystem {
     ParticleSystem system; // 粒子系统引用
     ParticleGroup groupA; // 粒子组A引用
     ParticleGroup groupB; // 粒子组B引用
+
+    private final Vec2 tempA = new Vec2(), tempB = new Vec2(), tempC = new Vec2(); // 临时向量
   };
 
   /**
@@ -2440,6 +5558,8 @@ public class ParticleSystem {
     boolean callDestructionListener;
     int destroyed; // 计数被销毁的粒子数量
 
+    private final Vec2 tempVec = new Vec2(); // 临时向量
+
     public DestroyParticlesInShapeCallback() {
       // TODO Auto-generated constructor stub
     }
@@ -2463,7 +5583,7 @@ public class ParticleSystem {
     @Override
     public boolean reportParticle(int index) {
       assert (index >= 0 && index < system.m_count);
-      if (shape.testPoint(xf, system.m_positionBuffer.data[index])) { // 如果粒子在形状内
+      if (shape.testPoint(xf, system.m_positionBuffer.get(index, tempVec))) { // 如果粒子在形状内
         system.destroyParticle(index, callDestructionListener); // 销毁粒子
         destroyed++;
       }
@@ -2478,6 +5598,8 @@ public class ParticleSystem {
     ParticleSystem system;
 
     private final Vec2 tempVec = new Vec2(); // 临时向量
+    private final Vec2 tempPos = new Vec2(); // 粒子位置
+    private final ProxyRowRanges ranges = new ProxyRowRanges(); // 按行遍历代理区间
 
     @Override
     public boolean reportFixture(Fixture fixture) {
@@ -2499,55 +5621,54 @@ public class ParticleSystem {
         final float aabblowerBoundy = aabb.lowerBound.y - system.m_particleDiameter;
         final float aabbupperBoundx = aabb.upperBound.x + system.m_particleDiameter;
         final float aabbupperBoundy = aabb.upperBound.y + system.m_particleDiameter;
-        // 根据扩展AABB的标签范围筛选粒子代理
-        int firstProxy =
-            lowerBound(
-                system.m_proxyBuffer,
-                system.m_proxyCount,
-                computeTag(system.m_inverseDiameter * aabblowerBoundx, system.m_inverseDiameter
-                    * aabblowerBoundy));
-        int lastProxy =
-            upperBound(
-                system.m_proxyBuffer,
-                system.m_proxyCount,
-                computeTag(system.m_inverseDiameter * aabbupperBoundx, system.m_inverseDiameter
-                    * aabbupperBoundy));
-
-        for (int proxy = firstProxy; proxy != lastProxy; ++proxy) {
-          int a = system.m_proxyBuffer[proxy].index;
-          Vec2 ap = system.m_positionBuffer.data[a];
-          if (aabblowerBoundx <= ap.x && ap.x <= aabbupperBoundx && aabblowerBoundy <= ap.y
-              && ap.y <= aabbupperBoundy) { // 如果粒子在扩展AABB内
-            float d;
-            final Vec2 n = tempVec;
-            d = fixture.computeDistance(ap, childIndex, n); // 计算粒子到夹具的距离和法线
-            if (d < system.m_particleDiameter) { // 如果粒子与夹具碰撞
-              float invAm =
-                  (system.m_flagsBuffer.data[a] & ParticleType.b2_wallParticle) != 0 ? 0 : system
-                      .getParticleInvMass(); // 粒子质量倒数 (壁粒子为0)
-              final float rpx = ap.x - bp.x;
-              final float rpy = ap.y - bp.y;
-              float rpn = rpx * n.y - rpy * n.x; // 力臂在法线方向的分量
-              // 重新分配粒子-刚体接触缓冲区（如果需要）
-              if (system.m_bodyContactCount >= system.m_bodyContactCapacity) {
-                int oldCapacity = system.m_bodyContactCapacity;
-                int newCapacity =
-                    system.m_bodyContactCount != 0
-                    ? 2 * system.m_bodyContactCount
-                    : Settings.minParticleBufferCapacity;
-                system.m_bodyContactBuffer =
-                    BufferUtils.reallocateBuffer(ParticleBodyContact.class,
-                        system.m_bodyContactBuffer, oldCapacity, newCapacity);
-                system.m_bodyContactCapacity = newCapacity;
+        // 按扩展AABB覆盖的每一行的标签范围筛选粒子代理
+        final float inverseDiameter = system.m_inverseDiameter;
+        ranges.reset(system.m_proxyTags, system.m_proxyCount, inverseDiameter * aabblowerBoundx,
+            inverseDiameter * aabblowerBoundy, inverseDiameter * aabbupperBoundx,
+            inverseDiameter * aabbupperBoundy);
+        while (ranges.next()) {
+          for (int proxy = ranges.first; proxy != ranges.last; ++proxy) {
+            int a = system.m_proxyIndices[proxy];
+            if ((system.m_flagsBuffer.data[a]
+                & (ParticleType.b2_ballisticParticle | ParticleType.b2_zombieParticle)) != 0) {
+              // 标志刚设置、还没移出代理的弹道粒子，以及本步刚被清除的粒子，都不产生刚体接触
+              continue;
+            }
+            Vec2 ap = system.m_positionBuffer.get(a, tempPos);
+            if (aabblowerBoundx <= ap.x && ap.x <= aabbupperBoundx && aabblowerBoundy <= ap.y
+                && ap.y <= aabbupperBoundy) { // 如果粒子在扩展AABB内
+              float d;
+              final Vec2 n = tempVec;
+              d = fixture.computeDistance(ap, childIndex, n); // 计算粒子到夹具的距离和法线
+              if (d < system.m_particleDiameter) { // 如果粒子与夹具碰撞
+                float invAm =
+                    (system.m_flagsBuffer.data[a] & ParticleType.b2_wallParticle) != 0 ? 0 : system
+                        .getParticleInvMass(); // 粒子质量倒数 (壁粒子为0)
+                final float rpx = ap.x - bp.x;
+                final float rpy = ap.y - bp.y;
+                float rpn = rpx * n.y - rpy * n.x; // 力臂在法线方向的分量
+                // 重新分配粒子-刚体接触缓冲区（如果需要）
+                if (system.m_bodyContactCount >= system.m_bodyContactCapacity) {
+                  int oldCapacity = system.m_bodyContactCapacity;
+                  int newCapacity =
+                      system.m_bodyContactCount != 0
+                      ? 2 * system.m_bodyContactCount
+                      : Settings.minParticleBufferCapacity;
+                  system.m_bodyContactBuffer =
+                      BufferUtils.reallocateBuffer(ParticleBodyContact.class,
+                          system.m_bodyContactBuffer, oldCapacity, newCapacity);
+                  system.m_bodyContactCapacity = newCapacity;
+                  system.m_reallocationCount++;
+                }
+                ParticleBodyContact contact = system.m_bodyContactBuffer[system.m_bodyContactCount]; // 创建新接触
+                contact.index = a;
+                contact.body = b;
+                contact.weight = 1 - d * system.m_inverseDiameter; // 接触权重
+                contact.normal.x = -n.x;
+                contact.normal.y = -n.y; // 接触法线 (指向粒子)
+                contact.mass = 1 / (invAm + invBm + invBI * rpn * rpn); // 有效质量
+                system.m_bodyContactCount++;
               }
-              ParticleBodyContact contact = system.m_bodyContactBuffer[system.m_bodyContactCount]; // 创建新接触
-              contact.index = a;
-              contact.body = b;
-              contact.weight = 1 - d * system.m_inverseDiameter; // 接触权重
-              contact.normal.x = -n.x;
-              contact.normal.y = -n.y; // 接触法线 (指向粒子)
-              contact.mass = 1 / (invAm + invBm + invBI * rpn * rpn); // 有效质量
-              system.m_bodyContactCount++;
             }
           }
         }
@@ -2567,6 +5688,9 @@ public class ParticleSystem {
     private final RayCastOutput output = new RayCastOutput(); // 射线投射输出
     private final Vec2 tempVec = new Vec2(); // 临时向量
     private final Vec2 tempVec2 = new Vec2(); // 临时向量
+    private final Vec2 tempPos = new Vec2(); // 粒子位置
+    private final Vec2 tempVel = new Vec2(); // 粒子速度
+    private final ProxyRowRanges ranges = new ProxyRowRanges(); // 按行遍历代理区间
 
     @Override
     public boolean reportFixture(Fixture fixture) {
@@ -2575,6 +5699,10 @@ public class ParticleSystem {
       }
       final Shape shape = fixture.getShape();
       Body body = fixture.getBody();
+      // 休眠粒子速度为零，静态刚体也不动，轨迹长度为零的射线不会相交
+      final boolean skipSleeping = body.getType() == BodyType.STATIC
+          && (system.m_allParticleFlags & ParticleType.b2_sleepingParticle) != 0;
+      final int[] flags = system.m_flagsBuffer.data;
       int childCount = shape.getChildCount();
       for (int childIndex = 0; childIndex < childCount; childIndex++) {
         AABB aabb = fixture.getAABB(childIndex); // 夹具子形状的AABB
@@ -2583,70 +5711,90 @@ public class ParticleSystem {
         final float aabblowerBoundy = aabb.lowerBound.y - system.m_particleDiameter;
         final float aabbupperBoundx = aabb.upperBound.x + system.m_particleDiameter;
         final float aabbupperBoundy = aabb.upperBound.y + system.m_particleDiameter;
-        // 根据扩展AABB的标签范围筛选粒子代理
-        int firstProxy =
-            lowerBound(
-                system.m_proxyBuffer,
-                system.m_proxyCount,
-                computeTag(system.m_inverseDiameter * aabblowerBoundx, system.m_inverseDiameter
-                    * aabblowerBoundy));
-        int lastProxy =
-            upperBound(
-                system.m_proxyBuffer,
-                system.m_proxyCount,
-                computeTag(system.m_inverseDiameter * aabbupperBoundx, system.m_inverseDiameter
-                    * aabbupperBoundy));
-
-        for (int proxy = firstProxy; proxy != lastProxy; ++proxy) {
-          int a = system.m_proxyBuffer[proxy].index;
-          Vec2 ap = system.m_positionBuffer.data[a];
-          if (aabblowerBoundx <= ap.x && ap.x <= aabbupperBoundx && aabblowerBoundy <= ap.y
-              && ap.y <= aabbupperBoundy) { // 如果粒子在扩展AABB内
-            Vec2 av = system.m_velocityBuffer.data[a]; // 粒子当前速度
-            final Vec2 temp = tempVec;
-            // 将粒子的当前位置和下一个时间步的位置转换到刚体局部坐标，然后反转换回来，以考虑刚体的运动
-            Transform.mulTransToOutUnsafe(body.m_xf0, ap, temp); // 粒子世界位置到刚体上一帧局部位置
-            Transform.mulToOutUnsafe(body.m_xf, temp, input.p1); // 刚体当前帧局部位置到世界位置
-            input.p2.x = ap.x + step.dt * av.x; // 粒子在下一时间步的预测位置
-            input.p2.y = ap.y + step.dt * av.y;
-            input.maxFraction = 1; // 最大射线分数
-            if (fixture.raycast(output, input, childIndex)) { // 对粒子运动轨迹进行射线投射
-              final Vec2 p = tempVec;
-              // 计算碰撞点 (略微偏移以避免卡在表面)
-              p.x =
-                  (1 - output.fraction) * input.p1.x + output.fraction * input.p2.x
-                      + Settings.linearSlop * output.normal.x;
-              p.y =
-                  (1 - output.fraction) * input.p1.y + output.fraction * input.p2.y
-                      + Settings.linearSlop * output.normal.y;
-
-              final float vx = step.inv_dt * (p.x - ap.x); // 计算碰撞后的新速度
-              final float vy = step.inv_dt * (p.y - ap.y);
-              av.x = vx; // 更新粒子速度
-              av.y = vy;
-              final float particleMass = system.getParticleMass();
-              final float ax = particleMass * (av.x - vx); // 计算粒子受到的冲量（未处理前后的速度差）
-              final float ay = particleMass * (av.y - vy);
-              Vec2 bNormal = output.normal; // 碰撞法线
-              final float fdn = ax * bNormal.x + ay * bNormal.y;
-              final Vec2 f = tempVec2;
-              f.x = fdn * bNormal.x;
-              f.y = fdn * bNormal.y; // 碰撞冲量
-              body.applyLinearImpulse(f, p, true); // 将冲量应用到刚体
+        // 按扩展AABB覆盖的每一行的标签范围筛选粒子代理
+        final float inverseDiameter = system.m_inverseDiameter;
+        ranges.reset(system.m_proxyTags, system.m_proxyCount, inverseDiameter * aabblowerBoundx,
+            inverseDiameter * aabblowerBoundy, inverseDiameter * aabbupperBoundx,
+            inverseDiameter * aabbupperBoundy);
+        while (ranges.next()) {
+          for (int proxy = ranges.first; proxy != ranges.last; ++proxy) {
+            int a = system.m_proxyIndices[proxy];
+            if (skipSleeping && (flags[a] & ParticleType.b2_sleepingParticle) != 0) {
+              continue;
+            }
+            Vec2 ap = system.m_positionBuffer.get(a, tempPos);
+            if (aabblowerBoundx <= ap.x && ap.x <= aabbupperBoundx && aabblowerBoundy <= ap.y
+                && ap.y <= aabbupperBoundy) { // 如果粒子在扩展AABB内
+              collide(fixture, body, childIndex, a, ap);
             }
           }
         }
+        // 弹道粒子不在代理中，逐个检查是否在扩展AABB内
+        final int[] ballisticIndices = system.m_ballisticIndices;
+        for (int k = 0; k < system.m_ballisticCount; k++) {
+          int a = ballisticIndices[k];
+          Vec2 ap = system.m_positionBuffer.get(a, tempPos);
+          if (aabblowerBoundx <= ap.x && ap.x <= aabbupperBoundx && aabblowerBoundy <= ap.y
+              && ap.y <= aabbupperBoundy) {
+            collide(fixture, body, childIndex, a, ap);
+          }
+        }
       }
       return true; // 继续查询
     }
+
+    /**
+     * 对粒子在本时间步内的运动轨迹做射线投射，与夹具相交时把粒子停在交点并把冲量施加到刚体上。
+     * @param fixture 夹具
+     * @param body 夹具所属刚体
+     * @param childIndex 夹具子形状索引
+     * @param a 粒子索引
+     * @param ap 粒子当前位置
+     */
+    private void collide(Fixture fixture, Body body, int childIndex, int a, Vec2 ap) {
+      Vec2 av = system.m_velocityBuffer.get(a, tempVel); // 粒子当前速度
+      final Vec2 temp = tempVec;
+      // 将粒子的当前位置和下一个时间步的位置转换到刚体局部坐标，然后反转换回来，以考虑刚体的运动
+      Transform.mulTransToOutUnsafe(body.m_xf0, ap, temp); // 粒子世界位置到刚体上一帧局部位置
+      Transform.mulToOutUnsafe(body.m_xf, temp, input.p1); // 刚体当前帧局部位置到世界位置
+      input.p2.x = ap.x + step.dt * av.x; // 粒子在下一时间步的预测位置
+      input.p2.y = ap.y + step.dt * av.y;
+      input.maxFraction = 1; // 最大射线分数
+      if (fixture.raycast(output, input, childIndex)) { // 对粒子运动轨迹进行射线投射
+        final Vec2 p = tempVec;
+        // 计算碰撞点 (略微偏移以避免卡在表面)
+        p.x =
+            (1 - output.fraction) * input.p1.x + output.fraction * input.p2.x
+                + Settings.linearSlop * output.normal.x;
+        p.y =
+            (1 - output.fraction) * input.p1.y + output.fraction * input.p2.y
+                + Settings.linearSlop * output.normal.y;
+
+        final float vx = step.inv_dt * (p.x - ap.x); // 计算碰撞后的新速度
+        final float vy = step.inv_dt * (p.y - ap.y);
+        av.x = vx; // 更新粒子速度
+        av.y = vy;
+        system.m_velocityBuffer.x[a] = vx;
+        system.m_velocityBuffer.y[a] = vy;
+        final float particleMass = system.getParticleMass();
+        final float ax = particleMass * (av.x - vx); // 计算粒子受到的冲量（未处理前后的速度差）
+        final float ay = particleMass * (av.y - vy);
+        Vec2 bNormal = output.normal; // 碰撞法线
+        final float fdn = ax * bNormal.x + ay * bNormal.y;
+        final Vec2 f = tempVec2;
+        f.x = fdn * bNormal.x;
+        f.y = fdn * bNormal.y; // 碰撞冲量
+        body.applyLinearImpulse(f, p, true); // 将冲量应用到刚体
+      }
+    }
   }
 
   /**
    * 内部辅助类，用于检测各种粒子相关数据结构是否“无效”（例如索引为-1）。
    */
   static class Test {
-    static boolean IsProxyInvalid(final Proxy proxy) {
-      return proxy.index < 0;
+    static boolean IsProxyInvalid(final int proxyIndex) {
+      return proxyIndex < 0;
     }
 
     static boolean IsContactInvalid(final ParticleContact contact) {
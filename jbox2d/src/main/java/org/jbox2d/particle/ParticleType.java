@@ -25,4 +25,18 @@ public class ParticleType {
   public static final int b2_colorMixingParticle = 1 << 8;
   /** call b2DestructionListener on destruction */
   public static final int b2_destructionListener = 1 << 9;
+  /**
+   * moves under gravity, force fields and body collisions only: never generates particle or body
+   * contacts, so it takes no part in pressure, damping or any other particle interaction. Such
+   * particles are kept out of the spatial index and collide with each body by a scan over their
+   * own list, so the particle queries (AABB, shape, radius, nearest and raycast) do not report
+   * them; destroyParticlesInShape scans that list and still destroys them. Setting or clearing the
+   * flag on an existing particle takes effect at the next step.
+   */
+  public static final int b2_ballisticParticle = 1 << 10;
+  /**
+   * at rest and frozen until disturbed; set and cleared by the particle system when sleeping is
+   * enabled, see {@link ParticleSystem#setSleepVelocity(float)}
+   */
+  public static final int b2_sleepingParticle = 1 << 11;
 }
@@ -1,71 +1,79 @@
 package org.jbox2d.particle;
 
+import java.util.Arrays;
+
 import org.jbox2d.common.MathUtils;
 import org.jbox2d.common.Vec2;
-import org.jbox2d.pooling.normal.MutableStack;
 
+/**
+ * Discrete Voronoi diagram over a set of tagged generators, used to build particle triads. An
+ * instance is a reusable workspace: call {@link #reset()} before adding the generators for the
+ * next diagram. Generators, the diagram grid and the task queue are kept in primitive arrays that
+ * only grow, so repeated use does not allocate once the workspace is large enough.
+ */
 public class VoronoiDiagram {
   public static class Generator {
     final Vec2 center = new Vec2();
     int tag;
   }
-  public static class VoronoiDiagramTask {
-    int m_x, m_y, m_i;
-    Generator m_generator;
-
-    public VoronoiDiagramTask() {}
-
-    public VoronoiDiagramTask(int x, int y, int i, Generator g) {
-      m_x = x;
-      m_y = y;
-      m_i = i;
-      m_generator = g;
-    }
-
-    public VoronoiDiagramTask set(int x, int y, int i, Generator g) {
-      m_x = x;
-      m_y = y;
-      m_i = i;
-      m_generator = g;
-      return this;
-    }
-  }
 
   public static interface VoronoiDiagramCallback {
     void callback(int aTag, int bTag, int cTag);
   }
 
-  private Generator[] m_generatorBuffer;
+  private static final int NULL_GENERATOR = -1;
+
+  private float[] m_generatorX;
+  private float[] m_generatorY;
+  private int[] m_generatorTag;
   private int m_generatorCount;
   private int m_countX, m_countY;
-  // The diagram is an array of "pointers".
-  private Generator[] m_diagram;
+  // The diagram is an array of generator indices.
+  private int[] m_diagram;
+
+  // FIFO of pending tasks, each a diagram cell and the generator to try there.
+  private int[] m_taskCell;
+  private int[] m_taskGenerator;
+  private int m_taskFront;
+  private int m_taskBack;
 
   public VoronoiDiagram(int generatorCapacity) {
-    m_generatorBuffer = new Generator[generatorCapacity];
-    for (int i = 0; i < generatorCapacity; i++) {
-      m_generatorBuffer[i] = new Generator();
-    }
+    generatorCapacity = MathUtils.max(generatorCapacity, 1);
+    m_generatorX = new float[generatorCapacity];
+    m_generatorY = new float[generatorCapacity];
+    m_generatorTag = new int[generatorCapacity];
+    m_generatorCount = 0;
+    m_countX = 0;
+    m_countY = 0;
+    m_diagram = new int[0];
+    m_taskCell = new int[0];
+    m_taskGenerator = new int[0];
+  }
+
+  /** Remove all generators so the workspace can build a new diagram. */
+  public void reset() {
     m_generatorCount = 0;
     m_countX = 0;
     m_countY = 0;
-    m_diagram = null;
+    m_taskFront = 0;
+    m_taskBack = 0;
   }
 
   public void getNodes(VoronoiDiagramCallback callback) {
+    final int[] tags = m_generatorTag;
     for (int y = 0; y < m_countY - 1; y++) {
       for (int x = 0; x < m_countX - 1; x++) {
         int i = x + y * m_countX;
-        Generator a = m_diagram[i];
-        Generator b = m_diagram[i + 1];
-        Generator c = m_diagram[i + m_countX];
-        Generator d = m_diagram[i + 1 + m_countX];
+        int a = m_diagram[i];
+        int b = m_diagram[i + 1];
+        int c = m_diagram[i + m_countX];
+        int d = m_diagram[i + 1 + m_countX];
         if (b != c) {
           if (a != b && a != c) {
-            callback.callback(a.tag, b.tag, c.tag);
+            callback.callback(tags[a], tags[b], tags[c]);
           }
           if (d != b && d != c) {
-            callback.callback(b.tag, d.tag, c.tag);
+            callback.callback(tags[b], tags[d], tags[c]);
           }
         }
       }
@@ -73,133 +81,146 @@ public class VoronoiDiagram {
   }
 
   public void addGenerator(Vec2 center, int tag) {
-    Generator g = m_generatorBuffer[m_generatorCount++];
-    g.center.x = center.x;
-    g.center.y = center.y;
-    g.tag = tag;
+    addGenerator(center.x, center.y, tag);
   }
 
-  private final Vec2 lower = new Vec2();
-  private final Vec2 upper = new Vec2();
-  private MutableStack<VoronoiDiagramTask> taskPool =
-      new MutableStack<VoronoiDiagramTask>(50) {
-        @Override
-        protected VoronoiDiagramTask newInstance() {
-          return new VoronoiDiagramTask();
-        }
+  public void addGenerator(float x, float y, int tag) {
+    if (m_generatorCount >= m_generatorTag.length) {
+      int capacity = 2 * m_generatorTag.length;
+      m_generatorX = Arrays.copyOf(m_generatorX, capacity);
+      m_generatorY = Arrays.copyOf(m_generatorY, capacity);
+      m_generatorTag = Arrays.copyOf(m_generatorTag, capacity);
+    }
+    int g = m_generatorCount++;
+    m_generatorX[g] = x;
+    m_generatorY[g] = y;
+    m_generatorTag[g] = tag;
+  }
 
-        @Override
-        protected VoronoiDiagramTask[] newArray(int size) {
-          return new VoronoiDiagramTask[size];
-        }
-      };
-  private final StackQueue<VoronoiDiagramTask> queue = new StackQueue<VoronoiDiagramTask>();
+  private void pushTask(int cell, int generator) {
+    if (m_taskBack >= m_taskCell.length) {
+      int pending = m_taskBack - m_taskFront;
+      if (m_taskFront > 0 && 2 * pending <= m_taskCell.length) {
+        System.arraycopy(m_taskCell, m_taskFront, m_taskCell, 0, pending);
+        System.arraycopy(m_taskGenerator, m_taskFront, m_taskGenerator, 0, pending);
+      } else {
+        int capacity = MathUtils.max(2 * m_taskCell.length, 64);
+        int[] cells = new int[capacity];
+        int[] generators = new int[capacity];
+        System.arraycopy(m_taskCell, m_taskFront, cells, 0, pending);
+        System.arraycopy(m_taskGenerator, m_taskFront, generators, 0, pending);
+        m_taskCell = cells;
+        m_taskGenerator = generators;
+      }
+      m_taskFront = 0;
+      m_taskBack = pending;
+    }
+    m_taskCell[m_taskBack] = cell;
+    m_taskGenerator[m_taskBack] = generator;
+    m_taskBack++;
+  }
+
+  /** Push the four neighbours of cell (x, y) with generator g. */
+  private void pushNeighbors(int x, int y, int i, int g) {
+    if (x > 0) {
+      pushTask(i - 1, g);
+    }
+    if (y > 0) {
+      pushTask(i - m_countX, g);
+    }
+    if (x < m_countX - 1) {
+      pushTask(i + 1, g);
+    }
+    if (y < m_countY - 1) {
+      pushTask(i + m_countX, g);
+    }
+  }
 
   public void generate(float radius) {
-    assert (m_diagram == null);
+    final float[] gx = m_generatorX;
+    final float[] gy = m_generatorY;
     float inverseRadius = 1 / radius;
-    lower.x = Float.MAX_VALUE;
-    lower.y = Float.MAX_VALUE;
-    upper.x = -Float.MAX_VALUE;
-    upper.y = -Float.MAX_VALUE;
+    float lowerX = Float.MAX_VALUE;
+    float lowerY = Float.MAX_VALUE;
+    float upperX = -Float.MAX_VALUE;
+    float upperY = -Float.MAX_VALUE;
     for (int k = 0; k < m_generatorCount; k++) {
-      Generator g = m_generatorBuffer[k];
-      Vec2.minToOut(lower, g.center, lower);
-      Vec2.maxToOut(upper, g.center, upper);
+      lowerX = MathUtils.min(lowerX, gx[k]);
+      lowerY = MathUtils.min(lowerY, gy[k]);
+      upperX = MathUtils.max(upperX, gx[k]);
+      upperY = MathUtils.max(upperY, gy[k]);
+    }
+    m_countX = 1 + (int) (inverseRadius * (upperX - lowerX));
+    m_countY = 1 + (int) (inverseRadius * (upperY - lowerY));
+    int cellCount = m_countX * m_countY;
+    if (m_diagram.length < cellCount) {
+      m_diagram = new int[cellCount];
     }
-    m_countX = 1 + (int) (inverseRadius * (upper.x - lower.x));
-    m_countY = 1 + (int) (inverseRadius * (upper.y - lower.y));
-    m_diagram = new Generator[m_countX * m_countY];
-    queue.reset(new VoronoiDiagramTask[4 * m_countX * m_countX]);
+    final int[] diagram = m_diagram;
+    Arrays.fill(diagram, 0, cellCount, NULL_GENERATOR);
+    m_taskFront = 0;
+    m_taskBack = 0;
     for (int k = 0; k < m_generatorCount; k++) {
-      Generator g = m_generatorBuffer[k];
-      g.center.x = inverseRadius * (g.center.x - lower.x);
-      g.center.y = inverseRadius * (g.center.y - lower.y);
-      int x = MathUtils.max(0, MathUtils.min((int) g.center.x, m_countX - 1));
-      int y = MathUtils.max(0, MathUtils.min((int) g.center.y, m_countY - 1));
-      queue.push(taskPool.pop().set(x, y, x + y * m_countX, g));
+      gx[k] = inverseRadius * (gx[k] - lowerX);
+      gy[k] = inverseRadius * (gy[k] - lowerY);
+      int x = MathUtils.max(0, MathUtils.min((int) gx[k], m_countX - 1));
+      int y = MathUtils.max(0, MathUtils.min((int) gy[k], m_countY - 1));
+      pushTask(x + y * m_countX, k);
     }
-    while (!queue.empty()) {
-      VoronoiDiagramTask front = queue.pop();
-      int x = front.m_x;
-      int y = front.m_y;
-      int i = front.m_i;
-      Generator g = front.m_generator;
-      if (m_diagram[i] == null) {
-        m_diagram[i] = g;
-        if (x > 0) {
-          queue.push(taskPool.pop().set(x - 1, y, i - 1, g));
-        }
-        if (y > 0) {
-          queue.push(taskPool.pop().set(x, y - 1, i - m_countX, g));
-        }
-        if (x < m_countX - 1) {
-          queue.push(taskPool.pop().set(x + 1, y, i + 1, g));
-        }
-        if (y < m_countY - 1) {
-          queue.push(taskPool.pop().set(x, y + 1, i + m_countX, g));
-        }
+    while (m_taskFront < m_taskBack) {
+      int i = m_taskCell[m_taskFront];
+      int g = m_taskGenerator[m_taskFront];
+      m_taskFront++;
+      if (diagram[i] == NULL_GENERATOR) {
+        diagram[i] = g;
+        pushNeighbors(i % m_countX, i / m_countX, i, g);
       }
-      taskPool.push(front);
     }
     int maxIteration = m_countX + m_countY;
     for (int iteration = 0; iteration < maxIteration; iteration++) {
       for (int y = 0; y < m_countY; y++) {
         for (int x = 0; x < m_countX - 1; x++) {
           int i = x + y * m_countX;
-          Generator a = m_diagram[i];
-          Generator b = m_diagram[i + 1];
+          int a = diagram[i];
+          int b = diagram[i + 1];
           if (a != b) {
-            queue.push(taskPool.pop().set(x, y, i, b));
-            queue.push(taskPool.pop().set(x + 1, y, i + 1, a));
+            pushTask(i, b);
+            pushTask(i + 1, a);
           }
         }
       }
       for (int y = 0; y < m_countY - 1; y++) {
         for (int x = 0; x < m_countX; x++) {
           int i = x + y * m_countX;
-          Generator a = m_diagram[i];
-          Generator b = m_diagram[i + m_countX];
+          int a = diagram[i];
+          int b = diagram[i + m_countX];
           if (a != b) {
-            queue.push(taskPool.pop().set(x, y, i, b));
-            queue.push(taskPool.pop().set(x, y + 1, i + m_countX, a));
+            pushTask(i, b);
+            pushTask(i + m_countX, a);
           }
         }
       }
       boolean updated = false;
-      while (!queue.empty()) {
-        VoronoiDiagramTask front = queue.pop();
-        int x = front.m_x;
-        int y = front.m_y;
-        int i = front.m_i;
-        Generator k = front.m_generator;
-        Generator a = m_diagram[i];
-        Generator b = k;
+      while (m_taskFront < m_taskBack) {
+        int i = m_taskCell[m_taskFront];
+        int b = m_taskGenerator[m_taskFront];
+        m_taskFront++;
+        int a = diagram[i];
         if (a != b) {
-          float ax = a.center.x - x;
-          float ay = a.center.y - y;
-          float bx = b.center.x - x;
-          float by = b.center.y - y;
+          int x = i % m_countX;
+          int y = i / m_countX;
+          float ax = gx[a] - x;
+          float ay = gy[a] - y;
+          float bx = gx[b] - x;
+          float by = gy[b] - y;
           float a2 = ax * ax + ay * ay;
           float b2 = bx * bx + by * by;
           if (a2 > b2) {
-            m_diagram[i] = b;
-            if (x > 0) {
-              queue.push(taskPool.pop().set(x - 1, y, i - 1, b));
-            }
-            if (y > 0) {
-              queue.push(taskPool.pop().set(x, y - 1, i - m_countX, b));
-            }
-            if (x < m_countX - 1) {
-              queue.push(taskPool.pop().set(x + 1, y, i + 1, b));
-            }
-            if (y < m_countY - 1) {
-              queue.push(taskPool.pop().set(x, y + 1, i + m_countX, b));
-            }
+            diagram[i] = b;
+            pushNeighbors(x, y, i, b);
             updated = true;
           }
         }
-        taskPool.push(front);
       }
       if (!updated) {
         break;
@@ -0,0 +1,138 @@
+package org.jbox2d.particle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.jbox2d.collision.AABB;
+import org.jbox2d.collision.shapes.PolygonShape;
+import org.jbox2d.common.Transform;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.Body;
+import org.jbox2d.dynamics.BodyDef;
+import org.jbox2d.dynamics.World;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 弹道粒子：不进入代理、不产生任何接触，但仍与刚体碰撞，也能被 destroyParticlesInShape 销毁；
+ * 粒子被销毁或重排后弹道粒子列表保持正确。
+ */
+public class ParticleBallisticTest {
+  private static final float DT = 1 / 60f;
+  private static final float FLOOR_TOP = 3.9f;
+
+  private World world;
+
+  @Before
+  public void setUp() {
+    world = new World(new Vec2(0, 10));
+    world.setParticleRadius(0.05f);
+    Body ground = world.createBody(new BodyDef());
+    PolygonShape floor = new PolygonShape();
+    floor.setAsBox(3, 0.1f, new Vec2(0, FLOOR_TOP + 0.1f), 0);
+    ground.createFixture(floor, 0);
+  }
+
+  @Test
+  public void ballisticParticlesMakeNoContacts() {
+    createGroup(0, 2, ParticleType.b2_ballisticParticle);
+    createGroup(0, 3.6f, 0);
+    for (int s = 0; s < 120; s++) {
+      step(1);
+      int[] flags = world.getParticleFlagsBuffer();
+      ParticleContact[] contacts = world.getParticleContacts();
+      for (int k = 0; k < world.getParticleContactCount(); k++) {
+        assertEquals(0, flags[contacts[k].indexA] & ParticleType.b2_ballisticParticle);
+        assertEquals(0, flags[contacts[k].indexB] & ParticleType.b2_ballisticParticle);
+      }
+      ParticleBodyContact[] bodyContacts = world.getParticleBodyContacts();
+      for (int k = 0; k < world.getParticleBodyContactCount(); k++) {
+        assertEquals(0, flags[bodyContacts[k].index] & ParticleType.b2_ballisticParticle);
+      }
+    }
+    // 弹道粒子不在空间索引中，查询只返回普通粒子
+    int[] found = new int[world.getParticleCount()];
+    AABB everything = new AABB();
+    everything.lowerBound.set(-100, -100);
+    everything.upperBound.set(100, 100);
+    int count = world.queryAABB(everything, found);
+    for (int k = 0; k < count; k++) {
+      assertEquals(0, world.getParticleFlagsBuffer()[found[k]] & ParticleType.b2_ballisticParticle);
+    }
+  }
+
+  @Test
+  public void ballisticParticlesCollideWithBodies() {
+    // 普通粒子先被销毁、每步重排缓冲区，弹道粒子列表必须随之重映射
+    world.setParticleReorderInterval(1);
+    ParticleGroup water = createGroup(0, 2, 0);
+    ParticleGroup ballistic = createGroup(0.5f, 1, ParticleType.b2_ballisticParticle);
+    step(10);
+    world.destroyParticlesInGroup(water);
+    step(110);
+    assertEquals(ballistic.getParticleCount(), world.getParticleCount());
+    float[] y = world.getParticlePositionY();
+    for (int i = 0; i < world.getParticleCount(); i++) {
+      assertTrue(y[i] < FLOOR_TOP);
+    }
+  }
+
+  @Test
+  public void clearingFlagRestoresContacts() {
+    createGroup(0, 2, ParticleType.b2_ballisticParticle);
+    step(1);
+    assertEquals(0, world.getParticleContactCount());
+    int[] flags = world.getParticleFlagsBuffer();
+    for (int i = 0; i < world.getParticleCount(); i++) {
+      flags[i] &= ~ParticleType.b2_ballisticParticle;
+    }
+    step(1);
+    assertFalse(world.getParticleContactCount() == 0);
+  }
+
+  @Test
+  public void destroyParticlesInShapeDestroysBallisticParticles() {
+    createGroup(0, 2, ParticleType.b2_ballisticParticle);
+    createGroup(1, 2, 0);
+    step(1);
+    // 形状盖住弹道粒子组的左半边和普通粒子组的右半边
+    PolygonShape box = new PolygonShape();
+    box.setAsBox(0.5f, 1, new Vec2(0.5f, 2), 0);
+    final Transform xf = new Transform();
+    xf.setIdentity();
+    int ballisticInside = 0;
+    int inside = 0;
+    final int count = world.getParticleCount();
+    for (int i = 0; i < count; i++) {
+      Vec2 p = new Vec2(world.getParticlePositionX()[i], world.getParticlePositionY()[i]);
+      if (box.testPoint(xf, p)) {
+        inside++;
+        if ((world.getParticleFlagsBuffer()[i] & ParticleType.b2_ballisticParticle) != 0) {
+          ballisticInside++;
+        }
+      }
+    }
+    assertTrue(ballisticInside > 0);
+    assertTrue(inside > ballisticInside);
+    assertEquals(inside, world.destroyParticlesInShape(box, xf));
+    step(1);
+    assertEquals(count - inside, world.getParticleCount());
+  }
+
+  private ParticleGroup createGroup(float x, float y, int flags) {
+    ParticleGroupDef def = new ParticleGroupDef();
+    PolygonShape box = new PolygonShape();
+    box.setAsBox(0.3f, 0.3f);
+    def.shape = box;
+    def.flags = flags;
+    def.position.set(x, y);
+    return world.createParticleGroup(def);
+  }
+
+  private void step(int count) {
+    for (int i = 0; i < count; i++) {
+      world.step(DT, 1, 1);
+    }
+  }
+}
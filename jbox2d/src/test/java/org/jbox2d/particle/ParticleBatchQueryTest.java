@@ -0,0 +1,200 @@
+package org.jbox2d.particle;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.jbox2d.callbacks.ParticleQueryCallback;
+import org.jbox2d.callbacks.ParticleRaycastCallback;
+import org.jbox2d.collision.AABB;
+import org.jbox2d.collision.shapes.CircleShape;
+import org.jbox2d.collision.shapes.PolygonShape;
+import org.jbox2d.collision.shapes.Shape;
+import org.jbox2d.common.Transform;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.World;
+import org.jbox2d.particle.ParticleRowQueryTest.IntList;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 批量查询：结果与逐个粒子回调的查询相同；输出数组不够时只写满数组但仍返回命中总数，传 null 只计数；
+ * 射线投射的分数和法线数组可以比索引数组短。
+ */
+public class ParticleBatchQueryTest {
+  private static final float DT = 1 / 60f;
+
+  private World world;
+  private final Random random = new Random(13);
+
+  @Before
+  public void setUp() {
+    world = new World(new Vec2(0, 10));
+    world.setParticleRadius(0.05f);
+    ParticleGroupDef def = new ParticleGroupDef();
+    PolygonShape box = new PolygonShape();
+    box.setAsBox(1.5f, 1);
+    def.shape = box;
+    def.linearVelocity.set(1, -1);
+    world.createParticleGroup(def);
+    for (int s = 0; s < 10; s++) {
+      world.step(DT, 1, 1);
+    }
+  }
+
+  @Test
+  public void queryAABBMatchesCallback() {
+    for (int q = 0; q < 100; q++) {
+      AABB aabb = randomBox();
+      final int[] expected = queryAABB(aabb);
+      int[] indices = new int[world.getParticleCount()];
+      assertEquals(expected.length, world.queryAABB(aabb, indices));
+      assertArrayEquals(expected, Arrays.copyOf(indices, expected.length));
+      assertEquals(expected.length, world.queryAABB(aabb, null));
+      assertEquals(expected.length, world.countParticlesInAABB(aabb));
+    }
+  }
+
+  @Test
+  public void queryAABBReturnsFullCountWhenArrayIsShort() {
+    AABB aabb = new AABB(new Vec2(-1, -1), new Vec2(1, 1));
+    final int[] expected = queryAABB(aabb);
+    assertTrue(expected.length > 10);
+    int[] indices = new int[10];
+    assertEquals(expected.length, world.queryAABB(aabb, indices));
+    assertArrayEquals(Arrays.copyOf(expected, 10), indices);
+  }
+
+  @Test
+  public void queryParticlesInShapeMatchesCallback() {
+    CircleShape circle = new CircleShape();
+    circle.m_radius = 0.7f;
+    PolygonShape triangle = new PolygonShape();
+    triangle.set(new Vec2[] {new Vec2(-1, -0.5f), new Vec2(1, -0.5f), new Vec2(0, 1)}, 3);
+    for (int q = 0; q < 100; q++) {
+      final Shape shape = q % 2 == 0 ? circle : triangle;
+      Transform xf = new Transform();
+      xf.set(new Vec2(4 * random.nextFloat() - 2, 4 * random.nextFloat() - 2),
+          6 * random.nextFloat());
+      final int[] expected = queryShape(shape, xf);
+      int[] indices = new int[world.getParticleCount()];
+      assertEquals(expected.length, world.queryParticlesInShape(shape, xf, indices));
+      assertArrayEquals(expected, Arrays.copyOf(indices, expected.length));
+      assertEquals(expected.length, world.queryParticlesInShape(shape, xf, null));
+      // 数组不够时写满数组，返回命中总数
+      int[] shortIndices = new int[expected.length / 2];
+      assertEquals(expected.length, world.queryParticlesInShape(shape, xf, shortIndices));
+      assertArrayEquals(Arrays.copyOf(expected, shortIndices.length), shortIndices);
+    }
+    // 判定与 destroyParticlesInShape 相同
+    Transform xf = new Transform();
+    xf.set(new Vec2(0.3f, 0.2f), 0.5f);
+    assertEquals(world.queryParticlesInShape(triangle, xf, null),
+        world.destroyParticlesInShape(triangle, xf));
+  }
+
+  @Test
+  public void raycastMatchesCallback() {
+    int hits = 0;
+    for (int q = 0; q < 100; q++) {
+      final Vec2 point1 = new Vec2(6 * random.nextFloat() - 3, 6 * random.nextFloat() - 3);
+      final Vec2 point2 = new Vec2(6 * random.nextFloat() - 3, 6 * random.nextFloat() - 3);
+      final IntList expectedIndices = new IntList();
+      final FloatList expectedFractions = new FloatList();
+      final FloatList expectedNormals = new FloatList();
+      world.raycast((ParticleRaycastCallback) (index, point, normal, fraction) -> {
+        expectedIndices.add(index);
+        expectedFractions.add(fraction);
+        expectedNormals.add(normal.x);
+        expectedNormals.add(normal.y);
+        return 1; // 不截断，报告线段穿过的全部粒子
+      }, point1, point2);
+      final int[] expected = expectedIndices.toArray();
+      final int count = expected.length;
+      int[] indices = new int[world.getParticleCount()];
+      float[] fractions = new float[world.getParticleCount()];
+      float[] normals = new float[2 * world.getParticleCount()];
+      assertEquals(count, world.raycast(point1, point2, indices, fractions, normals));
+      assertArrayEquals(expected, Arrays.copyOf(indices, count));
+      assertArrayEquals(expectedFractions.toArray(), Arrays.copyOf(fractions, count), 0);
+      assertArrayEquals(expectedNormals.toArray(), Arrays.copyOf(normals, 2 * count), 0);
+      assertEquals(count, world.raycast(point1, point2, null, null, null));
+      hits += count;
+    }
+    assertTrue(hits > 0);
+  }
+
+  @Test
+  public void raycastFillsShortArrays() {
+    final Vec2 point1 = new Vec2(-3, 0.1f);
+    final Vec2 point2 = new Vec2(3, -0.1f);
+    int[] allIndices = new int[world.getParticleCount()];
+    float[] allFractions = new float[world.getParticleCount()];
+    float[] allNormals = new float[2 * world.getParticleCount()];
+    final int count = world.raycast(point1, point2, allIndices, allFractions, allNormals);
+    assertTrue(count > 10);
+    // 分数和法线数组比索引数组短，各自只写满自己的容量
+    int[] indices = new int[10];
+    float[] fractions = new float[4];
+    float[] normals = new float[5];
+    assertEquals(count, world.raycast(point1, point2, indices, fractions, normals));
+    assertArrayEquals(Arrays.copyOf(allIndices, 10), indices);
+    assertArrayEquals(Arrays.copyOf(allFractions, 4), fractions, 0);
+    assertArrayEquals(Arrays.copyOf(allNormals, 4), Arrays.copyOf(normals, 4), 0);
+    assertEquals(0, normals[4], 0);
+    // 只要分数时索引可以为 null
+    assertEquals(count, world.raycast(point1, point2, null, fractions, null));
+    assertArrayEquals(Arrays.copyOf(allFractions, 4), fractions, 0);
+  }
+
+  private AABB randomBox() {
+    final float x = 6 * random.nextFloat() - 3;
+    final float y = 6 * random.nextFloat() - 3;
+    return new AABB(new Vec2(x, y),
+        new Vec2(x + 3 * random.nextFloat(), y + 3 * random.nextFloat()));
+  }
+
+  private int[] queryAABB(AABB aabb) {
+    final IntList found = new IntList();
+    world.queryAABB((ParticleQueryCallback) index -> {
+      found.add(index);
+      return true;
+    }, aabb);
+    return found.toArray();
+  }
+
+  /** 用形状的 AABB 回调查询，再逐个检测粒子中心是否在形状内。 */
+  private int[] queryShape(final Shape shape, final Transform xf) {
+    AABB aabb = new AABB();
+    shape.computeAABB(aabb, xf, 0);
+    final IntList found = new IntList();
+    world.queryAABB((ParticleQueryCallback) index -> {
+      Vec2 p = new Vec2(world.getParticlePositionX()[index], world.getParticlePositionY()[index]);
+      if (shape.testPoint(xf, p)) {
+        found.add(index);
+      }
+      return true;
+    }, aabb);
+    return found.toArray();
+  }
+
+  /** 只增不减的 float 列表。 */
+  private static class FloatList {
+    private float[] data = new float[16];
+    private int size;
+
+    void add(float value) {
+      if (size == data.length) {
+        data = Arrays.copyOf(data, 2 * size);
+      }
+      data[size++] = value;
+    }
+
+    float[] toArray() {
+      return Arrays.copyOf(data, size);
+    }
+  }
+}
@@ -0,0 +1,662 @@
+package org.jbox2d.particle;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import org.jbox2d.collision.AABB;
+import org.jbox2d.collision.shapes.CircleShape;
+import org.jbox2d.collision.shapes.PolygonShape;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.Body;
+import org.jbox2d.dynamics.BodyDef;
+import org.jbox2d.dynamics.BodyType;
+import org.jbox2d.dynamics.World;
+
+/**
+ * 粒子求解的吞吐量基准。不是单元测试，直接运行 main，参数为基准名称：
+ * <pre>
+ * java -cp ... org.jbox2d.particle.ParticleBenchmark threads|sort|reorder|queries|knn|sleep
+ * </pre>
+ */
+public class ParticleBenchmark {
+  private static final int WARMUP_STEPS = 200;
+  private static final int MEASURED_STEPS = 300;
+
+  public static void main(String[] args) {
+    String name = args.length > 0 ? args[0] : "threads";
+    switch (name) {
+      case "threads":
+        benchmarkThreads();
+        break;
+      case "sort":
+        benchmarkSort("rain", new RainScene());
+        benchmarkSort("snow", new SnowScene());
+        break;
+      case "reorder":
+        benchmarkReorder();
+        break;
+      case "queries":
+        benchmarkQueries();
+        break;
+      case "knn":
+        benchmarkNearest();
+        break;
+      case "sleep":
+        benchmarkSleep();
+        break;
+      default:
+        throw new IllegalArgumentException("unknown benchmark: " + name);
+    }
+  }
+
+  /**
+   * 同一块水分别用 1、2、4、8 个线程步进，报告每步耗时和每秒处理的接触数。
+   * 场景约 4400 个粒子、8000 多个接触，接触生成分段和按颜色并行求解都会启用。
+   */
+  static void benchmarkThreads() {
+    // 先完整跑一遍预热 JIT，再正式计时
+    for (int round = 0; round < 2; round++) {
+      for (int threads : new int[] {1, 2, 4, 8}) {
+        World world = ParticleThreadingTest.createWorld();
+        world.setParticleThreadCount(threads);
+        ParticleThreadingTest.step(world, WARMUP_STEPS);
+        long contacts = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_STEPS; i++) {
+          ParticleThreadingTest.step(world, 1);
+          contacts += world.getParticleContactCount();
+        }
+        long elapsed = System.nanoTime() - start;
+        world.setParticleThreadCount(1);
+        if (round > 0) {
+          System.out.println(String.format(Locale.ROOT,
+              "threads=%d particles=%d %.3f ms/step %.1f M contacts/s", threads,
+              world.getParticleCount(), elapsed / 1e6 / MEASURED_STEPS, contacts * 1e3 / elapsed));
+        }
+      }
+    }
+  }
+
+  /**
+   * 记录场景每一步排序前的代理（上一步排好的顺序、本步的新标签），再用同一组输入分别回放
+   * 自适应排序（默认阈值）、插入排序（阈值 1）、基数排序（阈值 0）和 Arrays.sort，报告每步平均耗时，
+   * 以及标签变化、所在网格单元变化和乱序的代理比例。
+   */
+  static void benchmarkSort(String name, Scene scene) {
+    final int steps = 1200;
+    final float inverseDiameter = 1 / (2 * scene.world.getParticleRadius());
+    long[][] inputTags = new long[steps][];
+    int[][] inputIndices = new int[steps][];
+    int[] inputChangedCells = new int[steps];
+    // 与引擎一样保留上一步的代理顺序；场景不重排、不销毁粒子，粒子索引保持不变
+    int[] order = new int[0];
+    long[] previousTags = new long[0];
+    double tagChanged = 0, cellChanged = 0, outOfOrder = 0;
+    final ParticleSystem sorter = new ParticleSystem(new World(new Vec2()));
+    final float defaultThreshold = sorter.getParticleProxySortThreshold();
+    for (int s = 0; s < steps; s++) {
+      scene.step();
+      final int count = scene.world.getParticleCount();
+      if (order.length != count) {
+        order = new int[count];
+        for (int i = 0; i < count; i++) {
+          order[i] = i;
+        }
+        previousTags = new long[count];
+      }
+      final float[] x = scene.world.getParticlePositionX();
+      final float[] y = scene.world.getParticlePositionY();
+      long[] tags = new long[count];
+      int changedTags = 0, changedCells = 0, inversions = 0;
+      for (int p = 0; p < count; p++) {
+        final int i = order[p];
+        tags[p] = ParticleSystem.computeTag(inverseDiameter * x[i], inverseDiameter * y[i]);
+        changedTags += tags[p] != previousTags[p] ? 1 : 0;
+        changedCells +=
+            tags[p] >> ParticleSystem.xShift != previousTags[p] >> ParticleSystem.xShift ? 1 : 0;
+        inversions += p > 0 && tags[p] < tags[p - 1] ? 1 : 0;
+      }
+      tagChanged += (double) changedTags / count;
+      cellChanged += (double) changedCells / count;
+      outOfOrder += (double) inversions / count;
+      inputTags[s] = tags;
+      inputIndices[s] = order.clone();
+      inputChangedCells[s] = changedCells;
+      load(sorter, tags, order);
+      sorter.sortProxies(changedCells);
+      order = Arrays.copyOf(sorter.m_proxyIndices, count);
+      previousTags = Arrays.copyOf(sorter.m_proxyTags, count);
+    }
+    System.out.println(String.format(Locale.ROOT,
+        "%s: particles=%d tags changed %.1f%%, cells changed %.1f%%, out of order %.1f%%", name,
+        scene.world.getParticleCount(), 100 * tagChanged / steps, 100 * cellChanged / steps,
+        100 * outOfOrder / steps));
+    final String[] sorts = {"adaptive", "insertion", "radix", "Arrays.sort"};
+    for (int round = 0; round < 5; round++) {
+      for (String sort : sorts) {
+        long elapsed = 0;
+        for (int s = 0; s < steps; s++) {
+          load(sorter, inputTags[s], inputIndices[s]);
+          long start = System.nanoTime();
+          if (sort.equals("Arrays.sort")) {
+            sortWithArrays(sorter);
+          } else {
+            sorter.setParticleProxySortThreshold(
+                sort.equals("adaptive") ? defaultThreshold : sort.equals("insertion") ? 1 : 0);
+            sorter.sortProxies(inputChangedCells[s]);
+          }
+          elapsed += System.nanoTime() - start;
+        }
+        if (round == 4) {
+          System.out.println(String.format(Locale.ROOT, "  %-12s %.2f us/step", sort,
+              elapsed / 1e3 / steps));
+        }
+      }
+    }
+  }
+
+  /** 把一步的代理输入装入排序用的粒子系统。 */
+  private static void load(ParticleSystem system, long[] tags, int[] indices) {
+    final int count = tags.length;
+    if (system.m_proxyCapacity < count) {
+      system.m_proxyTags = new long[count];
+      system.m_proxyIndices = new int[count];
+      system.m_proxySortTags = new long[count];
+      system.m_proxySortIndices = new int[count];
+      system.m_proxyCapacity = count;
+    }
+    System.arraycopy(tags, 0, system.m_proxyTags, 0, count);
+    System.arraycopy(indices, 0, system.m_proxyIndices, 0, count);
+    system.m_proxyCount = count;
+  }
+
+  private static long[] packed = new long[0]; // Arrays.sort 用的打包缓冲区
+
+  /** 把标签和原位置打包成一个 long 后用 Arrays.sort 排序，相同标签保持原有顺序。 */
+  private static void sortWithArrays(ParticleSystem system) {
+    final int count = system.m_proxyCount;
+    if (packed.length < count) {
+      packed = new long[count];
+    }
+    final long[] tags = system.m_proxyTags;
+    final int[] indices = system.m_proxyIndices;
+    for (int p = 0; p < count; p++) {
+      packed[p] = tags[p] << 20 | p;
+    }
+    Arrays.sort(packed, 0, count);
+    final int[] scratch = system.m_proxySortIndices;
+    for (int p = 0; p < count; p++) {
+      final int from = (int) (packed[p] & ((1 << 20) - 1));
+      scratch[p] = indices[from];
+      tags[p] = packed[p] >> 20;
+    }
+    System.arraycopy(scratch, 0, indices, 0, count);
+  }
+
+  /**
+   * 一块 10 x 5 米、约 8900 个粒子的静止水，在其中随机放置宽而矮（5 x 0.3）、高而窄（0.3 x 5）
+   * 和方形（1.2 x 1.2）的矩形，分别用按行筛选的 queryAABB 和原来两个角的标签圈定一整段代理的扫描查询，
+   * 报告每次查询的平均耗时和命中数。
+   */
+  static void benchmarkQueries() {
+    final ParticleSystem system = createBlock();
+    final int queries = 20000;
+    final int[] indices = new int[system.getParticleCount()];
+    final float[][] sizes = {{5, 0.3f}, {0.3f, 5}, {1.2f, 1.2f}};
+    final String[] names = {"wide", "tall", "square"};
+    for (int round = 0; round < 3; round++) {
+      for (int shape = 0; shape < sizes.length; shape++) {
+        final float width = sizes[shape][0];
+        final float height = sizes[shape][1];
+        AABB[] boxes = new AABB[queries];
+        Random random = new Random(shape);
+        for (int q = 0; q < queries; q++) {
+          boxes[q] = new AABB();
+          boxes[q].lowerBound.set(-5 + (10 - width) * random.nextFloat(),
+              -2.5f + (5 - height) * random.nextFloat());
+          boxes[q].upperBound.set(boxes[q].lowerBound.x + width, boxes[q].lowerBound.y + height);
+        }
+        long found = 0;
+        long start = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+          found += system.queryAABB(boxes[q], indices);
+        }
+        final long rows = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+          found -= ParticleRowQueryTest.queryAABBByCorners(system, boxes[q], indices);
+        }
+        final long corners = System.nanoTime() - start;
+        if (found != 0) {
+          throw new IllegalStateException("row and corner scans disagree");
+        }
+        if (round == 2) {
+          int hits = system.queryAABB(boxes[0], null);
+          System.out.println(String.format(Locale.ROOT,
+              "%-6s particles=%d ~%d hits: rows %.2f us/query, corners %.2f us/query",
+              names[shape], system.getParticleCount(), hits, rows / 1e3 / queries,
+              corners / 1e3 / queries));
+        }
+      }
+    }
+  }
+
+  /**
+   * 在与 queries 相同的静止水中随机取查询点，分别用 queryKNearest 和逐个检查全部粒子的最大堆
+   * 查询最近的 1、8、64 个粒子，再分别用 queryRadius 和逐个检查全部粒子查询半径 0.3 米内的粒子，
+   * 报告每次查询的平均耗时。两种方式的结果必须一致。
+   */
+  static void benchmarkNearest() {
+    final ParticleSystem system = createBlock();
+    final int count = system.getParticleCount();
+    final int queries = 5000;
+    final float[] x = system.getParticlePositionX();
+    final float[] y = system.getParticlePositionY();
+    final Vec2[] points = new Vec2[queries];
+    final Random random = new Random(9);
+    for (int q = 0; q < queries; q++) {
+      points[q] = new Vec2(10 * random.nextFloat() - 5, 5 * random.nextFloat() - 2.5f);
+    }
+    final int[] indices = new int[count];
+    final float[] distances = new float[count];
+    final float[] heap = new float[count];
+    for (int round = 0; round < 3; round++) {
+      for (int k : new int[] {1, 8, 64}) {
+        double checksum = 0;
+        long start = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+          system.queryKNearest(points[q], k, indices, distances);
+          checksum += distances[k - 1];
+        }
+        final long grid = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+          // 大小为 k 的最大堆，堆顶为目前第 k 近的距离平方
+          int size = 0;
+          for (int i = 0; i < count; i++) {
+            final float dx = x[i] - points[q].x;
+            final float dy = y[i] - points[q].y;
+            float d = dx * dx + dy * dy;
+            if (size < k) {
+              int slot = size++;
+              while (slot > 0 && heap[(slot - 1) >> 1] < d) {
+                heap[slot] = heap[(slot - 1) >> 1];
+                slot = (slot - 1) >> 1;
+              }
+              heap[slot] = d;
+            } else if (d < heap[0]) {
+              int slot = 0;
+              while (true) {
+                int child = 2 * slot + 1;
+                if (child >= size) {
+                  break;
+                }
+                if (child + 1 < size && heap[child + 1] > heap[child]) {
+                  child++;
+                }
+                if (heap[child] <= d) {
+                  break;
+                }
+                heap[slot] = heap[child];
+                slot = child;
+              }
+              heap[slot] = d;
+            }
+          }
+          checksum -= (float) Math.sqrt(heap[0]);
+        }
+        final long brute = System.nanoTime() - start;
+        if (Math.abs(checksum) > 1e-3) {
+          throw new IllegalStateException("nearest query and brute force disagree");
+        }
+        if (round == 2) {
+          System.out.println(String.format(Locale.ROOT,
+              "k=%-3d particles=%d: queryKNearest %.2f us/query, brute force %.2f us/query", k,
+              count, grid / 1e3 / queries, brute / 1e3 / queries));
+        }
+      }
+      final float radius = 0.3f;
+      long found = 0;
+      long start = System.nanoTime();
+      for (int q = 0; q < queries; q++) {
+        found += system.queryRadius(points[q], radius, indices);
+      }
+      final long grid = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int q = 0; q < queries; q++) {
+        int hits = 0;
+        for (int i = 0; i < count; i++) {
+          final float dx = x[i] - points[q].x;
+          final float dy = y[i] - points[q].y;
+          if (dx * dx + dy * dy < radius * radius) {
+            indices[hits++] = i;
+          }
+        }
+        found -= hits;
+      }
+      final long brute = System.nanoTime() - start;
+      if (found != 0) {
+        throw new IllegalStateException("radius query and brute force disagree");
+      }
+      if (round == 2) {
+        System.out.println(String.format(Locale.ROOT,
+            "r=%.1f particles=%d: queryRadius %.2f us/query, brute force %.2f us/query", radius,
+            count, grid / 1e3 / queries, brute / 1e3 / queries));
+      }
+    }
+  }
+
+  /** 一块 10 x 5 米的静止水，已按当前位置更新代理标签。 */
+  private static ParticleSystem createBlock() {
+    final ParticleSystem system = new ParticleSystem(new World(new Vec2()));
+    system.setParticleRadius(0.05f);
+    ParticleGroupDef def = new ParticleGroupDef();
+    PolygonShape block = new PolygonShape();
+    block.setAsBox(5, 2.5f);
+    def.shape = block;
+    system.createParticleGroup(def);
+    system.updateContacts(false);
+    return system;
+  }
+
+  /**
+   * 同一个场景构造两份：粒子按随机顺序逐个创建，内存顺序与空间顺序无关，一份不重排，一份每 100 步重排。
+   * 两份交替各步进 25 步计时，共 6 轮，报告每步耗时和每步分配的字节数。
+   * 粒子数据要明显超过二级缓存，重排的效果才看得出来。
+   */
+  static void benchmarkReorder() {
+    final int[] intervals = {0, 100};
+    final ScatteredScene[] scenes = new ScatteredScene[intervals.length];
+    for (int k = 0; k < scenes.length; k++) {
+      scenes[k] = new ScatteredScene();
+      scenes[k].world.setParticleReorderInterval(intervals[k]);
+      for (int s = 0; s < WARMUP_STEPS; s++) {
+        scenes[k].step();
+      }
+    }
+    final int blockSteps = 25;
+    final int rounds = 6;
+    final long[] elapsed = new long[scenes.length];
+    final long[] bytes = new long[scenes.length];
+    for (int round = 0; round < rounds; round++) {
+      for (int k = 0; k < scenes.length; k++) {
+        final long allocated = allocatedBytes();
+        final long start = System.nanoTime();
+        for (int s = 0; s < blockSteps; s++) {
+          scenes[k].step();
+        }
+        elapsed[k] += System.nanoTime() - start;
+        bytes[k] += allocatedBytes() - allocated;
+      }
+    }
+    for (int k = 0; k < scenes.length; k++) {
+      System.out.println(String.format(Locale.ROOT,
+          "reorder interval=%d particles=%d %.3f ms/step, %d bytes/step allocated", intervals[k],
+          scenes[k].world.getParticleCount(), elapsed[k] / 1e6 / (rounds * blockSteps),
+          bytes[k] / (rounds * blockSteps)));
+    }
+  }
+
+  private static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * 水箱里一层已经静止的水，分别不启用休眠、启用休眠并全部静止、启用休眠且右半边被桨叶一直搅动，
+   * 报告每步耗时和休眠粒子的比例。三种情况先用同样的步数沉降，再计时。
+   */
+  static void benchmarkSleep() {
+    final String[] names = {"sleep off", "settled", "stirred"};
+    for (int round = 0; round < 2; round++) {
+      for (int mode = 0; mode < names.length; mode++) {
+        PileScene scene = new PileScene(mode > 0 ? 0.3f : 0, mode == 2);
+        for (int s = 0; s < 1500; s++) {
+          scene.step();
+        }
+        long elapsed = 0;
+        double sleeping = 0;
+        for (int s = 0; s < 3 * MEASURED_STEPS; s++) {
+          long start = System.nanoTime();
+          scene.step();
+          elapsed += System.nanoTime() - start;
+          sleeping += scene.sleepingFraction();
+        }
+        if (round > 0) {
+          System.out.println(String.format(Locale.ROOT,
+              "%-9s particles=%d %.3f ms/step, %.0f%% sleeping, %d contacts", names[mode],
+              scene.world.getParticleCount(), elapsed / 1e6 / (3 * MEASURED_STEPS),
+              100 * sleeping / (3 * MEASURED_STEPS), scene.world.getParticleContactCount()));
+        }
+      }
+    }
+  }
+
+  /** 基准场景：一个世界和每一步的驱动逻辑。 */
+  abstract static class Scene {
+    final World world;
+    final Random random = new Random(1);
+
+    Scene(World world) {
+      this.world = world;
+    }
+
+    abstract void step();
+  }
+
+  /**
+   * 近似应用里最大雨档的雨滴场景（1080x2400 像素，200 像素/米）：82 组细长水柱以 40 m/s 落向
+   * 屏幕中部的碰撞矩形，落出屏幕或超过寿命后原地重生。为保持粒子索引不变，不做缓冲区重排。
+   */
+  static class RainScene extends Scene {
+    private static final float WIDTH = 5.4f;
+    private static final float HEIGHT = 12;
+    private final ParticleGroup[] groups = new ParticleGroup[82];
+    private final float[] age = new float[groups.length];
+    private final float[] lifetime = new float[groups.length];
+    private final Vec2 position = new Vec2();
+    private final Vec2 velocity = new Vec2();
+
+    RainScene() {
+      super(new World(new Vec2(0, 100.25f)));
+      world.setParticlePressureStrength(0.024f);
+      world.setParticleDamping(1);
+      world.setParticleRadius(0.03f);
+      world.setParticleMaxCount(2800);
+      world.setParticleSleepVelocity(0.06f);
+      Body card = world.createBody(new BodyDef());
+      PolygonShape rect = new PolygonShape();
+      rect.setAsBox(WIDTH * 0.4f, 0.6f, new Vec2(WIDTH / 2, HEIGHT * 0.6f), 0);
+      card.createFixture(rect, 0);
+      PolygonShape drop = new PolygonShape();
+      drop.setAsBox(WIDTH / 300, WIDTH / 40);
+      ParticleGroupDef def = new ParticleGroupDef();
+      def.template = world.createParticleGroupTemplate(drop);
+      def.flags = ParticleType.b2_waterParticle;
+      for (int g = 0; g < groups.length; g++) {
+        def.position.set(random.nextFloat() * WIDTH,
+            HEIGHT * (0.28f - 1.48f * random.nextFloat()));
+        def.linearVelocity.set(0, fallVelocity());
+        groups[g] = world.createParticleGroup(def);
+        lifetime[g] = 4.2f + 2 * random.nextFloat();
+      }
+    }
+
+    private float fallVelocity() {
+      return 40 * (1 + 0.15f * (2 * random.nextFloat() - 1));
+    }
+
+    @Override
+    void step() {
+      final float[] y = world.getParticlePositionY();
+      for (int g = 0; g < groups.length; g++) {
+        age[g] += 1 / 120f;
+        if (age[g] > lifetime[g] || y[groups[g].getBufferIndex()] > HEIGHT * 1.3f) {
+          position.set(random.nextFloat() * WIDTH, -HEIGHT * (0.1f + 0.3f * random.nextFloat()));
+          velocity.set(0, fallVelocity());
+          world.respawnParticleGroup(groups[g], position, 0, velocity, 0);
+          age[g] = 0;
+        }
+      }
+      world.step(1 / 120f, 8, 3);
+    }
+  }
+
+  /**
+   * 近似应用里的雪花场景（1080x2400 像素，80 像素/米）：40 组圆形粉末粒子在重力和风中飘落，
+   * 寿命到期后从顶部原地重生。为保持粒子索引不变，不设清除区域。
+   */
+  static class SnowScene extends Scene {
+    private static final float WIDTH = 13.5f;
+    private static final float HEIGHT = 30;
+    private final Vec2 position = new Vec2();
+    private final Vec2 velocity = new Vec2();
+    private final ParticleForceField wind = ParticleForceField.createUniform(0, 0);
+    private final ParticleGroup[] expired = new ParticleGroup[40];
+    private int expiredCount;
+    private int tick;
+
+    SnowScene() {
+      super(new World(new Vec2(0, 5.5f)));
+      world.setParticleRadius(5 / 80f);
+      world.setParticleMaxCount(1500);
+      world.setParticleDamping(0.5f);
+      world.setParticleDensity(1.2f);
+      world.addParticleForceField(wind);
+      world.setParticleGroupExpirationListener(group -> {
+        expired[expiredCount++] = group;
+        return true;
+      });
+      CircleShape flake = new CircleShape();
+      ParticleGroupTemplate[] templates = new ParticleGroupTemplate[9];
+      for (int t = 0; t < templates.length; t++) {
+        flake.m_radius = (4 + t) / 80f;
+        templates[t] = world.createParticleGroupTemplate(flake);
+      }
+      ParticleGroupDef def = new ParticleGroupDef();
+      def.flags = ParticleType.b2_powderParticle;
+      for (int g = 0; g < expired.length; g++) {
+        def.template = templates[random.nextInt(templates.length)];
+        def.position.set(random.nextFloat() * WIDTH, -g * 0.3f * HEIGHT);
+        def.linearVelocity.set((random.nextFloat() - 0.5f) * 1.5f, 3);
+        def.lifetime = (6 + g * 0.15f) * 0.5f;
+        world.createParticleGroup(def);
+      }
+    }
+
+    @Override
+    void step() {
+      if (++tick % 40 == 0) {
+        float time = tick / 120f;
+        wind.set((float) (Math.sin(time * 0.6) * 1.5 + Math.sin(time * 0.28) * 0.8
+            + Math.cos(time * 0.15) * 0.5), 0);
+      }
+      world.step(1 / 120f, 8, 3);
+      for (int k = 0; k < expiredCount; k++) {
+        position.set(random.nextFloat() * WIDTH, -random.nextFloat() * 2 * HEIGHT);
+        velocity.set((random.nextFloat() - 0.5f) * 1.5f, 3);
+        world.respawnParticleGroup(expired[k], position, 0, velocity, 0);
+      }
+      expiredCount = 0;
+    }
+  }
+
+  /**
+   * 12 米宽、中间有隔板的水箱里约 2000 个粒子、1 米深的一层水，启用休眠时约 1500 步内全部静止。
+   * 更深的水压力求解一直在抖动，只有一部分粒子能休眠。
+   * stirred 时右半边有一个匀速转动的桨叶，这一半一直运动，左半边照常休眠。
+   */
+  static class PileScene extends Scene {
+    PileScene(float sleepVelocity, boolean stirred) {
+      super(new World(new Vec2(0, 10)));
+      world.setParticleRadius(0.05f);
+      world.setParticleSleepVelocity(sleepVelocity);
+      Body tank = world.createBody(new BodyDef());
+      PolygonShape wall = new PolygonShape();
+      wall.setAsBox(6.2f, 0.1f, new Vec2(0, 4.1f), 0);
+      tank.createFixture(wall, 0);
+      wall.setAsBox(0.1f, 2.5f, new Vec2(-6.1f, 1.5f), 0);
+      tank.createFixture(wall, 0);
+      wall.setAsBox(0.1f, 2.5f, new Vec2(6.1f, 1.5f), 0);
+      tank.createFixture(wall, 0);
+      wall.setAsBox(0.1f, 1.25f, new Vec2(0, 2.75f), 0);
+      tank.createFixture(wall, 0);
+      PolygonShape box = new PolygonShape();
+      box.setAsBox(2.9f, 0.5f);
+      ParticleGroupDef def = new ParticleGroupDef();
+      def.shape = box;
+      def.position.set(-3.05f, 3.45f);
+      world.createParticleGroup(def);
+      def.position.set(3.05f, 3.45f);
+      world.createParticleGroup(def);
+      if (stirred) {
+        BodyDef paddleDef = new BodyDef();
+        paddleDef.type = BodyType.KINEMATIC;
+        paddleDef.position.set(3.05f, 3.4f);
+        paddleDef.angularVelocity = 2;
+        Body paddle = world.createBody(paddleDef);
+        PolygonShape blade = new PolygonShape();
+        blade.setAsBox(0.5f, 0.05f);
+        paddle.createFixture(blade, 1);
+      }
+    }
+
+    double sleepingFraction() {
+      final int[] flags = world.getParticleFlagsBuffer();
+      int sleeping = 0;
+      for (int i = 0; i < world.getParticleCount(); i++) {
+        sleeping += (flags[i] & ParticleType.b2_sleepingParticle) != 0 ? 1 : 0;
+      }
+      return (double) sleeping / world.getParticleCount();
+    }
+
+    @Override
+    void step() {
+      world.step(1 / 60f, 8, 3);
+    }
+  }
+
+  /**
+   * 10 米宽的水箱里约 10 万个半径 1 厘米的粒子，按打乱的顺序逐个创建，不属于任何粒子组。
+   * 粒子只在原地附近晃动，不重排时内存顺序一直是随机的。
+   */
+  static class ScatteredScene extends Scene {
+    ScatteredScene() {
+      super(new World(new Vec2(0, 10)));
+      world.setParticleRadius(0.01f);
+      Body tank = world.createBody(new BodyDef());
+      PolygonShape wall = new PolygonShape();
+      wall.setAsBox(5.2f, 0.1f, new Vec2(0, 3.1f), 0);
+      tank.createFixture(wall, 0);
+      wall.setAsBox(0.1f, 2, new Vec2(-5.1f, 1), 0);
+      tank.createFixture(wall, 0);
+      wall.setAsBox(0.1f, 2, new Vec2(5.1f, 1), 0);
+      tank.createFixture(wall, 0);
+      final float spacing = 0.015f;
+      final int columns = 640;
+      final int rows = 160;
+      int[] order = new int[columns * rows];
+      for (int k = 0; k < order.length; k++) {
+        order[k] = k;
+      }
+      for (int k = order.length - 1; k > 0; k--) {
+        final int j = random.nextInt(k + 1);
+        final int temp = order[k];
+        order[k] = order[j];
+        order[j] = temp;
+      }
+      ParticleDef def = new ParticleDef();
+      for (int k : order) {
+        def.position.set(-4.8f + spacing * (k % columns), 3 - spacing * (k / columns));
+        world.createParticle(def);
+      }
+    }
+
+    @Override
+    void step() {
+      world.step(1 / 60f, 8, 3);
+    }
+  }
+}
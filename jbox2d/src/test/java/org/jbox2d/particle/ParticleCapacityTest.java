@@ -0,0 +1,74 @@
+package org.jbox2d.particle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.jbox2d.collision.shapes.PolygonShape;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.Body;
+import org.jbox2d.dynamics.BodyDef;
+import org.jbox2d.dynamics.World;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 容量预留：按峰值负载预留后，步进中的清理、重排、弹道粒子和快照都不再分配缓冲区；不预留时这些分配都会被计数。
+ */
+public class ParticleCapacityTest {
+  private static final float DT = 1 / 60f;
+
+  private World world;
+
+  @Before
+  public void setUp() {
+    world = new World(new Vec2(0, 10));
+    world.setParticleRadius(0.05f);
+    world.setParticleReorderInterval(5);
+    Body ground = world.createBody(new BodyDef());
+    PolygonShape floor = new PolygonShape();
+    floor.setAsBox(3, 0.1f, new Vec2(0, 4), 0);
+    ground.createFixture(floor, 0);
+  }
+
+  @Test
+  public void reservedSceneDoesNotReallocate() {
+    world.reserveParticleCapacity(2000);
+    world.reserveParticleContactCapacity(20000);
+    world.reserveParticleBodyContactCapacity(2000);
+    world.setParticleSnapshotsEnabled(true);
+    ParticleGroup water = createGroup(0, 2, 0);
+    createGroup(1, 1, ParticleType.b2_ballisticParticle);
+    final int reallocations = world.getParticleReallocationCount();
+    step(60);
+    world.destroyParticlesInGroup(water);
+    step(60);
+    assertEquals(reallocations, world.getParticleReallocationCount());
+  }
+
+  @Test
+  public void lazyBuffersAreCounted() {
+    ParticleGroup water = createGroup(0, 2, 0);
+    step(1);
+    // 没有预留时，第一次清理粒子要分配索引映射
+    final int reallocations = world.getParticleReallocationCount();
+    world.destroyParticlesInGroup(water);
+    step(1);
+    assertTrue(world.getParticleReallocationCount() > reallocations);
+  }
+
+  private ParticleGroup createGroup(float x, float y, int flags) {
+    ParticleGroupDef def = new ParticleGroupDef();
+    PolygonShape box = new PolygonShape();
+    box.setAsBox(0.5f, 0.5f);
+    def.shape = box;
+    def.flags = flags;
+    def.position.set(x, y);
+    return world.createParticleGroup(def);
+  }
+
+  private void step(int count) {
+    for (int i = 0; i < count; i++) {
+      world.step(DT, 1, 1);
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package org.jbox2d.particle;
+
+import static org.junit.Assert.assertEquals;
+
+import org.jbox2d.collision.shapes.PolygonShape;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.World;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 粒子颜色以打包的 ARGB 整数存储：旧的 ParticleColor 接口只复制颜色，既不保留用户数组，也不限制粒子容量。
+ */
+public class ParticleColorTest {
+  private static final int RED = 0xffff0000;
+  private static final int BLUE = 0xff0000ff;
+
+  private World world;
+  private ParticleGroupDef def;
+
+  @Before
+  public void setUp() {
+    world = new World(new Vec2(0, 0));
+    world.setParticleRadius(0.05f);
+    def = new ParticleGroupDef();
+    PolygonShape box = new PolygonShape();
+    box.setAsBox(0.3f, 0.3f);
+    def.shape = box;
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void colorBufferIsCopied() {
+    world.createParticleGroup(def);
+    final int count = world.getParticleCount();
+    ParticleColor[] colors = new ParticleColor[count];
+    for (int i = 0; i < count; i++) {
+      colors[i] = new ParticleColor();
+      colors[i].setArgb(RED);
+    }
+    world.setParticleColorBuffer(colors, count);
+    colors[0].setArgb(BLUE);
+    assertEquals(RED, world.getParticleColorPacked()[0]);
+    assertEquals(RED, world.getParticleColorPacked()[count - 1]);
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void colorBufferDoesNotLimitCapacity() {
+    world.createParticleGroup(def);
+    final int count = world.getParticleCount();
+    world.setParticleColorBuffer(world.getParticleColorBuffer(), count);
+    def.position.set(2, 0);
+    world.createParticleGroup(def);
+    assertEquals(2 * count, world.getParticleCount());
+  }
+}
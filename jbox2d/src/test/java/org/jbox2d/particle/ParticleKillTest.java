@@ -0,0 +1,92 @@
+package org.jbox2d.particle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.FloatBuffer;
+
+import org.jbox2d.collision.shapes.PolygonShape;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.World;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 清除区域：本步被清除的粒子立即不再产生接触，也不进入导出和快照，快照索引与下一步清理后的索引一致。
+ */
+public class ParticleKillTest {
+  private static final float DT = 1 / 60f;
+
+  private World world;
+  private ParticleGroup group;
+
+  @Before
+  public void setUp() {
+    world = new World(new Vec2(0, 10));
+    world.setParticleRadius(0.05f);
+    world.setParticleSnapshotsEnabled(true);
+    ParticleGroupDef def = new ParticleGroupDef();
+    PolygonShape box = new PolygonShape();
+    box.setAsBox(0.5f, 0.5f);
+    def.shape = box;
+    group = world.createParticleGroup(def);
+    // 水块中间的一条线，每一步都有粒子越过
+    world.addParticleKillHalfPlane(0, 1, 0.3f);
+    step(1);
+  }
+
+  @Test
+  public void killedParticlesMakeNoContacts() {
+    for (int s = 0; s < 20; s++) {
+      step(1);
+      ParticleContact[] contacts = world.getParticleContacts();
+      for (int k = 0; k < world.getParticleContactCount(); k++) {
+        assertEquals(0, contacts[k].flags & ParticleType.b2_zombieParticle);
+      }
+      int[] flags = world.getParticleFlagsBuffer();
+      ParticleBodyContact[] bodyContacts = world.getParticleBodyContacts();
+      for (int k = 0; k < world.getParticleBodyContactCount(); k++) {
+        assertEquals(0, flags[bodyContacts[k].index] & ParticleType.b2_zombieParticle);
+      }
+    }
+  }
+
+  @Test
+  public void killedParticlesAreNotExported() {
+    ParticleExportDef def = new ParticleExportDef();
+    def.fields = ParticleExportDef.POSITION;
+    FloatBuffer buffer = FloatBuffer.allocate(2 * world.getParticleCount());
+    int zombies = countZombies();
+    assertTrue(zombies > 0);
+    assertEquals(world.getParticleCount() - zombies, world.exportParticles(buffer, group, def));
+  }
+
+  @Test
+  public void snapshotMatchesNextStep() {
+    ParticleSnapshot snapshot = world.acquireParticleSnapshot();
+    assertTrue(countZombies() > 0);
+    world.clearParticleKillVolumes();
+    step(1);
+    assertEquals(world.getParticleCount(), snapshot.getParticleCount());
+    assertEquals(group.getBufferIndex(), snapshot.getGroupFirstIndex()[0]);
+    assertEquals(group.getBufferIndex() + group.getParticleCount(),
+        snapshot.getGroupLastIndex()[0]);
+  }
+
+  private int countZombies() {
+    int[] flags = world.getParticleFlagsBuffer();
+    int zombies = 0;
+    for (int i = 0; i < world.getParticleCount(); i++) {
+      if ((flags[i] & ParticleType.b2_zombieParticle) != 0) {
+        zombies++;
+      }
+    }
+    return zombies;
+  }
+
+  private void step(int count) {
+    for (int i = 0; i < count; i++) {
+      world.step(DT, 1, 1);
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package org.jbox2d.particle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.jbox2d.collision.shapes.PolygonShape;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.World;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 带寿命的粒子组：寿命记录在组上，重生后从当前模拟时间重新计算；到期监听器可以保留粒子组。
+ */
+public class ParticleLifetimeTest {
+  private static final float DT = 1 / 60f;
+
+  private World world;
+  private ParticleGroup group;
+
+  @Before
+  public void setUp() {
+    world = new World(new Vec2(0, 0));
+    world.setParticleRadius(0.05f);
+    ParticleGroupDef def = new ParticleGroupDef();
+    PolygonShape box = new PolygonShape();
+    box.setAsBox(0.3f, 0.3f);
+    def.shape = box;
+    def.lifetime = 1;
+    def.destroyAutomatically = false;
+    group = world.createParticleGroup(def);
+  }
+
+  @Test
+  public void groupRemembersLifetime() {
+    assertEquals(1, group.getLifetime(), 0);
+  }
+
+  @Test
+  public void particlesExpireAfterLifetime() {
+    int count = group.getParticleCount();
+    step(54);
+    assertEquals(count, world.getParticleCount());
+    step(12);
+    assertEquals(0, world.getParticleCount());
+  }
+
+  @Test
+  public void respawnRestartsLifetime() {
+    int count = group.getParticleCount();
+    step(54);
+    world.respawnParticleGroup(group, new Vec2(2, 0), 0, new Vec2(), 0);
+    assertEquals(1, world.getParticleLifetime(group.getBufferIndex()), 1e-3f);
+    step(54);
+    assertEquals(count, world.getParticleCount());
+    step(12);
+    assertEquals(0, world.getParticleCount());
+  }
+
+  @Test
+  public void expirationListenerCanKeepGroup() {
+    int count = group.getParticleCount();
+    final ParticleGroup[] expired = new ParticleGroup[1];
+    world.setParticleGroupExpirationListener(g -> {
+      expired[0] = g;
+      return true;
+    });
+    step(66);
+    assertSame(group, expired[0]);
+    assertEquals(count, world.getParticleCount());
+    assertEquals(1, world.getParticleLifetime(group.getBufferIndex()), 0.1f);
+    world.respawnParticleGroup(group, new Vec2(2, 0), 0, new Vec2(), 0);
+    assertEquals(count, world.getParticleCount());
+  }
+
+  @Test
+  public void expirationListenerCanDeclineGroup() {
+    final int[] calls = new int[1];
+    world.setParticleGroupExpirationListener(g -> {
+      calls[0]++;
+      return false;
+    });
+    step(66);
+    assertEquals(1, calls[0]);
+    assertEquals(0, world.getParticleCount());
+  }
+
+  private void step(int count) {
+    for (int i = 0; i < count; i++) {
+      world.step(DT, 1, 1);
+    }
+  }
+}
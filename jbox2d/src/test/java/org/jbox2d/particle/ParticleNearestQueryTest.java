@@ -0,0 +1,136 @@
+package org.jbox2d.particle;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.jbox2d.collision.shapes.PolygonShape;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.Body;
+import org.jbox2d.dynamics.BodyDef;
+import org.jbox2d.dynamics.World;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 半径查询和最近 k 个粒子查询与逐个检查全部粒子的结果一致：粒子在上一次更新接触之后已经移动，
+ * 查询点可以在流体内、流体外很远处，k 也可以超过粒子总数。
+ */
+public class ParticleNearestQueryTest {
+  private static final float DT = 1 / 60f;
+
+  private World world;
+  private final Random random = new Random(11);
+
+  @Before
+  public void setUp() {
+    world = new World(new Vec2(0, 10));
+    world.setParticleRadius(0.05f);
+    Body ground = world.createBody(new BodyDef());
+    PolygonShape floor = new PolygonShape();
+    floor.setAsBox(4, 0.1f, new Vec2(0, 3), 0);
+    ground.createFixture(floor, 0);
+    ParticleGroupDef def = new ParticleGroupDef();
+    PolygonShape box = new PolygonShape();
+    box.setAsBox(0.8f, 0.8f);
+    def.shape = box;
+    def.position.set(-1.5f, 0);
+    world.createParticleGroup(def);
+    def.position.set(1.5f, -1);
+    def.linearVelocity.set(-2, 0);
+    world.createParticleGroup(def);
+    for (int s = 0; s < 40; s++) {
+      world.step(DT, 1, 1);
+    }
+    // 代理标签在步进中更新接触时计算，之后每个粒子再随机移动不到一个直径，很多粒子离开了标签所在的格子
+    for (int i = 0; i < world.getParticleCount(); i++) {
+      world.getParticlePositionX()[i] += 0.14f * (random.nextFloat() - 0.5f);
+      world.getParticlePositionY()[i] += 0.14f * (random.nextFloat() - 0.5f);
+    }
+  }
+
+  @Test
+  public void radiusQueryMatchesBruteForce() {
+    for (int q = 0; q < 200; q++) {
+      final Vec2 center = randomPoint();
+      final float radius = 2 * random.nextFloat();
+      int[] indices = new int[world.getParticleCount()];
+      final int count = world.queryParticlesInRadius(center, radius, indices);
+      indices = Arrays.copyOf(indices, count);
+      Arrays.sort(indices);
+      assertArrayEquals(bruteForceRadius(center, radius), indices);
+    }
+  }
+
+  @Test
+  public void nearestQueryMatchesBruteForce() {
+    final int particleCount = world.getParticleCount();
+    for (int q = 0; q < 200; q++) {
+      checkNearest(randomPoint(), 1 + random.nextInt(q % 2 == 0 ? 8 : 300));
+    }
+    // 超过粒子总数时返回全部粒子
+    checkNearest(new Vec2(0, 1), particleCount + 5);
+    // 远离流体时扫描半径要多次加倍，超出标签能表示的范围后改为遍历全部代理
+    checkNearest(new Vec2(40, -30), 20);
+    checkNearest(new Vec2(1000, 1000), 20);
+    checkNearest(new Vec2(-1000, 1000), particleCount + 5);
+  }
+
+  /** 流体周围 8 x 6 米范围内的随机点。 */
+  private Vec2 randomPoint() {
+    return new Vec2(8 * random.nextFloat() - 4, 6 * random.nextFloat() - 3);
+  }
+
+  private void checkNearest(Vec2 point, int k) {
+    int[] indices = new int[k];
+    float[] distances = new float[k];
+    final int count = world.queryNearestParticles(point, k, indices, distances);
+    final float[] expected = bruteForceDistances(point);
+    assertEquals(Math.min(k, expected.length), count);
+    assertArrayEquals(Arrays.copyOf(expected, count), Arrays.copyOf(distances, count), 0);
+    // 距离相同的粒子顺序不确定，因此逐个检查索引对应的距离，并且没有重复
+    for (int j = 0; j < count; j++) {
+      assertEquals(distances[j], distance(point, indices[j]), 0);
+    }
+    int[] sorted = Arrays.copyOf(indices, count);
+    Arrays.sort(sorted);
+    for (int j = 1; j < count; j++) {
+      assertTrue(sorted[j - 1] < sorted[j]);
+    }
+  }
+
+  private int[] bruteForceRadius(Vec2 center, float radius) {
+    final float[] x = world.getParticlePositionX();
+    final float[] y = world.getParticlePositionY();
+    int[] found = new int[world.getParticleCount()];
+    int count = 0;
+    for (int i = 0; i < world.getParticleCount(); i++) {
+      final float dx = x[i] - center.x;
+      final float dy = y[i] - center.y;
+      if (dx * dx + dy * dy < radius * radius) {
+        found[count++] = i;
+      }
+    }
+    return Arrays.copyOf(found, count);
+  }
+
+  /** 全部粒子到 point 的距离，从近到远。 */
+  private float[] bruteForceDistances(Vec2 point) {
+    float[] distances = new float[world.getParticleCount()];
+    for (int i = 0; i < distances.length; i++) {
+      distances[i] = distance(point, i);
+    }
+    Arrays.sort(distances);
+    return distances;
+  }
+
+  /** 与查询相同的计算方式：先求距离的平方，再开方。 */
+  private float distance(Vec2 point, int index) {
+    final float dx = world.getParticlePositionX()[index] - point.x;
+    final float dy = world.getParticlePositionY()[index] - point.y;
+    return (float) Math.sqrt(dx * dx + dy * dy);
+  }
+}
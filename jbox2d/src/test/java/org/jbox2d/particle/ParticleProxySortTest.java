@@ -0,0 +1,103 @@
+package org.jbox2d.particle;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.World;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 代理排序：无论走插入排序、基数排序，还是插入排序超出移动预算后改用基数排序，结果都与完整的稳定排序一致。
+ */
+public class ParticleProxySortTest {
+  private static final int COUNT = 2000;
+
+  private ParticleSystem system;
+  private final Random random = new Random(3);
+
+  @Before
+  public void setUp() {
+    system = new ParticleSystem(new World(new Vec2()));
+    system.m_proxyTags = new long[COUNT];
+    system.m_proxyIndices = new int[COUNT];
+    system.m_proxySortTags = new long[COUNT];
+    system.m_proxySortIndices = new int[COUNT];
+    system.m_proxyCapacity = COUNT;
+    system.m_proxyCount = COUNT;
+  }
+
+  @Test
+  public void insertionSortMatchesFullSort() {
+    system.setParticleProxySortThreshold(1);
+    checkSort(nearlySortedTags(), COUNT);
+  }
+
+  @Test
+  public void radixSortMatchesFullSort() {
+    system.setParticleProxySortThreshold(0);
+    checkSort(nearlySortedTags(), COUNT);
+    checkSort(shuffledTags(), COUNT);
+  }
+
+  @Test
+  public void exhaustedInsertionSortMatchesFullSort() {
+    // 完全打乱时插入排序很快超出移动预算，剩余部分交给基数排序
+    system.setParticleProxySortThreshold(1);
+    checkSort(shuffledTags(), 0);
+  }
+
+  @Test
+  public void defaultThresholdMatchesFullSort() {
+    checkSort(nearlySortedTags(), COUNT / 2);
+    checkSort(shuffledTags(), COUNT);
+  }
+
+  /** 大多数粒子在同一行里小幅移动，少数跳到别的网格单元，并带有大量重复标签。 */
+  private long[] nearlySortedTags() {
+    long[] tags = new long[COUNT];
+    for (int i = 0; i < COUNT; i++) {
+      float x = i % 50 + random.nextFloat();
+      float y = i / 50;
+      if (random.nextInt(20) == 0) {
+        x += random.nextInt(5) - 2;
+        y += random.nextInt(3) - 1;
+      }
+      tags[i] = ParticleSystem.computeTag(Math.round(x * 4) / 4f, y);
+    }
+    return tags;
+  }
+
+  private long[] shuffledTags() {
+    long[] tags = new long[COUNT];
+    for (int i = 0; i < COUNT; i++) {
+      tags[i] = ParticleSystem.computeTag(random.nextInt(64), random.nextInt(64));
+    }
+    return tags;
+  }
+
+  private void checkSort(long[] tags, int changedCells) {
+    System.arraycopy(tags, 0, system.m_proxyTags, 0, COUNT);
+    for (int i = 0; i < COUNT; i++) {
+      system.m_proxyIndices[i] = i;
+    }
+    // 标签和原位置打包后排序即为稳定排序
+    long[] expected = new long[COUNT];
+    for (int i = 0; i < COUNT; i++) {
+      expected[i] = tags[i] << 20 | i;
+    }
+    Arrays.sort(expected);
+    long[] expectedTags = new long[COUNT];
+    int[] expectedIndices = new int[COUNT];
+    for (int i = 0; i < COUNT; i++) {
+      expectedTags[i] = expected[i] >> 20;
+      expectedIndices[i] = (int) (expected[i] & ((1 << 20) - 1));
+    }
+    system.sortProxies(changedCells);
+    assertArrayEquals(expectedTags, Arrays.copyOf(system.m_proxyTags, COUNT));
+    assertArrayEquals(expectedIndices, Arrays.copyOf(system.m_proxyIndices, COUNT));
+  }
+}
@@ -0,0 +1,124 @@
+package org.jbox2d.particle;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.jbox2d.collision.AABB;
+import org.jbox2d.collision.shapes.PolygonShape;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.World;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 重生粒子组：重生后立即查询就能在新位置找到粒子，已被销毁但尚未清理的粒子随组复活；
+ * 重排打乱组内顺序后，重生仍回到模板格点上，且不修改共享的模板。
+ */
+public class ParticleRespawnTest {
+  private static final float DT = 1 / 60f;
+
+  private World world;
+  private ParticleGroup group;
+
+  @Before
+  public void setUp() {
+    world = new World(new Vec2(0, 0));
+    world.setParticleRadius(0.05f);
+    ParticleGroupDef def = new ParticleGroupDef();
+    PolygonShape box = new PolygonShape();
+    box.setAsBox(0.3f, 0.3f);
+    def.shape = box;
+    group = world.createParticleGroup(def);
+    def.position.set(-3, 0);
+    world.createParticleGroup(def);
+    step(2);
+  }
+
+  @Test
+  public void queriesFindRespawnedParticles() {
+    final int count = group.getParticleCount();
+    world.respawnParticleGroup(group, new Vec2(5, 5), 0, new Vec2(), 0);
+    AABB aabb = new AABB();
+    aabb.lowerBound.set(4, 4);
+    aabb.upperBound.set(6, 6);
+    assertEquals(count, world.queryAABB(aabb, new int[count]));
+    assertEquals(count, world.queryParticlesInRadius(new Vec2(5, 5), 1, new int[count]));
+    int[] nearest = new int[1];
+    assertEquals(1, world.queryNearestParticles(new Vec2(5, 5), 1, nearest));
+    assertTrue(nearest[0] >= group.getBufferIndex());
+    assertTrue(nearest[0] < group.getBufferIndex() + count);
+  }
+
+  @Test
+  public void respawnRevivesDestroyedParticles() {
+    final int count = world.getParticleCount();
+    world.destroyParticlesInGroup(group);
+    world.respawnParticleGroup(group, new Vec2(5, 5), 0, new Vec2(), 0);
+    step(1);
+    assertEquals(count, world.getParticleCount());
+    int[] flags = world.getParticleFlagsBuffer();
+    for (int i = 0; i < count; i++) {
+      assertEquals(0, flags[i] & ParticleType.b2_zombieParticle);
+    }
+  }
+
+  @Test
+  public void respawnAfterReorderKeepsTemplateLattice() {
+    PolygonShape box = new PolygonShape();
+    box.setAsBox(0.3f, 0.3f);
+    ParticleGroupTemplate template = world.createParticleGroupTemplate(box);
+    final float[] templateX = template.m_x.clone();
+    final float[] templateY = template.m_y.clone();
+    ParticleGroupDef def = new ParticleGroupDef();
+    def.template = template;
+    def.position.set(3, 0);
+    ParticleGroup first = world.createParticleGroup(def);
+    def.position.set(6, 0);
+    ParticleGroup second = world.createParticleGroup(def);
+    // 随机速度打乱组内粒子的空间顺序，每步重排，多次重排后格点要被原地重排而不是重新分配
+    world.setParticleReorderInterval(1);
+    Random random = new Random(5);
+    for (int s = 0; s < 5; s++) {
+      for (int i = 0; i < world.getParticleCount(); i++) {
+        world.getParticleVelocityX()[i] = 4 * (random.nextFloat() - 0.5f);
+        world.getParticleVelocityY()[i] = 4 * (random.nextFloat() - 0.5f);
+      }
+      step(6);
+    }
+    assertTrue(first.m_ownsLocalPositions);
+    world.respawnParticleGroup(first, new Vec2(10, 10), 0, new Vec2(), 0);
+    world.respawnParticleGroup(second, new Vec2(20, 20), 0, new Vec2(), 0);
+    assertLattice(first, 10, 10, templateX, templateY);
+    assertLattice(second, 20, 20, templateX, templateY);
+    assertArrayEquals(templateX, template.m_x, 0);
+    assertArrayEquals(templateY, template.m_y, 0);
+  }
+
+  /** 粒子组相对 (x, y) 的位置集合与模板格点集合相同。 */
+  private void assertLattice(ParticleGroup group, float x, float y, float[] latticeX,
+      float[] latticeY) {
+    final int count = group.getParticleCount();
+    assertEquals(latticeX.length, count);
+    float[] expected = new float[count];
+    float[] actual = new float[count];
+    for (int k = 0; k < count; k++) {
+      final int i = group.getBufferIndex() + k;
+      expected[k] = Math.round(latticeX[k] * 1000) * 10000f + Math.round(latticeY[k] * 1000);
+      actual[k] = Math.round((world.getParticlePositionX()[i] - x) * 1000) * 10000f
+          + Math.round((world.getParticlePositionY()[i] - y) * 1000);
+    }
+    Arrays.sort(expected);
+    Arrays.sort(actual);
+    assertArrayEquals(expected, actual, 0);
+  }
+
+  private void step(int count) {
+    for (int i = 0; i < count; i++) {
+      world.step(DT, 1, 1);
+    }
+  }
+}
@@ -0,0 +1,210 @@
+package org.jbox2d.particle;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.jbox2d.collision.AABB;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.World;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 按行筛选代理的查询：宽、高、方形的矩形以及各个方向的射线，报告的粒子和顺序都与用左下角、右上角两个标签
+ * 圈定一整段代理再逐个精确检测的结果相同，包括跨过空行和落在粒子团之间的查询。
+ */
+public class ParticleRowQueryTest {
+  private static final int QUERIES = 300;
+
+  private ParticleSystem system;
+  private final Random random = new Random(7);
+
+  @Before
+  public void setUp() {
+    system = createScatteredSystem(random);
+  }
+
+  @Test
+  public void queryAABBMatchesCornerScan() {
+    for (int q = 0; q < QUERIES; q++) {
+      AABB aabb = randomBox(q % 3);
+      int[] expected = new int[system.getParticleCount()];
+      expected = Arrays.copyOf(expected, queryAABBByCorners(system, aabb, expected));
+      assertArrayEquals(expected, queryAABB(aabb));
+    }
+  }
+
+  @Test
+  public void raycastMatchesCornerScan() {
+    int hits = 0;
+    for (int q = 0; q < QUERIES; q++) {
+      AABB box = randomBox(q % 3);
+      // 交替使用对角线的两个方向以及水平、竖直射线
+      Vec2 point1 = new Vec2(box.lowerBound);
+      Vec2 point2 = new Vec2(box.upperBound);
+      if (q % 4 == 1) {
+        point1.y = point2.y;
+      } else if (q % 4 == 2) {
+        point1.x = point2.x;
+      } else if (q % 4 == 3) {
+        point1.set(box.upperBound);
+        point2.set(box.lowerBound);
+      }
+      int[] expected = raycastByCorners(system, point1, point2);
+      assertArrayEquals(expected, raycast(point1, point2));
+      hits += expected.length;
+    }
+    assertTrue(hits > 0);
+  }
+
+  /**
+   * 20 x 20 区域内随机分布的 30 个粒子团，团与团之间留有大片空行和空列，并已按当前位置更新代理标签。
+   */
+  static ParticleSystem createScatteredSystem(Random random) {
+    ParticleSystem system = new ParticleSystem(new World(new Vec2()));
+    system.setParticleRadius(0.05f);
+    ParticleDef def = new ParticleDef();
+    for (int c = 0; c < 30; c++) {
+      final float cx = 20 * random.nextFloat() - 10;
+      final float cy = 20 * random.nextFloat() - 10;
+      for (int i = 0; i < 100; i++) {
+        def.position.set(cx + 0.5f * (float) random.nextGaussian(),
+            cy + 0.5f * (float) random.nextGaussian());
+        system.createParticle(def);
+      }
+    }
+    system.updateContacts(false);
+    return system;
+  }
+
+  /** 宽而矮（kind 0）、高而窄（kind 1）或方形（kind 2）的随机矩形。 */
+  private AABB randomBox(int kind) {
+    final float width = kind == 0 ? 20 * random.nextFloat() : kind == 1 ? 0.3f : 3;
+    final float height = kind == 1 ? 20 * random.nextFloat() : kind == 0 ? 0.3f : 3;
+    AABB aabb = new AABB();
+    aabb.lowerBound.set((20 - width) * random.nextFloat() - 10,
+        (20 - height) * random.nextFloat() - 10);
+    aabb.upperBound.set(aabb.lowerBound.x + width, aabb.lowerBound.y + height);
+    return aabb;
+  }
+
+  private int[] queryAABB(AABB aabb) {
+    final IntList found = new IntList();
+    system.queryAABB(index -> {
+      found.add(index);
+      return true;
+    }, aabb);
+    return found.toArray();
+  }
+
+  private int[] raycast(Vec2 point1, Vec2 point2) {
+    final IntList found = new IntList();
+    system.raycast((index, point, normal, fraction) -> {
+      found.add(index);
+      return 1; // 不截断，报告线段穿过的全部粒子
+    }, point1, point2);
+    return found.toArray();
+  }
+
+  /** 原来的查询方式：两个角的标签之间的全部代理逐个检测，按代理顺序写入 indices，返回命中数。 */
+  static int queryAABBByCorners(ParticleSystem system, AABB aabb, int[] indices) {
+    int count = 0;
+    final float lowerX = aabb.lowerBound.x;
+    final float lowerY = aabb.lowerBound.y;
+    final float upperX = aabb.upperBound.x;
+    final float upperY = aabb.upperBound.y;
+    final float[] x = system.getParticlePositionX();
+    final float[] y = system.getParticlePositionY();
+    final int last = upperBound(system, upperX, upperY);
+    for (int p = lowerBound(system, lowerX, lowerY); p < last; p++) {
+      final int i = system.m_proxyIndices[p];
+      if (lowerX < x[i] && x[i] < upperX && lowerY < y[i] && y[i] < upperY) {
+        indices[count++] = i;
+      }
+    }
+    return count;
+  }
+
+  /** 原来的射线投射方式：线段包围盒向外扩展一个直径，两个角的标签之间的全部代理逐个求交。 */
+  private static int[] raycastByCorners(ParticleSystem system, Vec2 point1, Vec2 point2) {
+    final IntList found = new IntList();
+    final float diameter = 2 * system.getParticleRadius();
+    final float lowerX = Math.min(point1.x, point2.x) - diameter;
+    final float lowerY = Math.min(point1.y, point2.y) - diameter;
+    final float upperX = Math.max(point1.x, point2.x) + diameter;
+    final float upperY = Math.max(point1.y, point2.y) + diameter;
+    final float[] x = system.getParticlePositionX();
+    final float[] y = system.getParticlePositionY();
+    final float vx = point2.x - point1.x;
+    final float vy = point2.y - point1.y;
+    final float v2 = vx * vx + vy * vy;
+    final int last = upperBound(system, upperX, upperY);
+    for (int p = lowerBound(system, lowerX, lowerY); p < last; p++) {
+      final int i = system.m_proxyIndices[p];
+      final float px = point1.x - x[i];
+      final float py = point1.y - y[i];
+      final float pv = px * vx + py * vy;
+      final float p2 = px * px + py * py;
+      final float determinant = pv * pv - v2 * (p2 - diameter * diameter);
+      if (determinant < 0) {
+        continue;
+      }
+      final float sqrtDeterminant = (float) Math.sqrt(determinant);
+      float t = (-pv - sqrtDeterminant) / v2;
+      if (t < 0) {
+        t = (-pv + sqrtDeterminant) / v2;
+      }
+      if (0 <= t && t <= 1) {
+        found.add(i);
+      }
+    }
+    return found.toArray();
+  }
+
+  /** 第一个标签不小于 (x, y) 处标签的代理。 */
+  private static int lowerBound(ParticleSystem system, float x, float y) {
+    final float inverseDiameter = 1 / (2 * system.getParticleRadius());
+    return lowerBound(system, ParticleSystem.computeTag(inverseDiameter * x, inverseDiameter * y));
+  }
+
+  /** 第一个标签大于 (x, y) 处标签的代理。 */
+  private static int upperBound(ParticleSystem system, float x, float y) {
+    final float inverseDiameter = 1 / (2 * system.getParticleRadius());
+    return lowerBound(system,
+        ParticleSystem.computeTag(inverseDiameter * x, inverseDiameter * y) + 1);
+  }
+
+  private static int lowerBound(ParticleSystem system, long tag) {
+    int first = 0;
+    int last = system.m_proxyCount;
+    while (first < last) {
+      final int middle = (first + last) >>> 1;
+      if (system.m_proxyTags[middle] < tag) {
+        first = middle + 1;
+      } else {
+        last = middle;
+      }
+    }
+    return first;
+  }
+
+  /** 只增不减的 int 列表。 */
+  static class IntList {
+    private int[] data = new int[16];
+    private int size;
+
+    void add(int value) {
+      if (size == data.length) {
+        data = Arrays.copyOf(data, 2 * size);
+      }
+      data[size++] = value;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(data, size);
+    }
+  }
+}
@@ -0,0 +1,196 @@
+package org.jbox2d.particle;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.jbox2d.collision.shapes.PolygonShape;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.Body;
+import org.jbox2d.dynamics.BodyDef;
+import org.jbox2d.dynamics.World;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 两层水在杯中静止并全部休眠后，移除下层支撑（销毁粒子、重生粒子组、销毁刚体），上层必须被唤醒并继续下落。
+ * 只让接触运动粒子的休眠粒子扫描邻居时，找到的接触与逐对检查的结果相同，顺序与扫描全部代理时相同
+ * （阻尼依赖接触顺序），多线程分段的结果与单线程相同。
+ */
+public class ParticleSleepTest {
+  private static final float DT = 1 / 60f;
+
+  private World world;
+  private Body cup;
+  private ParticleGroup bottom;
+  private ParticleGroup top;
+
+  @Before
+  public void setUp() {
+    world = new World(new Vec2(0, 10));
+    world.setParticleRadius(0.05f);
+    world.setParticleSleepVelocity(0.3f);
+    cup = world.createBody(new BodyDef());
+    PolygonShape floor = new PolygonShape();
+    floor.setAsBox(1, 0.1f, new Vec2(0, 2), 0);
+    cup.createFixture(floor, 0);
+    PolygonShape left = new PolygonShape();
+    left.setAsBox(0.1f, 1, new Vec2(-0.6f, 1.5f), 0);
+    cup.createFixture(left, 0);
+    PolygonShape right = new PolygonShape();
+    right.setAsBox(0.1f, 1, new Vec2(0.6f, 1.5f), 0);
+    cup.createFixture(right, 0);
+
+    ParticleGroupDef def = new ParticleGroupDef();
+    PolygonShape box = new PolygonShape();
+    box.setAsBox(0.45f, 0.15f);
+    def.shape = box;
+    def.position.set(0, 1.75f);
+    bottom = world.createParticleGroup(def);
+    def.position.set(0, 1.4f);
+    top = world.createParticleGroup(def);
+    step(1200);
+    assertEquals(top.getParticleCount(), countSleeping(top));
+    assertEquals(bottom.getParticleCount(), countSleeping(bottom));
+  }
+
+  @Test
+  public void destroyingSupportWakesParticlesAbove() {
+    float before = maxY(top);
+    world.destroyParticlesInGroup(bottom);
+    step(1);
+    assertTrue(countSleeping(top) < top.getParticleCount());
+    step(120);
+    assertTrue(maxY(top) > before + 0.1f);
+  }
+
+  @Test
+  public void respawningSupportWakesParticlesAbove() {
+    float before = maxY(top);
+    world.respawnParticleGroup(bottom, new Vec2(5, -5), 0, new Vec2(), 0);
+    step(120);
+    assertTrue(maxY(top) > before + 0.1f);
+  }
+
+  @Test
+  public void destroyingBodyWakesParticlesOnIt() {
+    float before = maxY(bottom);
+    world.destroyBody(cup);
+    step(60);
+    assertTrue(maxY(bottom) > before + 1);
+    assertTrue(maxY(top) > before + 1);
+  }
+
+  @Test
+  public void contactsWithSleepersMatchBruteForce() {
+    Random random = new Random(17);
+    ParticleSystem system = ParticleRowQueryTest.createScatteredSystem(random);
+    // 左半边整片休眠，右半边随机休眠十分之一，既有大片静止区域的边界，也有零散的休眠粒子
+    final int[] flags = system.getParticleFlagsBuffer();
+    final float[] x = system.getParticlePositionX();
+    for (int i = 0; i < system.getParticleCount(); i++) {
+      if (x[i] < 0 || random.nextInt(10) == 0) {
+        flags[i] |= ParticleType.b2_sleepingParticle;
+      }
+    }
+    system.m_allParticleFlags |= ParticleType.b2_sleepingParticle;
+    system.updateContacts(false);
+    assertArrayEquals(bruteForcePairs(system), contactPairs(system));
+    // 扫描全部代理时接触按A的代理位置、再按B的代理位置排列
+    final int[] proxyOf = new int[system.getParticleCount()];
+    for (int p = 0; p < system.m_proxyCount; p++) {
+      proxyOf[system.m_proxyIndices[p]] = p;
+    }
+    for (int k = 1; k < system.m_contactCount; k++) {
+      ParticleContact previous = system.m_contactBuffer[k - 1];
+      ParticleContact contact = system.m_contactBuffer[k];
+      assertTrue(proxyOf[previous.indexA] < proxyOf[contact.indexA]
+          || proxyOf[previous.indexA] == proxyOf[contact.indexA]
+              && proxyOf[previous.indexB] < proxyOf[contact.indexB]);
+    }
+    final long[] serial = orderedPairs(system);
+    system.setParticleThreadCount(4);
+    system.updateContacts(false);
+    system.setParticleThreadCount(1);
+    assertArrayEquals(serial, orderedPairs(system));
+  }
+
+  /** 按接触顺序排列的接触两端，indexA 在高位。 */
+  private static long[] orderedPairs(ParticleSystem system) {
+    long[] pairs = new long[system.m_contactCount];
+    for (int k = 0; k < pairs.length; k++) {
+      pairs[k] = (long) system.m_contactBuffer[k].indexA << 32 | system.m_contactBuffer[k].indexB;
+    }
+    return pairs;
+  }
+
+  /** 接触两端的粒子索引，小的在高位，排序后返回。 */
+  private static long[] contactPairs(ParticleSystem system) {
+    long[] pairs = new long[system.m_contactCount];
+    for (int k = 0; k < pairs.length; k++) {
+      pairs[k] = pair(system.m_contactBuffer[k].indexA, system.m_contactBuffer[k].indexB);
+    }
+    Arrays.sort(pairs);
+    return pairs;
+  }
+
+  /** 逐对检查：距离小于直径、且不是两个休眠粒子的粒子对。 */
+  private static long[] bruteForcePairs(ParticleSystem system) {
+    final float[] x = system.getParticlePositionX();
+    final float[] y = system.getParticlePositionY();
+    final int[] flags = system.getParticleFlagsBuffer();
+    final float diameter = 2 * system.getParticleRadius();
+    final int count = system.getParticleCount();
+    long[] pairs = new long[16];
+    int size = 0;
+    for (int a = 0; a < count; a++) {
+      for (int b = a + 1; b < count; b++) {
+        final float dx = x[b] - x[a];
+        final float dy = y[b] - y[a];
+        if (dx * dx + dy * dy < diameter * diameter
+            && (flags[a] & flags[b] & ParticleType.b2_sleepingParticle) == 0) {
+          if (size == pairs.length) {
+            pairs = Arrays.copyOf(pairs, 2 * size);
+          }
+          pairs[size++] = pair(a, b);
+        }
+      }
+    }
+    pairs = Arrays.copyOf(pairs, size);
+    Arrays.sort(pairs);
+    return pairs;
+  }
+
+  private static long pair(int a, int b) {
+    return (long) Math.min(a, b) << 32 | Math.max(a, b);
+  }
+
+  private void step(int count) {
+    for (int i = 0; i < count; i++) {
+      world.step(DT, 1, 1);
+    }
+  }
+
+  private int countSleeping(ParticleGroup group) {
+    int[] flags = world.getParticleFlagsBuffer();
+    int sleeping = 0;
+    for (int i = group.getBufferIndex(); i < group.getBufferIndex() + group.getParticleCount(); i++) {
+      if ((flags[i] & ParticleType.b2_sleepingParticle) != 0) {
+        sleeping++;
+      }
+    }
+    return sleeping;
+  }
+
+  private float maxY(ParticleGroup group) {
+    float[] y = world.getParticlePositionY();
+    float max = -Float.MAX_VALUE;
+    for (int i = group.getBufferIndex(); i < group.getBufferIndex() + group.getParticleCount(); i++) {
+      max = Math.max(max, y[i]);
+    }
+    return max;
+  }
+}
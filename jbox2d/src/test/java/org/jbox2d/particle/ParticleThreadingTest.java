@@ -0,0 +1,120 @@
+package org.jbox2d.particle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.jbox2d.collision.shapes.PolygonShape;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.Body;
+import org.jbox2d.dynamics.BodyDef;
+import org.jbox2d.dynamics.World;
+import org.junit.Test;
+
+/**
+ * 多线程求解与单线程求解的一致性：接触生成结果必须完全相同，按接触着色并行求解的压力以及随后的阻尼只差舍入误差。
+ */
+public class ParticleThreadingTest {
+  private static final float DT = 1 / 60f;
+  private static final int[] THREAD_COUNTS = {1, 2, 8};
+  // 相对于速度大小的允许误差
+  private static final float VELOCITY_TOLERANCE = 1e-5f;
+
+  @Test
+  public void contactsAreIdenticalForAnyThreadCount() {
+    World[] worlds = new World[THREAD_COUNTS.length];
+    for (int w = 0; w < worlds.length; w++) {
+      // 先单线程步进到同一个非平凡状态，再切换线程数步进一次
+      worlds[w] = createWorld();
+      step(worlds[w], 30);
+      worlds[w].setParticleThreadCount(THREAD_COUNTS[w]);
+      step(worlds[w], 1);
+    }
+    World serial = worlds[0];
+    assertTrue(serial.getParticleCount() >= 8 * 512);
+    for (int w = 1; w < worlds.length; w++) {
+      World threaded = worlds[w];
+      assertEquals(serial.getParticleContactCount(), threaded.getParticleContactCount());
+      ParticleContact[] expected = serial.getParticleContacts();
+      ParticleContact[] actual = threaded.getParticleContacts();
+      for (int i = 0; i < serial.getParticleContactCount(); i++) {
+        assertEquals(expected[i].indexA, actual[i].indexA);
+        assertEquals(expected[i].indexB, actual[i].indexB);
+        assertEquals(expected[i].flags, actual[i].flags);
+        assertEquals(expected[i].weight, actual[i].weight, 0);
+        assertEquals(expected[i].normal.x, actual[i].normal.x, 0);
+        assertEquals(expected[i].normal.y, actual[i].normal.y, 0);
+      }
+      threaded.setParticleThreadCount(1);
+    }
+  }
+
+  @Test
+  public void threadedPressureMatchesSerial() {
+    // 关闭阻尼后只剩压力，按颜色分组只改变累加顺序，结果只差舍入误差
+    World serial = createWorld();
+    World threaded = createWorld();
+    serial.setParticleDamping(0);
+    threaded.setParticleDamping(0);
+    stepFromSameState(serial, threaded);
+    assertVelocitiesMatch(serial, threaded);
+  }
+
+  @Test
+  public void threadedDampingMatchesSerial() {
+    // 默认阻尼下阻尼按接触顺序单线程求解，只继承压力的舍入误差
+    World serial = createWorld();
+    World threaded = createWorld();
+    stepFromSameState(serial, threaded);
+    assertVelocitiesMatch(serial, threaded);
+  }
+
+  private static void assertVelocitiesMatch(World serial, World threaded) {
+    float[] serialX = serial.getParticleVelocityX();
+    float[] serialY = serial.getParticleVelocityY();
+    float[] threadedX = threaded.getParticleVelocityX();
+    float[] threadedY = threaded.getParticleVelocityY();
+    float maxSpeed = 0;
+    float maxError = 0;
+    for (int i = 0; i < serial.getParticleCount(); i++) {
+      maxSpeed = Math.max(maxSpeed, Math.abs(serialX[i]) + Math.abs(serialY[i]));
+      maxError = Math.max(maxError,
+          Math.abs(serialX[i] - threadedX[i]) + Math.abs(serialY[i] - threadedY[i]));
+    }
+    assertTrue(maxError <= VELOCITY_TOLERANCE * maxSpeed);
+  }
+
+  /** 两个世界单线程步进到落地后的同一状态，再分别用单线程和 4 线程各步进一次。 */
+  private static void stepFromSameState(World serial, World threaded) {
+    step(serial, 30);
+    step(threaded, 30);
+    threaded.setParticleThreadCount(4);
+    step(serial, 1);
+    step(threaded, 1);
+    threaded.setParticleThreadCount(1);
+    // 接触足够多时才会走着色并行求解
+    assertTrue(threaded.getParticleContactCount() >= 2048);
+  }
+
+  /** 地面上方的一大块水，粒子数足够让接触生成分成 8 段。 */
+  static World createWorld() {
+    World world = new World(new Vec2(0, 10));
+    world.setParticleRadius(0.05f);
+    Body ground = world.createBody(new BodyDef());
+    PolygonShape floor = new PolygonShape();
+    floor.setAsBox(5, 0.1f, new Vec2(0, 4.5f), 0);
+    ground.createFixture(floor, 0);
+    ParticleGroupDef def = new ParticleGroupDef();
+    PolygonShape box = new PolygonShape();
+    box.setAsBox(3.5f, 1.8f);
+    def.shape = box;
+    def.position.set(0, 2);
+    world.createParticleGroup(def);
+    return world;
+  }
+
+  static void step(World world, int count) {
+    for (int i = 0; i < count; i++) {
+      world.step(DT, 1, 1);
+    }
+  }
+}